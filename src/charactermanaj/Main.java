@@ -3,6 +3,7 @@ package charactermanaj;
 import java.awt.Font;
 import java.awt.GraphicsEnvironment;
 import java.io.File;
+import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.reflect.Method;
 import java.util.Enumeration;
@@ -20,8 +21,11 @@ import javax.swing.UIManager;
 import javax.swing.plaf.FontUIResource;
 
 import charactermanaj.clipboardSupport.ImageSelection;
+import charactermanaj.graphics.io.ImageCacheDetailMBeanImpl;
 import charactermanaj.graphics.io.ImageCacheMBeanImpl;
+import charactermanaj.graphics.io.ImageLoadLatencyMBeanImpl;
 import charactermanaj.model.AppConfig;
+import charactermanaj.model.io.WriteBehindFileWriter;
 import charactermanaj.model.util.StartupSupport;
 import charactermanaj.ui.MainFrame;
 import charactermanaj.ui.ProfileListManager;
@@ -319,6 +323,18 @@ public final class Main implements Runnable {
 			// スタートアップ時の初期化
 			StartupSupport.getInstance().doStartup();
 
+			// バックグラウンドでのプロファイルの保存に失敗した場合はエラーを表示する.
+			WriteBehindFileWriter.getInstance().setErrorHandler(
+					new WriteBehindFileWriter.WriteErrorHandler() {
+						public void occureException(File file, final IOException ex) {
+							SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									ErrorMessageHelper.showErrorDialog(null, ex);
+								}
+							});
+						}
+					});
+
 			// デフォルトのプロファイルを開く.
 			// (最後に使ったプロファイルがあれば、それが開かれる.)
 			MainFrame mainFrame = ProfileListManager.openDefaultProfile();
@@ -369,6 +385,8 @@ public final class Main implements Runnable {
 		// MBeanのセットアップ
 		try {
 			ImageCacheMBeanImpl.setupMBean();
+			ImageCacheDetailMBeanImpl.setupMBean();
+			ImageLoadLatencyMBeanImpl.setupMBean();
 
 		} catch (JMException ex) {
 			// 失敗しても無視して継続する.
@@ -1,25 +1,52 @@
 package charactermanaj.graphics;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import charactermanaj.graphics.colormodel.ColorModel;
 import charactermanaj.graphics.filters.ColorConvertParameter;
-import charactermanaj.graphics.io.ImageCache;
 import charactermanaj.graphics.io.ImageCachedLoader;
 import charactermanaj.graphics.io.ImageLoader;
 import charactermanaj.graphics.io.ImageResource;
 import charactermanaj.graphics.io.LoadedImage;
+import charactermanaj.model.AppConfig;
 
 /**
  * 画像リソースに対する色変換後の画像イメージを返します.<br>
  * 一度読み込まれ色変換された画像は、画像ファイルの更新日が同一であり、且つ、色パラメータに変更がなければ
  * 読み込み済みの画像イメージを返します.<br>
+ * 色変換済みの画像はプロセス全体で共有されており、このクラスはウィンドウごとのビューとなります.<br>
+ * 使用した画像はウィンドウごとの上限({@link AppConfig#getImageCacheQuotaPerWindow()})まで保持され、
+ * 上限を超えた分は最近使われていない順に解放されます.<br>
  * @author seraphy
  *
  */
 public class ColorConvertedImageCachedLoader extends ColorConvertedImageLoaderImpl {
 
-	private ImageCache<ColorConvertedImageKey> caches = new ImageCache<ColorConvertedImageKey>();
+	/**
+	 * 全ウィンドウで共有するストア
+	 */
+	private final SharedColorConvertedImageStore store = SharedColorConvertedImageStore.getInstance();
+
+	/**
+	 * このビューが保持している画像(最近使われた順)
+	 */
+	private final LinkedHashMap<ColorConvertedImageKey, LoadedImage> pinnedImages
+			= new LinkedHashMap<ColorConvertedImageKey, LoadedImage>(16, 0.75f, true);
+
+	/**
+	 * 統計用の所有者名
+	 */
+	private volatile String ownerName = "";
+
+	/**
+	 * クローズ済みであるか?
+	 */
+	private boolean closed;
 
 	public ColorConvertedImageCachedLoader() {
 		this(new ImageCachedLoader());
@@ -27,12 +54,35 @@ public class ColorConvertedImageCachedLoader extends ColorConvertedImageLoaderIm
 
 	public ColorConvertedImageCachedLoader(ImageLoader imageLoader) {
 		super(imageLoader);
+		store.acquire();
 	}
 
 	@Override
 	public LoadedImage load(ImageResource file,
 			ColorConvertParameter colorConvParam, ColorModel colorModel)
 			throws IOException {
+		return load(file, colorConvParam, colorModel, null);
+	}
+
+	/**
+	 * 画像リソースに対する色変換後の画像イメージを返します.<br>
+	 * キャッシュされていなければ、読み込み済みの色変換前の画像を色変換します.<br>
+	 *
+	 * @param file
+	 *            画像リソース
+	 * @param colorConvParam
+	 *            色変換パラメータ、nullの場合はデフォルト
+	 * @param colorModel
+	 *            カラーモデル
+	 * @param sourceImage
+	 *            {@link #loadSource(ImageResource)}で読み込んだ色変換前の画像、nullの場合は読み込む
+	 * @return 画像イメージ
+	 * @throws IOException
+	 *             形式が不明であるか、ファィルがないか読み取りに失敗した場合
+	 */
+	public LoadedImage load(ImageResource file,
+			ColorConvertParameter colorConvParam, ColorModel colorModel,
+			LoadedImage sourceImage) throws IOException {
 		if (file == null) {
 			throw new IllegalArgumentException();
 		}
@@ -45,65 +95,198 @@ public class ColorConvertedImageCachedLoader extends ColorConvertedImageLoaderIm
 		}
 		ColorConvertedImageKey key = new ColorConvertedImageKey(param, file);
 
-		synchronized (caches) {
-			LoadedImage loadedImage = caches.get(key);
-			if (loadedImage == null) {
+		LoadedImage loadedImage = store.get(key);
+		if (loadedImage == null) {
+			// 読み込みと色変換の間はキャッシュをロックしない.
+			// (先読みスレッドとイメージビルダが互いに待たないようにするため.)
+			if (sourceImage != null) {
+				loadedImage = convert(sourceImage, param, colorModel);
+			} else {
 				loadedImage = super.load(file, param, colorModel);
-				caches.set(key, loadedImage);
 			}
-			return loadedImage;
+			store.put(key, loadedImage, false, ownerName);
 		}
+		pin(key, loadedImage);
+		return loadedImage;
 	}
 
-	@Override
-	public void close() {
-	    caches.clear();
-	    super.close();
-	}
+	/**
+	 * 画像リソースを色変換した結果をキャッシュに先読みする.<br>
+	 * すでにキャッシュされている場合は何もしない.<br>
+	 * 先読みしたイメージはピン留めされず、ガベージコレクトの対象となる.<br>
+	 *
+	 * @param file
+	 *            画像リソース
+	 * @param colorConvParam
+	 *            色変換パラメータ、nullの場合はデフォルト
+	 * @param colorModel
+	 *            カラーモデル
+	 * @return 新たに読み込んだイメージのバイト数、キャッシュ済みであった場合は0
+	 * @throws IOException
+	 *             形式が不明であるか、ファィルがないか読み取りに失敗した場合
+	 */
+	public int warmUp(ImageResource file,
+			ColorConvertParameter colorConvParam, ColorModel colorModel)
+			throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
 
-	public void unlockImages() {
-		caches.unlockImages();
-	}
+		ColorConvertParameter param;
+		if (colorConvParam == null) {
+			param = new ColorConvertParameter();
+		} else {
+			param = colorConvParam.clone();
+		}
+		ColorConvertedImageKey key = new ColorConvertedImageKey(param, file);
+		if (store.containsKey(key)) {
+			return 0;
+		}
 
-}
+		LoadedImage loadedImage = super.load(file, param, colorModel);
+		store.put(key, loadedImage, true, ownerName);
+		return loadedImage.getImageSize();
+	}
 
-final class ColorConvertedImageKey {
+	/**
+	 * 色変換済みの画像がすでにキャッシュされているか?<br>
+	 * キャッシュの統計には影響しない.<br>
+	 *
+	 * @param file
+	 *            画像リソース
+	 * @param colorConvParam
+	 *            色変換パラメータ、nullの場合はデフォルト
+	 * @return キャッシュされていればtrue
+	 */
+	public boolean isCached(ImageResource file, ColorConvertParameter colorConvParam) {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		ColorConvertParameter param;
+		if (colorConvParam == null) {
+			param = new ColorConvertParameter();
+		} else {
+			param = colorConvParam.clone();
+		}
+		return store.containsKey(new ColorConvertedImageKey(param, file));
+	}
 
-	private final ColorConvertParameter colorConvParameter;
+	/**
+	 * 色変換前の画像を読み込む.<br>
+	 * 色変換と別のスレッドで読み込みを先行させるために用いる.<br>
+	 * 読み込んだ画像は{@link #load(ImageResource, ColorConvertParameter, ColorModel, LoadedImage)}に渡して色変換する.<br>
+	 *
+	 * @param file
+	 *            画像リソース
+	 * @return 色変換前の画像
+	 * @throws IOException
+	 *             形式が不明であるか、ファィルがないか読み取りに失敗した場合
+	 */
+	public LoadedImage loadSource(ImageResource file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		return getImageLoader().load(file);
+	}
 
-	private final ImageResource imageResource;
+	/**
+	 * 画像をこのビューでピン留めする.
+	 *
+	 * @param key
+	 *            キー
+	 * @param loadedImage
+	 *            画像
+	 */
+	private synchronized void pin(ColorConvertedImageKey key, LoadedImage loadedImage) {
+		if (closed) {
+			return;
+		}
+		LoadedImage prev = pinnedImages.put(key, loadedImage);
+		if (prev == null) {
+			store.pin(key);
+		}
+	}
 
-	private final long lastModified;
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (ColorConvertedImageKey key : pinnedImages.keySet()) {
+				store.unpin(key, false);
+			}
+			pinnedImages.clear();
+		}
+		store.release();
+		super.close();
+	}
 
-	private final int hashCode;
+	/**
+	 * このビューが保持している画像を、ウィンドウごとの上限まで解放する.<br>
+	 * 上限が0以下の場合は、すべての画像をガベージコレクトの対象とする.<br>
+	 * 画像のバイト数には、描画時に作成された不透明部分のマスクや縮小画像も含まれるため、
+	 * 合計はピン留めした時点ではなく、解放時点の大きさで求める.<br>
+	 */
+	public synchronized void unlockImages() {
+		long quota = AppConfig.getInstance().getImageCacheQuotaPerWindow();
+		if (quota <= 0) {
+			for (ColorConvertedImageKey key : pinnedImages.keySet()) {
+				store.unpin(key, false);
+			}
+			pinnedImages.clear();
+			return;
+		}
 
-	public ColorConvertedImageKey(ColorConvertParameter colorConvParameter, ImageResource imageResource) {
-		if (colorConvParameter == null || imageResource == null) {
-			throw new IllegalArgumentException();
+		long pinnedBytes = 0;
+		for (LoadedImage loadedImage : pinnedImages.values()) {
+			pinnedBytes += loadedImage.getImageSize();
 		}
-		this.colorConvParameter = colorConvParameter;
-		this.imageResource = imageResource;
-		this.lastModified = imageResource.lastModified();
-		this.hashCode = imageResource.hashCode()
-				^ colorConvParameter.hashCode() ^ (int) this.lastModified;
-	}
 
-	@Override
-	public int hashCode() {
-		return this.hashCode;
+		Iterator<Map.Entry<ColorConvertedImageKey, LoadedImage>> ite = pinnedImages.entrySet().iterator();
+		while (pinnedBytes > quota && ite.hasNext()) {
+			Map.Entry<ColorConvertedImageKey, LoadedImage> entry = ite.next();
+			ite.remove();
+			pinnedBytes -= entry.getValue().getImageSize();
+			// どのウィンドウからも使われていなければ共有ストアからも除去する.
+			store.unpin(entry.getKey(), true);
+		}
 	}
 
-	@Override
-	public boolean equals(Object obj) {
-		if (obj == this) {
-			return true;
+	/**
+	 * 指定した画像リソースのキャッシュを破棄する.<br>
+	 * このビューのピン留めを解除し、共有ストアおよび色変換前の画像のキャッシュからも除去する.<br>
+	 * パーツの削除・更新により、もう使われないか古くなった画像を解放するために用いる.<br>
+	 *
+	 * @param imageResources
+	 *            画像リソース
+	 */
+	public void invalidate(Collection<? extends ImageResource> imageResources) {
+		if (imageResources == null || imageResources.isEmpty()) {
+			return;
 		}
-		if (obj != null && obj instanceof ColorConvertedImageKey) {
-			ColorConvertedImageKey other = (ColorConvertedImageKey) obj;
-			return lastModified == other.lastModified
-					&& imageResource.equals(other.imageResource)
-					&& colorConvParameter.equals(other.colorConvParameter);
+		HashSet<ImageResource> targets = new HashSet<ImageResource>(imageResources);
+		synchronized (this) {
+			Iterator<Map.Entry<ColorConvertedImageKey, LoadedImage>> ite = pinnedImages.entrySet().iterator();
+			while (ite.hasNext()) {
+				Map.Entry<ColorConvertedImageKey, LoadedImage> entry = ite.next();
+				if (targets.contains(entry.getKey().getImageResource())) {
+					ite.remove();
+					store.unpin(entry.getKey(), false);
+				}
+			}
 		}
-		return false;
+		store.invalidate(targets);
+		ImageCachedLoader.invalidate(targets);
 	}
+
+	/**
+	 * 統計用に、このキャッシュを使用するキャラクター名などを設定する.
+	 * @param ownerName 所有者名
+	 */
+	public void setOwnerName(String ownerName) {
+		this.ownerName = (ownerName == null) ? "" : ownerName;
+	}
+
 }
@@ -0,0 +1,60 @@
+package charactermanaj.graphics;
+
+import charactermanaj.graphics.filters.ColorConvertParameter;
+import charactermanaj.graphics.io.ImageResource;
+
+/**
+ * 色変換済み画像のキャッシュのキー.<br>
+ * 画像リソースと色変換パラメータ、構築時点の画像リソースの更新日時の組み合わせで識別する.<br>
+ *
+ * @author seraphy
+ */
+final class ColorConvertedImageKey {
+
+	private final ColorConvertParameter colorConvParameter;
+
+	private final ImageResource imageResource;
+
+	private final long lastModified;
+
+	private final int hashCode;
+
+	public ColorConvertedImageKey(ColorConvertParameter colorConvParameter, ImageResource imageResource) {
+		if (colorConvParameter == null || imageResource == null) {
+			throw new IllegalArgumentException();
+		}
+		this.colorConvParameter = colorConvParameter;
+		this.imageResource = imageResource;
+		this.lastModified = imageResource.lastModified();
+		this.hashCode = imageResource.hashCode()
+				^ colorConvParameter.hashCode() ^ (int) this.lastModified;
+	}
+
+	public ImageResource getImageResource() {
+		return imageResource;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (obj != null && obj instanceof ColorConvertedImageKey) {
+			ColorConvertedImageKey other = (ColorConvertedImageKey) obj;
+			return lastModified == other.lastModified
+					&& imageResource.equals(other.imageResource)
+					&& colorConvParameter.equals(other.colorConvParameter);
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return imageResource.toString() + ";colorConvParameter=" + colorConvParameter;
+	}
+}
@@ -11,6 +11,7 @@ import charactermanaj.graphics.filters.ColorConvertFilter;
 import charactermanaj.graphics.filters.ColorConvertParameter;
 import charactermanaj.graphics.filters.ContrastTableFactory;
 import charactermanaj.graphics.filters.GammaTableFactory;
+import charactermanaj.graphics.io.ImageLoadLatencyMBeanImpl;
 import charactermanaj.graphics.io.ImageLoader;
 import charactermanaj.graphics.io.ImageResource;
 import charactermanaj.graphics.io.LoadedImage;
@@ -64,12 +65,49 @@ public class ColorConvertedImageLoaderImpl implements ColorConvertedImageLoader,
 		}
 
 		LoadedImage loadedImage = loader.load(file);
+		return convert(loadedImage, colorConvParam, colorModel);
+	}
+
+	/**
+	 * 読み込み済みの画像を色変換した結果を返します.<br>
+	 *
+	 * @param loadedImage
+	 *            色変換前の画像
+	 * @param colorConvParam
+	 *            色変換パラメータ、nullの場合はデフォルト
+	 * @param colorModel
+	 *            カラーモデル、nullの場合はデフォルト
+	 * @return 色変換された画像イメージ
+	 */
+	protected LoadedImage convert(LoadedImage loadedImage,
+			ColorConvertParameter colorConvParam, ColorModel colorModel) {
+		if (loadedImage == null) {
+			throw new IllegalArgumentException();
+		}
+		if (colorConvParam == null) {
+			colorConvParam = NULL_COLORCONVPARAM;
+		}
+		if (colorModel == null) {
+			colorModel = ColorModels.DEFAULT;
+		}
+
 		BufferedImage originalImage = loadedImage.getImage();
+		long startTime = System.nanoTime();
 		BufferedImage image = colorConvert(originalImage, colorConvParam,
 				colorModel);
+		ImageLoadLatencyMBeanImpl.getSingleton().recordColorConvert(System.nanoTime() - startTime);
 		return new LoadedImage(image, loadedImage.getLastModified());
 	}
 
+	/**
+	 * 色変換前の画像を読み込むローダを取得する.
+	 *
+	 * @return ローダ
+	 */
+	protected ImageLoader getImageLoader() {
+		return loader;
+	}
+
 	public void close() {
 	    if (loader instanceof Closeable) {
 	        try {
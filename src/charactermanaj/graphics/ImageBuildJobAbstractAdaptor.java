@@ -42,6 +42,7 @@ public abstract class ImageBuildJobAbstractAdaptor implements AsyncImageBuilder.
 		collector.setSize(partsImageCollectorParser.getPartsSpecResolver().getImageSize());
 		collector.setImageBgColor(partsSet.getBgColor());
 		collector.setAffineTramsform(partsSet.getAffineTransformParameter());
+		collector.setMipLevel(getMipLevel());
 		partsImageCollectorParser.parse(partsSet, new PartsImageCollectionParser.PartsImageCollectionHandler() {
 			public void detectImageSource(PartsIdentifier partsIdentifier,
 					Layer layer, ImageResource imageResource,
@@ -56,6 +57,15 @@ public abstract class ImageBuildJobAbstractAdaptor implements AsyncImageBuilder.
 	}
 	
 	protected abstract PartsSet getPartsSet() throws IOException;
+
+	/**
+	 * 縮小して合成する場合のレベルを返す.<br>
+	 * デフォルトは等倍(0)である.<br>
+	 * @return 縮小レベル
+	 */
+	protected int getMipLevel() {
+		return 0;
+	}
 	
 	public abstract void buildImage(ImageOutput output);
 
@@ -9,16 +9,22 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import charactermanaj.graphics.colormodel.ColorModel;
 import charactermanaj.graphics.colormodel.ColorModels;
 import charactermanaj.graphics.filters.ColorConvertParameter;
+import charactermanaj.graphics.io.ImageCoverage;
 import charactermanaj.graphics.io.ImageResource;
 import charactermanaj.graphics.io.LoadedImage;
 import charactermanaj.model.AppConfig;
@@ -70,6 +76,17 @@ public class ImageBuilder {
 		 */
 		void setAffineTramsform(double[] param);
 
+		/**
+		 * 縮小して合成する場合のレベルを指定する.<br>
+		 * 0は等倍、1は1/2、2は1/4、3は1/8の大きさで合成する.<br>
+		 * 縮小表示のための画像であれば、各パーツの縮小画像を合成することで処理量を減らせる.<br>
+		 * 指定しない場合は等倍となる.<br>
+		 * 
+		 * @param mipLevel
+		 *            縮小レベル
+		 */
+		void setMipLevel(int mipLevel);
+
 		/**
 		 * 各パーツを登録する.<br>
 		 * 複数パーツある場合は、これを繰り返し呼び出す.<br>
@@ -111,6 +128,13 @@ public class ImageBuilder {
 		 */
 		BufferedImage getImageOutput();
 		
+		/**
+		 * 画像の縮小レベルを取得する.<br>
+		 * 0であれば等倍の画像である.<br>
+		 * 
+		 * @return 縮小レベル
+		 */
+		int getMipLevel();
 	}
 
 	/**
@@ -157,9 +181,9 @@ public class ImageBuilder {
 		
 		private final long lastModified;
 		
-		public BuildedPartsInfo(ImageBuildPartsInfo partsInfo, LoadedImage loadedImage) {
+		public BuildedPartsInfo(ImageBuildPartsInfo partsInfo, long lastModified) {
 			this.partsInfo = partsInfo;
-			this.lastModified = loadedImage.getLastModified();
+			this.lastModified = lastModified;
 		}
 		
 		public ImageBuildPartsInfo getPartsInfo() {
@@ -191,6 +215,8 @@ public class ImageBuilder {
 		
 		private double[] affineParamHolder;
 		
+		private int mipLevel;
+		
 		private boolean sorted;
 		
 		@Override
@@ -210,6 +236,9 @@ public class ImageBuilder {
 				if (!rct.equals(other.rct)) {
 					return false;
 				}
+				if (mipLevel != other.mipLevel) {
+					return false;
+				}
 				if (!(imageBgColor == null ? other.imageBgColor == null
 						: imageBgColor.equals(other.imageBgColor))) {
 					return false;
@@ -265,15 +294,17 @@ public class ImageBuilder {
 		}
 		
 		/**
-		 * イメージ構築に使用したパーツ情報を記録する.
+		 * イメージ構築に使用したパーツ情報を記録する.<br>
+		 * 上位のレイヤーに完全に覆われていたため読み込まなかったパーツは、
+		 * 画像リソースの更新日を記録する.<br>
 		 * 
 		 * @param partsInfo
 		 *            パーツ情報
-		 * @param loadedImage
-		 *            イメージ
+		 * @param lastModified
+		 *            イメージの更新日
 		 */
-		public void addUsedPartsInfo(ImageBuildPartsInfo partsInfo, LoadedImage loadedImage) {
-			buildPartsInfos.add(new BuildedPartsInfo(partsInfo, loadedImage));
+		public void addUsedPartsInfo(ImageBuildPartsInfo partsInfo, long lastModified) {
+			buildPartsInfos.add(new BuildedPartsInfo(partsInfo, lastModified));
 		}
 		
 		/**
@@ -307,6 +338,14 @@ public class ImageBuilder {
 			return imageBgColor;
 		}
 		
+		public int getMipLevel() {
+			return mipLevel;
+		}
+		
+		public void setMipLevel(int mipLevel) {
+			this.mipLevel = mipLevel;
+		}
+		
 		public void setImageBgColor(Color imageBgColor) {
 			this.imageBgColor = imageBgColor;
 		}
@@ -406,6 +445,14 @@ public class ImageBuilder {
 					imageBuildInfo.setAffineParamHolder(param);
 				}
 			}
+			public void setMipLevel(int mipLevel) {
+				if (mipLevel < 0 || mipLevel > LoadedImage.MAX_MIP_LEVEL) {
+					throw new IllegalArgumentException("invalid mip level: " + mipLevel);
+				}
+				synchronized (imageBuildInfo) {
+					imageBuildInfo.setMipLevel(mipLevel);
+				}
+			}
 			// ジョブリクエスト側よりパーツの登録として呼び出される
 			public void setImageSource(Layer layer, ImageResource imageResource, ColorConvertParameter param) {
 				synchronized (imageBuildInfo) {
@@ -438,11 +485,15 @@ public class ImageBuilder {
 	protected void buildImage(ImageBuildInfo imageBuildInfo) throws IOException {
 
 		// 出力画像のカンバスを作成
-		int w = imageBuildInfo.getRct().width;
-		int h = imageBuildInfo.getRct().height;
+		// (縮小レベルが指定されていれば、その大きさとする.)
+		int mipLevel = imageBuildInfo.getMipLevel();
+		int mipScale = 1 << mipLevel;
+		int w = (imageBuildInfo.getRct().width + mipScale - 1) / mipScale;
+		int h = (imageBuildInfo.getRct().height + mipScale - 1) / mipScale;
 
 		final BufferedImage canvas = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
 		Graphics2D g = (Graphics2D) canvas.getGraphics();
+		List<Future<LoadedImage>> futures = null;
 		try {
 			// レンダリングヒント
 			AppConfig appConfig = AppConfig.getInstance();
@@ -458,29 +509,98 @@ public class ImageBuilder {
 						RenderingHints.VALUE_RENDER_QUALITY);
 			}
 
-			// 各パーツを重ね合わせ順にカンバスに描画する
 			imageLoader.unlockImages();
-			for (ImageBuildPartsInfo partsInfo : imageBuildInfo.getPartsInfos()) {
-				ImageResource imageFile = partsInfo.getFile();
-				ColorConvertParameter colorConvParam = partsInfo.getColorParam();
-				// カラーモデル
-				Layer layer = partsInfo.getLayer();
-				String colorModelName = layer.getColorModelName();
-				ColorModel colorModel = ColorModels.safeValueOf(colorModelName);
 
-				LoadedImage loadedImage = imageLoader.load(imageFile,
-						colorConvParam, colorModel);
+			List<ImageBuildPartsInfo> partsInfos = imageBuildInfo.getPartsInfos();
+			int mx = partsInfos.size();
+			LoadedImage[] loadedImages = new LoadedImage[mx];
+			long[] lastModifieds = new long[mx];
+			boolean[][] visibleRows = new boolean[mx][];
+
+			// キャッシュされていないパーツの読み込みを、すべて並列に開始する.
+			futures = requestLoadImages(partsInfos);
+
+			// 上位のレイヤーから順に読み込み、不透明部分で覆われた領域を求める.
+			// カンバス全体が覆われたあとのパーツは読み込まない.
+			// (縮小画像は平均により不透明部分が変わるため、等倍の場合のみ行う.)
+			// 下位のレイヤーの描画範囲は、それより上位のすべてのレイヤーが読み込まれるまで決まらないため、
+			// この場合は下位のレイヤーの読み込みが先に終わっても、描画は上位のレイヤーを待ってから行う.
+			// (読み込み自体は、すべて並列に開始済みである.)
+			OcclusionMask occlusionMask = null;
+			if (appConfig.isEnableOcclusionCulling() && mipLevel == 0) {
+				occlusionMask = new OcclusionMask(w, h);
+			}
+			for (int idx = mx - 1; occlusionMask != null && idx >= 0; idx--) {
+				ImageBuildPartsInfo partsInfo = partsInfos.get(idx);
+				if (occlusionMask.isFullyCovered()) {
+					lastModifieds[idx] = partsInfo.getFile().lastModified();
+					cancelLoadImage(futures.get(idx));
+					continue;
+				}
+
+				LoadedImage loadedImage = loadPartsImage(partsInfo, futures.get(idx));
+				lastModifieds[idx] = loadedImage.getLastModified();
+
+				ImageCoverage coverage = loadedImage.getCoverage();
+				if (coverage != null) {
+					visibleRows[idx] = occlusionMask.getVisibleRows(coverage);
+					if (visibleRows[idx] == null) {
+						// 完全に覆われているので描画しない.
+						continue;
+					}
+					occlusionMask.cover(coverage);
+				}
+				loadedImages[idx] = loadedImage;
+			}
+
+			// 各パーツを重ね合わせ順にカンバスに描画する
+			for (int idx = 0; idx < mx; idx++) {
+				ImageBuildPartsInfo partsInfo = partsInfos.get(idx);
+				LoadedImage loadedImage = loadedImages[idx];
+				if (occlusionMask == null) {
+					// 下位のレイヤーから、読み込みが完了したものを順に重ねる.
+					loadedImage = loadPartsImage(partsInfo, futures.get(idx));
+					lastModifieds[idx] = loadedImage.getLastModified();
+				}
 
 				// イメージ構築に使用した各パーツの結果を格納する.
-				imageBuildInfo.addUsedPartsInfo(partsInfo, loadedImage);
+				imageBuildInfo.addUsedPartsInfo(partsInfo, lastModifieds[idx]);
+
+				if (loadedImage == null) {
+					continue;
+				}
 
 				// イメージをキャンバスに重ねる.
-				BufferedImage img = loadedImage.getImage();
-				g.drawImage(img, 0, 0, w, h, 0, 0, w, h, null);
+				BufferedImage img = loadedImage.getMipImage(mipLevel);
+				boolean[] rows = visibleRows[idx];
+				if (rows == null) {
+					g.drawImage(img, 0, 0, w, h, 0, 0, w, h, null);
+					continue;
+				}
+
+				// 覆われていない行の範囲だけを重ねる.
+				int y = 0;
+				while (y < h) {
+					if (!rows[y]) {
+						y++;
+						continue;
+					}
+					int y1 = y;
+					while (y < h && rows[y]) {
+						y++;
+					}
+					g.drawImage(img, 0, y1, w, y, 0, y1, w, y, null);
+				}
 			}
 		
 		} finally {
 			g.dispose();
+			if (futures != null) {
+				// 不要となった読み込みを取り消す.
+				for (Future<LoadedImage> future : futures) {
+					cancelLoadImage(future);
+				}
+			}
 		}
 	
 		// アフィン処理を行う.(パラメータが指定されていれば)
@@ -490,6 +610,12 @@ public class ImageBuilder {
 			affineTransformedCanvas = canvas;
 
 		} else {
+			if (mipLevel > 0) {
+				// 縮小している場合は平行移動量も縮小する.
+				affineTransformParameter = affineTransformParameter.clone();
+				affineTransformParameter[4] /= mipScale;
+				affineTransformParameter[5] /= mipScale;
+			}
 			AffineTransform affineTransform = new AffineTransform(affineTransformParameter);
 			AffineTransformOp affineTransformOp = new AffineTransformOp(affineTransform, AffineTransformOp.TYPE_BILINEAR);
 			affineTransformedCanvas = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
@@ -500,6 +626,153 @@ public class ImageBuilder {
 		imageBuildInfo.setCanvas(affineTransformedCanvas);
 	}
 	
+	/**
+	 * キャッシュされていないパーツの読み込みを並列に開始する.<br>
+	 * 読み込みと伸長は読み込み用のスレッドプールで、色変換は色変換用のスレッドプールで行われる.<br>
+	 * キャッシュ済みのパーツ、もしくは並列読み込みを行わない場合はnullが格納される.<br>
+	 * 
+	 * @param partsInfos
+	 *            パーツ情報のリスト
+	 * @return パーツ情報と同じ順序の、読み込み結果のリスト
+	 */
+	protected List<Future<LoadedImage>> requestLoadImages(List<ImageBuildPartsInfo> partsInfos) {
+		int mx = partsInfos.size();
+		ArrayList<Future<LoadedImage>> futures = new ArrayList<Future<LoadedImage>>(mx);
+		boolean parallel = AppConfig.getInstance().isEnableParallelImageLoading() && mx > 1;
+		for (ImageBuildPartsInfo partsInfo : partsInfos) {
+			if (!parallel || imageLoader.isCached(partsInfo.getFile(), partsInfo.getColorParam())) {
+				futures.add(null);
+				continue;
+			}
+			PartsImageLoadRequest request = new PartsImageLoadRequest(partsInfo);
+			ImageLoadExecutors.getDecodeExecutor().execute(request);
+			futures.add(request.getFuture());
+		}
+		return futures;
+	}
+
+	/**
+	 * パーツの色変換済みの画像を取得する.<br>
+	 * 並列読み込み中であれば、その完了を待機する.<br>
+	 * 
+	 * @param partsInfo
+	 *            パーツ情報
+	 * @param future
+	 *            並列読み込みの結果、並列読み込みしていなければnull
+	 * @return 画像
+	 * @throws IOException
+	 *             読み込みに失敗した場合、もしくは待機中に割り込まれた場合
+	 */
+	protected LoadedImage loadPartsImage(ImageBuildPartsInfo partsInfo,
+			Future<LoadedImage> future) throws IOException {
+		if (future == null) {
+			// カラーモデル
+			Layer layer = partsInfo.getLayer();
+			String colorModelName = layer.getColorModelName();
+			ColorModel colorModel = ColorModels.safeValueOf(colorModelName);
+
+			return imageLoader.load(partsInfo.getFile(),
+					partsInfo.getColorParam(), colorModel);
+		}
+		try {
+			return future.get();
+
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException iex = new InterruptedIOException("image loading interrupted.");
+			iex.initCause(ex);
+			throw iex;
+
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * まだ開始されていない並列読み込みを取り消す.
+	 * 
+	 * @param future
+	 *            並列読み込みの結果、nullの場合は何もしない
+	 */
+	private static void cancelLoadImage(Future<LoadedImage> future) {
+		if (future != null && !future.isDone()) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * パーツの並列読み込み要求.<br>
+	 * 読み込み用のスレッドプールで色変換前の画像を読み込んだのち、
+	 * 色変換用のスレッドプールで色変換を行う.<br>
+	 * 
+	 * @author seraphy
+	 */
+	private final class PartsImageLoadRequest implements Runnable, Callable<LoadedImage> {
+
+		private final ImageBuildPartsInfo partsInfo;
+
+		private final FutureTask<LoadedImage> future;
+
+		/**
+		 * 読み込み済みの色変換前の画像
+		 */
+		private volatile LoadedImage sourceImage;
+
+		public PartsImageLoadRequest(ImageBuildPartsInfo partsInfo) {
+			this.partsInfo = partsInfo;
+			this.future = new FutureTask<LoadedImage>(this);
+		}
+
+		public Future<LoadedImage> getFuture() {
+			return future;
+		}
+
+		/**
+		 * 読み込み用のスレッドプールで実行される.
+		 */
+		public void run() {
+			if (future.isCancelled()) {
+				return;
+			}
+			try {
+				sourceImage = imageLoader.loadSource(partsInfo.getFile());
+
+			} catch (Exception ex) {
+				// 色変換側で再度読み込みを行い、その例外を通知させる.
+				sourceImage = null;
+
+			} finally {
+				ImageLoadExecutors.getColorConvertExecutor().execute(future);
+			}
+		}
+
+		/**
+		 * 色変換用のスレッドプールで実行される.
+		 */
+		public LoadedImage call() throws IOException {
+			LoadedImage source = sourceImage;
+			sourceImage = null;
+
+			// カラーモデル
+			Layer layer = partsInfo.getLayer();
+			String colorModelName = layer.getColorModelName();
+			ColorModel colorModel = ColorModels.safeValueOf(colorModelName);
+
+			return imageLoader.load(partsInfo.getFile(),
+					partsInfo.getColorParam(), colorModel, source);
+		}
+	}
+
 	/**
 	 * イメージ構築ジョブを要求します.<br>
 	 * 戻り値がtrueである場合は、ただちに完了したことを示します.<br>
@@ -548,6 +821,9 @@ public class ImageBuilder {
 					public Color getImageBgColor() {
 						return imageBuildInfo.getImageBgColor();
 					}
+					public int getMipLevel() {
+						return imageBuildInfo.getMipLevel();
+					}
 				});
 			}
 
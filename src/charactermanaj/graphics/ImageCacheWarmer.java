@@ -0,0 +1,258 @@
+package charactermanaj.graphics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import charactermanaj.graphics.colormodel.ColorModel;
+import charactermanaj.graphics.colormodel.ColorModels;
+import charactermanaj.graphics.filters.ColorConvertParameter;
+import charactermanaj.graphics.io.ImageCacheMBeanImpl;
+import charactermanaj.graphics.io.ImageResource;
+import charactermanaj.model.Layer;
+import charactermanaj.model.PartsIdentifier;
+import charactermanaj.model.PartsSet;
+import charactermanaj.model.PartsSpecResolver;
+import charactermanaj.model.io.PartsImageCollectionParser;
+
+/**
+ * パーツセットで使われている画像を、あらかじめ読み込み色変換してキャッシュしておく.<br>
+ * キャラクターデータを開いた直後の、はじめてのプレビューを速くするためのもの.<br>
+ * 低優先度のデーモンスレッドで実行され、読み込んだ合計バイト数が上限に達するか、
+ * {@link #stop()}が呼び出されると終了する.<br>
+ * パーツセットは先頭から一つずつ処理され、内容がまだ読み込まれていないパーツセットは先読みのために読み込まない.<br>
+ *
+ * @author seraphy
+ */
+public class ImageCacheWarmer implements Runnable {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(ImageCacheWarmer.class.getName());
+
+	/**
+	 * 先読み先のイメージローダ
+	 */
+	private final ColorConvertedImageCachedLoader imageLoader;
+
+	/**
+	 * パーツセットからイメージリソースを抽出するパーサ
+	 */
+	private final PartsImageCollectionParser partsImageCollectionParser;
+
+	/**
+	 * 先読みするパーツセット(優先順)
+	 */
+	private final List<PartsSet> partsSets;
+
+	/**
+	 * 先読みで読み込む最大バイト数
+	 */
+	private final long memoryBudget;
+
+	/**
+	 * 停止フラグ
+	 */
+	private volatile boolean stopFlag;
+
+	/**
+	 * スレッド
+	 */
+	private final Thread thread;
+
+	/**
+	 * 先読みを構築する.
+	 *
+	 * @param imageLoader
+	 *            先読み先のイメージローダ
+	 * @param partsSpecResolver
+	 *            パーツ設定のリゾルバ
+	 * @param partsSets
+	 *            先読みするパーツセット、先頭から順に処理される
+	 * @param memoryBudget
+	 *            先読みで読み込む最大バイト数
+	 */
+	public ImageCacheWarmer(ColorConvertedImageCachedLoader imageLoader,
+			PartsSpecResolver partsSpecResolver, List<PartsSet> partsSets,
+			long memoryBudget) {
+		if (imageLoader == null || partsSpecResolver == null || partsSets == null) {
+			throw new IllegalArgumentException();
+		}
+		this.imageLoader = imageLoader;
+		this.partsImageCollectionParser = new PartsImageCollectionParser(partsSpecResolver);
+		this.partsSets = new ArrayList<PartsSet>(partsSets);
+		this.memoryBudget = memoryBudget;
+		this.thread = new Thread(this, "ImageCacheWarmer");
+		this.thread.setDaemon(true);
+		this.thread.setPriority(Thread.MIN_PRIORITY);
+	}
+
+	/**
+	 * 先読みを開始する.
+	 */
+	public void start() {
+		if (!thread.isAlive()) {
+			stopFlag = false;
+			thread.start();
+		}
+	}
+
+	/**
+	 * 先読みを中止する.<br>
+	 * スレッドの終了は待たずに戻る.<br>
+	 * 読み込み中の画像があれば、スレッドはその完了後に終了する.<br>
+	 * (イベントディスパッチスレッドから呼び出されるため、大きな画像の読み込みを待たないようにする.)<br>
+	 */
+	public void stop() {
+		if (thread.isAlive()) {
+			stopFlag = true;
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * スレッドの実行部.
+	 */
+	public void run() {
+		logger.log(Level.FINE, "ImageCacheWarmer thread started.");
+
+		ImageCacheMBeanImpl imageCacheMBean = ImageCacheMBeanImpl.getSingleton();
+
+		// 先読み済みの画像と色変換パラメータ(パーツセット間の重複を除くため)
+		final LinkedHashSet<WarmUpItem> requested = new LinkedHashSet<WarmUpItem>();
+
+		long loadedBytes = 0;
+		int processed = 0;
+		for (PartsSet partsSet : partsSets) {
+			if (isCanceled(loadedBytes)) {
+				break;
+			}
+			if (!partsSet.isLoaded()) {
+				// 先読みのためにお気に入りの内容を読み込むことはしない.
+				continue;
+			}
+
+			// このパーツセットで新たに必要となる画像を抽出する
+			final ArrayList<WarmUpItem> items = new ArrayList<WarmUpItem>();
+			partsImageCollectionParser.parse(partsSet,
+					new PartsImageCollectionParser.PartsImageCollectionHandler() {
+						public void detectImageSource(PartsIdentifier partsIdentifier,
+								Layer layer, ImageResource imageResource,
+								ColorConvertParameter param) {
+							if (param == null) {
+								param = new ColorConvertParameter();
+							}
+							WarmUpItem item = new WarmUpItem(imageResource, param,
+									layer.getColorModelName());
+							if (requested.add(item)) {
+								items.add(item);
+							}
+						}
+					});
+			imageCacheMBean.addWarmUpRequest(items.size());
+
+			for (WarmUpItem item : items) {
+				if (isCanceled(loadedBytes)) {
+					break;
+				}
+				try {
+					ColorModel colorModel = ColorModels.safeValueOf(item.getColorModelName());
+					int bytes = imageLoader.warmUp(item.getImageResource(),
+							item.getColorConvertParameter(), colorModel);
+					loadedBytes += bytes;
+					processed++;
+					imageCacheMBean.warmUpProcessed(bytes);
+
+				} catch (IOException ex) {
+					// 読めない画像はプレビュー時にエラーとなるので、ここでは無視する.
+					logger.log(Level.FINE, "warm-up failed. " + item.getImageResource(), ex);
+
+				} catch (RuntimeException ex) {
+					logger.log(Level.WARNING, "warm-up failed. " + item.getImageResource(), ex);
+				}
+			}
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "ImageCacheWarmer thread stopped. processed="
+					+ processed + "/" + requested.size() + " loadedBytes=" + loadedBytes);
+		}
+	}
+
+	/**
+	 * 先読みを終了すべきか?<br>
+	 * 中止が要求されたか、読み込んだバイト数が上限に達した場合に終了する.<br>
+	 *
+	 * @param loadedBytes
+	 *            これまでに読み込んだバイト数
+	 * @return 終了する場合はtrue
+	 */
+	private boolean isCanceled(long loadedBytes) {
+		if (stopFlag || Thread.currentThread().isInterrupted()) {
+			logger.log(Level.FINE, "ImageCacheWarmer canceled.");
+			return true;
+		}
+		if (loadedBytes >= memoryBudget) {
+			logger.log(Level.FINE, "ImageCacheWarmer reached the memory budget.");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 先読みする画像と色変換パラメータ
+	 *
+	 * @author seraphy
+	 */
+	private static final class WarmUpItem {
+
+		private final ImageResource imageResource;
+
+		private final ColorConvertParameter colorConvertParameter;
+
+		private final String colorModelName;
+
+		public WarmUpItem(ImageResource imageResource,
+				ColorConvertParameter colorConvertParameter, String colorModelName) {
+			this.imageResource = imageResource;
+			this.colorConvertParameter = colorConvertParameter;
+			this.colorModelName = colorModelName;
+		}
+
+		public ImageResource getImageResource() {
+			return imageResource;
+		}
+
+		public ColorConvertParameter getColorConvertParameter() {
+			return colorConvertParameter;
+		}
+
+		public String getColorModelName() {
+			return colorModelName;
+		}
+
+		@Override
+		public int hashCode() {
+			return imageResource.hashCode() ^ colorConvertParameter.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj != null && obj instanceof WarmUpItem) {
+				WarmUpItem o = (WarmUpItem) obj;
+				return imageResource.equals(o.imageResource)
+						&& colorConvertParameter.equals(o.colorConvertParameter)
+						&& (colorModelName == null ? o.colorModelName == null
+								: colorModelName.equals(o.colorModelName));
+			}
+			return false;
+		}
+	}
+}
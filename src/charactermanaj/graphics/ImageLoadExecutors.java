@@ -0,0 +1,47 @@
+package charactermanaj.graphics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import charactermanaj.util.NamedThreadFactory;
+
+/**
+ * パーツ画像の並列読み込みに使うスレッドプール.<br>
+ * ファイルの読み込みと伸長を行うプールと、色変換を行うプールを分けることで、
+ * ディスクからの読み込みと、伸長・色変換の計算を重ねて実行できるようにする.<br>
+ * いずれもデーモンスレッドであり、すべてのウィンドウで共有される.<br>
+ *
+ * @author seraphy
+ */
+final class ImageLoadExecutors {
+
+	/**
+	 * 読み込みと伸長用のプール
+	 */
+	private static final ExecutorService decodeExecutor;
+
+	/**
+	 * 色変換用のプール
+	 */
+	private static final ExecutorService colorConvertExecutor;
+
+	static {
+		int numOfProcessors = Runtime.getRuntime().availableProcessors();
+		decodeExecutor = Executors.newFixedThreadPool(Math.max(2, numOfProcessors),
+				new NamedThreadFactory("ImageDecoder"));
+		colorConvertExecutor = Executors.newFixedThreadPool(Math.max(1, numOfProcessors),
+				new NamedThreadFactory("ImageColorConverter"));
+	}
+
+	private ImageLoadExecutors() {
+		throw new RuntimeException("utilities class.");
+	}
+
+	public static ExecutorService getDecodeExecutor() {
+		return decodeExecutor;
+	}
+
+	public static ExecutorService getColorConvertExecutor() {
+		return colorConvertExecutor;
+	}
+}
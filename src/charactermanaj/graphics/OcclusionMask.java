@@ -0,0 +1,134 @@
+package charactermanaj.graphics;
+
+import charactermanaj.graphics.io.ImageCoverage;
+
+/**
+ * カンバス上で、すでに上位のレイヤーの不透明ピクセルで覆われている部分を示すマスク.<br>
+ * レイヤーを上から順に調べ、完全に覆われている行の描画や、
+ * カンバス全体が覆われたあとのパーツの読み込みを省略するために用いる.<br>
+ * 不透明ピクセルはSrcOverで合成すると下地に関係なく同じ値となるため、
+ * 覆われた部分を省略しても合成結果は変わらない.<br>
+ *
+ * @author seraphy
+ */
+final class OcclusionMask {
+
+	private final int width;
+
+	private final int height;
+
+	private final int stride;
+
+	/**
+	 * 最終ワードで有効なビットのマスク
+	 */
+	private final long lastWordMask;
+
+	/**
+	 * 覆われているピクセルのマスク
+	 */
+	private final long[] covered;
+
+	/**
+	 * すべて覆われた行数
+	 */
+	private int coveredRows;
+
+	/**
+	 * 行ごとに、すべて覆われているか?
+	 */
+	private final boolean[] rowCovered;
+
+	public OcclusionMask(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.stride = (width + 63) >>> 6;
+		int rem = width & 63;
+		this.lastWordMask = (rem == 0) ? -1L : ((1L << rem) - 1);
+		this.covered = new long[stride * height];
+		this.rowCovered = new boolean[height];
+	}
+
+	/**
+	 * カンバス全体が覆われているか?
+	 *
+	 * @return 全体が覆われていればtrue
+	 */
+	public boolean isFullyCovered() {
+		return coveredRows >= height;
+	}
+
+	/**
+	 * イメージのうち、まだ覆われていない可視ピクセルを含む行を求める.<br>
+	 *
+	 * @param coverage
+	 *            イメージのマスク
+	 * @return 描画が必要な行はtrueとなる配列(カンバスの高さ分)、描画の必要がまったくなければnull
+	 */
+	public boolean[] getVisibleRows(ImageCoverage coverage) {
+		boolean[] rows = null;
+		int mxRow = Math.min(height, coverage.getHeight());
+		int mxWord = Math.min(stride, coverage.getStride());
+		for (int y = 0; y < mxRow; y++) {
+			if (rowCovered[y]) {
+				continue;
+			}
+			int base = y * stride;
+			for (int word = 0; word < mxWord; word++) {
+				long bits = coverage.getVisibleWord(y, word) & ~covered[base + word];
+				if (word == stride - 1) {
+					bits &= lastWordMask;
+				}
+				if (bits != 0) {
+					if (rows == null) {
+						rows = new boolean[height];
+					}
+					rows[y] = true;
+					break;
+				}
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * イメージの不透明ピクセルを覆われている部分に加える.
+	 *
+	 * @param coverage
+	 *            イメージのマスク
+	 */
+	public void cover(ImageCoverage coverage) {
+		int mxRow = Math.min(height, coverage.getHeight());
+		int mxWord = Math.min(stride, coverage.getStride());
+		for (int y = 0; y < mxRow; y++) {
+			if (rowCovered[y]) {
+				continue;
+			}
+			int base = y * stride;
+			boolean full = true;
+			for (int word = 0; word < stride; word++) {
+				long bits = covered[base + word];
+				if (word < mxWord) {
+					bits |= coverage.getOpaqueWord(y, word);
+					covered[base + word] = bits;
+				}
+				long expected = (word == stride - 1) ? lastWordMask : -1L;
+				if ((bits & expected) != expected) {
+					full = false;
+				}
+			}
+			if (full) {
+				rowCovered[y] = true;
+				coveredRows++;
+			}
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
@@ -0,0 +1,154 @@
+package charactermanaj.graphics;
+
+import java.util.HashMap;
+import java.util.Set;
+
+import charactermanaj.graphics.io.ImageCache;
+import charactermanaj.graphics.io.ImageResource;
+import charactermanaj.graphics.io.LoadedImage;
+
+/**
+ * プロセス全体で共有する、色変換済みイメージのストア.<br>
+ * 複数のウィンドウで同じパーツディレクトリを参照している場合でも、
+ * 同一の画像リソースと色変換パラメータの組み合わせは一度だけ読み込み・色変換される.<br>
+ * 各ウィンドウ({@link ColorConvertedImageCachedLoader})は、
+ * 使用中のイメージを「ピン留め」することで回収されないように保持する.<br>
+ * どのウィンドウからもピン留めされていないイメージは、ガベージコレクタにより回収されうる.<br>
+ * すべてのウィンドウが解放されるとストアはクリアされる.<br>
+ *
+ * @author seraphy
+ */
+final class SharedColorConvertedImageStore {
+
+	/**
+	 * シングルトン
+	 */
+	private static final SharedColorConvertedImageStore singleton = new SharedColorConvertedImageStore();
+
+	/**
+	 * 共有キャッシュ
+	 */
+	private final ImageCache<ColorConvertedImageKey> caches
+			= new ImageCache<ColorConvertedImageKey>("converted");
+
+	/**
+	 * キーごとのピン留めしているウィンドウの数
+	 */
+	private final HashMap<ColorConvertedImageKey, Integer> pinCounts
+			= new HashMap<ColorConvertedImageKey, Integer>();
+
+	/**
+	 * ストアを使用しているウィンドウの数
+	 */
+	private int viewCount;
+
+	private SharedColorConvertedImageStore() {
+		super();
+	}
+
+	public static SharedColorConvertedImageStore getInstance() {
+		return singleton;
+	}
+
+	/**
+	 * ストアの使用を開始する.
+	 */
+	public synchronized void acquire() {
+		viewCount++;
+	}
+
+	/**
+	 * ストアの使用を終了する.<br>
+	 * 使用しているウィンドウがなくなった場合はストアをクリアする.<br>
+	 */
+	public synchronized void release() {
+		if (viewCount > 0) {
+			viewCount--;
+		}
+		if (viewCount == 0) {
+			pinCounts.clear();
+			caches.clear();
+		}
+	}
+
+	public LoadedImage get(ColorConvertedImageKey key) {
+		return caches.get(key);
+	}
+
+	public boolean containsKey(ColorConvertedImageKey key) {
+		return caches.containsKey(key);
+	}
+
+	/**
+	 * イメージをストアに登録する.<br>
+	 * 登録時点ではピン留めされていない.<br>
+	 *
+	 * @param key
+	 *            キー
+	 * @param img
+	 *            イメージ
+	 * @param warmUp
+	 *            先読みによる登録であればtrue
+	 * @param ownerName
+	 *            統計用の所有者名
+	 */
+	public void put(ColorConvertedImageKey key, LoadedImage img, boolean warmUp, String ownerName) {
+		synchronized (caches) {
+			caches.set(key, img, warmUp, ownerName);
+			// ピン留めは各ウィンドウで管理するため、キャッシュとしてのロックは不要
+			caches.unlockImages();
+		}
+	}
+
+	/**
+	 * 指定した画像リソースから変換されたイメージを、色変換パラメータを問わずストアから除去する.<br>
+	 * ピン留めの状態は変更されない.<br>
+	 *
+	 * @param imageResources
+	 *            画像リソース
+	 * @return 除去したイメージの数
+	 */
+	public int invalidate(final Set<? extends ImageResource> imageResources) {
+		return caches.remove(new ImageCache.KeyFilter<ColorConvertedImageKey>() {
+			public boolean accept(ColorConvertedImageKey key) {
+				return imageResources.contains(key.getImageResource());
+			}
+		}, ImageCache.EvictionCause.EXPLICIT);
+	}
+
+	/**
+	 * イメージをピン留めする.
+	 *
+	 * @param key
+	 *            キー
+	 */
+	public synchronized void pin(ColorConvertedImageKey key) {
+		Integer cnt = pinCounts.get(key);
+		pinCounts.put(key, Integer.valueOf(cnt == null ? 1 : cnt.intValue() + 1));
+	}
+
+	/**
+	 * イメージのピン留めを解除する.<br>
+	 * evictが指定されており、どのウィンドウからもピン留めされなくなった場合は、
+	 * 容量制限による解放としてストアから除去する.<br>
+	 *
+	 * @param key
+	 *            キー
+	 * @param evict
+	 *            どこからも使われなくなった場合に除去する場合はtrue
+	 */
+	public synchronized void unpin(ColorConvertedImageKey key, boolean evict) {
+		Integer cnt = pinCounts.get(key);
+		if (cnt == null) {
+			return;
+		}
+		if (cnt.intValue() > 1) {
+			pinCounts.put(key, Integer.valueOf(cnt.intValue() - 1));
+			return;
+		}
+		pinCounts.remove(key);
+		if (evict) {
+			caches.remove(key, ImageCache.EvictionCause.BUDGET);
+		}
+	}
+}
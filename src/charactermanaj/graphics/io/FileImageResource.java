@@ -33,8 +33,13 @@ public class FileImageResource implements ImageResource, Serializable {
 	}
 	
 	
+	/**
+	 * 更新日時.<br>
+	 * ファイルシステムへの問い合わせを減らすため、{@link FileLastModifiedCache}を経由して取得する.<br>
+	 * @return 更新日時を示すエポックタイム
+	 */
 	public long lastModified() {
-		return file.lastModified();
+		return FileLastModifiedCache.getInstance().lastModified(file);
 	}
 	
 	public InputStream openStream() throws IOException {
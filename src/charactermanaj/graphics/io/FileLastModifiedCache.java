@@ -0,0 +1,200 @@
+package charactermanaj.graphics.io;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import charactermanaj.model.AppConfig;
+
+/**
+ * ファイルの最終更新日のキャッシュ.<br>
+ * パーツ画像の鮮度チェックのたびにファイルシステムに問い合わせると、
+ * ネットワークドライブなどでは、それが処理時間の大半を占めてしまうため、
+ * 一定時間(TTL)内であれば前回取得した値を返す.<br>
+ * ディレクトリ監視スレッドは走査時に取得した値を{@link #update(File, long)}で通知することで、
+ * TTLを待たずにキャッシュを最新に保つことができる.<br>
+ * TTLを経過したエントリは使われることがないため、一定回数の登録ごとに取り除かれる.<br>
+ *
+ * @author seraphy
+ */
+public final class FileLastModifiedCache {
+
+	/**
+	 * シングルトン
+	 */
+	private static final FileLastModifiedCache singleton = new FileLastModifiedCache();
+
+	/**
+	 * TTLを経過したエントリを取り除く間隔(登録回数)
+	 */
+	private static final int PURGE_INTERVAL = 1024;
+
+	/**
+	 * ファイルごとの最終更新日と、それを確認した時刻
+	 */
+	private final ConcurrentHashMap<File, LastModifiedEntry> entries
+			= new ConcurrentHashMap<File, LastModifiedEntry>();
+
+	/**
+	 * 前回TTLを経過したエントリを取り除いてからの登録回数
+	 */
+	private final AtomicInteger putCount = new AtomicInteger();
+
+	private FileLastModifiedCache() {
+		super();
+	}
+
+	public static FileLastModifiedCache getInstance() {
+		return singleton;
+	}
+
+	/**
+	 * ファイルの最終更新日を取得する.<br>
+	 * キャッシュされており、TTLを経過していなければファイルシステムには問い合わせない.<br>
+	 * TTLが0以下の場合はキャッシュは使用されない.<br>
+	 *
+	 * @param file
+	 *            ファイル
+	 * @return 最終更新日、ファイルが存在しない場合は0
+	 */
+	public long lastModified(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		long ttl = AppConfig.getInstance().getFileLastModifiedCacheTTL();
+		if (ttl <= 0) {
+			return file.lastModified();
+		}
+
+		long now = System.currentTimeMillis();
+		LastModifiedEntry entry = entries.get(file);
+		if (entry != null && (now - entry.getCheckedAt()) < ttl) {
+			return entry.getLastModified();
+		}
+
+		long lastModified = file.lastModified();
+		put(file, new LastModifiedEntry(lastModified, now));
+		return lastModified;
+	}
+
+	/**
+	 * ファイルシステムから取得済みの最終更新日を通知する.<br>
+	 * ディレクトリ監視などで、すでにファイルの最終更新日を取得している場合に呼び出す.<br>
+	 *
+	 * @param file
+	 *            ファイル
+	 * @param lastModified
+	 *            最終更新日
+	 */
+	public void update(File file, long lastModified) {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		put(file, new LastModifiedEntry(lastModified, System.currentTimeMillis()));
+	}
+
+	/**
+	 * エントリを登録する.<br>
+	 * 一定回数の登録ごとに、TTLを経過したエントリを取り除く.<br>
+	 * (一度開いたきりのキャラクターのファイルがいつまでも残らないようにする.)
+	 *
+	 * @param file
+	 *            ファイル
+	 * @param entry
+	 *            エントリ
+	 */
+	private void put(File file, LastModifiedEntry entry) {
+		entries.put(file, entry);
+		if (putCount.incrementAndGet() >= PURGE_INTERVAL) {
+			putCount.set(0);
+			purgeExpired(entry.getCheckedAt());
+		}
+	}
+
+	/**
+	 * TTLを経過したエントリを取り除く.<br>
+	 * TTLが0以下の場合はキャッシュは使用されないため、すべて取り除く.<br>
+	 *
+	 * @param now
+	 *            現在時刻
+	 */
+	private void purgeExpired(long now) {
+		long ttl = AppConfig.getInstance().getFileLastModifiedCacheTTL();
+		Iterator<LastModifiedEntry> ite = entries.values().iterator();
+		while (ite.hasNext()) {
+			LastModifiedEntry entry = ite.next();
+			if (ttl <= 0 || (now - entry.getCheckedAt()) >= ttl) {
+				ite.remove();
+			}
+		}
+	}
+
+	/**
+	 * ファイルのキャッシュを破棄する.<br>
+	 * 次回の問い合わせではファイルシステムから取得される.<br>
+	 *
+	 * @param file
+	 *            ファイル
+	 */
+	public void invalidate(File file) {
+		if (file != null) {
+			entries.remove(file);
+		}
+	}
+
+	/**
+	 * ディレクトリ配下のファイルのキャッシュを破棄する.<br>
+	 * ファイル変更通知を取りこぼした場合など、どのファイルが変更されたか不明な場合に用いる.<br>
+	 *
+	 * @param dir
+	 *            ディレクトリ
+	 */
+	public void invalidateDirectory(File dir) {
+		if (dir == null) {
+			return;
+		}
+		Iterator<File> ite = entries.keySet().iterator();
+		while (ite.hasNext()) {
+			File file = ite.next();
+			for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+				if (parent.equals(dir)) {
+					ite.remove();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * すべてのキャッシュを破棄する.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * キャッシュされている最終更新日と確認時刻.<br>
+	 *
+	 * @author seraphy
+	 */
+	private static final class LastModifiedEntry {
+
+		private final long lastModified;
+
+		private final long checkedAt;
+
+		public LastModifiedEntry(long lastModified, long checkedAt) {
+			this.lastModified = lastModified;
+			this.checkedAt = checkedAt;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public long getCheckedAt() {
+			return checkedAt;
+		}
+	}
+}
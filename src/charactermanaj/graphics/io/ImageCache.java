@@ -5,6 +5,9 @@ import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +27,84 @@ public class ImageCache<K> {
 
 	private static final ImageCacheMBeanImpl imageCacheMBean = ImageCacheMBeanImpl.getSingleton();
 
+	private static final ImageCacheDetailMBeanImpl imageCacheDetailMBean = ImageCacheDetailMBeanImpl.getSingleton();
+
+	/**
+	 * キャッシュから解放された理由
+	 */
+	public enum EvictionCause {
+
+		/**
+		 * ガベージコレクタにより回収された
+		 */
+		SOFT_CLEAR,
+
+		/**
+		 * 明示的に除去、もしくは置き換えられた
+		 */
+		EXPLICIT,
+
+		/**
+		 * キャッシュの容量制限により除去された
+		 */
+		BUDGET
+	}
+
+	/**
+	 * キャッシュから除去するエントリを判定するフィルタ
+	 *
+	 * @param <K> キー
+	 */
+	public interface KeyFilter<K> {
+
+		/**
+		 * 除去するエントリであるか判定する.
+		 * @param key キー
+		 * @return 除去する場合はtrue
+		 */
+		boolean accept(K key);
+	}
+
+	/**
+	 * 統計用のキャッシュエントリの情報
+	 */
+	public static final class EntryInfo {
+
+		private final String tierName;
+
+		private final String ownerName;
+
+		private final String key;
+
+		private final int imageSize;
+
+		EntryInfo(String tierName, String ownerName, String key, int imageSize) {
+			this.tierName = tierName;
+			this.ownerName = ownerName;
+			this.key = key;
+			this.imageSize = imageSize;
+		}
+
+		public int getImageSize() {
+			return imageSize;
+		}
+
+		@Override
+		public String toString() {
+			return imageSize + " bytes [" + tierName + "/" + ownerName + "] " + key;
+		}
+	}
+
+	/**
+	 * 統計用のキャッシュ階層名
+	 */
+	private final String tierName;
+
+	/**
+	 * 統計用のキャッシュの所有者名(キャラクター名など)
+	 */
+	private volatile String ownerName = "";
+
 	private HashMap<K, BufferedImageWithKeyReference<K>> lockedImages
 		= new HashMap<K, BufferedImageWithKeyReference<K>>();
 
@@ -33,7 +114,37 @@ public class ImageCache<K> {
 		= new HashMap<K, BufferedImageWithKeyReference<K>>();
 
 	public ImageCache() {
+		this("default");
+	}
+
+	/**
+	 * 統計用のキャッシュ階層名を指定して構築する.
+	 * @param tierName キャッシュ階層名
+	 */
+	public ImageCache(String tierName) {
+		if (tierName == null) {
+			throw new IllegalArgumentException();
+		}
+		this.tierName = tierName;
 	    imageCacheMBean.incrementInstance();
+	    imageCacheDetailMBean.register(this);
+	}
+
+	/**
+	 * 統計用のキャッシュの所有者名を設定する.<br>
+	 * 設定以降にキャッシュされたエントリが、この所有者として集計される.<br>
+	 * @param ownerName 所有者名
+	 */
+	public void setOwnerName(String ownerName) {
+		this.ownerName = (ownerName == null) ? "" : ownerName;
+	}
+
+	public String getOwnerName() {
+		return ownerName;
+	}
+
+	public String getTierName() {
+		return tierName;
 	}
 
 	@Override
@@ -52,6 +163,10 @@ public class ImageCache<K> {
 			LoadedImage img = null;
 			if (ref != null) {
 				img = ref.get();
+				if (img != null && ref.markWarmUpHit()) {
+					// 先読みされたイメージがはじめて使われた
+					imageCacheMBean.incrementWarmUpHitCount();
+				}
 			}
 			imageCacheMBean.incrementReadCount(img != null);
 			sweep();
@@ -59,7 +174,46 @@ public class ImageCache<K> {
 		}
 	}
 
+	/**
+	 * キャッシュされており、且つ、まだ回収されていないか判定する.<br>
+	 * 読み込み統計には計上されない.<br>
+	 * @param key キー
+	 * @return キャッシュされていればtrue
+	 */
+	public boolean containsKey(K key) {
+		if (key == null) {
+			return false;
+		}
+		synchronized (caches) {
+			BufferedImageWithKeyReference<K> ref = caches.get(key);
+			return ref != null && ref.get() != null;
+		}
+	}
+
 	public void set(K key, LoadedImage img) {
+		set(key, img, false);
+	}
+
+	/**
+	 * イメージをキャッシュに設定する.<br>
+	 * 先読みの場合は、{@link #unlockImages()}を待たずにガベージコレクトの対象となる.<br>
+	 * @param key キー
+	 * @param img イメージ、nullの場合はキャッシュから除去する
+	 * @param warmUp 先読みによる設定であればtrue
+	 */
+	public void set(K key, LoadedImage img, boolean warmUp) {
+		set(key, img, warmUp, ownerName);
+	}
+
+	/**
+	 * 統計用の所有者名を指定してイメージをキャッシュに設定する.<br>
+	 * 複数の利用者で共有されるキャッシュで、エントリごとに所有者を区別する場合に用いる.<br>
+	 * @param key キー
+	 * @param img イメージ、nullの場合はキャッシュから除去する
+	 * @param warmUp 先読みによる設定であればtrue
+	 * @param ownerName 所有者名
+	 */
+	public void set(K key, LoadedImage img, boolean warmUp, String ownerName) {
 		if (key == null) {
 			return;
 		}
@@ -67,7 +221,7 @@ public class ImageCache<K> {
 		    // 現在キャッシュされているものがあれば、いったん解放する.
             BufferedImageWithKeyReference<K> ref = caches.get(key);
             if (ref != null) {
-                ref.enqueue();
+                ref.evict(EvictionCause.EXPLICIT);
             }
 
             if (img == null) {
@@ -77,11 +231,16 @@ public class ImageCache<K> {
 				caches.remove(key);
 
 			} else {
-				BufferedImageWithKeyReference<K> cacheData = new BufferedImageWithKeyReference<K>(key, img, queue);
-				lockedImages.put(key, cacheData);
+				BufferedImageWithKeyReference<K> cacheData = new BufferedImageWithKeyReference<K>(
+						key, img, queue, warmUp, ownerName == null ? "" : ownerName);
+				if (!warmUp) {
+					lockedImages.put(key, cacheData);
+				}
 				caches.put(key, cacheData);
 
 				imageCacheMBean.cacheIn(cacheData.getImageSize());
+				imageCacheDetailMBean.cacheIn(tierName, cacheData.getOwnerName(),
+						cacheData.getImageSize());
 			}
 
             // 解放済みのアイテムエントリを除去する.
@@ -96,6 +255,53 @@ public class ImageCache<K> {
 		}
 	}
 
+	/**
+	 * 指定したエントリをキャッシュアウトする.<br>
+	 * @param key キー
+	 * @param cause 解放理由
+	 */
+	public void remove(K key, EvictionCause cause) {
+		if (key == null || cause == null) {
+			return;
+		}
+		synchronized (caches) {
+			lockedImages.remove(key);
+			BufferedImageWithKeyReference<K> ref = caches.remove(key);
+			if (ref != null) {
+				ref.evict(cause);
+			}
+			sweep();
+		}
+	}
+
+	/**
+	 * フィルタに合致するエントリをキャッシュアウトする.<br>
+	 * @param filter フィルタ
+	 * @param cause 解放理由
+	 * @return 除去したエントリの数
+	 */
+	public int remove(KeyFilter<? super K> filter, EvictionCause cause) {
+		if (filter == null || cause == null) {
+			return 0;
+		}
+		int count = 0;
+		synchronized (caches) {
+			Iterator<Map.Entry<K, BufferedImageWithKeyReference<K>>> ite = caches.entrySet().iterator();
+			while (ite.hasNext()) {
+				Map.Entry<K, BufferedImageWithKeyReference<K>> entry = ite.next();
+				K key = entry.getKey();
+				if (filter.accept(key)) {
+					ite.remove();
+					lockedImages.remove(key);
+					entry.getValue().evict(cause);
+					count++;
+				}
+			}
+			sweep();
+		}
+		return count;
+	}
+
 	/**
 	 * すべてのエントリをキャッシュアウトしてクリアする.
 	 */
@@ -103,13 +309,28 @@ public class ImageCache<K> {
 	    synchronized (caches) {
             lockedImages.clear();
 	        for (BufferedImageWithKeyReference<K> ref : caches.values()) {
-	            ref.enqueue();
+	            ref.evict(EvictionCause.EXPLICIT);
 	        }
             sweep();
             caches.clear();
 	    }
 	}
 
+	/**
+	 * 統計用に、回収されていないエントリの情報を収集する.
+	 * @param entries 収集先
+	 */
+	void collectEntries(List<EntryInfo> entries) {
+		synchronized (caches) {
+			for (BufferedImageWithKeyReference<K> ref : caches.values()) {
+				if (ref.get() != null) {
+					entries.add(new EntryInfo(tierName, ref.getOwnerName(),
+							String.valueOf(ref.getKey()), ref.getImageSize()));
+				}
+			}
+		}
+	}
+
 	public void sweep() {
 		synchronized (caches) {
 			// ガベージコレクト済みアイテムを除去する
@@ -121,7 +342,8 @@ public class ImageCache<K> {
 				    (BufferedImageWithKeyReference<K>) ref;
 				K key = r.getKey();
 				if (key != null) {
-					if (caches.get(key).get() == null) {
+					BufferedImageWithKeyReference<K> current = caches.get(key);
+					if (current != null && current.get() == null) {
 						if (logger.isLoggable(Level.FINE)) {
 							logger.log(Level.FINE, "removed cache: " + key);
 						}
@@ -132,6 +354,8 @@ public class ImageCache<K> {
 
 				int imageSize = r.getImageSize();
 				imageCacheMBean.cacheOut(imageSize);
+				imageCacheDetailMBean.cacheOut(tierName, r.getOwnerName(),
+						imageSize, r.getEvictionCause());
 			}
 			if (removed) {
 				if (logger.isLoggable(Level.FINE)) {
@@ -156,10 +380,70 @@ class BufferedImageWithKeyReference<K> extends SoftReference<LoadedImage> {
 
 	private final int imageSize;
 
+	/**
+	 * 先読みされ、まだ使用されていない場合はtrue
+	 */
+	private boolean warmUpPending;
+
+	/**
+	 * 統計用の所有者名
+	 */
+	private final String ownerName;
+
+	/**
+	 * 明示的に解放された場合の理由、ガベージコレクタにより回収された場合はnull
+	 */
+	private volatile ImageCache.EvictionCause evictionCause;
+
 	public BufferedImageWithKeyReference(K key, LoadedImage img, ReferenceQueue<? super LoadedImage> queue) {
+		this(key, img, queue, false, "");
+	}
+
+	public BufferedImageWithKeyReference(K key, LoadedImage img, ReferenceQueue<? super LoadedImage> queue,
+			boolean warmUp, String ownerName) {
 		super(img, queue);
 		this.key = key;
 		this.imageSize = (img == null) ? 0 : img.getImageSize();
+		this.warmUpPending = warmUp;
+		this.ownerName = ownerName;
+	}
+
+	/**
+	 * 理由を指定して明示的に解放する.<br>
+	 * すでにガベージコレクタにより回収されている場合は、その理由のままとなる.<br>
+	 * @param cause 解放理由
+	 */
+	public void evict(ImageCache.EvictionCause cause) {
+		if (evictionCause == null && !isEnqueued()) {
+			evictionCause = cause;
+			if (!enqueue()) {
+				evictionCause = null;
+			}
+		}
+	}
+
+	/**
+	 * 解放理由を取得する.
+	 * @return 解放理由
+	 */
+	public ImageCache.EvictionCause getEvictionCause() {
+		return evictionCause == null ? ImageCache.EvictionCause.SOFT_CLEAR : evictionCause;
+	}
+
+	public String getOwnerName() {
+		return ownerName;
+	}
+
+	/**
+	 * 先読みされたイメージであれば、使用済みとしてマークする.
+	 * @return 先読みされたイメージが、はじめて使用された場合はtrue
+	 */
+	public boolean markWarmUpHit() {
+		if (warmUpPending) {
+			warmUpPending = false;
+			return true;
+		}
+		return false;
 	}
 
 	public K getKey() {
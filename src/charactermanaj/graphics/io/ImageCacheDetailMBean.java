@@ -0,0 +1,22 @@
+package charactermanaj.graphics.io;
+
+public interface ImageCacheDetailMBean {
+
+    long getSoftClearEvictionCount();
+
+    long getExplicitEvictionCount();
+
+    long getBudgetEvictionCount();
+
+    String[] getBytesPerTier();
+
+    String[] getBytesPerCharacter();
+
+    String[] getLargestEntries();
+
+    int getLargestEntriesLimit();
+
+    void setLargestEntriesLimit(int limit);
+
+    void reset();
+}
@@ -0,0 +1,174 @@
+package charactermanaj.graphics.io;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * イメージキャッシュの詳細な統計.<br>
+ * 解放理由ごとの件数、キャッシュ階層ごとのバイト数、キャラクターごとのバイト数、
+ * および、サイズの大きいエントリを集計する.<br>
+ *
+ * @author seraphy
+ */
+public final class ImageCacheDetailMBeanImpl implements ImageCacheDetailMBean {
+
+    private static ImageCacheDetailMBeanImpl singleton = new ImageCacheDetailMBeanImpl();
+
+    private ImageCacheDetailMBeanImpl() {
+        super();
+    }
+
+    public static ImageCacheDetailMBeanImpl getSingleton() {
+        return singleton;
+    }
+
+    public static void setupMBean() throws JMException {
+        MBeanServer srv = ManagementFactory.getPlatformMBeanServer();
+        srv.registerMBean(
+                new StandardMBean(singleton, ImageCacheDetailMBean.class),
+                new ObjectName("CharacterManaJ:type=ImageCacheDetail,name=Singleton"));
+    }
+
+    /**
+     * 集計対象のキャッシュ.(キャッシュ自身の回収を妨げないように弱参照とする.)
+     */
+    private final WeakHashMap<ImageCache<?>, Object> caches = new WeakHashMap<ImageCache<?>, Object>();
+
+    /**
+     * キャッシュ階層ごとのバイト数と件数
+     */
+    private final TreeMap<String, long[]> tierStats = new TreeMap<String, long[]>();
+
+    /**
+     * キャラクターごとのバイト数と件数
+     */
+    private final TreeMap<String, long[]> ownerStats = new TreeMap<String, long[]>();
+
+    private long softClearEvictionCount;
+
+    private long explicitEvictionCount;
+
+    private long budgetEvictionCount;
+
+    private int largestEntriesLimit = 20;
+
+    public synchronized void register(ImageCache<?> cache) {
+        caches.put(cache, null);
+    }
+
+    public synchronized void cacheIn(String tier, String owner, long bytes) {
+        add(tierStats, tier, bytes, 1);
+        add(ownerStats, owner, bytes, 1);
+    }
+
+    public synchronized void cacheOut(String tier, String owner, long bytes,
+            ImageCache.EvictionCause cause) {
+        add(tierStats, tier, -bytes, -1);
+        add(ownerStats, owner, -bytes, -1);
+        if (cause == ImageCache.EvictionCause.SOFT_CLEAR) {
+            softClearEvictionCount++;
+        } else if (cause == ImageCache.EvictionCause.BUDGET) {
+            budgetEvictionCount++;
+        } else {
+            explicitEvictionCount++;
+        }
+    }
+
+    private static void add(Map<String, long[]> stats, String name, long bytes, int count) {
+        long[] stat = stats.get(name);
+        if (stat == null) {
+            stat = new long[2];
+            stats.put(name, stat);
+        }
+        stat[0] += bytes;
+        stat[1] += count;
+        if (stat[1] <= 0) {
+            stats.remove(name);
+        }
+    }
+
+    private static String[] format(Map<String, long[]> stats) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Map.Entry<String, long[]> entry : stats.entrySet()) {
+            long[] stat = entry.getValue();
+            result.add(entry.getKey() + ": " + stat[0] + " bytes / " + stat[1] + " entries");
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    public synchronized long getSoftClearEvictionCount() {
+        return softClearEvictionCount;
+    }
+
+    public synchronized long getExplicitEvictionCount() {
+        return explicitEvictionCount;
+    }
+
+    public synchronized long getBudgetEvictionCount() {
+        return budgetEvictionCount;
+    }
+
+    public synchronized String[] getBytesPerTier() {
+        return format(tierStats);
+    }
+
+    public synchronized String[] getBytesPerCharacter() {
+        return format(ownerStats);
+    }
+
+    public synchronized int getLargestEntriesLimit() {
+        return largestEntriesLimit;
+    }
+
+    public synchronized void setLargestEntriesLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.largestEntriesLimit = limit;
+    }
+
+    public String[] getLargestEntries() {
+        // キャッシュはロック中に、この統計を更新するため、
+        // デッドロックしないように統計側のロックを解除してからキャッシュを走査する.
+        List<ImageCache<?>> targets;
+        int limit;
+        synchronized (this) {
+            targets = new ArrayList<ImageCache<?>>(caches.keySet());
+            limit = largestEntriesLimit;
+        }
+
+        ArrayList<ImageCache.EntryInfo> entries = new ArrayList<ImageCache.EntryInfo>();
+        for (ImageCache<?> cache : targets) {
+            cache.collectEntries(entries);
+        }
+        Collections.sort(entries, new Comparator<ImageCache.EntryInfo>() {
+            public int compare(ImageCache.EntryInfo o1, ImageCache.EntryInfo o2) {
+                return o2.getImageSize() - o1.getImageSize();
+            }
+        });
+
+        int mx = Math.min(limit, entries.size());
+        String[] result = new String[mx];
+        for (int idx = 0; idx < mx; idx++) {
+            result[idx] = entries.get(idx).toString();
+        }
+        return result;
+    }
+
+    public synchronized void reset() {
+        softClearEvictionCount = 0;
+        explicitEvictionCount = 0;
+        budgetEvictionCount = 0;
+    }
+}
@@ -14,5 +14,13 @@ public interface ImageCacheMBean {
 
     int getInstanceCount();
 
+    long getWarmUpRequestCount();
+
+    long getWarmUpProcessedCount();
+
+    long getWarmUpLoadedBytes();
+
+    long getWarmUpHitCount();
+
     void reset();
 }
@@ -38,6 +38,14 @@ public final class ImageCacheMBeanImpl implements ImageCacheMBean {
 
     private int instanceCount;
 
+    private long warmUpRequestCount;
+
+    private long warmUpProcessedCount;
+
+    private long warmUpLoadedBytes;
+
+    private long warmUpHitCount;
+
     public synchronized long getReadCount() {
         return readCount;
     }
@@ -106,12 +114,56 @@ public final class ImageCacheMBeanImpl implements ImageCacheMBean {
         instanceCount--;
     }
 
+    public synchronized long getWarmUpRequestCount() {
+        return warmUpRequestCount;
+    }
+
+    public synchronized long getWarmUpProcessedCount() {
+        return warmUpProcessedCount;
+    }
+
+    public synchronized long getWarmUpLoadedBytes() {
+        return warmUpLoadedBytes;
+    }
+
+    public synchronized long getWarmUpHitCount() {
+        return warmUpHitCount;
+    }
+
+    /**
+     * 先読み対象として受け付けたイメージ数を加算する.
+     * @param count 受け付けたイメージ数
+     */
+    public synchronized void addWarmUpRequest(int count) {
+        warmUpRequestCount += count;
+    }
+
+    /**
+     * 先読み対象のイメージを処理したことを記録する.
+     * @param bytes 新たに読み込んだバイト数、キャッシュ済みであった場合は0
+     */
+    public synchronized void warmUpProcessed(long bytes) {
+        warmUpProcessedCount++;
+        warmUpLoadedBytes += bytes;
+    }
+
+    /**
+     * 先読みされたイメージが、はじめて実際に使用されたことを記録する.
+     */
+    public synchronized void incrementWarmUpHitCount() {
+        warmUpHitCount++;
+    }
+
     public synchronized void reset() {
         cacheHitCount = 0;
         readCount = 0;
         totalCount = 0;
         totalBytes = 0;
         maxBytes = 0;
+        warmUpRequestCount = 0;
+        warmUpProcessedCount = 0;
+        warmUpLoadedBytes = 0;
+        warmUpHitCount = 0;
     }
 
     @Override
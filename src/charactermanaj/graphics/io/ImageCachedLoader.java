@@ -2,6 +2,7 @@ package charactermanaj.graphics.io;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
 
 
 /**
@@ -15,7 +16,28 @@ public class ImageCachedLoader extends ImageLoaderImpl implements Closeable {
 	 * リソースに対するイメージキャッシュ.<br>
 	 * リソースは複数のプロファイルで共有しえるのでstaticとしている。
 	 */
-	private static ImageCache<ImageResourceCacheKey> caches = new ImageCache<ImageResourceCacheKey>();
+	private static ImageCache<ImageResourceCacheKey> caches = new ImageCache<ImageResourceCacheKey>("raw");
+
+	static {
+		caches.setOwnerName("(shared)");
+	}
+
+	/**
+	 * クローズされていないインスタンスの数.<br>
+	 * キャッシュは共有されているため、すべてのインスタンスがクローズされたときにクリアする.<br>
+	 */
+	private static int instanceCount;
+
+	/**
+	 * このインスタンスがクローズ済みであるか?
+	 */
+	private boolean closed;
+
+	public ImageCachedLoader() {
+		synchronized (ImageCachedLoader.class) {
+			instanceCount++;
+		}
+	}
 
 	@Override
     public LoadedImage load(ImageResource imageResource) throws IOException {
@@ -25,29 +47,57 @@ public class ImageCachedLoader extends ImageLoaderImpl implements Closeable {
 
 		ImageResourceCacheKey key = new ImageResourceCacheKey(imageResource);
 
-		synchronized (caches) {
-			LoadedImage loadedImage = caches.get(key);
+		LoadedImage loadedImage = caches.get(key);
 
-			if (loadedImage != null) {
-				long lastModified = loadedImage.getLastModified();
-				if (lastModified != imageResource.lastModified()) {
-					// キャッシュされているが、すでに古い場合は破棄する.
-					loadedImage = null;
-				}
+		if (loadedImage != null) {
+			long lastModified = loadedImage.getLastModified();
+			if (lastModified != imageResource.lastModified()) {
+				// キャッシュされているが、すでに古い場合は破棄する.
+				loadedImage = null;
 			}
+		}
 
-			if (loadedImage == null) {
-				loadedImage = super.load(imageResource);
+		if (loadedImage == null) {
+			// 画像のデコード中はキャッシュをロックしない.
+			// (先読みなどで複数スレッドから同時に読み込まれる場合に互いに待たせないため.
+			// 同一画像が同時に読み込まれた場合は後勝ちとなるが実害はない.)
+			loadedImage = super.load(imageResource);
+			synchronized (caches) {
 				caches.set(key, loadedImage);
 				caches.unlockImages(); // 即時解放許可
 			}
+		}
+
+		return loadedImage;
+	}
 
-			return loadedImage;
+	/**
+	 * 指定した画像リソースのキャッシュを破棄する.<br>
+	 * 削除・更新されたパーツの画像を、ガベージコレクタを待たずに解放するために用いる.<br>
+	 * @param imageResources 画像リソース
+	 */
+	public static void invalidate(Collection<? extends ImageResource> imageResources) {
+		if (imageResources == null) {
+			return;
+		}
+		for (ImageResource imageResource : imageResources) {
+			caches.remove(new ImageResourceCacheKey(imageResource),
+					ImageCache.EvictionCause.EXPLICIT);
 		}
 	}
 
 	public void close() {
-	    caches.clear();
+		synchronized (ImageCachedLoader.class) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (--instanceCount > 0) {
+				// まだ他のウィンドウで使用中
+				return;
+			}
+		}
+		caches.clear();
 	}
 }
 
@@ -81,4 +131,9 @@ final class ImageResourceCacheKey {
 		}
 		return false;
 	}
+
+	@Override
+	public String toString() {
+		return imageResource.toString();
+	}
 }
@@ -0,0 +1,162 @@
+package charactermanaj.graphics.io;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * イメージの不透明部分と可視部分を示すビットマスク.<br>
+ * 1ピクセルを1ビットとして、行ごとにlong配列のワード単位で保持する.<br>
+ * 完全に不透明(アルファ値が255)なピクセルを「不透明」、アルファ値が0でないピクセルを「可視」とする.<br>
+ * 上位のレイヤーで不透明に覆われた下位のレイヤーの描画を省略するために用いる.<br>
+ *
+ * @author seraphy
+ */
+public final class ImageCoverage {
+
+	/**
+	 * 幅
+	 */
+	private final int width;
+
+	/**
+	 * 高さ
+	 */
+	private final int height;
+
+	/**
+	 * 1行あたりのワード数
+	 */
+	private final int stride;
+
+	/**
+	 * 不透明ピクセルのマスク
+	 */
+	private final long[] opaque;
+
+	/**
+	 * 可視ピクセルのマスク
+	 */
+	private final long[] visible;
+
+	/**
+	 * イメージからマスクを作成する.
+	 *
+	 * @param image
+	 *            イメージ
+	 */
+	public ImageCoverage(BufferedImage image) {
+		if (image == null) {
+			throw new IllegalArgumentException();
+		}
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.stride = (width + 63) >>> 6;
+		this.opaque = new long[stride * height];
+		this.visible = new long[stride * height];
+
+		int[] pixels = null;
+		int offset = 0;
+		int scanlineStride = 0;
+		Raster raster = image.getRaster();
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB
+				&& raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& raster.getParent() == null) {
+			// ARGB形式であればデータバッファを直接参照する.
+			DataBuffer buf = raster.getDataBuffer();
+			SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+			pixels = ((DataBufferInt) buf).getData();
+			offset = buf.getOffset();
+			scanlineStride = sm.getScanlineStride();
+		}
+
+		int[] row = (pixels == null) ? new int[width] : null;
+		for (int y = 0; y < height; y++) {
+			int pos;
+			int[] src;
+			if (pixels != null) {
+				src = pixels;
+				pos = offset + y * scanlineStride;
+			} else {
+				image.getRGB(0, y, width, 1, row, 0, width);
+				src = row;
+				pos = 0;
+			}
+			int base = y * stride;
+			for (int x = 0; x < width; x++) {
+				int alpha = src[pos + x] >>> 24;
+				if (alpha != 0) {
+					long bit = 1L << (x & 63);
+					int idx = base + (x >>> 6);
+					visible[idx] |= bit;
+					if (alpha == 0xff) {
+						opaque[idx] |= bit;
+					}
+				}
+			}
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * マスクが使用するバイト数を求める.<br>
+	 * @return バイト数
+	 */
+	public int getBufferSize() {
+		return (opaque.length + visible.length) * 8;
+	}
+
+	/**
+	 * 1行あたりのワード数
+	 *
+	 * @return ワード数
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * 指定した行、ワード位置の不透明ピクセルのマスクを取得する.
+	 *
+	 * @param y
+	 *            行
+	 * @param word
+	 *            ワード位置
+	 * @return マスク
+	 */
+	public long getOpaqueWord(int y, int word) {
+		return opaque[y * stride + word];
+	}
+
+	/**
+	 * 指定した行、ワード位置の可視ピクセルのマスクを取得する.
+	 *
+	 * @param y
+	 *            行
+	 * @param word
+	 *            ワード位置
+	 * @return マスク
+	 */
+	public long getVisibleWord(int y, int word) {
+		return visible[y * stride + word];
+	}
+
+	/**
+	 * マスクが使用しているバイト数
+	 *
+	 * @return バイト数
+	 */
+	public int getSize() {
+		return (opaque.length + visible.length) * 8;
+	}
+}
@@ -0,0 +1,24 @@
+package charactermanaj.graphics.io;
+
+public interface ImageLoadLatencyMBean {
+
+    String[] getHistogramBuckets();
+
+    long[] getDecodeHistogram();
+
+    long getDecodeCount();
+
+    double getDecodeAverageMillis();
+
+    double getDecodeMaxMillis();
+
+    long[] getColorConvertHistogram();
+
+    long getColorConvertCount();
+
+    double getColorConvertAverageMillis();
+
+    double getColorConvertMaxMillis();
+
+    void reset();
+}
@@ -0,0 +1,94 @@
+package charactermanaj.graphics.io;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * 画像の読み込み時間を、デコードと色変換に分けてヒストグラムとして集計する.
+ *
+ * @author seraphy
+ */
+public final class ImageLoadLatencyMBeanImpl implements ImageLoadLatencyMBean {
+
+    private static ImageLoadLatencyMBeanImpl singleton = new ImageLoadLatencyMBeanImpl();
+
+    private ImageLoadLatencyMBeanImpl() {
+        super();
+    }
+
+    public static ImageLoadLatencyMBeanImpl getSingleton() {
+        return singleton;
+    }
+
+    public static void setupMBean() throws JMException {
+        MBeanServer srv = ManagementFactory.getPlatformMBeanServer();
+        srv.registerMBean(
+                new StandardMBean(singleton, ImageLoadLatencyMBean.class),
+                new ObjectName("CharacterManaJ:type=ImageLoadLatency,name=Singleton"));
+    }
+
+    private final LatencyHistogram decodeHistogram = new LatencyHistogram();
+
+    private final LatencyHistogram colorConvertHistogram = new LatencyHistogram();
+
+    /**
+     * 画像のデコードに要した時間を記録する.
+     * @param nanos 処理時間(ナノ秒)
+     */
+    public synchronized void recordDecode(long nanos) {
+        decodeHistogram.record(nanos);
+    }
+
+    /**
+     * 画像の色変換に要した時間を記録する.
+     * @param nanos 処理時間(ナノ秒)
+     */
+    public synchronized void recordColorConvert(long nanos) {
+        colorConvertHistogram.record(nanos);
+    }
+
+    public String[] getHistogramBuckets() {
+        return LatencyHistogram.getBucketNames();
+    }
+
+    public synchronized long[] getDecodeHistogram() {
+        return decodeHistogram.getBuckets();
+    }
+
+    public synchronized long getDecodeCount() {
+        return decodeHistogram.getCount();
+    }
+
+    public synchronized double getDecodeAverageMillis() {
+        return decodeHistogram.getAverageMillis();
+    }
+
+    public synchronized double getDecodeMaxMillis() {
+        return decodeHistogram.getMaxMillis();
+    }
+
+    public synchronized long[] getColorConvertHistogram() {
+        return colorConvertHistogram.getBuckets();
+    }
+
+    public synchronized long getColorConvertCount() {
+        return colorConvertHistogram.getCount();
+    }
+
+    public synchronized double getColorConvertAverageMillis() {
+        return colorConvertHistogram.getAverageMillis();
+    }
+
+    public synchronized double getColorConvertMaxMillis() {
+        return colorConvertHistogram.getMaxMillis();
+    }
+
+    public synchronized void reset() {
+        decodeHistogram.reset();
+        colorConvertHistogram.reset();
+    }
+}
@@ -2,6 +2,7 @@ package charactermanaj.graphics.io;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Timestamp;
@@ -10,6 +11,8 @@ import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
 
+import charactermanaj.model.AppConfig;
+
 
 /**
  * 画像を読み取ります.<br>
@@ -33,13 +36,27 @@ public class ImageLoaderImpl implements ImageLoader {
 			throw new IllegalArgumentException();
 		}
 
-		BufferedImage img;
-		InputStream is = imageResource.openStream();
-		try {
-			img = ImageIO.read(is);
+		long startTime = System.nanoTime();
+		BufferedImage img = null;
+		if (AppConfig.getInstance().isEnableFastPNGDecoder()) {
+			// パーツで使われる一般的な形式のPNGであれば、直接ARGB形式で読み込む.
+			InputStream is = new BufferedInputStream(imageResource.openStream());
+			try {
+				img = PNGImageDecoder.getInstance().decode(is);
 
-		} finally {
-			is.close();
+			} finally {
+				is.close();
+			}
+		}
+		if (img == null) {
+			// それ以外の形式はImageIOで読み込む.
+			InputStream is = imageResource.openStream();
+			try {
+				img = ImageIO.read(is);
+
+			} finally {
+				is.close();
+			}
 		}
 		if (img == null) {
 			logger.log(Level.WARNING, "unsuppoted image: " + imageResource);
@@ -48,6 +65,8 @@ public class ImageLoaderImpl implements ImageLoader {
 		
 		// ARGB形式でなければ変換する.
 		img = convertARGB(img);
+
+		ImageLoadLatencyMBeanImpl.getSingleton().recordDecode(System.nanoTime() - startTime);
 		
 		long lastModified = imageResource.lastModified();
 
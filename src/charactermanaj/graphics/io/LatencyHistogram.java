@@ -0,0 +1,86 @@
+package charactermanaj.graphics.io;
+
+/**
+ * 処理時間のヒストグラム.<br>
+ * バケットは上限(ミリ秒)で区切られ、最後のバケットは最大の上限以上のすべてを含む.<br>
+ * スレッドセーフではないため、呼び出し側で同期すること.<br>
+ *
+ * @author seraphy
+ */
+final class LatencyHistogram {
+
+	/**
+	 * 各バケットの上限(ミリ秒、未満)
+	 */
+	private static final long[] BUCKET_LIMITS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+	private final long[] buckets = new long[BUCKET_LIMITS.length + 1];
+
+	private long count;
+
+	private long totalNanos;
+
+	private long maxNanos;
+
+	/**
+	 * バケットの表示名を取得する.
+	 *
+	 * @return バケットの表示名
+	 */
+	public static String[] getBucketNames() {
+		String[] names = new String[BUCKET_LIMITS.length + 1];
+		for (int idx = 0; idx < BUCKET_LIMITS.length; idx++) {
+			names[idx] = "<" + BUCKET_LIMITS[idx] + "ms";
+		}
+		names[BUCKET_LIMITS.length] = ">=" + BUCKET_LIMITS[BUCKET_LIMITS.length - 1] + "ms";
+		return names;
+	}
+
+	/**
+	 * 処理時間を記録する.
+	 *
+	 * @param nanos
+	 *            処理時間(ナノ秒)
+	 */
+	public void record(long nanos) {
+		long millis = nanos / 1000000L;
+		int idx = 0;
+		while (idx < BUCKET_LIMITS.length && millis >= BUCKET_LIMITS[idx]) {
+			idx++;
+		}
+		buckets[idx]++;
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	public long[] getBuckets() {
+		return buckets.clone();
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getAverageMillis() {
+		if (count == 0) {
+			return 0;
+		}
+		return totalNanos / (double) count / 1000000d;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos / 1000000d;
+	}
+
+	public void reset() {
+		for (int idx = 0; idx < buckets.length; idx++) {
+			buckets[idx] = 0;
+		}
+		count = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+	}
+}
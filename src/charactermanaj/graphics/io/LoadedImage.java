@@ -15,6 +15,21 @@ public final class LoadedImage {
 
 	private final int imageSize;
 
+	/**
+	 * 不透明部分のマスク.(必要になるまで作成しない)
+	 */
+	private volatile ImageCoverage coverage;
+
+	/**
+	 * 縮小画像の最大レベル
+	 */
+	public static final int MAX_MIP_LEVEL = 3;
+
+	/**
+	 * レベルごとの縮小画像.(必要になるまで作成しない)
+	 */
+	private final BufferedImage[] mipImages = new BufferedImage[MAX_MIP_LEVEL + 1];
+
 	public LoadedImage(BufferedImage image, long lastModified) {
 		this.image = image;
 		this.lastModified = lastModified;
@@ -29,9 +44,121 @@ public final class LoadedImage {
 		return lastModified;
 	}
 
+	/**
+	 * 画像が使用するバイト数を取得する.<br>
+	 * 作成済みの不透明部分のマスクと縮小画像のバイト数も含まれるため、
+	 * それらが作成されると増加する.<br>
+	 * @return バイト数
+	 */
 	public int getImageSize() {
-        return imageSize;
-    }
+		int size = imageSize;
+		ImageCoverage currentCoverage = coverage;
+		if (currentCoverage != null) {
+			size += currentCoverage.getBufferSize();
+		}
+		synchronized (mipImages) {
+			for (int level = 1; level <= MAX_MIP_LEVEL; level++) {
+				size += getBufferSize(mipImages[level]);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * イメージの不透明部分と可視部分のマスクを取得する.<br>
+	 * 初回呼び出し時に作成され、以降はキャッシュされたものを返す.<br>
+	 * @return マスク、イメージがない場合はnull
+	 */
+	public ImageCoverage getCoverage() {
+		ImageCoverage result = coverage;
+		if (result == null && image != null) {
+			// 複数スレッドで同時に作成されても結果は同じなので同期しない.
+			result = new ImageCoverage(image);
+			coverage = result;
+		}
+		return result;
+	}
+
+	/**
+	 * 指定したレベルの縮小画像を取得する.<br>
+	 * レベル1は1/2、レベル2は1/4、レベル3は1/8の大きさとなる.(端数は切り上げ)<br>
+	 * 初回呼び出し時に1つ上のレベルから作成され、以降はキャッシュされたものを返す.<br>
+	 * @param level レベル、0の場合は元の画像
+	 * @return 縮小画像、イメージがない場合はnull
+	 */
+	public BufferedImage getMipImage(int level) {
+		if (level < 0 || level > MAX_MIP_LEVEL) {
+			throw new IllegalArgumentException("invalid mip level: " + level);
+		}
+		if (level == 0 || image == null) {
+			return image;
+		}
+		synchronized (mipImages) {
+			BufferedImage mipImage = mipImages[level];
+			if (mipImage == null) {
+				mipImage = createHalfImage(getMipImage(level - 1));
+				mipImages[level] = mipImage;
+			}
+			return mipImage;
+		}
+	}
+
+	/**
+	 * 縦横1/2の画像を作成する.<br>
+	 * 2x2ピクセルの平均をとる.色成分はアルファ値で重み付けして平均する.<br>
+	 * @param src 元画像
+	 * @return 縮小画像
+	 */
+	private static BufferedImage createHalfImage(BufferedImage src) {
+		int src_w = src.getWidth();
+		int src_h = src.getHeight();
+		int w = (src_w + 1) / 2;
+		int h = (src_h + 1) / 2;
+
+		int[] upper = new int[src_w];
+		int[] lower = new int[src_w];
+		int[] dst = new int[w];
+		BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < h; y++) {
+			int sy = y * 2;
+			src.getRGB(0, sy, src_w, 1, upper, 0, src_w);
+			boolean hasLower = sy + 1 < src_h;
+			if (hasLower) {
+				src.getRGB(0, sy + 1, src_w, 1, lower, 0, src_w);
+			}
+			for (int x = 0; x < w; x++) {
+				int sx = x * 2;
+				int cnt = 0;
+				int sa = 0, sr = 0, sg = 0, sb = 0;
+				for (int dy = 0; dy < 2; dy++) {
+					if (dy == 1 && !hasLower) {
+						break;
+					}
+					int[] row = (dy == 0) ? upper : lower;
+					for (int dx = 0; dx < 2 && sx + dx < src_w; dx++) {
+						int argb = row[sx + dx];
+						int a = (argb >>> 24);
+						sa += a;
+						sr += ((argb >> 16) & 0xff) * a;
+						sg += ((argb >> 8) & 0xff) * a;
+						sb += (argb & 0xff) * a;
+						cnt++;
+					}
+				}
+				if (sa == 0) {
+					dst[x] = 0;
+				} else {
+					int a = (sa + cnt / 2) / cnt;
+					int r = (sr + sa / 2) / sa;
+					int g = (sg + sa / 2) / sa;
+					int b = (sb + sa / 2) / sa;
+					dst[x] = (a << 24) | (r << 16) | (g << 8) | b;
+				}
+			}
+			img.setRGB(0, y, w, 1, dst, 0, w);
+		}
+		return img;
+	}
 
 	/**
 	 * 画像バッファのバイト数を求める.<br>
@@ -75,11 +75,28 @@ public class PNGFileImageHeaderReader {
 	/**
 	 * ストリームを指定してヘッダ情報を読み取る.<br>
 	 * ストリームは読み取った分だけ消費された状態で返される.<br>
+	 * IENDチャンクまで読み取り、途中で終わっているファイルはPNGでないとみなす.<br>
 	 * @param is ストリーム
 	 * @return ヘッダ、PNGでない場足はnull
 	 * @throws IOException 読み取りに失敗した場合
 	 */
 	public PNGFileImageHeader readHeader(InputStream is) throws IOException {
+		return readHeader(is, false);
+	}
+
+	/**
+	 * ストリームを指定してヘッダ情報を読み取る.<br>
+	 * ストリームは読み取った分だけ消費された状態で返される.<br>
+	 * stopAtImageDataがtrueの場合は、最初のIDATチャンクに達した時点で読み取りを終了する.<br>
+	 * tRNSチャンクはIDATチャンクより前になければならないため、結果は変わらないが、
+	 * 画像データの読み飛ばし(アーカイブ内のファイルであれば、その伸長)が不要となる.<br>
+	 * ただし、画像データが途中で終わっているファイルであっても検出されない.<br>
+	 * @param is ストリーム
+	 * @param stopAtImageData 最初のIDATチャンクで読み取りを終了する場合はtrue
+	 * @return ヘッダ、PNGでない場足はnull
+	 * @throws IOException 読み取りに失敗した場合
+	 */
+	public PNGFileImageHeader readHeader(InputStream is, boolean stopAtImageData) throws IOException {
 		if (is == null) {
 			throw new IllegalArgumentException();
 		}
@@ -135,6 +152,10 @@ public class PNGFileImageHeaderReader {
 					// 終了チャンク
 					break;
 					
+				} else if (stopAtImageData && Arrays.equals(chunkType, "IDAT".getBytes())) {
+					// 画像データのチャンク以降にヘッダ情報はない
+					break;
+					
 				} else {
 					// IHDR以外のチャンクは読み飛ばす
 					if (dis.skipBytes(chunkLen) != chunkLen) {
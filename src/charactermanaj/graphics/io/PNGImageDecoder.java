@@ -0,0 +1,515 @@
+package charactermanaj.graphics.io;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * パーツ画像で使われる形式のPNGを、直接ARGB形式のイメージとして読み込むデコーダ.<br>
+ * ImageIOを経由すると、いったんABGR形式やインデックス形式で読み込まれたのち、
+ * ARGB形式に描画しなおす必要があるため、画像全体のコピーが2回発生する.<br>
+ * このデコーダは伸長とフィルタの復元を行いながら、直接{@link DataBufferInt}に書き込む.<br>
+ * 対応する形式は以下のとおり.(インターレースの有無は問わない)<br>
+ * <ul>
+ * <li>8ビットRGBA</li>
+ * <li>8ビットRGB(tRNSによる透過色を含む)</li>
+ * <li>1,2,4,8ビットのパレット(tRNSによる透過を含む)</li>
+ * <li>8ビットグレースケール(tRNSなし)、8ビットグレースケール+アルファ</li>
+ * </ul>
+ * それ以外の形式は対象外として、{@link #decode(InputStream)}はnullを返す.<br>
+ * ImageIOと同様に、iCCPやgAMAなどの色空間に関するチャンクは無視してsRGBとして扱う.<br>
+ * インスタンスは伸長用のInflaterと行バッファを再利用するため、スレッドごとに{@link #getInstance()}で取得する.<br>
+ *
+ * @author seraphy
+ */
+public final class PNGImageDecoder {
+
+	/**
+	 * PNGのシグネチャ
+	 */
+	private static final byte[] PNG_SIGNATURE = {
+		(byte) 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a,
+	};
+
+	private static final int CHUNK_IHDR = 0x49484452;
+
+	private static final int CHUNK_PLTE = 0x504c5445;
+
+	private static final int CHUNK_TRNS = 0x74524e53;
+
+	private static final int CHUNK_IDAT = 0x49444154;
+
+	private static final int CHUNK_IEND = 0x49454e44;
+
+	private static final int COLOR_TYPE_GRAY = 0;
+
+	private static final int COLOR_TYPE_RGB = 2;
+
+	private static final int COLOR_TYPE_PALETTE = 3;
+
+	private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+
+	private static final int COLOR_TYPE_RGBA = 6;
+
+	/**
+	 * Adam7の各パスの開始位置と間隔(x開始, y開始, x間隔, y間隔)
+	 */
+	private static final int[][] ADAM7 = {
+		{0, 0, 8, 8},
+		{4, 0, 8, 8},
+		{0, 4, 4, 8},
+		{2, 0, 4, 4},
+		{0, 2, 2, 4},
+		{1, 0, 2, 2},
+		{0, 1, 1, 2},
+	};
+
+	/**
+	 * アルファ付きグレースケールの輝度変換テーブル.<br>
+	 * ImageIO経由で読み込んだ場合と同じ見た目となるように、
+	 * ImageIOが使用するグレースケールのカラーモデルでsRGBに変換した値を用いる.<br>
+	 */
+	private static final int[] GRAY_ALPHA_LUT = createGrayAlphaLUT();
+
+	/**
+	 * スレッドごとのインスタンス
+	 */
+	private static final ThreadLocal<PNGImageDecoder> instances = new ThreadLocal<PNGImageDecoder>() {
+		@Override
+		protected PNGImageDecoder initialValue() {
+			return new PNGImageDecoder();
+		}
+	};
+
+	/**
+	 * 伸長に使うInflater(再利用する)
+	 */
+	private final Inflater inflater = new Inflater();
+
+	/**
+	 * 現在の行
+	 */
+	private byte[] curRow = new byte[0];
+
+	/**
+	 * 前の行
+	 */
+	private byte[] prevRow = new byte[0];
+
+	private PNGImageDecoder() {
+		super();
+	}
+
+	/**
+	 * 現在のスレッドで使用するデコーダを取得する.
+	 *
+	 * @return デコーダ
+	 */
+	public static PNGImageDecoder getInstance() {
+		return instances.get();
+	}
+
+	private static int[] createGrayAlphaLUT() {
+		ComponentColorModel cm = new ComponentColorModel(
+				ColorSpace.getInstance(ColorSpace.CS_GRAY), true, false,
+				Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+		int[] lut = new int[256];
+		byte[] pixel = new byte[2];
+		pixel[1] = (byte) 0xff;
+		for (int idx = 0; idx < 256; idx++) {
+			pixel[0] = (byte) idx;
+			lut[idx] = cm.getRGB(pixel) & 0xff;
+		}
+		return lut;
+	}
+
+	/**
+	 * PNG画像を読み込む.<br>
+	 * 対応していない形式の場合は、画像データを読み込む前にnullを返す.<br>
+	 * ストリームは閉じない.<br>
+	 *
+	 * @param is
+	 *            入力ストリーム
+	 * @return ARGB形式のイメージ、対応していない形式の場合はnull
+	 * @throws IOException
+	 *             読み込みに失敗した場合、もしくは形式が不正な場合
+	 */
+	public BufferedImage decode(InputStream is) throws IOException {
+		if (is == null) {
+			throw new IllegalArgumentException();
+		}
+		DataInputStream dis = new DataInputStream(is);
+
+		byte[] signature = new byte[PNG_SIGNATURE.length];
+		dis.readFully(signature);
+		for (int idx = 0; idx < PNG_SIGNATURE.length; idx++) {
+			if (signature[idx] != PNG_SIGNATURE[idx]) {
+				return null;
+			}
+		}
+
+		// IHDR
+		int len = dis.readInt();
+		if (dis.readInt() != CHUNK_IHDR || len != 13) {
+			throw new IOException("IHDR not found.");
+		}
+		int width = dis.readInt();
+		int height = dis.readInt();
+		int bitDepth = dis.readUnsignedByte();
+		int colorType = dis.readUnsignedByte();
+		int compression = dis.readUnsignedByte();
+		int filter = dis.readUnsignedByte();
+		int interlace = dis.readUnsignedByte();
+		dis.readInt(); // CRC
+
+		if (width <= 0 || height <= 0 || compression != 0 || filter != 0 || interlace > 1) {
+			return null;
+		}
+		if ((long) width * height > Integer.MAX_VALUE / 4) {
+			return null;
+		}
+		if (!isSupported(colorType, bitDepth)) {
+			return null;
+		}
+
+		// IDATまでのチャンク
+		int[] palette = null;
+		int transparentColor = -1;
+		for (;;) {
+			len = dis.readInt();
+			int chunkType = dis.readInt();
+			if (len < 0) {
+				throw new IOException("invalid chunk length.");
+			}
+			if (chunkType == CHUNK_IDAT) {
+				break;
+			}
+			if (chunkType == CHUNK_IEND) {
+				throw new IOException("IDAT not found.");
+			}
+			if (chunkType == CHUNK_PLTE) {
+				if (len % 3 != 0 || len > 256 * 3) {
+					throw new IOException("invalid PLTE.");
+				}
+				palette = new int[256];
+				for (int idx = 0; idx < 256; idx++) {
+					palette[idx] = 0xff000000;
+				}
+				for (int idx = 0; idx < len / 3; idx++) {
+					int r = dis.readUnsignedByte();
+					int g = dis.readUnsignedByte();
+					int b = dis.readUnsignedByte();
+					palette[idx] = 0xff000000 | (r << 16) | (g << 8) | b;
+				}
+
+			} else if (chunkType == CHUNK_TRNS) {
+				if (colorType == COLOR_TYPE_PALETTE) {
+					if (palette == null || len > 256) {
+						throw new IOException("invalid tRNS.");
+					}
+					for (int idx = 0; idx < len; idx++) {
+						int a = dis.readUnsignedByte();
+						palette[idx] = (a << 24) | (palette[idx] & 0xffffff);
+					}
+
+				} else if (colorType == COLOR_TYPE_RGB && len == 6) {
+					int r = dis.readUnsignedShort() & 0xff;
+					int g = dis.readUnsignedShort() & 0xff;
+					int b = dis.readUnsignedShort() & 0xff;
+					transparentColor = (r << 16) | (g << 8) | b;
+
+				} else {
+					// グレースケールの透過色などはImageIOにまかせる.
+					return null;
+				}
+
+			} else {
+				skipFully(dis, len);
+			}
+			dis.readInt(); // CRC
+		}
+		if (colorType == COLOR_TYPE_PALETTE && palette == null) {
+			throw new IOException("PLTE not found.");
+		}
+
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+		int channels = getChannels(colorType);
+		int bitsPerPixel = channels * bitDepth;
+		int bpp = Math.max(1, bitsPerPixel / 8);
+
+		inflater.reset();
+		InputStream zis = new InflaterInputStream(new IDATInputStream(dis, len), inflater, 8192);
+		DataInputStream zdis = new DataInputStream(zis);
+		try {
+			if (interlace == 0) {
+				decodePass(zdis, pixels, width, height, 0, 0, 1, 1,
+						colorType, bitDepth, bitsPerPixel, bpp, palette, transparentColor);
+			} else {
+				for (int[] pass : ADAM7) {
+					decodePass(zdis, pixels, width, height, pass[0], pass[1], pass[2], pass[3],
+							colorType, bitDepth, bitsPerPixel, bpp, palette, transparentColor);
+				}
+			}
+		} catch (EOFException ex) {
+			IOException iex = new IOException("unexpected end of image data.");
+			iex.initCause(ex);
+			throw iex;
+		}
+		return img;
+	}
+
+	private static boolean isSupported(int colorType, int bitDepth) {
+		switch (colorType) {
+		case COLOR_TYPE_RGBA:
+		case COLOR_TYPE_RGB:
+		case COLOR_TYPE_GRAY_ALPHA:
+		case COLOR_TYPE_GRAY:
+			return bitDepth == 8;
+		case COLOR_TYPE_PALETTE:
+			return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8;
+		default:
+			return false;
+		}
+	}
+
+	private static int getChannels(int colorType) {
+		switch (colorType) {
+		case COLOR_TYPE_RGBA:
+			return 4;
+		case COLOR_TYPE_RGB:
+			return 3;
+		case COLOR_TYPE_GRAY_ALPHA:
+			return 2;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * 1つのパス(インターレースでなければ画像全体)を読み込む.
+	 */
+	private void decodePass(DataInputStream zdis, int[] pixels, int width, int height,
+			int xStart, int yStart, int xStep, int yStep,
+			int colorType, int bitDepth, int bitsPerPixel, int bpp,
+			int[] palette, int transparentColor) throws IOException {
+		int passWidth = (width - xStart + xStep - 1) / xStep;
+		int passHeight = (height - yStart + yStep - 1) / yStep;
+		if (passWidth <= 0 || passHeight <= 0) {
+			return;
+		}
+		int rowBytes = (passWidth * bitsPerPixel + 7) / 8;
+		if (curRow.length < rowBytes) {
+			curRow = new byte[rowBytes];
+			prevRow = new byte[rowBytes];
+		}
+		byte[] cur = curRow;
+		byte[] prev = prevRow;
+		for (int idx = 0; idx < rowBytes; idx++) {
+			prev[idx] = 0;
+		}
+
+		for (int j = 0; j < passHeight; j++) {
+			int filterType = zdis.readUnsignedByte();
+			zdis.readFully(cur, 0, rowBytes);
+			unfilter(filterType, cur, prev, rowBytes, bpp);
+
+			int pos = (yStart + j * yStep) * width + xStart;
+			switch (colorType) {
+			case COLOR_TYPE_RGBA:
+				for (int i = 0, p = 0; i < passWidth; i++, p += 4, pos += xStep) {
+					pixels[pos] = ((cur[p + 3] & 0xff) << 24) | ((cur[p] & 0xff) << 16)
+							| ((cur[p + 1] & 0xff) << 8) | (cur[p + 2] & 0xff);
+				}
+				break;
+
+			case COLOR_TYPE_RGB:
+				for (int i = 0, p = 0; i < passWidth; i++, p += 3, pos += xStep) {
+					int rgb = ((cur[p] & 0xff) << 16) | ((cur[p + 1] & 0xff) << 8) | (cur[p + 2] & 0xff);
+					pixels[pos] = (rgb == transparentColor) ? rgb : (0xff000000 | rgb);
+				}
+				break;
+
+			case COLOR_TYPE_GRAY_ALPHA:
+				for (int i = 0, p = 0; i < passWidth; i++, p += 2, pos += xStep) {
+					int v = GRAY_ALPHA_LUT[cur[p] & 0xff];
+					pixels[pos] = ((cur[p + 1] & 0xff) << 24) | (v << 16) | (v << 8) | v;
+				}
+				break;
+
+			case COLOR_TYPE_GRAY:
+				for (int i = 0; i < passWidth; i++, pos += xStep) {
+					int v = cur[i] & 0xff;
+					pixels[pos] = 0xff000000 | (v << 16) | (v << 8) | v;
+				}
+				break;
+
+			default: // COLOR_TYPE_PALETTE
+				if (bitDepth == 8) {
+					for (int i = 0; i < passWidth; i++, pos += xStep) {
+						pixels[pos] = palette[cur[i] & 0xff];
+					}
+				} else {
+					int pixelsPerByte = 8 / bitDepth;
+					int mask = (1 << bitDepth) - 1;
+					for (int i = 0; i < passWidth; i++, pos += xStep) {
+						int b = cur[i / pixelsPerByte] & 0xff;
+						int shift = 8 - bitDepth * (i % pixelsPerByte + 1);
+						pixels[pos] = palette[(b >>> shift) & mask];
+					}
+				}
+				break;
+			}
+
+			byte[] tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+	}
+
+	/**
+	 * 行のフィルタを復元する.
+	 */
+	private static void unfilter(int filterType, byte[] cur, byte[] prev, int rowBytes, int bpp)
+			throws IOException {
+		switch (filterType) {
+		case 0: // None
+			break;
+
+		case 1: // Sub
+			for (int i = bpp; i < rowBytes; i++) {
+				cur[i] += cur[i - bpp];
+			}
+			break;
+
+		case 2: // Up
+			for (int i = 0; i < rowBytes; i++) {
+				cur[i] += prev[i];
+			}
+			break;
+
+		case 3: // Average
+			for (int i = 0; i < bpp; i++) {
+				cur[i] += (prev[i] & 0xff) >>> 1;
+			}
+			for (int i = bpp; i < rowBytes; i++) {
+				cur[i] += ((cur[i - bpp] & 0xff) + (prev[i] & 0xff)) >>> 1;
+			}
+			break;
+
+		case 4: // Paeth
+			for (int i = 0; i < bpp; i++) {
+				cur[i] += prev[i];
+			}
+			for (int i = bpp; i < rowBytes; i++) {
+				int a = cur[i - bpp] & 0xff;
+				int b = prev[i] & 0xff;
+				int c = prev[i - bpp] & 0xff;
+				int p = a + b - c;
+				int pa = Math.abs(p - a);
+				int pb = Math.abs(p - b);
+				int pc = Math.abs(p - c);
+				int pred;
+				if (pa <= pb && pa <= pc) {
+					pred = a;
+				} else if (pb <= pc) {
+					pred = b;
+				} else {
+					pred = c;
+				}
+				cur[i] += pred;
+			}
+			break;
+
+		default:
+			throw new IOException("unknown filter type: " + filterType);
+		}
+	}
+
+	private static void skipFully(DataInputStream dis, int len) throws IOException {
+		while (len > 0) {
+			int skipped = dis.skipBytes(len);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			len -= skipped;
+		}
+	}
+
+	/**
+	 * 連続するIDATチャンクのデータ部を1つのストリームとして読み込む.<br>
+	 * IDAT以外のチャンクに達した時点で終端とする.<br>
+	 *
+	 * @author seraphy
+	 */
+	private static final class IDATInputStream extends InputStream {
+
+		private final DataInputStream dis;
+
+		/**
+		 * 現在のチャンクの残りバイト数
+		 */
+		private int remaining;
+
+		private boolean eof;
+
+		public IDATInputStream(DataInputStream dis, int firstChunkLength) {
+			this.dis = dis;
+			this.remaining = firstChunkLength;
+		}
+
+		/**
+		 * 現在のチャンクを読み終えていれば次のチャンクに進む.
+		 *
+		 * @return データがあればtrue
+		 */
+		private boolean prepare() throws IOException {
+			while (!eof && remaining == 0) {
+				dis.readInt(); // CRC
+				int len = dis.readInt();
+				int chunkType = dis.readInt();
+				if (chunkType != CHUNK_IDAT || len < 0) {
+					eof = true;
+				} else {
+					remaining = len;
+				}
+			}
+			return !eof;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!prepare()) {
+				return -1;
+			}
+			remaining--;
+			return dis.readUnsignedByte();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!prepare()) {
+				return -1;
+			}
+			int rd = dis.read(b, off, Math.min(len, remaining));
+			if (rd < 0) {
+				throw new EOFException();
+			}
+			remaining -= rd;
+			return rd;
+		}
+	}
+}
@@ -602,6 +602,284 @@ public final class AppConfig {
 
 	private boolean enableDirWatch = true;
 
+	/**
+	 * ファイルの最終更新日をキャッシュする時間(mSec)を取得する.<br>
+	 * 0以下の場合はキャッシュせず、常にファイルシステムに問い合わせる.<br>
+	 *
+	 * @return ファイルの最終更新日をキャッシュする時間(mSec)
+	 */
+	public long getFileLastModifiedCacheTTL() {
+		return fileLastModifiedCacheTTL;
+	}
+
+	public void setFileLastModifiedCacheTTL(long fileLastModifiedCacheTTL) {
+		this.fileLastModifiedCacheTTL = fileLastModifiedCacheTTL;
+	}
+
+	private long fileLastModifiedCacheTTL = 2 * 1000;
+
+	/**
+	 * キャラクターデータを開いたときに、パーツセットの画像を先読みする最大バイト数を取得する.<br>
+	 * 0以下の場合は先読みしない.<br>
+	 *
+	 * @return 先読みする最大バイト数
+	 */
+	public long getWarmUpCacheMemoryBudget() {
+		return warmUpCacheMemoryBudget;
+	}
+
+	public void setWarmUpCacheMemoryBudget(long warmUpCacheMemoryBudget) {
+		this.warmUpCacheMemoryBudget = warmUpCacheMemoryBudget;
+	}
+
+	private long warmUpCacheMemoryBudget = 64 * 1024 * 1024;
+
+	/**
+	 * ウィンドウごとに、画像の構築が終わったあとも保持しておく色変換済み画像の最大バイト数を取得する.<br>
+	 * 色変換済み画像は全ウィンドウで共有されており、この上限を超えた分は最近使われていない順に
+	 * ガベージコレクトの対象となる.<br>
+	 * 0以下の場合は、画像の構築ごとにすべてガベージコレクトの対象とする.<br>
+	 *
+	 * @return ウィンドウごとに保持する最大バイト数
+	 */
+	public long getImageCacheQuotaPerWindow() {
+		return imageCacheQuotaPerWindow;
+	}
+
+	public void setImageCacheQuotaPerWindow(long imageCacheQuotaPerWindow) {
+		this.imageCacheQuotaPerWindow = imageCacheQuotaPerWindow;
+	}
+
+	private long imageCacheQuotaPerWindow = 32 * 1024 * 1024;
+
+	/**
+	 * 画像の合成時に、上位のレイヤーで不透明に覆われている部分の描画を省略するか?<br>
+	 * 合成結果は変わらない.<br>
+	 *
+	 * @return 省略する場合はtrue
+	 */
+	public boolean isEnableOcclusionCulling() {
+		return enableOcclusionCulling;
+	}
+
+	public void setEnableOcclusionCulling(boolean enableOcclusionCulling) {
+		this.enableOcclusionCulling = enableOcclusionCulling;
+	}
+
+	private boolean enableOcclusionCulling = true;
+
+	/**
+	 * パーツ画像のPNGを、ImageIOを使わずに直接ARGB形式で読み込むか?<br>
+	 * 対応していない形式の場合は、この設定にかかわらずImageIOで読み込まれる.<br>
+	 *
+	 * @return 直接読み込む場合はtrue
+	 */
+	public boolean isEnableFastPNGDecoder() {
+		return enableFastPNGDecoder;
+	}
+
+	public void setEnableFastPNGDecoder(boolean enableFastPNGDecoder) {
+		this.enableFastPNGDecoder = enableFastPNGDecoder;
+	}
+
+	private boolean enableFastPNGDecoder = true;
+
+	/**
+	 * 画像の合成時に、キャッシュされていないパーツの読み込みと色変換を並列に行うか?<br>
+	 *
+	 * @return 並列に行う場合はtrue
+	 */
+	public boolean isEnableParallelImageLoading() {
+		return enableParallelImageLoading;
+	}
+
+	public void setEnableParallelImageLoading(boolean enableParallelImageLoading) {
+		this.enableParallelImageLoading = enableParallelImageLoading;
+	}
+
+	private boolean enableParallelImageLoading = true;
+
+	/**
+	 * プレビューを縮小表示している場合に、表示倍率にあわせて縮小して合成するか?<br>
+	 * 画像の保存やコピーなどでは、必要に応じて等倍で合成しなおされる.<br>
+	 *
+	 * @return 縮小して合成する場合はtrue
+	 */
+	public boolean isEnableReducedPreview() {
+		return enableReducedPreview;
+	}
+
+	public void setEnableReducedPreview(boolean enableReducedPreview) {
+		this.enableReducedPreview = enableReducedPreview;
+	}
+
+	private boolean enableReducedPreview = true;
+
+	/**
+	 * パーツのロード結果をキャラクターごとのカタログにキャッシュするか?<br>
+	 * キャッシュする場合、変更のないディレクトリは再走査されない.<br>
+	 *
+	 * @return キャッシュする場合はtrue
+	 */
+	public boolean isEnablePartsCatalog() {
+		return enablePartsCatalog;
+	}
+
+	public void setEnablePartsCatalog(boolean enablePartsCatalog) {
+		this.enablePartsCatalog = enablePartsCatalog;
+	}
+
+	private boolean enablePartsCatalog = true;
+
+	/**
+	 * ディレクトリの監視に、OSのファイル変更通知を使うか?<br>
+	 * 使えない実行環境やファイルシステムの場合は、ディレクトリの走査による監視となる.<br>
+	 * ネットワークドライブなどで変更が通知されない場合はfalseにする.<br>
+	 *
+	 * @return ファイル変更通知を使う場合はtrue
+	 */
+	public boolean isEnableNativeDirWatch() {
+		return enableNativeDirWatch;
+	}
+
+	public void setEnableNativeDirWatch(boolean enableNativeDirWatch) {
+		this.enableNativeDirWatch = enableNativeDirWatch;
+	}
+
+	private boolean enableNativeDirWatch = true;
+
+	/**
+	 * プロファイルの列挙時に、解析済みのプロファイルのカタログを使用するか?<br>
+	 * character.xmlが変更されていなければ、XMLを解析せずにカタログから復元する.<br>
+	 *
+	 * @return カタログを使用する場合はtrue
+	 */
+	public boolean isEnableProfileCatalog() {
+		return enableProfileCatalog;
+	}
+
+	public void setEnableProfileCatalog(boolean enableProfileCatalog) {
+		this.enableProfileCatalog = enableProfileCatalog;
+	}
+
+	private boolean enableProfileCatalog = true;
+
+	/**
+	 * お気に入りを索引だけ読み込み、パーツセットの内容は必要になったときに読み込むか?<br>
+	 * UTF-8以外で記述されたお気に入りなど、索引を作成できない場合はすべてを読み込む.<br>
+	 *
+	 * @return 必要になったときに読み込む場合はtrue
+	 */
+	public boolean isEnableLazyFavorites() {
+		return enableLazyFavorites;
+	}
+
+	public void setEnableLazyFavorites(boolean enableLazyFavorites) {
+		this.enableLazyFavorites = enableLazyFavorites;
+	}
+
+	private boolean enableLazyFavorites = true;
+
+	/**
+	 * お気に入りの変更を追記するジャーナルを、favorites.xmlに統合するレコード数.<br>
+	 * 0以下の場合はジャーナルを使わず、保存のたびにfavorites.xmlのすべてを書き込む.<br>
+	 *
+	 * @return レコード数
+	 */
+	public int getFavoritesJournalCompactThreshold() {
+		return favoritesJournalCompactThreshold;
+	}
+
+	public void setFavoritesJournalCompactThreshold(int favoritesJournalCompactThreshold) {
+		this.favoritesJournalCompactThreshold = favoritesJournalCompactThreshold;
+	}
+
+	private int favoritesJournalCompactThreshold = 100;
+
+	/**
+	 * プロファイル選択ダイアログの一覧に表示するサンプルピクチャのサムネイルの大きさ.<br>
+	 * 0以下の場合はサムネイルを表示しない.<br>
+	 *
+	 * @return サムネイルの最大の幅と高さ
+	 */
+	public int getProfileSelectorThumbnailSize() {
+		return profileSelectorThumbnailSize;
+	}
+
+	public void setProfileSelectorThumbnailSize(int profileSelectorThumbnailSize) {
+		this.profileSelectorThumbnailSize = profileSelectorThumbnailSize;
+	}
+
+	private int profileSelectorThumbnailSize = 48;
+
+	/**
+	 * プロファイルの列挙やパーツのロードに、利用可能であれば仮想スレッドを使うか?<br>
+	 * XMLの解析はCPU負荷が高く、仮想スレッドでは同時実行数に上限がなくなり、
+	 * スレッドごとのパーサーの再利用も効かなくなるため、既定では使わない.<br>
+	 * 使わない場合、もしくは仮想スレッドが利用できないJavaの場合は、論理CPU数のスレッドを使う.<br>
+	 *
+	 * @return 仮想スレッドを使う場合はtrue
+	 */
+	public boolean isEnableProfileLoadVirtualThreads() {
+		return enableProfileLoadVirtualThreads;
+	}
+
+	public void setEnableProfileLoadVirtualThreads(boolean enableProfileLoadVirtualThreads) {
+		this.enableProfileLoadVirtualThreads = enableProfileLoadVirtualThreads;
+	}
+
+	private boolean enableProfileLoadVirtualThreads = false;
+
+	/**
+	 * バックグラウンドで書き込むcharacter.xmlの、書き込み待ちの上限数.<br>
+	 * 上限に達した場合は保存の呼び出し元を待機させる.<br>
+	 * 0以下の場合はバックグラウンドでは書き込まず、保存の呼び出し元で書き込む.<br>
+	 *
+	 * @return 書き込み待ちの上限数
+	 */
+	public int getWriteBehindQueueSize() {
+		return writeBehindQueueSize;
+	}
+
+	public void setWriteBehindQueueSize(int writeBehindQueueSize) {
+		this.writeBehindQueueSize = writeBehindQueueSize;
+	}
+
+	private int writeBehindQueueSize = 8;
+
+	/**
+	 * character.xmlとfavorites.xmlを読み込むときに、XMLスキーマで検証するか?<br>
+	 * スキーマは最初に必要になったときに一度だけ読み込まれる.<br>
+	 *
+	 * @return 検証する場合はtrue
+	 */
+	public boolean isEnableXMLSchemaValidation() {
+		return enableXMLSchemaValidation;
+	}
+
+	public void setEnableXMLSchemaValidation(boolean enableXMLSchemaValidation) {
+		this.enableXMLSchemaValidation = enableXMLSchemaValidation;
+	}
+
+	private boolean enableXMLSchemaValidation = false;
+
+	/**
+	 * ワーキングセットをXMLと一緒にバイナリ形式のスナップショットとしても保存し、
+	 * 起動時にはスナップショットから復元するか?<br>
+	 * スナップショットがXMLと一致しない場合は、XMLから復元する.<br>
+	 *
+	 * @return スナップショットを使う場合はtrue
+	 */
+	public boolean isEnableWorkingSetSnapshot() {
+		return enableWorkingSetSnapshot;
+	}
+
+	public void setEnableWorkingSetSnapshot(boolean enableWorkingSetSnapshot) {
+		this.enableWorkingSetSnapshot = enableWorkingSetSnapshot;
+	}
+
+	private boolean enableWorkingSetSnapshot = true;
+
 	/**
 	 * ファイル転送に使うバッファサイズ.<br>
 	 *
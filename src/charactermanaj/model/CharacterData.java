@@ -2,6 +2,7 @@ package charactermanaj.model;
 
 import java.awt.Dimension;
 import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URI;
@@ -15,10 +16,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import charactermanaj.model.io.PartsDataLoader;
+import charactermanaj.model.io.ProfileLoadExecutors;
 
 /**
  * キャラクターデータ
@@ -145,6 +152,15 @@ public class CharacterData implements Serializable, PartsSpecResolver {
 	 */
 	private transient PartsDataLoader partsDataLoader;
 	
+	/**
+	 * 前回のロード時点でのパーツごとの画像ファイルの更新日時.<br>
+	 * リロード時に、更新日時が変わった画像ファイルをもつパーツを変更ありとみなすために用いる.<br>
+	 * ロードした時刻ではなく、ファイルの更新日時どうしを比較するため、
+	 * 他のウィンドウですでに反映済みの変更を再び変更ありとみなすことはない.<br>
+	 * (非シリアライズデータ、デシリアライズ時、もしくは一度もロードしていない場合はnull).<br>
+	 */
+	private transient Map<PartsIdentifier, Long> partsLastModified;
+	
 	/**
 	 * パーツイメージのセット.<br>
 	 * (キャラクターセットはパーツイメージをもったままシリアライズされることは想定していないが、可能ではある。)
@@ -774,16 +790,242 @@ public class CharacterData implements Serializable, PartsSpecResolver {
 	 * @return 変更があった場合はtrue、ない場合はfalse
 	 */
 	public boolean reloadPartsData() {
+		return !reloadPartsDataIncrementally().isEmpty();
+	}
+	
+	/**
+	 * パーツデータをリロードし、前回のロード結果との差分を返します.<br>
+	 * 変更のなかったカテゴリは、前回のロード結果のインスタンスがそのまま維持されます.<br>
+	 * まだ一度もロードしていない場合はIllegalStateException例外が発生します.<br>
+	 * @return 追加・削除・変更されたパーツ
+	 */
+	public PartsDataChangeSet reloadPartsDataIncrementally() {
 		if (partsDataLoader == null) {
 			throw new IllegalStateException("partsDataLoader is not set.");
 		}
 		// パーツデータのロード
+		Map<PartsCategory, Map<PartsIdentifier, PartsSpec>> newImages = loadAllPartsData(partsDataLoader);
+
+		// 前回のロード結果と比較する
+		PartsDataChangeSet changes = new PartsDataChangeSet();
+		HashMap<PartsCategory, Map<PartsIdentifier, PartsSpec>> mergedImages
+			= new HashMap<PartsCategory, Map<PartsIdentifier, PartsSpec>>();
+		for (Map.Entry<PartsCategory, Map<PartsIdentifier, PartsSpec>> entry : newImages.entrySet()) {
+			PartsCategory category = entry.getKey();
+			Map<PartsIdentifier, PartsSpec> oldPartsSpecs = images.get(category);
+			Map<PartsIdentifier, PartsSpec> newPartsSpecs = entry.getValue();
+			if (oldPartsSpecs != null
+					&& !diffPartsSpecs(oldPartsSpecs, newPartsSpecs, changes)) {
+				// 変更がなければ前回のものを維持する
+				mergedImages.put(category, oldPartsSpecs);
+			} else {
+				if (oldPartsSpecs == null) {
+					for (PartsIdentifier partsIdentifier : newPartsSpecs.keySet()) {
+						changes.addAdded(partsIdentifier);
+					}
+				}
+				mergedImages.put(category, newPartsSpecs);
+			}
+		}
+		for (Map.Entry<PartsCategory, Map<PartsIdentifier, PartsSpec>> entry : images.entrySet()) {
+			if (!newImages.containsKey(entry.getKey())) {
+				// なくなったカテゴリ
+				for (PartsSpec partsSpec : entry.getValue().values()) {
+					changes.addRemoved(partsSpec);
+				}
+			}
+		}
 		images.clear();
-		for (PartsCategory category : partsCategories.asList()) {
-			images.put(category, partsDataLoader.load(category));
+		images.putAll(mergedImages);
+
+		// 次回のリロードで比較するため、画像ファイルの更新日時を記録する
+		HashMap<PartsIdentifier, Long> lastModifiedMap = new HashMap<PartsIdentifier, Long>();
+		for (Map<PartsIdentifier, PartsSpec> partsSpecs : mergedImages.values()) {
+			for (Map.Entry<PartsIdentifier, PartsSpec> entry : partsSpecs.entrySet()) {
+				lastModifiedMap.put(entry.getKey(),
+						Long.valueOf(entry.getValue().getPartsFiles().lastModified()));
+			}
 		}
-		// NOTE: とりあえずパーツの変更を検査せず、常に変更ありにしておく。とりあえず実害ない。
-		return true;
+		partsLastModified = lastModifiedMap;
+
+		if (partsDataLoader instanceof Flushable) {
+			// ロード結果をキャッシュするローダーであれば、その内容を保存させる.
+			try {
+				((Flushable) partsDataLoader).flush();
+
+			} catch (IOException ex) {
+				logger.log(Level.WARNING, "parts data loader flushing failed.", ex);
+			}
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "reloadPartsData: " + changes);
+		}
+		return changes;
+	}
+	
+	/**
+	 * カテゴリの前回のロード結果と今回のロード結果を比較し、差分を登録する.<br>
+	 * 同じパーツであっても、表示名・カラーグループ・作者情報・バージョン・画像ファイルが異なるか、
+	 * 前回のロード時点から画像ファイルの更新日時が変わっていれば変更ありとみなす.<br>
+	 * @param oldPartsSpecs 前回のロード結果
+	 * @param newPartsSpecs 今回のロード結果
+	 * @param changes 差分の登録先
+	 * @return 差分があればtrue
+	 */
+	private boolean diffPartsSpecs(Map<PartsIdentifier, PartsSpec> oldPartsSpecs,
+			Map<PartsIdentifier, PartsSpec> newPartsSpecs,
+			PartsDataChangeSet changes) {
+		boolean changed = false;
+		for (Map.Entry<PartsIdentifier, PartsSpec> entry : newPartsSpecs.entrySet()) {
+			PartsSpec newPartsSpec = entry.getValue();
+			PartsSpec oldPartsSpec = oldPartsSpecs.get(entry.getKey());
+			if (oldPartsSpec == null) {
+				changes.addAdded(entry.getKey());
+				changed = true;
+
+			} else if (isModified(oldPartsSpec, newPartsSpec)) {
+				changes.addModified(oldPartsSpec, newPartsSpec);
+				changed = true;
+			}
+		}
+		for (Map.Entry<PartsIdentifier, PartsSpec> entry : oldPartsSpecs.entrySet()) {
+			if (!newPartsSpecs.containsKey(entry.getKey())) {
+				changes.addRemoved(entry.getValue());
+				changed = true;
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * パーツが変更されているか判定する.
+	 * @param oldPartsSpec 前回のパーツ設定
+	 * @param newPartsSpec 今回のパーツ設定
+	 * @return 変更されていればtrue
+	 */
+	private boolean isModified(PartsSpec oldPartsSpec, PartsSpec newPartsSpec) {
+		if (!equalsString(oldPartsSpec.getPartsIdentifier().getLocalizedPartsName(),
+				newPartsSpec.getPartsIdentifier().getLocalizedPartsName())
+				|| !ColorGroup.equals(oldPartsSpec.getColorGroup(), newPartsSpec.getColorGroup())
+				|| oldPartsSpec.getVersion() != newPartsSpec.getVersion()
+				|| !equalsString(oldPartsSpec.getDownloadURL(), newPartsSpec.getDownloadURL())) {
+			return true;
+		}
+
+		PartsAuthorInfo oldAuthorInfo = oldPartsSpec.getAuthorInfo();
+		PartsAuthorInfo newAuthorInfo = newPartsSpec.getAuthorInfo();
+		if ((oldAuthorInfo == null) != (newAuthorInfo == null)) {
+			return true;
+		}
+		if (oldAuthorInfo != null
+				&& (!equalsString(oldAuthorInfo.getAuthor(), newAuthorInfo.getAuthor())
+						|| !equalsString(oldAuthorInfo.getHomePage(), newAuthorInfo.getHomePage()))) {
+			return true;
+		}
+
+		if (!oldPartsSpec.getPartsFiles().equals(newPartsSpec.getPartsFiles())) {
+			return true;
+		}
+
+		if (partsLastModified != null) {
+			// 前回のロード時点から画像ファイルの更新日時が変わったか?
+			Long lastModified = partsLastModified.get(oldPartsSpec.getPartsIdentifier());
+			if (lastModified != null
+					&& lastModified.longValue() != newPartsSpec.getPartsFiles().lastModified()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean equalsString(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+	
+	/**
+	 * すべてのカテゴリのパーツデータをロードする.<br>
+	 * カテゴリごとのディレクトリの走査は並列に行われる.<br>
+	 * ファイル数の多いキャラクターデータでは、ディレクトリの走査にかかる時間の大半が
+	 * ファイルシステムへの問い合わせ待ちであるため、並列化により待ち時間を重ねることができる.<br>
+	 * 並列化には共有のスレッドプールを使い、まだ開始されていないカテゴリは呼び出し元のスレッドでロードする.<br>
+	 * @param partsDataLoader ローダー
+	 * @return カテゴリごとのパーツデータ
+	 */
+	private Map<PartsCategory, Map<PartsIdentifier, PartsSpec>> loadAllPartsData(
+			final PartsDataLoader partsDataLoader) {
+		List<PartsCategory> categories = partsCategories.asList();
+		Map<PartsCategory, Map<PartsIdentifier, PartsSpec>> results
+			= new HashMap<PartsCategory, Map<PartsIdentifier, PartsSpec>>();
+
+		int numOfProcessors = Runtime.getRuntime().availableProcessors();
+		int numOfThreads = Math.min(numOfProcessors, categories.size());
+		if (numOfThreads <= 1) {
+			for (PartsCategory category : categories) {
+				results.put(category, partsDataLoader.load(category));
+			}
+			return results;
+		}
+
+		ExecutorService executorSrv = ProfileLoadExecutors.getExecutor();
+		ArrayList<FutureTask<Map<PartsIdentifier, PartsSpec>>> futures
+			= new ArrayList<FutureTask<Map<PartsIdentifier, PartsSpec>>>();
+		try {
+			for (final PartsCategory category : categories) {
+				FutureTask<Map<PartsIdentifier, PartsSpec>> future
+					= new FutureTask<Map<PartsIdentifier, PartsSpec>>(
+						new Callable<Map<PartsIdentifier, PartsSpec>>() {
+					public Map<PartsIdentifier, PartsSpec> call() {
+						return partsDataLoader.load(category);
+					}
+				});
+				futures.add(future);
+				try {
+					executorSrv.execute(future);
+
+				} catch (RejectedExecutionException ex) {
+					// 受け付けられなかったものは、結果の取得時に自スレッドでロードする.
+					logger.log(Level.FINE, "parallel parts loading rejected.", ex);
+				}
+			}
+
+			int idx = 0;
+			for (PartsCategory category : categories) {
+				FutureTask<Map<PartsIdentifier, PartsSpec>> future = futures.get(idx++);
+				Map<PartsIdentifier, PartsSpec> partsSpecMap;
+				try {
+					// まだ開始されていなければ自スレッドでロードする.
+					// (共有のスレッドプールのスレッドから呼び出された場合でも、空きを待ち続けることはない.)
+					future.run();
+					partsSpecMap = future.get();
+
+				} catch (InterruptedException ex) {
+					// 割り込まれた場合でも、パーツデータが欠けないように自スレッドでロードする.
+					logger.log(Level.FINE, "parallel parts loading interrupted.", ex);
+					Thread.currentThread().interrupt();
+					future.cancel(false);
+					partsSpecMap = partsDataLoader.load(category);
+
+				} catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+				results.put(category, partsSpecMap);
+			}
+
+		} finally {
+			// 途中で失敗した場合は、まだ開始されていないものを取り消す.
+			for (FutureTask<Map<PartsIdentifier, PartsSpec>> future : futures) {
+				future.cancel(false);
+			}
+		}
+		return results;
 	}
 	
 	/**
@@ -825,6 +1067,7 @@ public class CharacterData implements Serializable, PartsSpecResolver {
 	 * IDおよび名前がないものは登録されず、falseを返します.<br>
 	 * パーツセットは、このキャラクター定義に定義されているカテゴリに正規化されます.<br>
 	 * 正規化された結果カテゴリが一つもなくなった場合は何も登録されず、falseを返します.<br>
+	 * (まだ内容が読み込まれていないパーツセットは、内容を確認せずに登録されます.)<br>
 	 * 登録された場合はtrueを返します.<br>
 	 * 同一のIDは上書きされます.<br>
 	 * @param partsSet
@@ -841,7 +1084,7 @@ public class CharacterData implements Serializable, PartsSpecResolver {
 			return false;
 		}
 		PartsSet compatiblePartsSet = partsSet.createCompatible(this);
-		if (compatiblePartsSet.isEmpty()) {
+		if (compatiblePartsSet.isLoaded() && compatiblePartsSet.isEmpty()) {
 			return false;
 		}
 		presets.put(compatiblePartsSet.getPartsSetId(), compatiblePartsSet);
@@ -12,12 +12,29 @@ public class CharacterDataChangeEvent extends EventObject {
 
 	private boolean reloadPartsAndFavorites;
 
+	private PartsDataChangeSet partsDataChanges;
+
 	public CharacterDataChangeEvent(Object src, CharacterData characterData,
 			boolean changeStructure, boolean reloadPartsAndFavorites) {
+		this(src, characterData, changeStructure, reloadPartsAndFavorites, null);
+	}
+
+	/**
+	 * パーツデータの変更内容を指定してイベントを構築する.
+	 * @param src 送信元
+	 * @param characterData キャラクターデータ
+	 * @param changeStructure 構造が変更された場合
+	 * @param reloadPartsAndFavorites パーツとお気に入りの再読み込みが必要な場合
+	 * @param partsDataChanges パーツデータの変更内容、なければnull
+	 */
+	public CharacterDataChangeEvent(Object src, CharacterData characterData,
+			boolean changeStructure, boolean reloadPartsAndFavorites,
+			PartsDataChangeSet partsDataChanges) {
 		super(src);
 		this.characterData = characterData;
 		this.changeStructure = changeStructure;
 		this.reloadPartsAndFavorites = reloadPartsAndFavorites;
+		this.partsDataChanges = partsDataChanges;
 	}
 
 	public CharacterData getCharacterData() {
@@ -31,4 +48,13 @@ public class CharacterDataChangeEvent extends EventObject {
 	public boolean isReloadPartsAndFavorites() {
 		return reloadPartsAndFavorites;
 	}
+
+	/**
+	 * 送信元でリロードしたパーツデータの変更内容を返す.<br>
+	 * パーツデータのリロードによるイベントでなければnull.<br>
+	 * @return 変更内容、またはnull
+	 */
+	public PartsDataChangeSet getPartsDataChanges() {
+		return partsDataChanges;
+	}
 }
@@ -33,6 +33,22 @@ public abstract class CharacterDataChangeObserver {
 		notifyCharacterDataChange(new CharacterDataChangeEvent(wnd, cd,
 				changeStructure, reloadPartsAndFavorites));
 	}
+
+	/**
+	 * パーツデータをリロードした結果の変更内容を通知する.<br>
+	 * 同じキャラクターデータを開いている他のウィンドウは、変更のあった部分だけを更新できる.<br>
+	 * @param wnd 送信元
+	 * @param cd キャラクターデータ
+	 * @param partsDataChanges 変更内容
+	 */
+	public void notifyPartsDataChange(Object wnd, CharacterData cd,
+			PartsDataChangeSet partsDataChanges) {
+		if (cd == null || partsDataChanges == null) {
+			throw new IllegalArgumentException();
+		}
+		notifyCharacterDataChange(new CharacterDataChangeEvent(wnd, cd,
+				false, false, partsDataChanges));
+	}
 }
 
 class CharacterDataChangeObserverImpl extends CharacterDataChangeObserver {
@@ -0,0 +1,172 @@
+package charactermanaj.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import charactermanaj.graphics.io.ImageResource;
+
+/**
+ * パーツデータのリロードによる変更内容.<br>
+ * カテゴリごとに、追加・削除・変更されたパーツ識別子を保持する.<br>
+ * 削除・変更されたパーツが使用していた画像リソースは、キャッシュの破棄対象として保持される.<br>
+ *
+ * @author seraphy
+ */
+public class PartsDataChangeSet implements Serializable {
+
+	private static final long serialVersionUID = 3260919215447371684L;
+
+	/**
+	 * カテゴリごとの追加されたパーツ
+	 */
+	private final LinkedHashMap<PartsCategory, Set<PartsIdentifier>> addedParts
+			= new LinkedHashMap<PartsCategory, Set<PartsIdentifier>>();
+
+	/**
+	 * カテゴリごとの削除されたパーツ
+	 */
+	private final LinkedHashMap<PartsCategory, Set<PartsIdentifier>> removedParts
+			= new LinkedHashMap<PartsCategory, Set<PartsIdentifier>>();
+
+	/**
+	 * カテゴリごとの変更されたパーツ
+	 */
+	private final LinkedHashMap<PartsCategory, Set<PartsIdentifier>> modifiedParts
+			= new LinkedHashMap<PartsCategory, Set<PartsIdentifier>>();
+
+	/**
+	 * 削除・変更されたパーツが使用していた画像リソース
+	 */
+	private final HashSet<ImageResource> staleImageResources = new HashSet<ImageResource>();
+
+	/**
+	 * 追加されたパーツを登録する.
+	 *
+	 * @param partsIdentifier
+	 *            パーツ識別子
+	 */
+	public void addAdded(PartsIdentifier partsIdentifier) {
+		add(addedParts, partsIdentifier);
+	}
+
+	/**
+	 * 削除されたパーツを登録する.
+	 *
+	 * @param partsSpec
+	 *            削除されたパーツ設定
+	 */
+	public void addRemoved(PartsSpec partsSpec) {
+		add(removedParts, partsSpec.getPartsIdentifier());
+		staleImageResources.addAll(partsSpec.getPartsFiles().values());
+	}
+
+	/**
+	 * 変更されたパーツを登録する.
+	 *
+	 * @param oldPartsSpec
+	 *            変更前のパーツ設定
+	 * @param newPartsSpec
+	 *            変更後のパーツ設定
+	 */
+	public void addModified(PartsSpec oldPartsSpec, PartsSpec newPartsSpec) {
+		add(modifiedParts, newPartsSpec.getPartsIdentifier());
+		staleImageResources.addAll(oldPartsSpec.getPartsFiles().values());
+	}
+
+	private static void add(Map<PartsCategory, Set<PartsIdentifier>> map,
+			PartsIdentifier partsIdentifier) {
+		PartsCategory category = partsIdentifier.getPartsCategory();
+		Set<PartsIdentifier> partsIdentifiers = map.get(category);
+		if (partsIdentifiers == null) {
+			partsIdentifiers = new HashSet<PartsIdentifier>();
+			map.put(category, partsIdentifiers);
+		}
+		partsIdentifiers.add(partsIdentifier);
+	}
+
+	/**
+	 * 変更がないか?
+	 *
+	 * @return 追加・削除・変更のいずれもなければtrue
+	 */
+	public boolean isEmpty() {
+		return addedParts.isEmpty() && removedParts.isEmpty()
+				&& modifiedParts.isEmpty();
+	}
+
+	/**
+	 * 追加・削除・変更のいずれかがあったカテゴリを返す.
+	 *
+	 * @return 変更のあったカテゴリ
+	 */
+	public Set<PartsCategory> getChangedCategories() {
+		HashSet<PartsCategory> categories = new HashSet<PartsCategory>();
+		categories.addAll(addedParts.keySet());
+		categories.addAll(removedParts.keySet());
+		categories.addAll(modifiedParts.keySet());
+		return categories;
+	}
+
+	/**
+	 * カテゴリの追加されたパーツを返す.
+	 *
+	 * @param category
+	 *            カテゴリ
+	 * @return 追加されたパーツ、なければ空
+	 */
+	public Set<PartsIdentifier> getAddedParts(PartsCategory category) {
+		return get(addedParts, category);
+	}
+
+	/**
+	 * カテゴリの削除されたパーツを返す.
+	 *
+	 * @param category
+	 *            カテゴリ
+	 * @return 削除されたパーツ、なければ空
+	 */
+	public Set<PartsIdentifier> getRemovedParts(PartsCategory category) {
+		return get(removedParts, category);
+	}
+
+	/**
+	 * カテゴリの変更されたパーツを返す.<br>
+	 * 画像ファイルの更新、パーツ管理情報による表示名や作者情報の変更などが含まれる.<br>
+	 *
+	 * @param category
+	 *            カテゴリ
+	 * @return 変更されたパーツ、なければ空
+	 */
+	public Set<PartsIdentifier> getModifiedParts(PartsCategory category) {
+		return get(modifiedParts, category);
+	}
+
+	private static Set<PartsIdentifier> get(
+			Map<PartsCategory, Set<PartsIdentifier>> map, PartsCategory category) {
+		Set<PartsIdentifier> partsIdentifiers = map.get(category);
+		if (partsIdentifiers == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(partsIdentifiers);
+	}
+
+	/**
+	 * 削除・変更されたパーツが使用していた画像リソースを返す.<br>
+	 * これらのリソースのキャッシュは、もう使われないか古くなっている.<br>
+	 *
+	 * @return 画像リソース
+	 */
+	public Set<ImageResource> getStaleImageResources() {
+		return Collections.unmodifiableSet(staleImageResources);
+	}
+
+	@Override
+	public String toString() {
+		return "PartsDataChangeSet(added=" + addedParts + ", removed="
+				+ removedParts + ", modified=" + modifiedParts + ")";
+	}
+}
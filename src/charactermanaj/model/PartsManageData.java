@@ -162,6 +162,13 @@ public class PartsManageData extends AbstractCollection<PartsManageData.PartsKey
 	 */
 	private HashMap<PartsKey, PartsVersionInfo> partsVersionInfoMap = new HashMap<PartsKey, PartsVersionInfo>();
 
+	/**
+	 * パーツ名(ID)と、それに一致する登録順のパーツキー.<br>
+	 * カテゴリを無視してパーツ名だけで検索する場合に、全件を走査しないようにするための索引.<br>
+	 * 各マップのキーと同期して保持される.<br>
+	 */
+	private HashMap<String, ArrayList<PartsKey>> partsNameIndex = new HashMap<String, ArrayList<PartsKey>>();
+
 
 	/**
 	 * すべてクリアする.<br>
@@ -171,6 +178,7 @@ public class PartsManageData extends AbstractCollection<PartsManageData.PartsKey
 		partsAuthorInfoMap.clear();
 		partsLocalizedNameMap.clear();
 		partsVersionInfoMap.clear();
+		partsNameIndex.clear();
 	}
 	
 	/**
@@ -189,10 +197,53 @@ public class PartsManageData extends AbstractCollection<PartsManageData.PartsKey
 		if (partsKey == null) {
 			throw new IllegalArgumentException();
 		}
+		if (!partsAuthorInfoMap.containsKey(partsKey)) {
+			ArrayList<PartsKey> partsKeys = partsNameIndex.get(partsKey.getPartsName());
+			if (partsKeys == null) {
+				partsKeys = new ArrayList<PartsKey>(1);
+				partsNameIndex.put(partsKey.getPartsName(), partsKeys);
+			}
+			partsKeys.add(partsKey);
+		}
 		partsAuthorInfoMap.put(partsKey, partsAuthorInfo);
 		partsLocalizedNameMap.put(partsKey, localizedName);
 		partsVersionInfoMap.put(partsKey, versionInfo);
 	}
+
+	/**
+	 * パーツキーと、それに関連づけられた各種情報を削除する.<br>
+	 * 
+	 * @param partsKey
+	 *            パーツキー
+	 */
+	private void removePartsInfo(PartsKey partsKey) {
+		partsAuthorInfoMap.remove(partsKey);
+		partsLocalizedNameMap.remove(partsKey);
+		partsVersionInfoMap.remove(partsKey);
+		ArrayList<PartsKey> partsKeys = partsNameIndex.get(partsKey.getPartsName());
+		if (partsKeys != null) {
+			partsKeys.remove(partsKey);
+			if (partsKeys.isEmpty()) {
+				partsNameIndex.remove(partsKey.getPartsName());
+			}
+		}
+	}
+
+	/**
+	 * カテゴリを無視して、パーツ名(ID)の一致するパーツキーを返す.<br>
+	 * 複数ある場合は、最初に登録されたものを返す.<br>
+	 * 
+	 * @param partsName
+	 *            パーツ名(ID)
+	 * @return パーツキー、該当がなければnull
+	 */
+	private PartsKey findPartsKeyByName(String partsName) {
+		ArrayList<PartsKey> partsKeys = partsNameIndex.get(partsName);
+		if (partsKeys == null || partsKeys.isEmpty()) {
+			return null;
+		}
+		return partsKeys.get(0);
+	}
 	
 	/**
 	 * パーツキーを指定して該当する作者情報を取得する.<br>
@@ -208,12 +259,9 @@ public class PartsManageData extends AbstractCollection<PartsManageData.PartsKey
 		}
 		PartsAuthorInfo authorInfo = partsAuthorInfoMap.get(partsKey);
 		if (authorInfo == null) {
-			for (Map.Entry<PartsKey, PartsAuthorInfo> entry : partsAuthorInfoMap.entrySet()) {
-				PartsKey key = entry.getKey();
-				if (key.getPartsName().equals(partsKey.getPartsName())) {
-					authorInfo = entry.getValue();
-					break;
-				}
+			PartsKey key = findPartsKeyByName(partsKey.getPartsName());
+			if (key != null) {
+				authorInfo = partsAuthorInfoMap.get(key);
 			}
 		}
 		return authorInfo;
@@ -248,12 +296,9 @@ public class PartsManageData extends AbstractCollection<PartsManageData.PartsKey
 		}
 		PartsVersionInfo versionInfo = partsVersionInfoMap.get(partsKey);
 		if (versionInfo == null) {
-			for (Map.Entry<PartsKey, PartsVersionInfo> entry : partsVersionInfoMap.entrySet()) {
-				PartsKey key = entry.getKey();
-				if (key.getPartsName().equals(partsKey.getPartsName())) {
-					versionInfo = entry.getValue();
-					break;
-				}
+			PartsKey key = findPartsKeyByName(partsKey.getPartsName());
+			if (key != null) {
+				versionInfo = partsVersionInfoMap.get(key);
 			}
 		}
 		return versionInfo;
@@ -273,12 +318,9 @@ public class PartsManageData extends AbstractCollection<PartsManageData.PartsKey
 		}
 		String localizedName = partsLocalizedNameMap.get(partsKey);
 		if (localizedName == null) {
-			for (Map.Entry<PartsKey, String> entry : partsLocalizedNameMap.entrySet()) {
-				PartsKey key = entry.getKey();
-				if (key.getPartsName().equals(partsKey.getPartsName())) {
-					localizedName = entry.getValue();
-					break;
-				}
+			PartsKey key = findPartsKeyByName(partsKey.getPartsName());
+			if (key != null) {
+				localizedName = partsLocalizedNameMap.get(key);
 			}
 		}
 		return localizedName;
@@ -360,7 +402,30 @@ public class PartsManageData extends AbstractCollection<PartsManageData.PartsKey
 	
 	@Override
 	public Iterator<PartsKey> iterator() {
-		return partsAuthorInfoMap.keySet().iterator();
+		final Iterator<PartsKey> ite = partsAuthorInfoMap.keySet().iterator();
+		return new Iterator<PartsKey>() {
+
+			private PartsKey current;
+
+			public boolean hasNext() {
+				return ite.hasNext();
+			}
+
+			public PartsKey next() {
+				current = ite.next();
+				return current;
+			}
+
+			public void remove() {
+				if (current == null) {
+					throw new IllegalStateException();
+				}
+				// 索引と各マップを同期させるため、すべてから削除する.
+				ite.remove();
+				removePartsInfo(current);
+				current = null;
+			}
+		};
 	}
 	
 	@Override
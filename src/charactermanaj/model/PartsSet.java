@@ -1,6 +1,8 @@
 package charactermanaj.model;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.ArrayList;
@@ -10,11 +12,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * パーツセット.<br>
  * 各カテゴリの選択パーツと、そのパーツの色情報、および背景色をセットにしたもの.<br>
  * 保存する必要がなければIDおよび表示名は使用されないため、nullとなりえる.<br>
+ * ローダーを指定して構築した場合は、IDと表示名以外の内容は最初にアクセスされたときに読み込まれる.<br>
  * 
  * @author seraphy
  * 
@@ -26,6 +31,11 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	 */
 	private static final long serialVersionUID = 5972528889825451761L;
 
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(PartsSet.class.getName());
+
 	/**
 	 * PartsSet用のデフォルトのコンパレータ.<br>
 	 * 名前順、ID順にソートする.<br>
@@ -83,6 +93,22 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	 */
 	private HashMap<PartsIdentifier, PartsColorInfo> partsColorInfoMap = new HashMap<PartsIdentifier, PartsColorInfo>();
 
+	/**
+	 * 内容を読み込むローダー、読み込み済みであればnull
+	 */
+	private transient PartsSetLoader loader;
+
+	/**
+	 * 読み込んだ内容のカテゴリを再生するためのリゾルバ、なければnull
+	 */
+	private transient PartsCategoryResolver loaderResolver;
+
+	/**
+	 * ローダーからの読み込みに失敗した場合の例外、失敗していなければnull.<br>
+	 * 失敗した場合もローダーは保持され、読み込み済みとはみなされない.<br>
+	 */
+	private transient IOException loadFailure;
+
 	/**
 	 * 無名、空のパーツセットを作成する.
 	 */
@@ -105,6 +131,28 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 		this.localizedName = localizedName;
 		this.presetParts = presetParts;
 	}
+
+	/**
+	 * 内容を後から読み込む、名前つきパーツセットを作成する.<br>
+	 * パーツ構成、カラー情報、背景色、アフィン変換パラメータのいずれかに最初にアクセスしたときに、
+	 * ローダーから内容を読み込む.<br>
+	 * 
+	 * @param partsSetId
+	 *            パーツセットID
+	 * @param localizedName
+	 *            表示名
+	 * @param presetParts
+	 *            プリセットフラグ
+	 * @param loader
+	 *            内容を読み込むローダー
+	 */
+	public PartsSet(String partsSetId, String localizedName, boolean presetParts, PartsSetLoader loader) {
+		this(partsSetId, localizedName, presetParts);
+		if (loader == null) {
+			throw new IllegalArgumentException();
+		}
+		this.loader = loader;
+	}
 	
 	/**
 	 * パーツセットをディープコピーする.<br>
@@ -123,6 +171,16 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 		this.partsSetId = org.partsSetId;
 		this.localizedName = org.localizedName;
 		this.presetParts = org.presetParts;
+
+		synchronized (org) {
+			if (org.loader != null) {
+				// まだ読み込まれていなければ、読み込みを共有するコピーとする.
+				this.loader = org.loader;
+				this.loaderResolver = (resolver != null) ? resolver : org.loaderResolver;
+				return;
+			}
+		}
+
 		this.bgColor = org.bgColor;
 		this.affineTransformParameter = org.affineTransformParameter == null ? null : org.affineTransformParameter.clone();
 		
@@ -213,6 +271,8 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 			// 双方のIDがnullもしくは、同一インスタンスであるか、ID文字列が等値である場合
 			if (partsSetId == obj.partsSetId || (partsSetId != null && partsSetId.equals(obj.partsSetId))) {
 				// AbstractMapのequalsでパーツの構成物を比較する.
+				ensureLoaded();
+				obj.ensureLoaded();
 				if (super.equals(obj)) {
 					// カラー定義が等しいか比較する.
 					if (partsColorInfoMap.equals(obj.partsColorInfoMap)) {
@@ -246,6 +306,7 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	}
 	
 	public void setBgColor(Color bgColor) {
+		ensureLoaded();
 		this.bgColor = bgColor;
 	}
 
@@ -256,6 +317,7 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	 * @return バックグラウンドカラー、もしくはnull
 	 */
 	public Color getBgColor() {
+		ensureLoaded();
 		return bgColor;
 	}
 
@@ -271,6 +333,7 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 		if (affineTransformParameter != null && !(affineTransformParameter.length == 4 || affineTransformParameter.length == 6)) {
 			throw new IllegalArgumentException("affineTransformParameter invalid length.");
 		}
+		ensureLoaded();
 		this.affineTransformParameter = affineTransformParameter == null ? null : affineTransformParameter.clone();
 	}
 	
@@ -281,6 +344,7 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	 * @return アフィン変換用のパラメータ、またはnull
 	 */
 	public double[] getAffineTransformParameter() {
+		ensureLoaded();
 		return affineTransformParameter == null ? null : affineTransformParameter.clone();
 	}
 	
@@ -317,6 +381,7 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	 */
 	@Override
 	public Set<java.util.Map.Entry<PartsCategory, List<PartsIdentifier>>> entrySet() {
+		ensureLoaded();
 		return parts.entrySet();
 	}
 	
@@ -329,6 +394,7 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	 * @return カラー情報、もしくはnull
 	 */
 	public PartsColorInfo getColorInfo(PartsIdentifier partsIdentifier) {
+		ensureLoaded();
 		PartsColorInfo partsColorInfo = partsColorInfoMap.get(partsIdentifier);
 		return partsColorInfo == null ? null : partsColorInfo.clone();
 	}
@@ -350,6 +416,7 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 		if (category == null) {
 			throw new IllegalArgumentException();
 		}
+		ensureLoaded();
 		List<PartsIdentifier> partsIdentifiers = parts.get(category);
 		if (partsIdentifiers == null) {
 			partsIdentifiers = new ArrayList<PartsIdentifier>();
@@ -367,8 +434,85 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 	 * すべてのパーツのカラー情報を除去する.<br>
 	 */
 	public void removeColorInfo() {
+		ensureLoaded();
 		partsColorInfoMap.clear();
 	}
+
+	/**
+	 * 内容が読み込み済みであるか?<br>
+	 * ローダーを指定せずに構築したものは常に読み込み済みである.<br>
+	 * 読み込みに失敗したものは読み込み済みとはみなさない.<br>
+	 * 
+	 * @return 読み込み済みであればtrue
+	 */
+	public synchronized boolean isLoaded() {
+		return loader == null;
+	}
+
+	/**
+	 * まだ読み込まれていなければ、ローダーから内容を読み込む.<br>
+	 * 読み込みに失敗した場合は空のパーツセットとして振る舞うが、ローダーは保持され、
+	 * 読み込み済みとはみなされない.<br>
+	 * 一度失敗したものは、{@link #load()}が呼び出されるまで再試行しない.<br>
+	 */
+	public synchronized void ensureLoaded() {
+		if (loader == null || loadFailure != null) {
+			return;
+		}
+		try {
+			loadFromLoader();
+
+		} catch (IOException ex) {
+			logger.log(Level.WARNING, "partsset loading failed. id=" + partsSetId, ex);
+		}
+	}
+
+	/**
+	 * まだ読み込まれていなければ、ローダーから内容を読み込む.<br>
+	 * 以前に失敗していれば再試行し、失敗した場合は例外を送出する.<br>
+	 * 内容を保存する前に呼び出し、読み込めなかったものを空のパーツセットとして保存しないようにするために用いる.<br>
+	 * 
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	public synchronized void load() throws IOException {
+		if (loader == null) {
+			return;
+		}
+		loadFromLoader();
+	}
+
+	/**
+	 * ローダーから内容を読み込む.<br>
+	 * 成功した場合のみローダーを破棄する.<br>
+	 * 
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	private void loadFromLoader() throws IOException {
+		try {
+			PartsSet loaded = loader.load();
+			if (loaderResolver != null) {
+				loaded = loaded.createCompatible(loaderResolver);
+			}
+			bgColor = loaded.bgColor;
+			affineTransformParameter = loaded.affineTransformParameter;
+			parts = loaded.parts;
+			partsColorInfoMap = loaded.partsColorInfoMap;
+			loader = null;
+			loaderResolver = null;
+			loadFailure = null;
+
+		} catch (IOException ex) {
+			loadFailure = ex;
+			throw ex;
+		}
+	}
+
+	private void writeObject(ObjectOutputStream stream) throws IOException {
+		load();
+		stream.defaultWriteObject();
+	}
 	
 	/**
 	 * パーツセットが構造的に一致するか検証します.<br>
@@ -482,6 +626,10 @@ public final class PartsSet extends AbstractMap<PartsCategory, List<PartsIdentif
 		buf.append("partsSetId: " + partsSetId + ", ");
 		buf.append("localizedName: " + localizedName + ", ");
 		buf.append("presetFlg: " + presetParts + ", ");
+		if (!isLoaded()) {
+			buf.append("(not loaded))");
+			return buf.toString();
+		}
 		buf.append("background-color: " + bgColor + ", ");
 		buf.append("affin-trans-param: " + Arrays.toString(affineTransformParameter) + ", ");
 		buf.append("parts: " + parts + ", ");
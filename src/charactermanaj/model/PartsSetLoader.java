@@ -0,0 +1,23 @@
+package charactermanaj.model;
+
+import java.io.IOException;
+
+/**
+ * パーツセットの内容を必要になった時点で読み込むためのローダー.<br>
+ * IDと表示名だけをもつパーツセットに設定され、パーツ構成などの内容に最初にアクセスしたときに呼び出される.<br>
+ *
+ * @author seraphy
+ */
+public interface PartsSetLoader {
+
+	/**
+	 * パーツセットの内容を読み込む.<br>
+	 * 同じローダーを共有するコピーからも呼び出されるため、呼び出しごとに新しいインスタンスを返すこと.<br>
+	 *
+	 * @return 読み込まれたパーツセット
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	PartsSet load() throws IOException;
+
+}
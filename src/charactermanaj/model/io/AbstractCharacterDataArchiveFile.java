@@ -4,6 +4,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -12,7 +13,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -680,9 +687,11 @@ public abstract class AbstractCharacterDataArchiveFile
 	 *            新規インポート用であるか?(新規でない場合は引数で指定したキャラクターセットと同じパーツは読み込まれない).
 	 *            (アーカイブファイルからの読み込みでは無視される)
 	 * @return パーツイメージコンテンツのコレクション、なければ空
+	 * @throws IOException
+	 *             読み込み中に割り込まれた場合
 	 */
 	public Collection<PartsImageContent> getPartsImageContents(
-			CharacterData characterData, boolean newly) {
+			CharacterData characterData, boolean newly) throws IOException {
 		// コンテンツルートからの絶対位置指定でパーツイメージを取得する.
 		Collection<PartsImageContent> results = getPartsImageContentsStrict(characterData);
 		if (results.isEmpty()) {
@@ -698,9 +707,11 @@ public abstract class AbstractCharacterDataArchiveFile
 	 * @param インポート先のキャラクターデータ
 	 *            、フォルダ名などを判別するため。nullの場合はディレクトリなしとみなす.<br>
 	 * @return パーツイメージコンテンツのコレクション、なければ空
+	 * @throws IOException
+	 *             読み込み中に割り込まれた場合
 	 */
 	protected Collection<PartsImageContent> getPartsImageContentsStrict(
-			CharacterData characterData) {
+			CharacterData characterData) throws IOException {
 		final Map<String, Collection<CategoryLayerPair>> layerDirMap = getLayerDirs(
 				characterData, true);
 
@@ -727,9 +738,11 @@ public abstract class AbstractCharacterDataArchiveFile
 	 * @param インポート先のキャラクターデータ
 	 *            、フォルダ名などを判別するため。nullの場合はディレクトリなしとみなす.<br>
 	 * @return パーツイメージコンテンツのコレクション、なければ空
+	 * @throws IOException
+	 *             読み込み中に割り込まれた場合
 	 */
 	protected Collection<PartsImageContent> getPartsImageContentsLazy(
-			CharacterData characterData) {
+			CharacterData characterData) throws IOException {
 		final Map<String, Collection<CategoryLayerPair>> layerDirMap = getLayerDirs(
 				characterData, false);
 
@@ -780,14 +793,17 @@ public abstract class AbstractCharacterDataArchiveFile
 	 * @param strategy
 	 *            ディレクトリが売れ入れ可能であるか判断するストラテジー
 	 * @return パーツイメージコンテンツのコレクション、なければ空
+	 * @throws IOException
+	 *             読み込み中に割り込まれた場合
 	 */
 	protected Collection<PartsImageContent> getPartsImageContents(
-			CategoryLayerPairResolveStrategy strategy) {
+			CategoryLayerPairResolveStrategy strategy) throws IOException {
 		if (strategy == null) {
 			throw new IllegalArgumentException();
 		}
 
-		ArrayList<PartsImageContent> results = new ArrayList<PartsImageContent>();
+		// パーツイメージの候補となるエントリを抽出する
+		ArrayList<PartsImageCandidate> candidates = new ArrayList<PartsImageCandidate>();
 		for (Map.Entry<String, FileContent> entry : entries.entrySet()) {
 			String name = entry.getKey();
 			FileContent fileContent = entry.getValue();
@@ -814,28 +830,150 @@ public abstract class AbstractCharacterDataArchiveFile
 				continue;
 			}
 
-			// PNGファイルヘッダの取得と確認
-			PNGFileImageHeader pngFileHeader = readPNGFileHeader(fileContent);
-			if (pngFileHeader == null) {
-				// PNGファイルとして不正なものは無視する.
-				logger.log(Level.WARNING, "invalid png: " + name);
-				continue;
-			}
-
 			// パーツ名(拡張子を除いたもの)
 			String partsName;
 			int extpos = lastName.lastIndexOf('.');
 			partsName = lastName.substring(0, extpos);
 
+			candidates.add(new PartsImageCandidate(name, fileContent,
+					categoryLayerPairs, lastName, partsName));
+		}
+
+		// PNGファイルヘッダをまとめて取得する
+		ArrayList<FileContent> fileContents = new ArrayList<FileContent>(candidates.size());
+		for (PartsImageCandidate candidate : candidates) {
+			fileContents.add(candidate.fileContent);
+		}
+		List<PNGFileImageHeader> pngFileHeaders = readPNGFileHeaders(fileContents);
+
+		ArrayList<PartsImageContent> results = new ArrayList<PartsImageContent>();
+		int idx = 0;
+		for (PartsImageCandidate candidate : candidates) {
+			PNGFileImageHeader pngFileHeader = pngFileHeaders.get(idx++);
+			if (pngFileHeader == null) {
+				// PNGファイルとして不正なものは無視する.
+				logger.log(Level.WARNING, "invalid png: " + candidate.name);
+				continue;
+			}
+
 			PartsImageContent partsImageContent = new PartsImageContent(
-					fileContent, categoryLayerPairs, lastName, partsName,
-					pngFileHeader);
+					candidate.fileContent, candidate.categoryLayerPairs,
+					candidate.lastName, candidate.partsName, pngFileHeader);
 
 			results.add(partsImageContent);
 		}
 		return results;
 	}
 
+	/**
+	 * パーツイメージの候補となるエントリ.<br>
+	 * PNGヘッダを読み込む前の情報を保持する.<br>
+	 */
+	private static final class PartsImageCandidate {
+
+		final String name;
+
+		final FileContent fileContent;
+
+		final Collection<CategoryLayerPair> categoryLayerPairs;
+
+		final String lastName;
+
+		final String partsName;
+
+		PartsImageCandidate(String name, FileContent fileContent,
+				Collection<CategoryLayerPair> categoryLayerPairs,
+				String lastName, String partsName) {
+			this.name = name;
+			this.fileContent = fileContent;
+			this.categoryLayerPairs = categoryLayerPairs;
+			this.lastName = lastName;
+			this.partsName = partsName;
+		}
+	}
+
+	/**
+	 * 複数のファイルのPNGヘッダ情報を並列に読み込みます.<br>
+	 * 結果は引数と同じ順序で返され、PNGでないか読み込みに失敗したものはnullとなります.<br>
+	 * ヘッダの読み込みは最初のイメージデータ(IDAT)の手前で打ち切られます.<br>
+	 * 並列化には共有のスレッドプールを使い、まだ開始されていないものは呼び出し元のスレッドで読み込みます.<br>
+	 * 
+	 * @param fileContents
+	 *            画像ファイルのリスト
+	 * @return PNGヘッダ情報、またはnullのリスト
+	 * @throws InterruptedIOException
+	 *             読み込みの完了を待機中に割り込まれた場合
+	 */
+	public List<PNGFileImageHeader> readPNGFileHeaders(
+			List<? extends FileContent> fileContents) throws InterruptedIOException {
+		if (fileContents == null) {
+			throw new IllegalArgumentException();
+		}
+		ArrayList<PNGFileImageHeader> results = new ArrayList<PNGFileImageHeader>(
+				fileContents.size());
+		if (fileContents.size() <= 1) {
+			for (FileContent fileContent : fileContents) {
+				results.add(readPNGFileHeader(fileContent));
+			}
+			return results;
+		}
+
+		// 共有のスレッドプールで同時実行させる
+		ExecutorService executorSrv = ProfileLoadExecutors.getExecutor();
+		ArrayList<FutureTask<PNGFileImageHeader>> futures = new ArrayList<FutureTask<PNGFileImageHeader>>(
+				fileContents.size());
+		try {
+			for (final FileContent fileContent : fileContents) {
+				FutureTask<PNGFileImageHeader> future = new FutureTask<PNGFileImageHeader>(
+						new Callable<PNGFileImageHeader>() {
+							public PNGFileImageHeader call() {
+								return readPNGFileHeader(fileContent);
+							}
+						});
+				futures.add(future);
+				try {
+					executorSrv.execute(future);
+
+				} catch (RejectedExecutionException ex) {
+					// 受け付けられなかったものは、結果の取得時に自スレッドで読み込む.
+					logger.log(Level.FINE, "parallel png header loading rejected.", ex);
+				}
+			}
+			for (FutureTask<PNGFileImageHeader> future : futures) {
+				PNGFileImageHeader pngFileHeader;
+				try {
+					if (Thread.currentThread().isInterrupted()) {
+						throw new InterruptedException();
+					}
+					// まだ開始されていなければ自スレッドで読み込む.
+					future.run();
+					pngFileHeader = future.get();
+
+				} catch (InterruptedException ex) {
+					// 中断された場合は残りを読み込まずに打ち切る.
+					// (結果が欠けたまま不正なPNGとして扱われないように、呼び出し元に中断を通知する.)
+					Thread.currentThread().interrupt();
+					InterruptedIOException ex2 = new InterruptedIOException(
+							"png header loading interrupted.");
+					ex2.initCause(ex);
+					throw ex2;
+
+				} catch (ExecutionException ex) {
+					logger.log(Level.WARNING, "not png header.", ex.getCause());
+					pngFileHeader = null;
+				}
+				results.add(pngFileHeader);
+			}
+
+		} finally {
+			// 中断などで残っているタスクがあれば破棄する.
+			for (FutureTask<PNGFileImageHeader> future : futures) {
+				future.cancel(false);
+			}
+		}
+		return results;
+	}
+
 	/**
 	 * PNGファイルとしてファイルを読み込みPNGヘッダ情報を返します.<br>
 	 * PNGでないか、ファイルの読み込みに失敗した場合はnullを返します.<br>
@@ -851,7 +989,9 @@ public abstract class AbstractCharacterDataArchiveFile
 		try {
 			InputStream is = fileContent.openStream();
 			try {
-				pngFileHeader = pngHeaderReader.readHeader(is);
+				// パーツの取り込みにはサイズなどのヘッダだけが必要であるため、
+				// イメージデータに到達した時点で読み込みを打ち切る.
+				pngFileHeader = pngHeaderReader.readHeader(is, true);
 			} finally {
 				is.close();
 			}
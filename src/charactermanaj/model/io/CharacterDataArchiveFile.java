@@ -94,8 +94,9 @@ public interface CharacterDataArchiveFile {
 	 * @param characterData インポート先のキャラクターデータ、フォルダ名などを判別するため。nullの場合は空のマップを返す.<br>
 	 * @param newly 新規インポート用であるか?(新規でない場合は引数で指定したキャラクターセットと同じパーツは読み込まれない)
 	 * @return パーツイメージコンテンツのコレクション、なければ空
+	 * @throws IOException 読み込み中に割り込まれた場合
 	 */
-	Collection<PartsImageContent> getPartsImageContents(CharacterData characterData, boolean newly);
+	Collection<PartsImageContent> getPartsImageContents(CharacterData characterData, boolean newly) throws IOException;
 	
 	/**
 	 * アーカイブに含まれるparts-info.xmlを読み込み返す.<br>
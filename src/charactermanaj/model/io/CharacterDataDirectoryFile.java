@@ -82,7 +82,7 @@ public class CharacterDataDirectoryFile extends AbstractCharacterDataArchiveFile
 	
 	@Override
 	public Collection<PartsImageContent> getPartsImageContents(
-			CharacterData characterData, boolean newly) {
+			CharacterData characterData, boolean newly) throws IOException {
 		if (!newly && isOverlapped(characterData)) {
 			// 既存のプロファイルへのインポートで指定されたインポートもととなるディレクトリが
 			// 既存のプロファイルのディレクトリと重なっていれば自分自身のインポートであるとして
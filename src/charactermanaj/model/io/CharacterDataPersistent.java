@@ -2,6 +2,7 @@ package charactermanaj.model.io;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
@@ -9,23 +10,21 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,12 +37,17 @@ import charactermanaj.graphics.io.ImageSaveHelper;
 import charactermanaj.graphics.io.LoadedImage;
 import charactermanaj.model.AppConfig;
 import charactermanaj.model.CharacterData;
+import charactermanaj.model.IndependentPartsSetInfo;
+import charactermanaj.model.IndependentPartsSetInfoList;
 import charactermanaj.model.Layer;
 import charactermanaj.model.PartsCategory;
+import charactermanaj.model.PartsSet;
+import charactermanaj.model.PartsSetLoader;
 import charactermanaj.model.io.CharacterDataDefaultProvider.DefaultCharacterDataVersion;
 import charactermanaj.util.DirectoryConfig;
 import charactermanaj.util.FileNameNormalizer;
 import charactermanaj.util.FileUserData;
+import charactermanaj.util.NamedThreadFactory;
 import charactermanaj.util.UserData;
 
 public class CharacterDataPersistent {
@@ -67,7 +71,23 @@ public class CharacterDataPersistent {
 	/**
 	 * キャラクターデータを格納したXMLのリーダー
 	 */
-	private final CharacterDataXMLReader characterDataXmlReader = new CharacterDataXMLReader();
+	private final CharacterDataXMLStreamingReader characterDataXmlReader = new CharacterDataXMLStreamingReader();
+
+	/**
+	 * お気に入りのファイルごとの索引
+	 */
+	private final HashMap<File, FavoritesXMLIndex> favoritesIndexes = new HashMap<File, FavoritesXMLIndex>();
+
+	/**
+	 * お気に入りのファイルごとのジャーナル
+	 */
+	private final HashMap<File, FavoritesJournal> favoritesJournals = new HashMap<File, FavoritesJournal>();
+
+	/**
+	 * お気に入りのジャーナルを統合するスレッド
+	 */
+	private final ExecutorService compactExecutor = Executors
+			.newSingleThreadExecutor(new NamedThreadFactory("FavoritesCompaction"));
 
 	/**
 	 * キャラクターデータを格納したXMLのライタ
@@ -204,7 +224,9 @@ public class CharacterDataPersistent {
 		}
 
 		// 保存する.
+		// (作成したプロファイルは呼び出し元ですぐに使われるため、書き込みの完了を待つ)
 		saveCharacterDataToXML(characterData);
+		WriteBehindFileWriter.getInstance().flush(characterPropXML);
 
 		// ディレクトリを準備する
 		preparePartsDir(characterData);
@@ -237,7 +259,9 @@ public class CharacterDataPersistent {
 	}
 
 	/**
-	 * キャラクターデータを更新する.
+	 * キャラクターデータを更新する.<br>
+	 * character.xmlはバックグラウンドで書き込まれ、書き込みの完了を待たずに戻る.<br>
+	 * 書き込みに失敗した場合は{@link WriteBehindFileWriter}のエラーハンドラに通知される.<br>
 	 * 
 	 * @param characterData
 	 *            キャラクターデータ(有効かつ編集可能であること)
@@ -412,10 +436,11 @@ public class CharacterDataPersistent {
 
 	/**
 	 * キャラクターデータを非同期に読み込む.<br>
-	 * 読み込み完了したものが随時、コールバックに渡される.
+	 * 読み込み完了したものが随時、コールバックに渡される.<br>
+	 * 読み込みは共有のスレッドプールで行われる.<br>
 	 * 
 	 * @param callback
-	 * @return すべての読み込みが完了したか判定し待機することのできるFuture
+	 * @return すべての読み込みが完了したか判定し待機し、もしくは取り消すことのできるFuture
 	 */
 	public Future<?> listProfileAsync(final ListProfileCallback callback) {
 		if (callback == null) {
@@ -432,106 +457,133 @@ public class CharacterDataPersistent {
 		// ファイル名をノーマライズする
 		FileNameNormalizer normalizer = FileNameNormalizer.getDefault();
 
-		// キャンセルしたことを示すフラグ
-		final AtomicBoolean cancelled = new AtomicBoolean(false);
-
-		// 有効な論理CPU(CORE)数のスレッドで同時実行させる
-		int numOfProcessors = Runtime.getRuntime().availableProcessors();
-		final ExecutorService executorSrv = Executors
-				.newFixedThreadPool(numOfProcessors);
-		try {
-			// キャラクターデータ対象ディレクトリを列挙し、並列に解析する
-			File[] dirs = baseDir.listFiles(new FileFilter() {
-				public boolean accept(File pathname) {
-					boolean accept = pathname.isDirectory()
-							&& !pathname.getName().startsWith(".");
-					if (accept) {
-						File configFile = new File(pathname, CONFIG_FILE);
-						accept = configFile.exists() && configFile.canRead();
-					}
-					return accept;
+		// 解析済みのプロファイルのカタログ、使用しない場合はnull
+		final ProfileCatalog catalog = AppConfig.getInstance()
+				.isEnableProfileCatalog() ? ProfileCatalog.getInstance() : null;
+
+		// キャラクターデータ対象ディレクトリを列挙する
+		File[] dirs = baseDir.listFiles(new FileFilter() {
+			public boolean accept(File pathname) {
+				boolean accept = pathname.isDirectory()
+						&& !pathname.getName().startsWith(".");
+				if (accept) {
+					File configFile = new File(pathname, CONFIG_FILE);
+					awaitCharacterDataXML(configFile);
+					accept = configFile.exists() && configFile.canRead();
 				}
-			});
-			if (dirs == null) {
-				dirs = new File[0];
+				return accept;
 			}
-			for (File dir : dirs) {
-				String path = normalizer.normalize(dir.getPath());
-				final File normDir = new File(path);
-
-				executorSrv.submit(new Runnable() {
-					public void run() {
-						boolean terminate = false;
-						File characterDataXml = new File(normDir, CONFIG_FILE);
-						if (characterDataXml.exists()) {
+		});
+		if (dirs == null) {
+			dirs = new File[0];
+		}
+
+		// 現存するディレクトリとcharacter.xml、および未完了のタスク数
+		final List<File> normDirs = new ArrayList<File>();
+		final List<File> xmlFiles = new ArrayList<File>();
+		for (File dir : dirs) {
+			String path = normalizer.normalize(dir.getPath());
+			File normDir = new File(path);
+			normDirs.add(normDir);
+			xmlFiles.add(new File(normDir, CONFIG_FILE));
+		}
+		final AtomicInteger remains = new AtomicInteger(normDirs.size());
+		final long startTime = System.currentTimeMillis();
+
+		// 共有のスレッドプールで、ディレクトリごとに並列に解析する
+		final ProfileListTask listTask = new ProfileListTask(
+				ProfileLoadExecutors.getExecutor());
+		for (final File normDir : normDirs) {
+			listTask.submit(new Runnable() {
+				public void run() {
+					if (listTask.isTerminated()) {
+						return;
+					}
+					boolean terminate = loadProfileEntry(normDir, catalog,
+							callback);
+					if (terminate) {
+						// 中止が指示されたら未完了のタスクを取り消す
+						logger.log(Level.FINE, "terminate listProfile");
+						listTask.terminate();
+					}
+					if (remains.decrementAndGet() == 0
+							&& !listTask.isTerminated()) {
+						logger.log(Level.INFO, "listProfile completed. profiles="
+								+ normDirs.size() + ", elapsed="
+								+ (System.currentTimeMillis() - startTime) + "ms");
+						if (catalog != null) {
+							// すべて列挙し終えたら、削除されたプロファイルを除いてカタログを保存する
 							try {
-								File docBaseFile = new File(normDir,
-										CONFIG_FILE);
-								URI docBase = docBaseFile.toURI();
-								CharacterData characterData = loadProfile(docBase);
-								terminate = !callback
-										.receiveCharacterData(characterData);
+								catalog.retain(xmlFiles);
+								catalog.flush();
 
 							} catch (Exception ex) {
-								terminate = !callback.occureException(normDir,
-										ex);
+								logger.log(Level.WARNING,
+										"profile catalog saving failed.", ex);
 							}
 						}
-						if (terminate) {
-							// 中止が指示されたらスレッドプールを終了する
-							logger.log(Level.FINE, "shutdownNow listProfile");
-							executorSrv.shutdownNow();
-							cancelled.set(true);
-						}
 					}
-				});
-			}
-		} finally {
-			// タスクの登録を受付終了し、現在のすべてのタスクが完了したらスレッドは終了する.
-			executorSrv.shutdown();
-		}
-
-		// タスクの終了を待機できる疑似フューチャーを作成する.
-		Future<Object> awaiter = new Future<Object>() {
-			public boolean cancel(boolean mayInterruptIfRunning) {
-				if (executorSrv.isTerminated()) {
-					// すでに停止完了済み
-					return false;
 				}
-				executorSrv.shutdownNow();
-				cancelled.set(true);
-				return true;
-			}
+			});
+		}
 
-			public boolean isCancelled() {
-				return cancelled.get();
-			}
+		return listTask;
+	}
 
-			public boolean isDone() {
-				return executorSrv.isTerminated();
+	/**
+	 * プロファイルのディレクトリからキャラクターデータを読み込み、コールバックに通知する.<br>
+	 * カタログがあり、character.xmlに変更がなければカタログから復元する.<br>
+	 * 
+	 * @param normDir
+	 *            プロファイルのディレクトリ
+	 * @param catalog
+	 *            カタログ、使用しない場合はnull
+	 * @param callback
+	 *            通知先
+	 * @return 列挙を中止する場合はtrue
+	 */
+	private boolean loadProfileEntry(File normDir, ProfileCatalog catalog,
+			ListProfileCallback callback) {
+		File docBaseFile = new File(normDir, CONFIG_FILE);
+		if (!docBaseFile.exists()) {
+			return false;
+		}
+		long st = System.currentTimeMillis();
+		boolean cached = false;
+		CharacterData characterData = null;
+		Exception failure = null;
+		try {
+			if (catalog != null) {
+				// 変更されていなければカタログから復元する
+				characterData = catalog.get(docBaseFile,
+						new File(normDir, SAMPLE_IMAGE_FILENAME));
+				cached = (characterData != null);
 			}
-
-			public Object get() throws InterruptedException, ExecutionException {
-				try {
-					return get(300, TimeUnit.SECONDS);
-
-				} catch (TimeoutException ex) {
-					throw new ExecutionException(ex);
+			if (characterData == null) {
+				long scanTime = System.currentTimeMillis();
+				URI docBase = docBaseFile.toURI();
+				characterData = loadProfile(docBase);
+				if (catalog != null) {
+					// コールバックで変更される前にカタログに登録する
+					catalog.put(docBaseFile, new File(normDir,
+							SAMPLE_IMAGE_FILENAME), characterData,
+							scanTime);
 				}
 			}
 
-			public Object get(long timeout, TimeUnit unit)
-					throws InterruptedException, ExecutionException,
-					TimeoutException {
-				executorSrv.shutdown();
-				if (!executorSrv.isTerminated()) {
-					executorSrv.awaitTermination(timeout, unit);
-				}
-				return null;
-			}
-		};
+		} catch (Exception ex) {
+			failure = ex;
+		}
 
-		return awaiter;
+		long elapsed = System.currentTimeMillis() - st;
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "profile scanned. " + normDir + " "
+					+ elapsed + "ms" + (cached ? " (catalog)" : ""));
+		}
+		if (failure != null) {
+			return !callback.occureException(normDir, failure);
+		}
+		return !callback.receiveCharacterData(characterData);
 	}
 
 	/**
@@ -584,6 +636,11 @@ public class CharacterDataPersistent {
 			throw new IllegalArgumentException();
 		}
 
+		if ("file".equals(docBase.getScheme())) {
+			// 保存中であれば完了を待つ
+			awaitCharacterDataXML(new File(docBase));
+		}
+
 		// XMLから読み取る
 		CharacterData characterData = characterDataXmlReader
 				.loadCharacterDataFromXML(docBase);
@@ -624,27 +681,117 @@ public class CharacterDataPersistent {
 			}
 		}
 
-		FileOutputStream fos = new FileOutputStream(characterPropXML);
+		// 保存したプロファイルはカタログから除去し、次回の列挙時に読み直す
+		ProfileCatalog.getInstance().invalidate(docBase);
+
+		// バックグラウンドで一時ファイルに書き込んでから置き換える.
+		// (書き込み前に同じプロファイルが保存された場合は、最後のものだけが書き込まれる.)
+		WriteBehindFileWriter.getInstance().write(characterPropXML,
+				bos.toByteArray());
+	}
+
+	/**
+	 * character.xmlの保存が完了するまで待機し、書き込みの途中で中断されたものがあれば回復する.<br>
+	 * 保存に失敗していた場合は警告を記録して継続する.<br>
+	 * 
+	 * @param xmlFile
+	 *            character.xml
+	 */
+	private void awaitCharacterDataXML(File xmlFile) {
+		WriteBehindFileWriter writer = WriteBehindFileWriter.getInstance();
 		try {
-			fos.write(bos.toByteArray());
-		} finally {
-			fos.close();
+			writer.flush(xmlFile);
+
+		} catch (IOException ex) {
+			logger.log(Level.WARNING, "character.xml saving failed. " + xmlFile, ex);
 		}
+		writer.recover(xmlFile);
 	}
 
+	/**
+	 * お気に入り(Favorites)を保存する.<br>
+	 * 前回の読み込み・保存からの変更分だけをジャーナルに追記し、
+	 * レコード数が閾値に達したらバックグラウンドでfavorites.xmlに統合する.<br>
+	 * 保存状態がわからない場合は、favorites.xmlのすべてを書き込む.<br>
+	 * 
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @throws IOException
+	 *             保存に失敗した場合
+	 */
 	public void saveFavorites(CharacterData characterData) throws IOException {
 		if (characterData == null) {
 			throw new IllegalArgumentException();
 		}
 
-		// xml形式
-		UserData favoritesData = getFavoritesUserData(characterData);
-		OutputStream os = favoritesData.getOutputStream();
-		try {
-			characterDataXmlWriter.saveFavorites(characterData, os);
+		FavoritesJournal journal = getFavoritesJournal(getFavoritesFile(characterData));
+		int threshold = AppConfig.getInstance().getFavoritesJournalCompactThreshold();
+		if (threshold > 0 && journal.append(characterData)) {
+			// 変更分だけをジャーナルに追記した.
+			if (journal.getRecordCount() >= threshold) {
+				compactFavoritesAsync(characterData);
+			}
+			return;
+		}
 
-		} finally {
-			os.close();
+		// xml形式ですべてを保存する
+		journal.rewrite(characterData);
+	}
+
+	/**
+	 * お気に入りのジャーナルに追記された変更をfavorites.xmlに統合する.<br>
+	 * ジャーナルがなければ何もしない.<br>
+	 * 
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @throws IOException
+	 *             統合に失敗した場合
+	 */
+	private void compactFavorites(CharacterData characterData) throws IOException {
+		if (characterData == null) {
+			throw new IllegalArgumentException();
+		}
+		FavoritesJournal journal = getFavoritesJournal(getFavoritesFile(characterData));
+		journal.compact(characterData);
+	}
+
+	/**
+	 * お気に入りのジャーナルをバックグラウンドでfavorites.xmlに統合する.<br>
+	 * 統合に失敗した場合は警告を記録する.(ジャーナルは残り、次回の読み込み時に適用される.)<br>
+	 * 
+	 * @param characterData
+	 *            キャラクターデータ
+	 */
+	public void compactFavoritesAsync(CharacterData characterData) {
+		final CharacterData template = characterData.duplicateBasicInfo(false);
+		compactExecutor.submit(new Runnable() {
+			public void run() {
+				try {
+					compactFavorites(template);
+
+				} catch (Exception ex) {
+					logger.log(Level.WARNING, "favorites compaction failed. "
+							+ template.getDocBase(), ex);
+				}
+			}
+		});
+	}
+
+	/**
+	 * お気に入りのファイルごとのジャーナルを取得する.
+	 * 
+	 * @param favoritesFile
+	 *            お気に入りのファイル
+	 * @return ジャーナル
+	 */
+	private FavoritesJournal getFavoritesJournal(File favoritesFile) {
+		synchronized (favoritesJournals) {
+			FavoritesJournal journal = favoritesJournals.get(favoritesFile);
+			if (journal == null) {
+				journal = new FavoritesJournal(favoritesFile);
+				favoritesJournals.put(favoritesFile, journal);
+			}
+			return journal;
 		}
 	}
 
@@ -653,16 +800,21 @@ public class CharacterDataPersistent {
 			throw new IllegalArgumentException();
 		}
 
+		return new FileUserData(getFavoritesFile(characterData));
+	}
+
+	private File getFavoritesFile(CharacterData characterData) {
 		// xml形式の場合、キャラクターディレクトリ上に設定する.
 		URI docBase = characterData.getDocBase();
 		File characterDir = new File(docBase).getParentFile();
-		return new FileUserData(new File(characterDir, "favorites.xml"));
+		return new File(characterDir, "favorites.xml");
 	}
 
 
 	/**
 	 * お気に入り(Favorites)を読み込む.<br>
 	 * 現在のパーツセットに追加する形で読み込まれ、同じパーツセットIDのものは上書きされます.<br>
+	 * favorites.xmlに統合されていないジャーナルがあれば、その変更も適用されます.<br>
 	 * 
 	 * @param characterData
 	 *            キャラクターデータ
@@ -674,6 +826,44 @@ public class CharacterDataPersistent {
 			throw new IllegalArgumentException();
 		}
 
+		File favoritesFile = getFavoritesFile(characterData);
+		FavoritesJournal journal = getFavoritesJournal(favoritesFile);
+		journal.recover();
+
+		loadFavoritesXml(characterData, favoritesFile);
+
+		// 追記されたままの変更を適用する.
+		journal.replay(characterData);
+	}
+
+	/**
+	 * favorites.xmlを読み込む.<br>
+	 * 
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @param favoritesFile
+	 *            お気に入りのファイル
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	private void loadFavoritesXml(CharacterData characterData,
+			File favoritesFile) throws IOException {
+		if (AppConfig.getInstance().isEnableLazyFavorites()) {
+			if (!favoritesFile.exists()) {
+				return;
+			}
+			try {
+				loadFavoritesLazily(characterData,
+						getFavoritesIndex(favoritesFile));
+				return;
+
+			} catch (IOException ex) {
+				// 索引を作成できない場合は、すべてを読み込む.
+				logger.log(Level.WARNING, "favorites can not be indexed. "
+						+ favoritesFile, ex);
+			}
+		}
+
 		UserData favoritesXml = getFavoritesUserData(characterData);
 		if (favoritesXml.exists()) {
 			InputStream is = favoritesXml.openStream();
@@ -687,6 +877,65 @@ public class CharacterDataPersistent {
 	}
 
 
+	/**
+	 * お気に入りの索引を取得する.<br>
+	 * 作成済みの索引があれば、ファイルが変更されている場合のみ作り直す.<br>
+	 * 
+	 * @param favoritesFile
+	 *            お気に入りのファイル
+	 * @return 索引
+	 * @throws IOException
+	 *             索引を作成できない場合
+	 */
+	private FavoritesXMLIndex getFavoritesIndex(File favoritesFile)
+			throws IOException {
+		String lang = Locale.getDefault().getLanguage();
+		synchronized (favoritesIndexes) {
+			FavoritesXMLIndex index = favoritesIndexes.get(favoritesFile);
+			if (index != null && lang.equals(index.getLang())) {
+				index.refresh();
+				return index;
+			}
+			index = new FavoritesXMLIndex(favoritesFile, lang);
+			favoritesIndexes.put(favoritesFile, index);
+			return index;
+		}
+	}
+
+	/**
+	 * 索引にあるお気に入りを、IDと表示名だけをもつパーツセットとして登録する.<br>
+	 * パーツセットの内容は、最初に必要になったときに索引からファイルの該当範囲だけを読み込む.<br>
+	 * 
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @param index
+	 *            お気に入りの索引
+	 */
+	private void loadFavoritesLazily(final CharacterData characterData,
+			final FavoritesXMLIndex index) {
+		List<FavoritesXMLIndex.Entry> entries = index.getEntries();
+		for (FavoritesXMLIndex.Entry entry : entries) {
+			final String partsSetId = entry.getId();
+			PartsSetLoader loader = new PartsSetLoader() {
+				public PartsSet load() throws IOException {
+					byte[] doc = index.readPartsSetDocument(partsSetId);
+					IndependentPartsSetInfoList partsSetLst = characterDataXmlReader
+							.loadPartsSetList(new ByteArrayInputStream(doc),
+									index.getLang());
+					if (partsSetLst == null || partsSetLst.isEmpty()) {
+						throw new IOException("partsset not found: " + partsSetId);
+					}
+					IndependentPartsSetInfo partsSetInfo = partsSetLst.get(0);
+					return IndependentPartsSetInfo.convertPartsSet(
+							partsSetInfo, characterData, false);
+				}
+			};
+			characterData.addPartsSet(new PartsSet(partsSetId, entry
+					.getName(), false, loader));
+		}
+		logger.info("favorites indexed: size=" + entries.size());
+	}
+
 	/**
 	 * 既存のキャラクター定義を削除する.<br>
 	 * 有効なdocBaseがあり、そのxmlファイルが存在するものについて、削除を行う.<br>
@@ -710,6 +959,7 @@ public class CharacterDataPersistent {
 
 		URI docBase = cd.getDocBase();
 		File xmlFile = new File(docBase);
+		awaitCharacterDataXML(xmlFile);
 		if (!xmlFile.exists() || !xmlFile.isFile()) {
 			// すでに存在しない場合
 			return;
@@ -717,6 +967,12 @@ public class CharacterDataPersistent {
 
 		// favories.xmlの削除
 		if (forceRemove) {
+			File favoritesFile = getFavoritesFile(cd);
+			getFavoritesJournal(favoritesFile).delete();
+			synchronized (favoritesIndexes) {
+				favoritesIndexes.remove(favoritesFile);
+			}
+			FavoritesXMLIndex.removeIndex(favoritesFile);
 			UserData[] favoritesDatas = new UserData[]{getFavoritesUserData(cd)};
 			for (UserData favoriteData : favoritesDatas) {
 				if (favoriteData != null && favoriteData.exists()) {
@@ -731,6 +987,12 @@ public class CharacterDataPersistent {
 		WorkingSetPersist workingSetPersist = WorkingSetPersist.getInstance();
 		workingSetPersist.removeWorkingSet(cd);
 
+		// プロファイルごとのキャッシュの削除
+		PartsCatalogCachedLoader.removeCatalog(docBase);
+		SamplePictureThumbnailCache.getInstance().invalidate(cd);
+		ProfileCatalog.getInstance().invalidate(docBase);
+		PartsManageDataCache.getInstance().invalidate(docBase);
+
 		// xmlファイルの拡張子を変更することでキャラクター定義として認識させない.
 		// (削除に失敗するケースに備えて先にリネームする.)
 		String suffix = "." + System.currentTimeMillis() + ".deleted";
@@ -934,6 +1196,9 @@ public class CharacterDataPersistent {
 				}
 			}
 		}
+
+		// 更新日時の精度内で上書きされた場合にも古いサムネイルが残らないようにする
+		SamplePictureThumbnailCache.getInstance().invalidate(characterData);
 	}
 
 
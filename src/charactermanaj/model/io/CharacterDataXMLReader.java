@@ -19,12 +19,15 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.xml.validation.Schema;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import charactermanaj.graphics.colormodel.ColorModels;
 import charactermanaj.graphics.filters.ColorConv;
 import charactermanaj.graphics.filters.ColorConvertParameter;
+import charactermanaj.model.AppConfig;
 import charactermanaj.model.CharacterData;
 import charactermanaj.model.ColorGroup;
 import charactermanaj.model.IndependentPartsColorInfo;
@@ -46,7 +49,7 @@ public class CharacterDataXMLReader {
 	/**
 	 * character.xmlのデフォルトの名前空間
 	 */
-	private static final String NS_PREFIX = "http://charactermanaj.sourceforge.jp/schema/charactermanaj";
+	protected static final String NS_PREFIX = "http://charactermanaj.sourceforge.jp/schema/charactermanaj";
 
 	/**
 	 * favorites.xmlのデフォルトの名前空間.
@@ -60,6 +63,39 @@ public class CharacterDataXMLReader {
 	private static final Logger logger = Logger
 			.getLogger(CharacterDataXMLReader.class.getName());
 
+	/**
+	 * character.xmlのスキーマのリソース名
+	 */
+	protected static final String CHARACTER_SCHEMA = "/schema/character.xsd";
+
+	/**
+	 * favorites.xmlのスキーマのリソース名
+	 */
+	protected static final String PARTSSET_SCHEMA = "/schema/partsset.xsd";
+
+	/**
+	 * スキーマによる検証が有効であれば、検証に用いるスキーマを返す.<br>
+	 * スキーマは一度だけ読み込まれ、すべてのスレッドで共有される.<br>
+	 * 
+	 * @param schemaName
+	 *            スキーマのリソース名
+	 * @return スキーマ、検証しない場合はnull
+	 * @throws IOException
+	 *             スキーマが読み込めない場合
+	 */
+	protected static Schema getValidationSchema(String schemaName)
+			throws IOException {
+		if (!AppConfig.getInstance().isEnableXMLSchemaValidation()) {
+			return null;
+		}
+		URL schemaURL = CharacterDataXMLReader.class.getResource(schemaName);
+		if (schemaURL == null) {
+			logger.log(Level.WARNING, "schema not found. " + schemaName);
+			return null;
+		}
+		return XMLUtilities.getSchema(schemaURL);
+	}
+
 	/**
 	 * キャラクター定義(プロファイル)をロードする.
 	 * 
@@ -132,7 +168,8 @@ public class CharacterDataXMLReader {
 			throw new IllegalArgumentException();
 		}
 
-		Document doc = XMLUtilities.loadDocument(is);
+		Document doc = XMLUtilities.loadDocument(is,
+				getValidationSchema(CHARACTER_SCHEMA));
 
 		CharacterData characterData = new CharacterData();
 		characterData.setDocBase(docBase);
@@ -393,7 +430,8 @@ public class CharacterDataXMLReader {
 			throw new IllegalArgumentException();
 		}
 
-		Document doc = XMLUtilities.loadDocument(inpstm);
+		Document doc = XMLUtilities.loadDocument(inpstm,
+				getValidationSchema(PARTSSET_SCHEMA));
 		Element docElm = doc.getDocumentElement();
 		if (!"partssets".equals(docElm.getNodeName())) {
 			logger.log(Level.WARNING, "invalid partsets format.");
@@ -426,6 +464,21 @@ public class CharacterDataXMLReader {
 			Element nodePartssets, boolean presetParts, String lang) {
 		IndependentPartsSetInfoList partsSetLst = loadPartsSetList(
 				nodePartssets, lang);
+		addPartsSets(characterData, partsSetLst, presetParts);
+	}
+
+	/**
+	 * 読み取ったパーツセットのリストをキャラクターデータに登録する.<br>
+	 * 
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @param partsSetLst
+	 *            パーツセットのリスト
+	 * @param presetParts
+	 *            ロードしたパーツセットにプリセットフラグをたてる場合はtrue
+	 */
+	protected void addPartsSets(CharacterData characterData,
+			IndependentPartsSetInfoList partsSetLst, boolean presetParts) {
 		logger.info("partsSetList: size=" + partsSetLst.size());
 
 		if (presetParts) {
@@ -520,43 +573,13 @@ public class CharacterDataXMLReader {
 		// bgColor
 		Element bgColorElm = getFirstChildElement(presetElm, "background-color");
 		if (bgColorElm != null) {
-			String tmpBgColor = bgColorElm.getAttribute("color");
-			try {
-				Color bgColor = Color.decode(tmpBgColor);
-				partsSetInfo.setBackgroundColor(bgColor);
-
-			} catch (Exception ex) {
-				logger.log(Level.WARNING, "bgColor parameter is invalid. :"
-						+ tmpBgColor, ex);
-				// 無視する
-			}
+			setBackgroundColor(partsSetInfo, bgColorElm.getAttribute("color"));
 		}
 
 		// affine-transform-parameter
 		String tmpAffienTrans = getElementText(presetElm,
 				"affine-transform-parameter");
-		if (tmpAffienTrans != null && tmpAffienTrans.trim().length() > 0) {
-			try {
-				ArrayList<Double> affineTransformParameterArr = new ArrayList<Double>();
-				for (String strParam : tmpAffienTrans.split("\\s+")) {
-					affineTransformParameterArr.add(Double.valueOf(strParam));
-				}
-				double[] affineTransformParameter = new double[affineTransformParameterArr
-						.size()];
-				int idx = 0;
-				for (double aaffineItem : affineTransformParameterArr) {
-					affineTransformParameter[idx++] = aaffineItem;
-				}
-				partsSetInfo
-						.setAffineTransformParameter(affineTransformParameter);
-
-			} catch (Exception ex) {
-				logger.log(Level.WARNING,
-						"affine transform parameter is invalid. :"
-								+ tmpAffienTrans, ex);
-				// 無視する.
-			}
-		}
+		setAffineTransformParameter(partsSetInfo, tmpAffienTrans);
 
 		// カテゴリIDをキーとし、パーツ名をキーとしカラー情報のリストを値とするマップを値とする.
 		Map<String, Map<String, List<IndependentPartsColorInfo>>> partsMap = partsSetInfo
@@ -604,6 +627,63 @@ public class CharacterDataXMLReader {
 		return partsSetInfo;
 	}
 
+	/**
+	 * パーツセットの背景色を設定する.<br>
+	 * 背景色の表記が正しくない場合はログに記録して無視する.<br>
+	 * 
+	 * @param partsSetInfo
+	 *            パーツセット情報
+	 * @param tmpBgColor
+	 *            背景色の表記
+	 */
+	protected void setBackgroundColor(IndependentPartsSetInfo partsSetInfo,
+			String tmpBgColor) {
+		try {
+			Color bgColor = Color.decode(tmpBgColor);
+			partsSetInfo.setBackgroundColor(bgColor);
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "bgColor parameter is invalid. :"
+					+ tmpBgColor, ex);
+			// 無視する
+		}
+	}
+
+	/**
+	 * パーツセットのアフィン変換パラメータを設定する.<br>
+	 * パラメータが空であれば何もしない. 正しくない場合はログに記録して無視する.<br>
+	 * 
+	 * @param partsSetInfo
+	 *            パーツセット情報
+	 * @param tmpAffienTrans
+	 *            空白区切りのアフィン変換パラメータ、もしくはnull
+	 */
+	protected void setAffineTransformParameter(
+			IndependentPartsSetInfo partsSetInfo, String tmpAffienTrans) {
+		if (tmpAffienTrans != null && tmpAffienTrans.trim().length() > 0) {
+			try {
+				ArrayList<Double> affineTransformParameterArr = new ArrayList<Double>();
+				for (String strParam : tmpAffienTrans.split("\\s+")) {
+					affineTransformParameterArr.add(Double.valueOf(strParam));
+				}
+				double[] affineTransformParameter = new double[affineTransformParameterArr
+						.size()];
+				int idx = 0;
+				for (double aaffineItem : affineTransformParameterArr) {
+					affineTransformParameter[idx++] = aaffineItem;
+				}
+				partsSetInfo
+						.setAffineTransformParameter(affineTransformParameter);
+
+			} catch (Exception ex) {
+				logger.log(Level.WARNING,
+						"affine transform parameter is invalid. :"
+								+ tmpAffienTrans, ex);
+				// 無視する.
+			}
+		}
+	}
+
 	/**
 	 * パーツごとのカラー情報のXMLを読み込んで返す.<br>
 	 * パーツは複数のレイヤーから構成されるので、複数レイヤーのカラー情報のリストとして返される.<br>
@@ -649,66 +729,125 @@ public class CharacterDataXMLReader {
 			Element nodeRgb = getFirstChildElement(layerElm, "rgb");
 			if (nodeRgb != null) {
 				for (Element elmRgb : getChildElements(nodeRgb, null)) {
-					String rgbName = elmRgb.getNodeName();
-					int offset = Integer
-							.parseInt(elmRgb.getAttribute("offset"));
-					float factor = Float.parseFloat(elmRgb
-							.getAttribute("factor"));
-					float gamma = Float
-							.parseFloat(elmRgb.getAttribute("gamma"));
-					if ("red".equals(rgbName)) {
-						param.setOffsetR(offset);
-						param.setFactorR(factor);
-						param.setGammaR(gamma);
-					} else if ("green".equals(rgbName)) {
-						param.setOffsetG(offset);
-						param.setFactorG(factor);
-						param.setGammaG(gamma);
-					} else if ("blue".equals(rgbName)) {
-						param.setOffsetB(offset);
-						param.setFactorB(factor);
-						param.setGammaB(gamma);
-					} else if ("alpha".equals(rgbName)) {
-						param.setOffsetA(offset);
-						param.setFactorA(factor);
-						param.setGammaA(gamma);
-					}
+					setRgbParameter(param, elmRgb.getNodeName(),
+							elmRgb.getAttribute("offset"),
+							elmRgb.getAttribute("factor"),
+							elmRgb.getAttribute("gamma"));
 				}
 			}
 
 			// hsb
 			Element elmHsb = getFirstChildElement(layerElm, "hsb");
 			if (elmHsb != null) {
-				float hue = Float.parseFloat(elmHsb.getAttribute("hue"));
-				float saturation = Float.parseFloat(elmHsb
-						.getAttribute("saturation"));
-				float brightness = Float.parseFloat(elmHsb
-						.getAttribute("brightness"));
-				String strContrast = elmHsb.getAttribute("contrast").trim();
-				param.setHue(hue);
-				param.setSaturation(saturation);
-				param.setBrightness(brightness);
-				if (strContrast != null && strContrast.length() > 0) {
-					// ver0.96追加 optional
-					float contrast = Float.parseFloat(strContrast);
-					param.setContrast(contrast);
-				}
+				setHsbParameter(param, elmHsb.getAttribute("hue"),
+						elmHsb.getAttribute("saturation"),
+						elmHsb.getAttribute("brightness"),
+						elmHsb.getAttribute("contrast"));
 			}
 
 			// rgb-replace
 			Element elmRgbReplace = getFirstChildElement(layerElm,
 					"rgb-replace");
 			if (elmRgbReplace != null) {
-				Float grayLevel = Float.parseFloat(elmRgbReplace
-						.getAttribute("gray"));
-				ColorConv colorType = ColorConv.valueOf(elmRgbReplace
-						.getAttribute("replace-type"));
-				param.setGrayLevel(grayLevel);
-				param.setColorReplace(colorType);
+				setRgbReplaceParameter(param,
+						elmRgbReplace.getAttribute("gray"),
+						elmRgbReplace.getAttribute("replace-type"));
 			}
 
 			infoList.add(info);
 		}
 		return infoList;
 	}
+
+	/**
+	 * 色変換パラメータのRGBAいずれかの要素を設定する.<br>
+	 * 
+	 * @param param
+	 *            色変換パラメータ
+	 * @param rgbName
+	 *            red, green, blue, alphaのいずれか. それ以外は値の検査のみ行う.
+	 * @param strOffset
+	 *            オフセット
+	 * @param strFactor
+	 *            係数
+	 * @param strGamma
+	 *            ガンマ
+	 * @throws NumberFormatException
+	 *             数値が正しくない場合
+	 */
+	protected void setRgbParameter(ColorConvertParameter param,
+			String rgbName, String strOffset, String strFactor, String strGamma) {
+		int offset = Integer.parseInt(strOffset);
+		float factor = Float.parseFloat(strFactor);
+		float gamma = Float.parseFloat(strGamma);
+		if ("red".equals(rgbName)) {
+			param.setOffsetR(offset);
+			param.setFactorR(factor);
+			param.setGammaR(gamma);
+		} else if ("green".equals(rgbName)) {
+			param.setOffsetG(offset);
+			param.setFactorG(factor);
+			param.setGammaG(gamma);
+		} else if ("blue".equals(rgbName)) {
+			param.setOffsetB(offset);
+			param.setFactorB(factor);
+			param.setGammaB(gamma);
+		} else if ("alpha".equals(rgbName)) {
+			param.setOffsetA(offset);
+			param.setFactorA(factor);
+			param.setGammaA(gamma);
+		}
+	}
+
+	/**
+	 * 色変換パラメータのHSBとコントラストを設定する.<br>
+	 * 
+	 * @param param
+	 *            色変換パラメータ
+	 * @param strHue
+	 *            色相
+	 * @param strSaturation
+	 *            彩度
+	 * @param strBrightness
+	 *            明度
+	 * @param strContrast
+	 *            コントラスト、空の場合は設定しない
+	 * @throws NumberFormatException
+	 *             数値が正しくない場合
+	 */
+	protected void setHsbParameter(ColorConvertParameter param, String strHue,
+			String strSaturation, String strBrightness, String strContrast) {
+		float hue = Float.parseFloat(strHue);
+		float saturation = Float.parseFloat(strSaturation);
+		float brightness = Float.parseFloat(strBrightness);
+		strContrast = strContrast.trim();
+		param.setHue(hue);
+		param.setSaturation(saturation);
+		param.setBrightness(brightness);
+		if (strContrast != null && strContrast.length() > 0) {
+			// ver0.96追加 optional
+			float contrast = Float.parseFloat(strContrast);
+			param.setContrast(contrast);
+		}
+	}
+
+	/**
+	 * 色変換パラメータのRGB置換を設定する.<br>
+	 * 
+	 * @param param
+	 *            色変換パラメータ
+	 * @param strGrayLevel
+	 *            グレーレベル
+	 * @param strReplaceType
+	 *            置換タイプ
+	 * @throws RuntimeException
+	 *             値が正しくない場合
+	 */
+	protected void setRgbReplaceParameter(ColorConvertParameter param,
+			String strGrayLevel, String strReplaceType) {
+		Float grayLevel = Float.parseFloat(strGrayLevel);
+		ColorConv colorType = ColorConv.valueOf(strReplaceType);
+		param.setGrayLevel(grayLevel);
+		param.setColorReplace(colorType);
+	}
 }
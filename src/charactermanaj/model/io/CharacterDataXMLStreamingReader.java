@@ -0,0 +1,1163 @@
+package charactermanaj.model.io;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.validation.Schema;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import charactermanaj.graphics.colormodel.ColorModels;
+import charactermanaj.model.CharacterData;
+import charactermanaj.model.ColorGroup;
+import charactermanaj.model.IndependentPartsColorInfo;
+import charactermanaj.model.IndependentPartsSetInfo;
+import charactermanaj.model.IndependentPartsSetInfoList;
+import charactermanaj.model.Layer;
+import charactermanaj.model.PartsCategory;
+import charactermanaj.model.RecommendationURL;
+import charactermanaj.util.XMLUtilities;
+
+/**
+ * キャラクターデータを格納したXMLを、DOMを構築せずに一度の走査で読み込むためのクラス.<br>
+ * SAXにより要素の出現順に情報を収集し、文書の終わりでキャラクターデータを組み立てる.<br>
+ * 読み取り結果は{@link CharacterDataXMLReader}と同じであり、受け付けるスキーマのバージョンも同じである.<br>
+ * パーサのファクトリはプロセスで共有し、パーサはスレッドごとに再利用する.<br>
+ *
+ * @author seraphy
+ */
+public class CharacterDataXMLStreamingReader extends CharacterDataXMLReader {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger
+			.getLogger(CharacterDataXMLStreamingReader.class.getName());
+
+	/**
+	 * xml:lang属性の名前空間
+	 */
+	private static final String NS_XML = "http://www.w3.org/XML/1998/namespace";
+
+	@Override
+	public CharacterData loadCharacterDataFromXML(InputStream is, URI docBase,
+			Locale locale) throws IOException {
+		if (is == null || locale == null) {
+			throw new IllegalArgumentException();
+		}
+
+		CharacterDataHandler handler = new CharacterDataHandler(locale.getLanguage());
+		try {
+			parse(is, handler, getValidationSchema(CHARACTER_SCHEMA));
+			return handler.buildCharacterData(docBase);
+
+		} catch (RuntimeException ex) {
+			IOException ex2 = new IOException("CharacterData invalid format.");
+			ex2.initCause(ex);
+			throw ex2;
+		}
+	}
+
+	@Override
+	public void loadPartsSet(CharacterData characterData, InputStream inpstm)
+			throws IOException {
+		if (characterData == null || inpstm == null) {
+			throw new IllegalArgumentException();
+		}
+		String lang = Locale.getDefault().getLanguage();
+		IndependentPartsSetInfoList partsSetLst = loadPartsSetList(inpstm, lang);
+		if (partsSetLst != null) {
+			addPartsSets(characterData, partsSetLst, false);
+		}
+	}
+
+	/**
+	 * お気に入り(partssets)のXMLからパーツセット情報のリストを読み取る.<br>
+	 * 
+	 * @param inpstm
+	 *            お気に入りのxmlへの入力ストリーム
+	 * @param lang
+	 *            言語
+	 * @return パーツセット情報のリスト、お気に入りの形式でなければnull
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	public IndependentPartsSetInfoList loadPartsSetList(InputStream inpstm,
+			String lang) throws IOException {
+		if (inpstm == null || lang == null) {
+			throw new IllegalArgumentException();
+		}
+		PartsSetsHandler handler = new PartsSetsHandler(lang);
+		try {
+			parse(inpstm, handler, getValidationSchema(PARTSSET_SCHEMA));
+
+		} catch (RuntimeException ex) {
+			IOException ex2 = new IOException("partssets invalid format.");
+			ex2.initCause(ex);
+			throw ex2;
+		}
+		IndependentPartsSetInfoList partsSetLst = handler.getPartsSetList();
+		if (partsSetLst == null) {
+			logger.log(Level.WARNING, "invalid partsets format.");
+		}
+		return partsSetLst;
+	}
+
+	/**
+	 * 入力ストリームをSAXで読み込む.<br>
+	 * ハンドラ内でSAXExceptionにくるまれたIOExceptionは、そのまま送出される.<br>
+	 *
+	 * @param is
+	 *            入力ストリーム
+	 * @param handler
+	 *            ハンドラ
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	protected static void parse(InputStream is, AbstractXMLHandler handler)
+			throws IOException {
+		parse(is, handler, null);
+	}
+
+	/**
+	 * 入力ストリームをSAXで読み込む.<br>
+	 * ハンドラ内でSAXExceptionにくるまれたIOExceptionは、そのまま送出される.<br>
+	 * パーサは呼び出したスレッドで再利用される.<br>
+	 *
+	 * @param is
+	 *            入力ストリーム
+	 * @param handler
+	 *            ハンドラ
+	 * @param schema
+	 *            検証に用いるスキーマ、検証しない場合はnull
+	 * @throws IOException
+	 *             読み込みに失敗した場合、もしくはスキーマに適合しない場合
+	 */
+	protected static void parse(InputStream is, AbstractXMLHandler handler,
+			Schema schema) throws IOException {
+		SAXParser parser = XMLUtilities.getSAXParser(schema);
+		try {
+			parser.parse(is, handler);
+			handler.checkErrors();
+
+		} catch (SAXException ex) {
+			Exception cause = ex.getException();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			IOException ex2 = new IOException("xml read failed.");
+			ex2.initCause(ex);
+			throw ex2;
+
+		} finally {
+			// ハンドラへの参照を残さない
+			parser.reset();
+		}
+	}
+
+	/**
+	 * 要素の階層とテキストを追跡するSAXハンドラの基底クラス.<br>
+	 * 要素のテキストはDOMのgetTextContentと同様に、子孫要素のテキストを含む.<br>
+	 * 解析中の警告・エラーはすべて記録され、解析後に最初のものが例外として送出される.<br>
+	 *
+	 * @author seraphy
+	 */
+	protected abstract static class AbstractXMLHandler extends DefaultHandler {
+
+		/**
+		 * ルートからの要素名の並び
+		 */
+		private final ArrayList<String> path = new ArrayList<String>();
+
+		/**
+		 * 要素ごとの、テキストバッファ上の開始位置
+		 */
+		private final ArrayList<Integer> textStarts = new ArrayList<Integer>();
+
+		/**
+		 * 要素ごとのxml:lang属性、なければ空文字
+		 */
+		private final ArrayList<String> langs = new ArrayList<String>();
+
+		/**
+		 * ルート直下の要素の範囲のテキスト
+		 */
+		private final StringBuilder text = new StringBuilder();
+
+		/**
+		 * 解析中の警告・エラー
+		 */
+		private final ArrayList<SAXParseException> errors = new ArrayList<SAXParseException>();
+
+		/**
+		 * 要素の開始
+		 *
+		 * @param name
+		 *            要素名
+		 * @param ns
+		 *            名前空間、なければ空文字
+		 * @param atts
+		 *            属性
+		 * @throws IOException
+		 *             内容が正しくない場合
+		 */
+		protected abstract void start(String name, String ns, Attributes atts)
+				throws IOException;
+
+		/**
+		 * 要素の終了
+		 *
+		 * @param name
+		 *            要素名
+		 * @param text
+		 *            子孫要素を含む要素のテキスト
+		 * @param lang
+		 *            要素のxml:lang属性、なければ空文字
+		 * @throws IOException
+		 *             内容が正しくない場合
+		 */
+		protected abstract void end(String name, String text, String lang)
+				throws IOException;
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes atts) throws SAXException {
+			String name = (qName != null && qName.length() > 0) ? qName : localName;
+			String lang = atts.getValue(NS_XML, "lang");
+			path.add(name);
+			textStarts.add(Integer.valueOf(text.length()));
+			langs.add(lang == null ? "" : lang);
+			try {
+				start(name, uri == null ? "" : uri, atts);
+
+			} catch (IOException ex) {
+				throw new SAXException(ex);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+				throws SAXException {
+			int last = path.size() - 1;
+			String name = path.get(last);
+			String txt = text.substring(textStarts.get(last).intValue());
+			try {
+				end(name, txt, langs.get(last));
+
+			} catch (IOException ex) {
+				throw new SAXException(ex);
+			}
+			path.remove(last);
+			textStarts.remove(last);
+			langs.remove(last);
+			if (path.size() <= 1) {
+				// ルート直下の要素の範囲を抜けたらテキストは不要
+				text.setLength(0);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			text.append(ch, start, length);
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) {
+			text.append(ch, start, length);
+		}
+
+		@Override
+		public void warning(SAXParseException ex) {
+			errors.add(ex);
+		}
+
+		@Override
+		public void error(SAXParseException ex) {
+			errors.add(ex);
+		}
+
+		@Override
+		public void fatalError(SAXParseException ex) throws SAXException {
+			errors.add(ex);
+			throw ex;
+		}
+
+		/**
+		 * 解析中に警告・エラーがあれば、最初のものを送出する.
+		 *
+		 * @throws SAXException
+		 *             警告・エラーがあった場合
+		 */
+		public void checkErrors() throws SAXException {
+			if (!errors.isEmpty()) {
+				throw errors.get(0);
+			}
+		}
+
+		/**
+		 * 現在の要素の深さを返す.(ルート要素が1)
+		 *
+		 * @return 深さ
+		 */
+		protected int getDepth() {
+			return path.size();
+		}
+
+		/**
+		 * 現在の要素の、指定した深さより下の要素名の並びが一致するか?<br>
+		 *
+		 * @param base
+		 *            比較を開始する深さ(ルート要素の直下からであれば1)
+		 * @param names
+		 *            要素名の並び
+		 * @return 現在の要素までの並びが完全に一致すればtrue
+		 */
+		protected boolean isPath(int base, String... names) {
+			if (path.size() != base + names.length) {
+				return false;
+			}
+			for (int idx = 0; idx < names.length; idx++) {
+				if (!names[idx].equals(path.get(base + idx))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * 属性の値を返す.<br>
+	 * DOMのgetAttributeと同様に、属性がなければ空文字を返す.<br>
+	 *
+	 * @param atts
+	 *            属性
+	 * @param name
+	 *            属性名
+	 * @return 値、なければ空文字
+	 */
+	protected static String getAttribute(Attributes atts, String name) {
+		String val = atts.getValue(name);
+		return val == null ? "" : val;
+	}
+
+	/**
+	 * 同名の要素の中から言語が一致するテキストを選択する.<br>
+	 * {@link charactermanaj.util.XMLUtilities#getLocalizedElementText(org.w3c.dom.Element, String, String)}
+	 * と同じく、言語が一致するものがなければ最初の要素のテキストとなる.<br>
+	 *
+	 * @author seraphy
+	 */
+	protected static final class LocalizedText {
+
+		private final String lang;
+
+		private String text;
+
+		private boolean fixed;
+
+		public LocalizedText(String lang) {
+			this.lang = lang;
+		}
+
+		/**
+		 * 要素のテキストを追加する.
+		 *
+		 * @param val
+		 *            テキスト
+		 * @param langNm
+		 *            要素の言語
+		 */
+		public void add(String val, String langNm) {
+			if (fixed) {
+				return;
+			}
+			// 最初の定義をデフォルト値として用いる.
+			if (text == null) {
+				text = val;
+			}
+			// lang指定が一致すれば、それを優先する.
+			if (lang.equals(langNm) && val.length() > 0) {
+				text = val;
+				fixed = true;
+			}
+		}
+
+		/**
+		 * 選択されたテキストを返す.
+		 *
+		 * @return テキスト、要素がなければnull
+		 */
+		public String getText() {
+			return text;
+		}
+	}
+
+	/**
+	 * パーツセットのリスト(プリセットまたはお気に入り)の要素を受け取り、パーツセット情報を組み立てる.<br>
+	 * {@link CharacterDataXMLReader#loadPartsSetList(org.w3c.dom.Element, String)}と同じ結果となる.<br>
+	 *
+	 * @author seraphy
+	 */
+	protected class PartsSetListBuilder {
+
+		/**
+		 * 要素の階層の追跡元
+		 */
+		private final AbstractXMLHandler handler;
+
+		/**
+		 * パーツセットのリストの要素の深さ
+		 */
+		private final int base;
+
+		private final String lang;
+
+		private final IndependentPartsSetInfoList partsSetLst = new IndependentPartsSetInfoList();
+
+		private String defaultPresetId;
+
+		private IndependentPartsSetInfo partsSetInfo;
+
+		private LocalizedText displayName;
+
+		private boolean bgColorFound;
+
+		private String affineTransformParameter;
+
+		private Map<String, List<IndependentPartsColorInfo>> categoryPartsMap;
+
+		private String partsName;
+
+		private boolean colorFound;
+
+		private List<IndependentPartsColorInfo> infoList;
+
+		private boolean inColor;
+
+		private IndependentPartsColorInfo colorInfo;
+
+		private boolean colorGroupFound;
+
+		private boolean rgbFound;
+
+		private boolean inRgb;
+
+		private boolean hsbFound;
+
+		private boolean rgbReplaceFound;
+
+		/**
+		 * パーツセットのリストの要素の開始時点で構築する.
+		 *
+		 * @param handler
+		 *            要素の階層の追跡元
+		 * @param atts
+		 *            パーツセットのリストの要素の属性
+		 * @param lang
+		 *            言語
+		 */
+		public PartsSetListBuilder(AbstractXMLHandler handler, Attributes atts,
+				String lang) {
+			this.handler = handler;
+			this.base = handler.getDepth();
+			this.lang = lang;
+
+			// デフォルトのパーツセットID
+			defaultPresetId = getAttribute(atts, "default-preset").trim();
+		}
+
+		/**
+		 * パーツセットのリストの要素の下位要素の開始
+		 *
+		 * @param name
+		 *            要素名
+		 * @param atts
+		 *            属性
+		 */
+		public void start(String name, Attributes atts) {
+			if (handler.isPath(base, "preset")) {
+				partsSetInfo = new IndependentPartsSetInfo();
+
+				// id
+				String partsSetId = getAttribute(atts, "id").trim();
+				if (partsSetId.length() == 0) {
+					partsSetId = null;
+				}
+				partsSetInfo.setId(partsSetId);
+
+				displayName = new LocalizedText(lang);
+				bgColorFound = false;
+				affineTransformParameter = null;
+				return;
+			}
+			if (partsSetInfo == null) {
+				return;
+			}
+
+			if (handler.isPath(base, "preset", "background-color")) {
+				if (!bgColorFound) {
+					bgColorFound = true;
+					setBackgroundColor(partsSetInfo, getAttribute(atts, "color"));
+				}
+
+			} else if (handler.isPath(base, "preset", "category")) {
+				String categoryId = getAttribute(atts, "refid").trim();
+				if (categoryId.length() == 0) {
+					logger.log(Level.WARNING, "missing category refid: " + name);
+					categoryPartsMap = null;
+					return;
+				}
+				// パーツ名をキーとしカラー情報のリストを値とするマップ.
+				Map<String, Map<String, List<IndependentPartsColorInfo>>> partsMap = partsSetInfo
+						.getPartsMap();
+				categoryPartsMap = partsMap.get(categoryId);
+				if (categoryPartsMap == null) {
+					categoryPartsMap = new HashMap<String, List<IndependentPartsColorInfo>>();
+					partsMap.put(categoryId, categoryPartsMap);
+				}
+
+			} else if (categoryPartsMap != null
+					&& handler.isPath(base, "preset", "category", "parts")) {
+				partsName = getAttribute(atts, "name").trim();
+				if (partsName.length() == 0) {
+					logger.log(Level.WARNING, "missing parts name. " + name);
+					partsName = null;
+				}
+				colorFound = false;
+				infoList = null;
+
+			} else if (partsName != null
+					&& handler.isPath(base, "preset", "category", "parts", "color")) {
+				if (!colorFound) {
+					colorFound = true;
+					inColor = true;
+					infoList = new ArrayList<IndependentPartsColorInfo>();
+				}
+
+			} else if (inColor
+					&& handler.isPath(base, "preset", "category", "parts", "color", "layer")) {
+				String layerId = getAttribute(atts, "refid").trim();
+				if (layerId.length() == 0) {
+					logger.log(Level.WARNING, "missing layer-id: " + name);
+					colorInfo = null;
+					return;
+				}
+				colorInfo = new IndependentPartsColorInfo();
+				colorInfo.setLayerId(layerId);
+				colorGroupFound = false;
+				rgbFound = false;
+				hsbFound = false;
+				rgbReplaceFound = false;
+
+			} else if (colorInfo != null && handler.getDepth() == base + 6) {
+				startColorLayerChild(name, atts);
+
+			} else if (inRgb && handler.getDepth() == base + 7) {
+				setRgbParameter(colorInfo.getColorConvertParameter(), name,
+						getAttribute(atts, "offset"),
+						getAttribute(atts, "factor"),
+						getAttribute(atts, "gamma"));
+			}
+		}
+
+		/**
+		 * カラー情報のレイヤー要素の直下の要素の開始
+		 *
+		 * @param name
+		 *            要素名
+		 * @param atts
+		 *            属性
+		 */
+		private void startColorLayerChild(String name, Attributes atts) {
+			if ("color-group".equals(name)) {
+				if (!colorGroupFound) {
+					colorGroupFound = true;
+					colorInfo.setColorGroupId(getAttribute(atts, "group").trim());
+					colorInfo.setSyncColorGroup(Boolean.parseBoolean(getAttribute(
+							atts, "synchronized").trim()));
+				}
+
+			} else if ("rgb".equals(name)) {
+				if (!rgbFound) {
+					rgbFound = true;
+					inRgb = true;
+				}
+
+			} else if ("hsb".equals(name)) {
+				if (!hsbFound) {
+					hsbFound = true;
+					setHsbParameter(colorInfo.getColorConvertParameter(),
+							getAttribute(atts, "hue"),
+							getAttribute(atts, "saturation"),
+							getAttribute(atts, "brightness"),
+							getAttribute(atts, "contrast"));
+				}
+
+			} else if ("rgb-replace".equals(name)) {
+				if (!rgbReplaceFound) {
+					rgbReplaceFound = true;
+					setRgbReplaceParameter(colorInfo.getColorConvertParameter(),
+							getAttribute(atts, "gray"),
+							getAttribute(atts, "replace-type"));
+				}
+			}
+		}
+
+		/**
+		 * パーツセットのリストの要素の下位要素の終了
+		 *
+		 * @param name
+		 *            要素名
+		 * @param text
+		 *            テキスト
+		 * @param langNm
+		 *            要素の言語
+		 */
+		public void end(String name, String text, String langNm) {
+			if (partsSetInfo == null) {
+				return;
+			}
+			if (handler.isPath(base, "preset")) {
+				partsSetInfo.setDisplayName(displayName.getText());
+				setAffineTransformParameter(partsSetInfo, affineTransformParameter);
+
+				// デフォルトのパーツセットIDがない場合は先頭をデフォルトとみなす.
+				if (defaultPresetId == null || defaultPresetId.length() == 0) {
+					defaultPresetId = partsSetInfo.getId();
+				}
+				partsSetLst.add(partsSetInfo);
+				partsSetInfo = null;
+
+			} else if (handler.isPath(base, "preset", "display-name")) {
+				displayName.add(text, langNm);
+
+			} else if (handler.isPath(base, "preset", "affine-transform-parameter")) {
+				if (affineTransformParameter == null) {
+					affineTransformParameter = text;
+				}
+
+			} else if (handler.isPath(base, "preset", "category")) {
+				categoryPartsMap = null;
+
+			} else if (categoryPartsMap != null
+					&& handler.isPath(base, "preset", "category", "parts")) {
+				if (partsName != null) {
+					categoryPartsMap.put(partsName, infoList);
+				}
+				partsName = null;
+				infoList = null;
+
+			} else if (inColor
+					&& handler.isPath(base, "preset", "category", "parts", "color")) {
+				inColor = false;
+
+			} else if (inColor
+					&& handler.isPath(base, "preset", "category", "parts", "color", "layer")) {
+				if (colorInfo != null) {
+					infoList.add(colorInfo);
+				}
+				colorInfo = null;
+				inRgb = false;
+
+			} else if (inRgb && handler.getDepth() == base + 6 && "rgb".equals(name)) {
+				inRgb = false;
+			}
+		}
+
+		/**
+		 * 組み立てたパーツセットのリストを返す.
+		 *
+		 * @return パーツセットのリスト
+		 */
+		public IndependentPartsSetInfoList getPartsSetList() {
+			if (defaultPresetId.length() == 0) {
+				// デフォルトパーツセットがないことを示すためのnull
+				defaultPresetId = null;
+			}
+			partsSetLst.setDefaultPresetId(defaultPresetId);
+			return partsSetLst;
+		}
+	}
+
+	/**
+	 * 読み込み途中のカテゴリ
+	 */
+	private static final class CategoryEntry {
+
+		String categoryId;
+
+		boolean multipleSelectable;
+
+		LocalizedText displayName;
+
+		LocalizedText visibleRows;
+
+		int visibleRowsValue;
+
+		final ArrayList<LayerEntry> layers = new ArrayList<LayerEntry>();
+	}
+
+	/**
+	 * 読み込み途中のレイヤー.<br>
+	 * カラーグループの参照は、すべてのカラーグループを読み込んだ後で解決する.<br>
+	 */
+	private static final class LayerEntry {
+
+		String layerId;
+
+		LocalizedText displayName;
+
+		String order;
+
+		int orderValue;
+
+		String dir;
+
+		String colorModelName;
+
+		boolean colorGroupFound;
+
+		boolean initSync;
+
+		String colorGroupRefId;
+	}
+
+	/**
+	 * お気に入り(partssets)を読み込むSAXハンドラ.<br>
+	 *
+	 * @author seraphy
+	 */
+	private final class PartsSetsHandler extends AbstractXMLHandler {
+
+		private final String lang;
+
+		/**
+		 * パーツセットのリストの組み立て、ルート要素が正しくなければnull
+		 */
+		private PartsSetListBuilder builder;
+
+		public PartsSetsHandler(String lang) {
+			this.lang = lang;
+		}
+
+		@Override
+		protected void start(String name, String ns, Attributes atts) {
+			if (getDepth() == 1) {
+				if ("partssets".equals(name) && ns.startsWith(NS_PREFIX)) {
+					builder = new PartsSetListBuilder(this, atts, lang);
+				}
+				return;
+			}
+			if (builder != null) {
+				builder.start(name, atts);
+			}
+		}
+
+		@Override
+		protected void end(String name, String text, String langNm) {
+			if (builder != null && getDepth() > 1) {
+				builder.end(name, text, langNm);
+			}
+		}
+
+		public IndependentPartsSetInfoList getPartsSetList() {
+			return builder == null ? null : builder.getPartsSetList();
+		}
+	}
+
+	/**
+	 * character.xmlを読み込むSAXハンドラ.<br>
+	 * 要素の出現順に情報を収集し、{@link #buildCharacterData(URI)}で
+	 * DOMによる読み込みと同じ順序でキャラクターデータに設定する.<br>
+	 *
+	 * @author seraphy
+	 */
+	private final class CharacterDataHandler extends AbstractXMLHandler {
+
+		private final String lang;
+
+		private String characterId;
+
+		private String characterRev;
+
+		private final LocalizedText characterName;
+
+		private String author;
+
+		private String description;
+
+		private LocalizedText infoAuthor;
+
+		private LocalizedText infoDescription;
+
+		private boolean imageSizeFound;
+
+		private boolean inImageSize;
+
+		private LocalizedText imageWidth;
+
+		private LocalizedText imageHeight;
+
+		private String width;
+
+		private String height;
+
+		private final ArrayList<String[]> settings = new ArrayList<String[]>();
+
+		private String entryKey;
+
+		private final ArrayList<ColorGroup> colorGroups = new ArrayList<ColorGroup>();
+
+		private String colorGroupId;
+
+		private LocalizedText colorGroupDisplayName;
+
+		private final ArrayList<CategoryEntry> categories = new ArrayList<CategoryEntry>();
+
+		private CategoryEntry category;
+
+		private LayerEntry layer;
+
+		private final ArrayList<IndependentPartsSetInfoList> presets = new ArrayList<IndependentPartsSetInfoList>();
+
+		private PartsSetListBuilder presetsBuilder;
+
+		private List<RecommendationURL> recommendationURLList; // お勧めノードがない場合はnull
+
+		private LocalizedText recommendDescription;
+
+		private LocalizedText recommendURL;
+
+		public CharacterDataHandler(String lang) {
+			this.lang = lang;
+			this.characterName = new LocalizedText(lang);
+		}
+
+		@Override
+		protected void start(String name, String ns, Attributes atts)
+				throws IOException {
+			int depth = getDepth();
+			if (depth == 1) {
+				if (!"character".equals(name)) {
+					throw new IOException("Invalid Format.");
+				}
+				if (!ns.startsWith(NS_PREFIX)) {
+					throw new IOException("unsupported xml format");
+				}
+				String docVersion = getAttribute(atts, "version").trim();
+				if (!"1.0".equals(docVersion)) {
+					throw new IOException("unsupported version: " + docVersion);
+				}
+				characterId = getAttribute(atts, "id").trim();
+				characterRev = getAttribute(atts, "rev").trim();
+				return;
+			}
+
+			if (presetsBuilder != null) {
+				presetsBuilder.start(name, atts);
+
+			} else if (isPath(1, "presets")) {
+				presetsBuilder = new PartsSetListBuilder(this, atts, lang);
+
+			} else if (isPath(1, "information")) {
+				infoAuthor = new LocalizedText(lang);
+				infoDescription = new LocalizedText(lang);
+
+			} else if (isPath(1, "image-size")) {
+				if (!imageSizeFound) {
+					inImageSize = true;
+					imageWidth = new LocalizedText(lang);
+					imageHeight = new LocalizedText(lang);
+				}
+
+			} else if (isPath(1, "settings", "entry")) {
+				entryKey = getAttribute(atts, "key").trim();
+
+			} else if (isPath(1, "colorGroups", "colorGroup")) {
+				colorGroupId = getAttribute(atts, "id").trim();
+				colorGroupDisplayName = new LocalizedText(lang);
+
+			} else if (isPath(1, "categories", "category")) {
+				category = new CategoryEntry();
+				category.categoryId = getAttribute(atts, "id").trim();
+				category.multipleSelectable = Boolean.parseBoolean(getAttribute(
+						atts, "multipleSelectable"));
+				category.displayName = new LocalizedText(lang);
+				category.visibleRows = new LocalizedText(lang);
+
+			} else if (isPath(1, "categories", "category", "layers", "layer")) {
+				layer = new LayerEntry();
+				layer.layerId = getAttribute(atts, "id");
+				layer.displayName = new LocalizedText(lang);
+
+			} else if (isPath(1, "categories", "category", "layers", "layer", "colorGroup")) {
+				if (!layer.colorGroupFound) {
+					layer.colorGroupFound = true;
+					String tmpInitSync = getAttribute(atts, "init-sync");
+					if (tmpInitSync.trim().length() > 0) {
+						layer.initSync = Boolean.parseBoolean(tmpInitSync.trim());
+					}
+					layer.colorGroupRefId = getAttribute(atts, "refid").trim();
+				}
+
+			} else if (isPath(1, "recommendations", "recommendation")) {
+				recommendDescription = new LocalizedText(lang);
+				recommendURL = new LocalizedText(lang);
+			}
+		}
+
+		@Override
+		protected void end(String name, String text, String langNm)
+				throws IOException {
+			if (presetsBuilder != null) {
+				if (isPath(1, "presets")) {
+					presets.add(presetsBuilder.getPartsSetList());
+					presetsBuilder = null;
+				} else {
+					presetsBuilder.end(name, text, langNm);
+				}
+
+			} else if (isPath(1, "name")) {
+				characterName.add(text, langNm);
+
+			} else if (isPath(1, "information", "author")) {
+				infoAuthor.add(text, langNm);
+
+			} else if (isPath(1, "information", "description")) {
+				infoDescription.add(text, langNm);
+
+			} else if (isPath(1, "information")) {
+				if (author == null) {
+					author = infoAuthor.getText();
+				}
+				if (description == null) {
+					description = infoDescription.getText();
+				}
+
+			} else if (inImageSize && isPath(1, "image-size", "width")) {
+				imageWidth.add(text, langNm);
+
+			} else if (inImageSize && isPath(1, "image-size", "height")) {
+				imageHeight.add(text, langNm);
+
+			} else if (inImageSize && isPath(1, "image-size")) {
+				width = imageWidth.getText();
+				height = imageHeight.getText();
+				inImageSize = false;
+				imageSizeFound = true;
+
+			} else if (isPath(1, "settings", "entry")) {
+				settings.add(new String[] {entryKey, text});
+
+			} else if (isPath(1, "colorGroups", "colorGroup", "display-name")) {
+				colorGroupDisplayName.add(text, langNm);
+
+			} else if (isPath(1, "colorGroups", "colorGroup")) {
+				colorGroups.add(new ColorGroup(colorGroupId,
+						colorGroupDisplayName.getText()));
+
+			} else if (isPath(1, "categories", "category", "display-name")) {
+				category.displayName.add(text, langNm);
+
+			} else if (isPath(1, "categories", "category", "visible-rows")) {
+				category.visibleRows.add(text, langNm);
+
+			} else if (isPath(1, "categories", "category")) {
+				endCategory();
+
+			} else if (isPath(1, "categories", "category", "layers", "layer", "display-name")) {
+				layer.displayName.add(text, langNm);
+
+			} else if (isPath(1, "categories", "category", "layers", "layer", "order")) {
+				if (layer.order == null) {
+					layer.order = text;
+				}
+
+			} else if (isPath(1, "categories", "category", "layers", "layer", "dir")) {
+				if (layer.dir == null) {
+					layer.dir = text;
+				}
+
+			} else if (isPath(1, "categories", "category", "layers", "layer", "colorModel")) {
+				if (layer.colorModelName == null) {
+					layer.colorModelName = text;
+				}
+
+			} else if (isPath(1, "categories", "category", "layers", "layer")) {
+				endLayer();
+
+			} else if (isPath(1, "recommendations", "recommendation", "description")) {
+				recommendDescription.add(text, langNm);
+
+			} else if (isPath(1, "recommendations", "recommendation", "URL")) {
+				recommendURL.add(text, langNm);
+
+			} else if (isPath(1, "recommendations", "recommendation")) {
+				endRecommendation();
+			}
+		}
+
+		private void endCategory() {
+			int visibleRows = 0;
+			String tmpVisibleRows = category.visibleRows.getText();
+			if (tmpVisibleRows != null && tmpVisibleRows.trim().length() > 0) {
+				visibleRows = Integer.parseInt(tmpVisibleRows.trim());
+			}
+			if (visibleRows <= 0) {
+				visibleRows = 0;
+			}
+			category.visibleRowsValue = visibleRows;
+			categories.add(category);
+			category = null;
+		}
+
+		private void endLayer() throws IOException {
+			// レイヤーの重ね順
+			int order = category.layers.size();
+			if (layer.order != null && layer.order.trim().length() > 0) {
+				order = Integer.parseInt(layer.order.trim());
+			}
+			layer.orderValue = order;
+
+			// レイヤーの画像ディレクトリ名
+			if (layer.dir == null || layer.dir.trim().length() == 0) {
+				throw new IOException("layer's dir is null");
+			}
+
+			// カラーモデル(省略可)
+			if (layer.colorModelName == null || layer.colorModelName.length() == 0) {
+				// 省略時はデフォルトのカラーモデル名を使用する.
+				layer.colorModelName = ColorModels.DEFAULT.name();
+			}
+
+			category.layers.add(layer);
+			layer = null;
+		}
+
+		private void endRecommendation() {
+			String recommentDescription = recommendDescription.getText();
+			String url = recommendURL.getText();
+
+			if (recommentDescription != null) {
+				recommentDescription = recommentDescription.trim();
+			}
+			if (url != null) {
+				url = url.trim();
+			}
+
+			RecommendationURL recommendationURL = new RecommendationURL();
+			recommendationURL.setDisplayName(recommentDescription);
+			recommendationURL.setUrl(url);
+
+			if (recommendationURLList == null) {
+				recommendationURLList = new ArrayList<RecommendationURL>();
+			}
+			recommendationURLList.add(recommendationURL);
+		}
+
+		/**
+		 * 収集した情報からキャラクターデータを組み立てる.
+		 *
+		 * @param docBase
+		 *            XMLファイルの位置を示すURI
+		 * @return キャラクターデータ
+		 */
+		public CharacterData buildCharacterData(URI docBase) {
+			CharacterData characterData = new CharacterData();
+			characterData.setDocBase(docBase);
+
+			characterData.setId(characterId);
+			characterData.setRev(characterRev);
+
+			// name
+			String name = characterName.getText();
+			if (name == null) {
+				name = "default";
+			}
+			characterData.setName(name.trim());
+
+			// information/author, information/description
+			if (author == null) {
+				author = "";
+			}
+			characterData.setAuthor(author.trim());
+			characterData.setDescription(description);
+
+			// image-size/width, image-size/height
+			int imageWidth = 0;
+			int imageHeight = 0;
+			if (width != null && width.trim().length() > 0) {
+				imageWidth = Integer.parseInt(width.trim());
+			}
+			if (height != null && height.trim().length() > 0) {
+				imageHeight = Integer.parseInt(height.trim());
+			}
+			if (imageWidth <= 0) {
+				imageWidth = 300;
+			}
+			if (imageHeight <= 0) {
+				imageHeight = 400;
+			}
+			characterData.setImageSize(new Dimension(imageWidth, imageHeight));
+
+			// settings
+			for (String[] entry : settings) {
+				characterData.setProperty(entry[0], entry[1]);
+			}
+
+			// colorGroups/colorGroup
+			characterData.setColorGroups(colorGroups);
+
+			// categories/category
+			ArrayList<PartsCategory> partsCategories = new ArrayList<PartsCategory>();
+			for (CategoryEntry categoryEntry : categories) {
+				ArrayList<Layer> layers = new ArrayList<Layer>();
+				for (LayerEntry layerEntry : categoryEntry.layers) {
+					ColorGroup colorGroup = null;
+					if (layerEntry.colorGroupFound) {
+						colorGroup = characterData.getColorGroup(layerEntry.colorGroupRefId);
+					}
+					layers.add(new Layer(layerEntry.layerId,
+							layerEntry.displayName.getText(),
+							layerEntry.orderValue, colorGroup,
+							layerEntry.initSync, layerEntry.dir,
+							layerEntry.colorModelName));
+				}
+				partsCategories.add(new PartsCategory(partsCategories.size(),
+						categoryEntry.categoryId,
+						categoryEntry.displayName.getText(),
+						categoryEntry.multipleSelectable,
+						categoryEntry.visibleRowsValue,
+						layers.toArray(new Layer[layers.size()])));
+			}
+			characterData.setPartsCategories(partsCategories
+					.toArray(new PartsCategory[partsCategories.size()]));
+
+			// presets
+			for (IndependentPartsSetInfoList partsSetLst : presets) {
+				addPartsSets(characterData, partsSetLst, true);
+			}
+
+			// recommendations
+			characterData.setRecommendationURLList(recommendationURLList);
+
+			return characterData;
+		}
+	}
+}
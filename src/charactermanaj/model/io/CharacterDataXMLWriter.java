@@ -12,14 +12,9 @@ import java.util.Locale;
 import java.util.Map;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -38,6 +33,7 @@ import charactermanaj.model.PartsColorInfo;
 import charactermanaj.model.PartsIdentifier;
 import charactermanaj.model.PartsSet;
 import charactermanaj.model.RecommendationURL;
+import charactermanaj.util.XMLUtilities;
 
 /**
  * パーツ管理情報のXMLへの書き込み用クラス.
@@ -82,16 +78,7 @@ public class CharacterDataXMLWriter {
 		Locale locale = Locale.getDefault();
 		String lang = locale.getLanguage();
 
-		Document doc;
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory
-					.newInstance();
-			factory.setNamespaceAware(true);
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			doc = builder.newDocument();
-		} catch (ParserConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration failed.", ex);
-		}
+		Document doc = XMLUtilities.getDocumentBuilder(null).newDocument();
 
 		Element root = doc.createElementNS(NS, "character");
 		root.setAttribute("version", VERSION_SIG_1_0);
@@ -315,14 +302,7 @@ public class CharacterDataXMLWriter {
 		}
 
 		// output xml
-		TransformerFactory txFactory = TransformerFactory.newInstance();
-		txFactory.setAttribute("indent-number", Integer.valueOf(4));
-		Transformer tfmr;
-		try {
-			tfmr = txFactory.newTransformer();
-		} catch (TransformerConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration Failed.", ex);
-		}
+		Transformer tfmr = XMLUtilities.getTransformer();
 		tfmr.setOutputProperty(OutputKeys.INDENT, "yes");
 
 		// JDK-4504745 : javax.xml.transform.Transformer encoding does not work properly
@@ -605,18 +585,16 @@ public class CharacterDataXMLWriter {
 			throw new IllegalArgumentException();
 		}
 
-		Document doc;
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory
-					.newInstance();
-			factory.setNamespaceAware(true);
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			doc = builder.newDocument();
-
-		} catch (ParserConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration Exception.", ex);
+		// まだ読み込まれていないお気に入りを読み込んでおく.
+		// (読み込めないものを空として書き出すと、そのお気に入りは失われてしまうため中断する.)
+		for (PartsSet partsSet : characterData.getPartsSets().values()) {
+			if (!partsSet.isPresetParts()) {
+				partsSet.load();
+			}
 		}
 
+		Document doc = XMLUtilities.getDocumentBuilder(null).newDocument();
+
 		Element root = doc.createElementNS(NS, "partssets");
 
 		root.setAttribute("xmlns:xml", XMLConstants.XML_NS_URI);
@@ -629,14 +607,7 @@ public class CharacterDataXMLWriter {
 		writePartsSetElements(doc, root, characterData, false, true);
 
 		// output xml
-		TransformerFactory txFactory = TransformerFactory.newInstance();
-		txFactory.setAttribute("indent-number", Integer.valueOf(4));
-		Transformer tfmr;
-		try {
-			tfmr = txFactory.newTransformer();
-		} catch (TransformerConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration Failed.", ex);
-		}
+		Transformer tfmr = XMLUtilities.getTransformer();
 		tfmr.setOutputProperty(OutputKeys.INDENT, "yes");
 
 		// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4504745
@@ -0,0 +1,704 @@
+package charactermanaj.model.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import charactermanaj.model.CharacterData;
+import charactermanaj.model.IndependentPartsSetInfo;
+import charactermanaj.model.IndependentPartsSetInfoList;
+import charactermanaj.model.PartsSet;
+
+/**
+ * お気に入り(favorites.xml)の変更を追記していくジャーナル.<br>
+ * お気に入りの保存時には、前回の保存状態から変更・削除されたパーツセットだけをジャーナルに追記する.<br>
+ * お気に入りの読み込み時には、favorites.xmlの内容にジャーナルを順に適用する.<br>
+ * ジャーナルは{@link #compact(CharacterData)}によりfavorites.xmlに統合され、削除される.<br>
+ * 各レコードはチェックサムをもち、書き込み途中で中断された末尾のレコードは無視される.<br>
+ * ジャーナルのヘッダには作成時点のfavorites.xmlのサイズとチェックサムを記録し、
+ * 現在のfavorites.xmlと一致しないジャーナルは統合済みのものとして破棄する.<br>
+ * favorites.xmlの書き換えは一時ファイルに書き込んでから置き換えるため、中断されても元の内容は失われない.<br>
+ *
+ * @author seraphy
+ */
+public final class FavoritesJournal {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(FavoritesJournal.class.getName());
+
+	/**
+	 * ジャーナルファイルの名前
+	 */
+	public static final String JOURNAL_FILE_NAME = "favorites.journal";
+
+	/**
+	 * ジャーナルファイルの識別子
+	 */
+	private static final int MAGIC = 0x434d464a; // "CMFJ"
+
+	/**
+	 * ジャーナルファイルの形式のバージョン
+	 */
+	private static final int FORMAT_VERSION = 2;
+
+	/**
+	 * ヘッダのサイズ(識別子、バージョン、favorites.xmlのサイズとチェックサム)
+	 */
+	private static final int HEADER_SIZE = 24;
+
+	/**
+	 * パーツセットの登録・更新
+	 */
+	private static final byte OP_PUT = 'P';
+
+	/**
+	 * パーツセットの削除
+	 */
+	private static final byte OP_REMOVE = 'R';
+
+	/**
+	 * お気に入りのファイル
+	 */
+	private final File xmlFile;
+
+	/**
+	 * ジャーナルファイル
+	 */
+	private final File journalFile;
+
+	/**
+	 * 書き換え中のお気に入りの一時ファイル
+	 */
+	private final File tmpFile;
+
+	private final CharacterDataXMLWriter xmlWriter = new CharacterDataXMLWriter();
+
+	private final CharacterDataXMLStreamingReader xmlReader = new CharacterDataXMLStreamingReader();
+
+	/**
+	 * 最後に保存または読み込んだ時点の、お気に入りのパーツセットIDごとのインスタンス.<br>
+	 * まだ保存状態がわからない場合はnull.<br>
+	 */
+	private HashMap<String, PartsSet> persistedPartsSets;
+
+	/**
+	 * 最後に保存または読み込んだ時点の、お気に入りのパーツセットIDごとの表示名.<br>
+	 * (名前の変更はインスタンスを変えずに行われるため、別に記録する.)<br>
+	 */
+	private HashMap<String, String> persistedNames;
+
+	/**
+	 * 保存状態を記録した時点のfavorites.xmlの更新日時
+	 */
+	private long xmlLastModified;
+
+	/**
+	 * 保存状態を記録した時点のfavorites.xmlのサイズ
+	 */
+	private long xmlLength;
+
+	/**
+	 * 保存状態を記録した時点のジャーナルのサイズ
+	 */
+	private long journalLength;
+
+	/**
+	 * ジャーナルのレコード数
+	 */
+	private int recordCount;
+
+	/**
+	 * ジャーナルのレコード
+	 *
+	 * @author seraphy
+	 */
+	private static final class Record {
+
+		private final byte op;
+
+		private final String partsSetId;
+
+		/**
+		 * 登録の場合、そのパーツセットだけを含むお気に入りのXML文書
+		 */
+		private final byte[] doc;
+
+		Record(byte op, String partsSetId, byte[] doc) {
+			this.op = op;
+			this.partsSetId = partsSetId;
+			this.doc = doc;
+		}
+	}
+
+	/**
+	 * お気に入りのファイルを指定して構築する.<br>
+	 * ジャーナルは同じディレクトリに作成される.<br>
+	 *
+	 * @param xmlFile
+	 *            お気に入りのファイル
+	 */
+	public FavoritesJournal(File xmlFile) {
+		if (xmlFile == null) {
+			throw new IllegalArgumentException();
+		}
+		this.xmlFile = xmlFile;
+		this.journalFile = new File(xmlFile.getParentFile(), JOURNAL_FILE_NAME);
+		this.tmpFile = new File(xmlFile.getPath() + ".tmp");
+	}
+
+	public File getXmlFile() {
+		return xmlFile;
+	}
+
+	/**
+	 * 統合されていないレコード数を返す.
+	 *
+	 * @return レコード数
+	 */
+	public synchronized int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * favorites.xmlの書き換えが中断されていれば回復する.<br>
+	 * 置き換えの途中で元のファイルだけが削除されていれば、書き込み済みの一時ファイルを用いる.<br>
+	 * 元のファイルが残っていれば、一時ファイルは書き込み途中のものであるため削除する.<br>
+	 */
+	public synchronized void recover() {
+		if (!tmpFile.exists()) {
+			return;
+		}
+		if (!xmlFile.exists()) {
+			if (tmpFile.renameTo(xmlFile)) {
+				logger.log(Level.INFO, "favorites recovered from " + tmpFile);
+				return;
+			}
+			logger.log(Level.WARNING, "favorites recovery failed. " + tmpFile);
+			return;
+		}
+		if (!tmpFile.delete()) {
+			logger.log(Level.WARNING, "temporary file can't delete. " + tmpFile);
+		}
+	}
+
+	/**
+	 * favorites.xmlを読み込んだキャラクターデータに、ジャーナルのレコードを順に適用する.<br>
+	 * 適用後のお気に入りを、保存状態として記録する.<br>
+	 *
+	 * @param characterData
+	 *            favorites.xmlを読み込んだキャラクターデータ
+	 * @throws IOException
+	 *             ジャーナルの読み込みに失敗した場合
+	 */
+	public synchronized void replay(CharacterData characterData) throws IOException {
+		if (characterData == null) {
+			throw new IllegalArgumentException();
+		}
+		List<Record> records = readRecords();
+		applyRecords(characterData, records);
+		if (!records.isEmpty()) {
+			logger.log(Level.INFO, "favorites journal replayed. records=" + records.size());
+		}
+		establish(characterData);
+	}
+
+	/**
+	 * 前回の保存状態からの差分をジャーナルに追記する.<br>
+	 * まだ保存状態がわからないか、favorites.xmlまたはジャーナルが外部で変更されている場合は追記せずにfalseを返す.<br>
+	 * 内容が読み込まれていないパーツセットと、保存時と同じインスタンスで同じ表示名のパーツセットは変更なしとみなす.<br>
+	 * インスタンスが異なる場合は内容を比較する.<br>
+	 *
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @return 追記した(または差分がなかった)場合はtrue
+	 * @throws IOException
+	 *             書き込みに失敗した場合
+	 */
+	public synchronized boolean append(CharacterData characterData) throws IOException {
+		if (characterData == null) {
+			throw new IllegalArgumentException();
+		}
+		if (persistedPartsSets == null || isModifiedExternally()) {
+			return false;
+		}
+
+		HashMap<String, PartsSet> favorites = getFavorites(characterData);
+
+		ArrayList<Record> records = new ArrayList<Record>();
+		for (Map.Entry<String, PartsSet> entry : favorites.entrySet()) {
+			String partsSetId = entry.getKey();
+			PartsSet partsSet = entry.getValue();
+			if (!isChanged(partsSetId, partsSet)) {
+				continue;
+			}
+			records.add(new Record(OP_PUT, partsSetId, toDocument(characterData, partsSet)));
+		}
+		for (String partsSetId : persistedPartsSets.keySet()) {
+			if (!favorites.containsKey(partsSetId)) {
+				records.add(new Record(OP_REMOVE, partsSetId, null));
+			}
+		}
+
+		if (!records.isEmpty()) {
+			writeRecords(records);
+		}
+
+		persistedPartsSets = favorites;
+		persistedNames = getNames(favorites);
+		return true;
+	}
+
+	/**
+	 * お気に入りのすべてをfavorites.xmlに書き込み、ジャーナルを削除する.<br>
+	 *
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @throws IOException
+	 *             書き込みに失敗した場合
+	 */
+	public synchronized void rewrite(CharacterData characterData) throws IOException {
+		if (characterData == null) {
+			throw new IllegalArgumentException();
+		}
+		writeXml(characterData);
+		deleteJournal();
+		establish(characterData);
+	}
+
+	/**
+	 * ジャーナルをfavorites.xmlに統合する.<br>
+	 * ファイル上のfavorites.xmlとジャーナルから組み立てたお気に入りを書き込むため、
+	 * 画面上のキャラクターデータの状態には依存しない.<br>
+	 * 保存状態は変わらないため、記録済みの保存状態はそのまま用いる.<br>
+	 *
+	 * @param template
+	 *            カテゴリなどの基本情報を得るためのキャラクターデータ
+	 * @throws IOException
+	 *             統合に失敗した場合
+	 */
+	public synchronized void compact(CharacterData template) throws IOException {
+		if (template == null) {
+			throw new IllegalArgumentException();
+		}
+		recover();
+		if (!journalFile.exists()) {
+			recordCount = 0;
+			return;
+		}
+		long st = System.currentTimeMillis();
+		boolean modified = persistedPartsSets != null && isModifiedExternally();
+
+		CharacterData cd = template.duplicateBasicInfo(false);
+		if (xmlFile.exists()) {
+			InputStream is = new FileInputStream(xmlFile);
+			try {
+				xmlReader.loadPartsSet(cd, is);
+			} finally {
+				is.close();
+			}
+		}
+		List<Record> records = readRecords();
+		applyRecords(cd, records);
+
+		writeXml(cd);
+		deleteJournal();
+
+		if (persistedPartsSets == null || modified) {
+			establish(cd);
+		} else {
+			xmlLastModified = xmlFile.lastModified();
+			xmlLength = xmlFile.length();
+		}
+
+		logger.log(Level.INFO, "favorites journal compacted. records=" + records.size()
+				+ " " + (System.currentTimeMillis() - st) + "ms");
+	}
+
+	/**
+	 * ジャーナルを削除し、保存状態を破棄する.<br>
+	 * お気に入りを削除する場合に用いる.<br>
+	 */
+	public synchronized void delete() {
+		deleteJournal();
+		persistedPartsSets = null;
+		persistedNames = null;
+	}
+
+	/**
+	 * 現在のお気に入りを保存状態として記録する.
+	 *
+	 * @param characterData
+	 *            キャラクターデータ
+	 */
+	private void establish(CharacterData characterData) {
+		persistedPartsSets = getFavorites(characterData);
+		persistedNames = getNames(persistedPartsSets);
+		xmlLastModified = xmlFile.lastModified();
+		xmlLength = xmlFile.length();
+		journalLength = journalFile.length();
+	}
+
+	/**
+	 * 保存状態を記録したあとに、favorites.xmlまたはジャーナルが外部で変更されているか?
+	 *
+	 * @return 変更されていればtrue
+	 */
+	private boolean isModifiedExternally() {
+		return xmlFile.lastModified() != xmlLastModified
+				|| xmlFile.length() != xmlLength
+				|| journalFile.length() != journalLength;
+	}
+
+	/**
+	 * パーツセットが保存状態から変更されているか?
+	 *
+	 * @param partsSetId
+	 *            パーツセットID
+	 * @param partsSet
+	 *            現在のパーツセット
+	 * @return 変更されているか、保存されていなければtrue
+	 */
+	private boolean isChanged(String partsSetId, PartsSet partsSet) {
+		PartsSet persisted = persistedPartsSets.get(partsSetId);
+		if (persisted == null) {
+			return true;
+		}
+		String name = persistedNames.get(partsSetId);
+		if (name == null || !name.equals(partsSet.getLocalizedName())) {
+			return true;
+		}
+		if (persisted == partsSet || !partsSet.isLoaded()) {
+			// 同じインスタンス、または読み込まれたまま一度も参照されていないもの
+			return false;
+		}
+		return !persisted.equals(partsSet);
+	}
+
+	/**
+	 * お気に入り(プリセット以外)のパーツセットを返す.
+	 *
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @return パーツセットIDごとのパーツセット
+	 */
+	private static HashMap<String, PartsSet> getFavorites(CharacterData characterData) {
+		HashMap<String, PartsSet> favorites = new HashMap<String, PartsSet>();
+		for (Map.Entry<String, PartsSet> entry : characterData.getPartsSets().entrySet()) {
+			if (!entry.getValue().isPresetParts()) {
+				favorites.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return favorites;
+	}
+
+	private static HashMap<String, String> getNames(Map<String, PartsSet> favorites) {
+		HashMap<String, String> names = new HashMap<String, String>();
+		for (Map.Entry<String, PartsSet> entry : favorites.entrySet()) {
+			names.put(entry.getKey(), entry.getValue().getLocalizedName());
+		}
+		return names;
+	}
+
+	/**
+	 * パーツセットを、そのパーツセットだけを含むお気に入りのXML文書にする.
+	 *
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @param partsSet
+	 *            パーツセット
+	 * @return XML文書
+	 * @throws IOException
+	 *             失敗した場合
+	 */
+	private byte[] toDocument(CharacterData characterData, PartsSet partsSet)
+			throws IOException {
+		CharacterData cd = characterData.duplicateBasicInfo(false);
+		cd.addPartsSet(partsSet);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		xmlWriter.saveFavorites(cd, bos);
+		return bos.toByteArray();
+	}
+
+	/**
+	 * レコードをキャラクターデータに適用する.<br>
+	 * 削除はお気に入りのみを対象とし、プリセットは削除しない.<br>
+	 *
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @param records
+	 *            レコード
+	 * @throws IOException
+	 *             レコードの内容が不正な場合
+	 */
+	private void applyRecords(CharacterData characterData, List<Record> records)
+			throws IOException {
+		String lang = Locale.getDefault().getLanguage();
+		Map<String, PartsSet> partsSets = characterData.getPartsSets();
+		for (Record record : records) {
+			if (record.op == OP_PUT) {
+				IndependentPartsSetInfoList partsSetLst = xmlReader.loadPartsSetList(
+						new ByteArrayInputStream(record.doc), lang);
+				if (partsSetLst == null) {
+					throw new IOException("invalid journal record: " + record.partsSetId);
+				}
+				for (IndependentPartsSetInfo partsSetInfo : partsSetLst) {
+					characterData.addPartsSet(IndependentPartsSetInfo.convertPartsSet(
+							partsSetInfo, characterData, false));
+				}
+
+			} else {
+				PartsSet partsSet = partsSets.get(record.partsSetId);
+				if (partsSet != null && !partsSet.isPresetParts()) {
+					partsSets.remove(record.partsSetId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * ジャーナルのレコードを読み込む.<br>
+	 * 末尾に不完全なレコードがあれば、それ以降を切り捨てる.<br>
+	 * ヘッダに記録されたfavorites.xmlのサイズとチェックサムが現在のものと一致しない場合は、
+	 * favorites.xmlへの統合後、ジャーナルの削除前に中断されたものであるため、ジャーナルを削除して空とする.<br>
+	 *
+	 * @return レコードのリスト
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	private List<Record> readRecords() throws IOException {
+		ArrayList<Record> records = new ArrayList<Record>();
+		recordCount = 0;
+		if (!journalFile.exists()) {
+			return records;
+		}
+
+		long validLength = 0;
+		long fileLength = journalFile.length();
+		boolean stale = false;
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(journalFile)));
+		try {
+			if (fileLength >= HEADER_SIZE) {
+				if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+					throw new IOException("unsupported journal format. " + journalFile);
+				}
+				long baseLength = dis.readLong();
+				long baseChecksum = dis.readLong();
+				stale = baseLength != xmlFile.length() || baseChecksum != getXmlChecksum();
+				validLength = HEADER_SIZE;
+				while (!stale) {
+					Record record;
+					long recordLength;
+					try {
+						int len = dis.readInt();
+						if (len <= 0 || validLength + 4 + len + 8 > fileLength) {
+							break;
+						}
+						byte[] body = new byte[len];
+						dis.readFully(body);
+						long crcValue = dis.readLong();
+						CRC32 crc = new CRC32();
+						crc.update(body);
+						if (crc.getValue() != crcValue) {
+							break;
+						}
+						record = decodeRecord(body);
+						recordLength = 4 + len + 8;
+
+					} catch (EOFException ex) {
+						break;
+					}
+					records.add(record);
+					validLength += recordLength;
+				}
+			}
+
+		} finally {
+			dis.close();
+		}
+
+		if (stale) {
+			logger.log(Level.INFO, "favorites journal is stale. " + journalFile);
+			deleteJournal();
+			return records;
+		}
+		if (validLength < fileLength) {
+			// 書き込み途中で中断されたレコードを切り捨てる.
+			logger.log(Level.WARNING, "favorites journal truncated. " + journalFile
+					+ " " + fileLength + " -> " + validLength);
+			RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+			try {
+				raf.setLength(validLength);
+			} finally {
+				raf.close();
+			}
+		}
+		recordCount = records.size();
+		return records;
+	}
+
+	private static Record decodeRecord(byte[] body) throws IOException {
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(body));
+		byte op = dis.readByte();
+		String partsSetId = dis.readUTF();
+		byte[] doc = null;
+		if (op == OP_PUT) {
+			doc = new byte[dis.readInt()];
+			dis.readFully(doc);
+		} else if (op != OP_REMOVE) {
+			throw new IOException("unknown journal operation: " + op);
+		}
+		return new Record(op, partsSetId, doc);
+	}
+
+	/**
+	 * レコードをジャーナルに追記し、ディスクに同期する.
+	 *
+	 * @param records
+	 *            レコード
+	 * @throws IOException
+	 *             書き込みに失敗した場合
+	 */
+	private void writeRecords(List<Record> records) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bos);
+		if (journalFile.length() < HEADER_SIZE) {
+			dos.writeInt(MAGIC);
+			dos.writeInt(FORMAT_VERSION);
+			dos.writeLong(xmlFile.length());
+			dos.writeLong(getXmlChecksum());
+		}
+		for (Record record : records) {
+			ByteArrayOutputStream rbos = new ByteArrayOutputStream();
+			DataOutputStream rdos = new DataOutputStream(rbos);
+			rdos.writeByte(record.op);
+			rdos.writeUTF(record.partsSetId);
+			if (record.op == OP_PUT) {
+				rdos.writeInt(record.doc.length);
+				rdos.write(record.doc);
+			}
+			rdos.flush();
+			byte[] body = rbos.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			dos.writeInt(body.length);
+			dos.write(body);
+			dos.writeLong(crc.getValue());
+		}
+		dos.flush();
+
+		boolean newFile = journalFile.length() < HEADER_SIZE;
+		FileOutputStream fos = new FileOutputStream(journalFile, !newFile);
+		try {
+			fos.write(bos.toByteArray());
+			fos.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+		recordCount += records.size();
+		journalLength = journalFile.length();
+	}
+
+	/**
+	 * お気に入りをfavorites.xmlに書き込む.<br>
+	 * 一時ファイルに書き込み、ディスクに同期してから置き換える.<br>
+	 *
+	 * @param characterData
+	 *            キャラクターデータ
+	 * @throws IOException
+	 *             書き込みに失敗した場合
+	 */
+	private void writeXml(CharacterData characterData) throws IOException {
+		// 書き込む前に、まだ読み込まれていないお気に入りを読み込んでおく.
+		// 読み込めないものがあれば、favorites.xmlを書き換えずに中断する.
+		for (PartsSet partsSet : characterData.getPartsSets().values()) {
+			partsSet.load();
+		}
+
+		File dir = xmlFile.getParentFile();
+		if (dir != null && !dir.exists()) {
+			if (!dir.mkdirs()) {
+				logger.log(Level.WARNING, "can't create directory. " + dir);
+			}
+		}
+
+		FileOutputStream fos = new FileOutputStream(tmpFile);
+		try {
+			xmlWriter.saveFavorites(characterData, fos);
+			fos.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+
+		if (!tmpFile.renameTo(xmlFile)) {
+			// 置き換えできない環境では、元のファイルを削除してから置き換える.
+			// (この間に中断された場合は、次回の読み込み時に一時ファイルから回復する.)
+			if (xmlFile.exists() && !xmlFile.delete()) {
+				throw new IOException("can't delete. " + xmlFile);
+			}
+			if (!tmpFile.renameTo(xmlFile)) {
+				throw new IOException("rename failed. " + tmpFile);
+			}
+		}
+	}
+
+	/**
+	 * favorites.xmlのチェックサムを求める.<br>
+	 * ファイルが存在しない場合は0とする.<br>
+	 *
+	 * @return チェックサム
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	private long getXmlChecksum() throws IOException {
+		CRC32 crc = new CRC32();
+		if (xmlFile.exists()) {
+			InputStream is = new FileInputStream(xmlFile);
+			try {
+				byte[] buf = new byte[8192];
+				int rd;
+				while ((rd = is.read(buf)) >= 0) {
+					crc.update(buf, 0, rd);
+				}
+			} finally {
+				is.close();
+			}
+		}
+		return crc.getValue();
+	}
+
+	private void deleteJournal() {
+		if (journalFile.exists() && !journalFile.delete()) {
+			logger.log(Level.WARNING, "journal can't delete. " + journalFile);
+		}
+		recordCount = 0;
+		journalLength = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "FavoritesJournal(" + xmlFile + ", records=" + recordCount
+				+ ", established=" + (persistedPartsSets != null) + ")";
+	}
+}
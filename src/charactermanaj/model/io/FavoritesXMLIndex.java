@@ -0,0 +1,690 @@
+package charactermanaj.model.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+
+import charactermanaj.model.io.CharacterDataXMLStreamingReader.AbstractXMLHandler;
+import charactermanaj.model.io.CharacterDataXMLStreamingReader.LocalizedText;
+import charactermanaj.util.UserDataFactory;
+
+/**
+ * お気に入り(favorites.xml)の索引.<br>
+ * 一度の走査で、パーツセットごとのID、表示名と、ファイル上のバイト位置を記録する.<br>
+ * パーツセットの内容は保持せず、必要になったときに該当する範囲だけをファイルから読み込む.<br>
+ * 索引を作成したあとにファイルが変更されていた場合は、索引を作り直してから読み込む.<br>
+ * 作成した索引はキャッシュに保存され、ファイルの更新日時とサイズが変わらない間は走査せずに復元する.<br>
+ * バイト位置を求めるため、UTF-8で記述されたファイルのみを対象とする.<br>
+ *
+ * @author seraphy
+ */
+public final class FavoritesXMLIndex {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(FavoritesXMLIndex.class.getName());
+
+	/**
+	 * 索引ファイルの名前
+	 */
+	public static final String INDEX_FILE_SUFFIX = "favoritesindex.ser";
+
+	/**
+	 * 索引ファイルの識別子
+	 */
+	private static final int MAGIC = 0x434d4649; // "CMFI"
+
+	/**
+	 * 索引ファイルの形式のバージョン
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * ファイルの更新日時の精度(ミリ秒).<br>
+	 * 走査の直前に更新されたファイルは、更新日時が同じになり変更を検出できない可能性があるため、
+	 * この範囲内で更新されていたファイルの索引は保存しない.<br>
+	 */
+	private static final long MTIME_RESOLUTION = 2000;
+
+	/**
+	 * XML宣言のエンコーディングを取り出すパターン
+	 */
+	private static final Pattern ENCODING_DECL = Pattern
+			.compile("^<\\?xml[^>]*encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+
+	/**
+	 * 索引のエントリ.<br>
+	 * パーツセットのpreset要素の、ファイル上の範囲を示す.<br>
+	 *
+	 * @author seraphy
+	 */
+	public static final class Entry {
+
+		private final String id;
+
+		private final String name;
+
+		private final long offset;
+
+		private final int length;
+
+		Entry(String id, String name, long offset, int length) {
+			this.id = id;
+			this.name = name;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * preset要素の開始位置(バイト)
+		 *
+		 * @return 開始位置
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * preset要素の長さ(バイト)
+		 *
+		 * @return 長さ
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		@Override
+		public String toString() {
+			return "(id=" + id + ", name=" + name + ", offset=" + offset
+					+ ", length=" + length + ")";
+		}
+	}
+
+	/**
+	 * お気に入りのファイル
+	 */
+	private final File file;
+
+	/**
+	 * 表示名の言語
+	 */
+	private final String lang;
+
+	/**
+	 * 索引の保存先
+	 */
+	private final File indexFile;
+
+	/**
+	 * 索引作成時のファイルの更新日時
+	 */
+	private long lastModified;
+
+	/**
+	 * 索引作成時のファイルのサイズ
+	 */
+	private long fileLength;
+
+	/**
+	 * ルート要素の開始タグ(名前空間の宣言を含む)
+	 */
+	private byte[] rootStartTag;
+
+	/**
+	 * ルート要素の名前
+	 */
+	private String rootName;
+
+	/**
+	 * パーツセットIDごとのエントリ(出現順)
+	 */
+	private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * 保存されている索引を復元するか、ファイルを走査して索引を作成する.
+	 *
+	 * @param file
+	 *            お気に入りのファイル
+	 * @param lang
+	 *            表示名の言語
+	 * @throws IOException
+	 *             読み込みに失敗したか、索引を作成できない形式の場合
+	 */
+	public FavoritesXMLIndex(File file, String lang) throws IOException {
+		if (file == null || lang == null) {
+			throw new IllegalArgumentException();
+		}
+		this.file = file;
+		this.lang = lang;
+		this.indexFile = UserDataFactory.getInstance().getMangledNamedFile(
+				file.toURI(), INDEX_FILE_SUFFIX);
+		if (!loadIndex()) {
+			build();
+		}
+	}
+
+	/**
+	 * お気に入りの索引ファイルを削除する.<br>
+	 * プロファイルを削除したときに用いる.<br>
+	 *
+	 * @param file
+	 *            お気に入りのファイル
+	 */
+	public static void removeIndex(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		File indexFile = UserDataFactory.getInstance().getMangledNamedFile(
+				file.toURI(), INDEX_FILE_SUFFIX);
+		if (indexFile.exists()) {
+			logger.log(Level.INFO, "remove file: " + indexFile);
+			if (!indexFile.delete()) {
+				logger.log(Level.WARNING, "can't delete. " + indexFile);
+			}
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getLang() {
+		return lang;
+	}
+
+	/**
+	 * パーツセットのエントリを出現順に返す.<br>
+	 * 同じIDのパーツセットが複数ある場合は、後にあるものだけが含まれる.<br>
+	 *
+	 * @return エントリのリスト
+	 */
+	public synchronized List<Entry> getEntries() {
+		return new ArrayList<Entry>(entries.values());
+	}
+
+	/**
+	 * 索引を作成したあとにファイルが変更されているか?
+	 *
+	 * @return 変更されていればtrue
+	 */
+	public synchronized boolean isModified() {
+		return file.lastModified() != lastModified || file.length() != fileLength;
+	}
+
+	/**
+	 * ファイルが変更されていれば索引を作り直す.
+	 *
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	public synchronized void refresh() throws IOException {
+		if (isModified()) {
+			build();
+		}
+	}
+
+	/**
+	 * 指定したパーツセットだけを含む、お気に入りのXML文書を返す.<br>
+	 * ルート要素の開始タグはファイルにあるものをそのまま用いるため、名前空間などの宣言も引き継がれる.<br>
+	 *
+	 * @param partsSetId
+	 *            パーツセットID
+	 * @return XML文書(UTF-8)
+	 * @throws IOException
+	 *             読み込みに失敗したか、パーツセットがない場合
+	 */
+	public synchronized byte[] readPartsSetDocument(String partsSetId) throws IOException {
+		refresh();
+		Entry entry = entries.get(partsSetId);
+		if (entry == null) {
+			throw new IOException("partsset not found: " + partsSetId + " in " + file);
+		}
+
+		byte[] fragment = new byte[entry.getLength()];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(entry.getOffset());
+			raf.readFully(fragment);
+		} finally {
+			raf.close();
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(fragment.length
+				+ rootStartTag.length + 64);
+		bos.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes("UTF-8"));
+		bos.write(rootStartTag);
+		bos.write('\n');
+		bos.write(fragment);
+		bos.write(("\n</" + rootName + ">\n").getBytes("UTF-8"));
+		return bos.toByteArray();
+	}
+
+	/**
+	 * ファイルを走査して索引を作成する.<br>
+	 * 位置の計算のためにファイル全体を一時的に読み込むが、索引の作成後は保持しない.<br>
+	 *
+	 * @throws IOException
+	 *             読み込みに失敗したか、索引を作成できない形式の場合
+	 */
+	private void build() throws IOException {
+		long st = System.currentTimeMillis();
+
+		long mtime = file.lastModified();
+		byte[] data = readFully(file);
+		checkEncoding(data);
+
+		IndexHandler handler = new IndexHandler(data);
+		InputStream is = new ByteArrayInputStream(data);
+		try {
+			CharacterDataXMLStreamingReader.parse(is, handler);
+		} finally {
+			is.close();
+		}
+		if (handler.rootStartTag == null) {
+			throw new IOException("invalid partsets format. " + file);
+		}
+
+		this.lastModified = mtime;
+		this.fileLength = data.length;
+		this.rootStartTag = handler.rootStartTag;
+		this.rootName = handler.rootName;
+		this.entries = handler.indexEntries;
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "favorites indexed. " + file + " entries="
+					+ entries.size() + " " + (System.currentTimeMillis() - st) + "ms");
+		}
+
+		if (mtime < st - MTIME_RESOLUTION) {
+			try {
+				saveIndex();
+
+			} catch (IOException ex) {
+				logger.log(Level.WARNING, "favorites index saving failed. " + indexFile, ex);
+			}
+		}
+	}
+
+	/**
+	 * 索引をファイルに保存する.<br>
+	 * 書き込みの途中で中断されても前回の索引が壊れないように、一時ファイルを経由して置き換える.<br>
+	 *
+	 * @throws IOException
+	 *             保存に失敗した場合
+	 */
+	private void saveIndex() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bos);
+		dos.writeUTF(lang);
+		dos.writeLong(lastModified);
+		dos.writeLong(fileLength);
+		dos.writeUTF(rootName);
+		dos.writeInt(rootStartTag.length);
+		dos.write(rootStartTag);
+		dos.writeInt(entries.size());
+		for (Entry entry : entries.values()) {
+			dos.writeUTF(entry.getId());
+			dos.writeUTF(entry.getName());
+			dos.writeLong(entry.getOffset());
+			dos.writeInt(entry.getLength());
+		}
+		dos.flush();
+		byte[] body = bos.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		ByteArrayOutputStream fileBos = new ByteArrayOutputStream(body.length + 20);
+		DataOutputStream out = new DataOutputStream(fileBos);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(body.length);
+		out.write(body);
+		out.writeLong(crc.getValue());
+		out.flush();
+
+		WriteBehindFileWriter.writeAtomically(indexFile, fileBos.toByteArray());
+	}
+
+	/**
+	 * 保存されている索引を復元する.<br>
+	 * 索引がないか、形式が不正であるか、言語またはファイルの更新日時・サイズが一致しない場合は何もしない.<br>
+	 *
+	 * @return 復元できた場合はtrue
+	 */
+	private boolean loadIndex() {
+		if (!indexFile.exists()) {
+			return false;
+		}
+		try {
+			InputStream is = new FileInputStream(indexFile);
+			try {
+				DataInputStream dis = new DataInputStream(is);
+				if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+					logger.log(Level.INFO, "favorites index format mismatch. " + indexFile);
+					return false;
+				}
+				int len = dis.readInt();
+				if (len < 0 || len > indexFile.length()) {
+					throw new IOException("invalid length: " + len);
+				}
+				byte[] body = new byte[len];
+				dis.readFully(body);
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if (crc.getValue() != dis.readLong()) {
+					logger.log(Level.WARNING, "favorites index is broken. " + indexFile);
+					return false;
+				}
+
+				DataInputStream bis = new DataInputStream(new ByteArrayInputStream(body));
+				String indexLang = bis.readUTF();
+				long indexLastModified = bis.readLong();
+				long indexFileLength = bis.readLong();
+				if (!lang.equals(indexLang)
+						|| file.lastModified() != indexLastModified
+						|| file.length() != indexFileLength) {
+					// 言語が異なるか、索引の作成後にファイルが変更されている
+					return false;
+				}
+				String indexRootName = bis.readUTF();
+				int tagLen = bis.readInt();
+				if (tagLen < 0 || tagLen > len) {
+					throw new IOException("invalid length: " + tagLen);
+				}
+				byte[] indexRootStartTag = new byte[tagLen];
+				bis.readFully(indexRootStartTag);
+				int mx = bis.readInt();
+				LinkedHashMap<String, Entry> indexEntries = new LinkedHashMap<String, Entry>();
+				for (int idx = 0; idx < mx; idx++) {
+					String id = bis.readUTF();
+					String name = bis.readUTF();
+					long offset = bis.readLong();
+					int length = bis.readInt();
+					if (offset < 0 || length < 0 || offset + length > indexFileLength) {
+						throw new IOException("invalid entry: " + id);
+					}
+					indexEntries.put(id, new Entry(id, name, offset, length));
+				}
+
+				this.lastModified = indexLastModified;
+				this.fileLength = indexFileLength;
+				this.rootStartTag = indexRootStartTag;
+				this.rootName = indexRootName;
+				this.entries = indexEntries;
+
+			} finally {
+				is.close();
+			}
+
+		} catch (EOFException ex) {
+			logger.log(Level.WARNING, "favorites index is truncated. " + indexFile, ex);
+			return false;
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "favorites index loading failed. " + indexFile, ex);
+			return false;
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "favorites index restored. " + file
+					+ " entries=" + entries.size());
+		}
+		return true;
+	}
+
+	private static byte[] readFully(File file) throws IOException {
+		long len = file.length();
+		if (len > Integer.MAX_VALUE) {
+			throw new IOException("too large: " + file);
+		}
+		byte[] data = new byte[(int) len];
+		InputStream is = new FileInputStream(file);
+		try {
+			int pos = 0;
+			while (pos < data.length) {
+				int rd = is.read(data, pos, data.length - pos);
+				if (rd < 0) {
+					break;
+				}
+				pos += rd;
+			}
+			if (pos != data.length) {
+				throw new IOException("file was truncated while reading: " + file);
+			}
+		} finally {
+			is.close();
+		}
+		return data;
+	}
+
+	/**
+	 * UTF-8(またはその部分集合)で記述されているか検証する.
+	 *
+	 * @param data
+	 *            ファイルの内容
+	 * @throws UnsupportedEncodingException
+	 *             UTF-8でない場合
+	 */
+	private static void checkEncoding(byte[] data) throws UnsupportedEncodingException {
+		int pos = 0;
+		if (data.length >= 3 && (data[0] & 0xff) == 0xef
+				&& (data[1] & 0xff) == 0xbb && (data[2] & 0xff) == 0xbf) {
+			pos = 3;
+		}
+		int declEnd = Math.min(data.length, pos + 256);
+		String decl = new String(data, pos, declEnd - pos, "ISO-8859-1").trim();
+		if (!decl.startsWith("<")) {
+			// UTF-16など、ASCII互換でないもの
+			throw new UnsupportedEncodingException("favorites must be UTF-8.");
+		}
+		Matcher mat = ENCODING_DECL.matcher(decl);
+		if (mat.find()) {
+			String encoding = mat.group(1).trim();
+			if (!"UTF-8".equalsIgnoreCase(encoding) && !"UTF8".equalsIgnoreCase(encoding)) {
+				throw new UnsupportedEncodingException("favorites must be UTF-8: " + encoding);
+			}
+		}
+	}
+
+	/**
+	 * 索引を作成するSAXハンドラ.<br>
+	 * SAXのロケータが示す行・桁から、ファイル上のバイト位置を求める.<br>
+	 *
+	 * @author seraphy
+	 */
+	private final class IndexHandler extends AbstractXMLHandler {
+
+		/**
+		 * ファイルの内容
+		 */
+		private final byte[] data;
+
+		/**
+		 * 各行の開始位置(バイト)
+		 */
+		private int[] lineStarts;
+
+		private int lineCount;
+
+		private Locator locator;
+
+		private byte[] rootStartTag;
+
+		private String rootName;
+
+		private final LinkedHashMap<String, Entry> indexEntries = new LinkedHashMap<String, Entry>();
+
+		private int presetStart = -1;
+
+		private String presetId;
+
+		private LocalizedText displayName;
+
+		public IndexHandler(byte[] data) {
+			this.data = data;
+			lineStarts = new int[256];
+			lineStarts[lineCount++] = 0;
+			int mx = data.length;
+			for (int idx = 0; idx < mx; idx++) {
+				byte b = data[idx];
+				if (b == '\n' || (b == '\r' && (idx + 1 >= mx || data[idx + 1] != '\n'))) {
+					if (lineCount == lineStarts.length) {
+						int[] tmp = new int[lineCount * 2];
+						System.arraycopy(lineStarts, 0, tmp, 0, lineCount);
+						lineStarts = tmp;
+					}
+					lineStarts[lineCount++] = idx + 1;
+				}
+			}
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		protected void start(String name, String ns, Attributes atts)
+				throws IOException {
+			int depth = getDepth();
+			if (depth == 1) {
+				if ("partssets".equals(name)
+						&& ns.startsWith(CharacterDataXMLReader.NS_PREFIX)) {
+					int tagEnd = getCurrentOffset();
+					int tagStart = findTagStart(tagEnd);
+					rootStartTag = new byte[tagEnd - tagStart];
+					System.arraycopy(data, tagStart, rootStartTag, 0, rootStartTag.length);
+					rootName = name;
+				}
+				return;
+			}
+			if (rootStartTag == null) {
+				return;
+			}
+			if (depth == 2 && "preset".equals(name)) {
+				presetStart = findTagStart(getCurrentOffset());
+				presetId = CharacterDataXMLStreamingReader.getAttribute(atts, "id").trim();
+				displayName = new LocalizedText(lang);
+			}
+		}
+
+		@Override
+		protected void end(String name, String text, String langNm)
+				throws IOException {
+			if (presetStart < 0) {
+				return;
+			}
+			int depth = getDepth();
+			if (depth == 3 && isPath(1, "preset", "display-name")) {
+				displayName.add(text, langNm);
+
+			} else if (depth == 2) {
+				int presetEnd = getCurrentOffset();
+				if (presetEnd <= presetStart || data[presetEnd - 1] != '>') {
+					throw new IOException("can not locate preset: " + presetId);
+				}
+				String localizedName = displayName.getText();
+				if (presetId.length() > 0 && localizedName != null
+						&& localizedName.length() > 0) {
+					// 同じIDは後のもので上書きする.
+					indexEntries.remove(presetId);
+					indexEntries.put(presetId, new Entry(presetId,
+							localizedName, presetStart, presetEnd - presetStart));
+				}
+				presetStart = -1;
+				presetId = null;
+				displayName = null;
+			}
+		}
+
+		/**
+		 * 直前の開始タグの先頭位置を返す.<br>
+		 * 属性値には&lt;を含めることはできないため、直前の&lt;がタグの先頭となる.<br>
+		 *
+		 * @param tagEnd
+		 *            タグの直後の位置
+		 * @return タグの先頭位置
+		 * @throws IOException
+		 *             見つからない場合
+		 */
+		private int findTagStart(int tagEnd) throws IOException {
+			if (tagEnd <= 0 || data[tagEnd - 1] != '>') {
+				throw new IOException("can not locate tag. offset=" + tagEnd);
+			}
+			for (int idx = tagEnd - 1; idx >= 0; idx--) {
+				if (data[idx] == '<') {
+					return idx;
+				}
+			}
+			throw new IOException("can not locate tag. offset=" + tagEnd);
+		}
+
+		/**
+		 * ロケータが示す現在の位置(イベントの直後)のバイト位置を返す.<br>
+		 * 桁は行頭からのUTF-16の文字数であるため、UTF-8のバイト数に換算する.<br>
+		 *
+		 * @return バイト位置
+		 * @throws IOException
+		 *             位置が求められない場合
+		 */
+		private int getCurrentOffset() throws IOException {
+			if (locator == null) {
+				throw new IOException("no locator.");
+			}
+			int line = locator.getLineNumber();
+			int column = locator.getColumnNumber();
+			if (line < 1 || line > lineCount || column < 1) {
+				throw new IOException("invalid location. line=" + line + " column=" + column);
+			}
+			int pos = lineStarts[line - 1];
+			int units = 0;
+			while (units < column - 1 && pos < data.length) {
+				int b = data[pos] & 0xff;
+				int len;
+				if (b >= 0xf0) {
+					len = 4;
+					units += 2; // サロゲートペア
+				} else {
+					len = (b >= 0xe0) ? 3 : (b >= 0xc0) ? 2 : 1;
+					units++;
+				}
+				pos += len;
+			}
+			return Math.min(pos, data.length);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "FavoritesXMLIndex(" + file + ", entries=" + entries.size() + ")";
+	}
+}
@@ -1,7 +1,6 @@
 package charactermanaj.model.io;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -47,23 +46,22 @@ public class FilePartsDataLoader implements PartsDataLoader {
 		final Map<PartsIdentifier, PartsSpec> images = new HashMap<PartsIdentifier, PartsSpec>();
 		for (Layer layer : category.getLayers()) {
 			File searchDir = new File(baseDir, layer.getDir());
-			if (!searchDir.exists() || !searchDir.isDirectory()) {
+			// ディレクトリでない場合、存在しない場合はnullが返される.
+			// (事前にexists, isDirectoryで確認するとファイルシステムへの問い合わせが増えるため行わない.)
+			String[] names = searchDir.list();
+			if (names == null) {
 				continue;
 			}
-			File[] imgFiles = searchDir.listFiles(new FileFilter() {
-				public boolean accept(File pathname) {
-					if (pathname.isFile()) {
-						String lcfname = pathname.getName().toLowerCase();
-						return lcfname.endsWith(".png");
-					}
-					return false;
+			for (String name : names) {
+				// 拡張子で絞り込んでから、ファイルの属性を問い合わせる.
+				if (!name.toLowerCase().endsWith(".png")) {
+					continue;
 				}
-			});
-			if (imgFiles == null) {
-				imgFiles = new File[0];
-			}
-			for (File imgFile : imgFiles) {
-				String partsName = normalizer.normalize(imgFile.getName());
+				File imgFile = new File(searchDir, name);
+				if (!imgFile.isFile()) {
+					continue;
+				}
+				String partsName = normalizer.normalize(name);
 
 				int extpos = partsName.lastIndexOf(".");
 				if (extpos > 0) {
@@ -0,0 +1,361 @@
+package charactermanaj.model.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * OSのファイル変更通知(java.nio.file.WatchService)によるディレクトリの監視.<br>
+ * Java5/6の実行環境でも動作するように、WatchServiceはリフレクションにより使用する.<br>
+ * 実行環境がWatchServiceをサポートしていない場合は{@link #isAvailable()}がfalseを返す.<br>
+ * 登録したディレクトリ直下のファイルの作成・削除・更新を検出する.(サブディレクトリ内は検出しない.)<br>
+ *
+ * @author seraphy
+ */
+final class NativeDirectoryWatcher {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(NativeDirectoryWatcher.class.getName());
+
+	/**
+	 * FileSystems.getDefault()
+	 */
+	private static final Object defaultFileSystem;
+
+	/**
+	 * FileSystem#newWatchService()
+	 */
+	private static final Method methodNewWatchService;
+
+	/**
+	 * File#toPath()
+	 */
+	private static final Method methodToPath;
+
+	/**
+	 * Path#register(WatchService, WatchEvent.Kind[])
+	 */
+	private static final Method methodRegister;
+
+	/**
+	 * 監視するイベントの種類(作成・削除・更新)の配列
+	 */
+	private static final Object watchEventKinds;
+
+	/**
+	 * StandardWatchEventKinds.OVERFLOW
+	 */
+	private static final Object kindOverflow;
+
+	/**
+	 * WatchService#poll(long, TimeUnit)
+	 */
+	private static final Method methodPoll;
+
+	/**
+	 * WatchService#close()
+	 */
+	private static final Method methodClose;
+
+	/**
+	 * WatchKey#pollEvents()
+	 */
+	private static final Method methodPollEvents;
+
+	/**
+	 * WatchKey#reset()
+	 */
+	private static final Method methodReset;
+
+	/**
+	 * WatchKey#cancel()
+	 */
+	private static final Method methodCancel;
+
+	/**
+	 * WatchEvent#kind()
+	 */
+	private static final Method methodKind;
+
+	/**
+	 * WatchEvent#context()
+	 */
+	private static final Method methodContext;
+
+	static {
+		Object fileSystem = null;
+		Method newWatchService = null;
+		Method toPath = null;
+		Method register = null;
+		Object kinds = null;
+		Object overflow = null;
+		Method poll = null;
+		Method close = null;
+		Method pollEvents = null;
+		Method reset = null;
+		Method cancel = null;
+		Method kind = null;
+		Method context = null;
+		try {
+			Class<?> fileSystemsCls = Class.forName("java.nio.file.FileSystems");
+			Class<?> fileSystemCls = Class.forName("java.nio.file.FileSystem");
+			Class<?> pathCls = Class.forName("java.nio.file.Path");
+			Class<?> watchServiceCls = Class.forName("java.nio.file.WatchService");
+			Class<?> watchKeyCls = Class.forName("java.nio.file.WatchKey");
+			Class<?> watchEventCls = Class.forName("java.nio.file.WatchEvent");
+			Class<?> kindCls = Class.forName("java.nio.file.WatchEvent$Kind");
+			Class<?> standardKindsCls = Class.forName("java.nio.file.StandardWatchEventKinds");
+
+			Object kindsArray = Array.newInstance(kindCls, 3);
+			Array.set(kindsArray, 0, standardKindsCls.getField("ENTRY_CREATE").get(null));
+			Array.set(kindsArray, 1, standardKindsCls.getField("ENTRY_DELETE").get(null));
+			Array.set(kindsArray, 2, standardKindsCls.getField("ENTRY_MODIFY").get(null));
+
+			fileSystem = fileSystemsCls.getMethod("getDefault").invoke(null);
+			newWatchService = fileSystemCls.getMethod("newWatchService");
+			toPath = File.class.getMethod("toPath");
+			register = pathCls.getMethod("register", watchServiceCls, kindsArray.getClass());
+			kinds = kindsArray;
+			overflow = standardKindsCls.getField("OVERFLOW").get(null);
+			poll = watchServiceCls.getMethod("poll", long.class, TimeUnit.class);
+			close = watchServiceCls.getMethod("close");
+			pollEvents = watchKeyCls.getMethod("pollEvents");
+			reset = watchKeyCls.getMethod("reset");
+			cancel = watchKeyCls.getMethod("cancel");
+			kind = watchEventCls.getMethod("kind");
+			context = watchEventCls.getMethod("context");
+
+		} catch (Exception ex) {
+			logger.log(Level.INFO, "WatchService is not available. " + ex);
+			fileSystem = null;
+		}
+		defaultFileSystem = fileSystem;
+		methodNewWatchService = newWatchService;
+		methodToPath = toPath;
+		methodRegister = register;
+		watchEventKinds = kinds;
+		kindOverflow = overflow;
+		methodPoll = poll;
+		methodClose = close;
+		methodPollEvents = pollEvents;
+		methodReset = reset;
+		methodCancel = cancel;
+		methodKind = kind;
+		methodContext = context;
+	}
+
+	/**
+	 * WatchServiceのインスタンス
+	 */
+	private final Object watchService;
+
+	/**
+	 * WatchKeyごとの監視しているディレクトリ
+	 */
+	private final HashMap<Object, File> watchKeys = new HashMap<Object, File>();
+
+	/**
+	 * 監視しているディレクトリごとのWatchKey
+	 */
+	private final HashMap<File, Object> watchDirs = new HashMap<File, Object>();
+
+	/**
+	 * 実行環境がWatchServiceをサポートしているか?
+	 *
+	 * @return サポートしていればtrue
+	 */
+	public static boolean isAvailable() {
+		return defaultFileSystem != null;
+	}
+
+	/**
+	 * 監視を開始する.
+	 *
+	 * @throws IOException
+	 *             WatchServiceが作成できない場合
+	 */
+	public NativeDirectoryWatcher() throws IOException {
+		if (!isAvailable()) {
+			throw new UnsupportedOperationException("WatchService is not available.");
+		}
+		this.watchService = invoke(methodNewWatchService, defaultFileSystem);
+	}
+
+	/**
+	 * ディレクトリを監視対象に登録する.<br>
+	 * すでに登録済みであれば何もしない.<br>
+	 *
+	 * @param dir
+	 *            ディレクトリ
+	 * @throws IOException
+	 *             登録できない場合
+	 */
+	public void register(File dir) throws IOException {
+		if (dir == null) {
+			throw new IllegalArgumentException();
+		}
+		if (watchDirs.containsKey(dir)) {
+			return;
+		}
+		Object path = invoke(methodToPath, dir);
+		Object watchKey = invoke(methodRegister, path, watchService, watchEventKinds);
+		watchKeys.put(watchKey, dir);
+		watchDirs.put(dir, watchKey);
+	}
+
+	/**
+	 * ディレクトリを監視対象から除外する.<br>
+	 * 登録されていなければ何もしない.<br>
+	 *
+	 * @param dir
+	 *            ディレクトリ
+	 */
+	public void unregister(File dir) {
+		Object watchKey = watchDirs.remove(dir);
+		if (watchKey != null) {
+			watchKeys.remove(watchKey);
+			try {
+				invoke(methodCancel, watchKey);
+
+			} catch (IOException ex) {
+				logger.log(Level.FINE, "WatchKey#cancel failed. " + dir, ex);
+			}
+		}
+	}
+
+	/**
+	 * 監視しているディレクトリを返す.
+	 *
+	 * @return 監視しているディレクトリのコレクション(読み取り専用)
+	 */
+	public Collection<File> getWatchDirectories() {
+		return Collections.unmodifiableCollection(watchDirs.keySet());
+	}
+
+	/**
+	 * 変更の通知を待機し、変更されたファイルを収集する.<br>
+	 * 通知を取りこぼした(OVERFLOW)ディレクトリは、ディレクトリ自身を変更されたファイルとして返す.<br>
+	 * 監視しているディレクトリが削除されるなどして監視できなくなった場合も、ディレクトリ自身を返す.<br>
+	 *
+	 * @param timeout
+	 *            待機する最大時間(ミリ秒)
+	 * @param changedFiles
+	 *            変更されたファイルの格納先
+	 * @return 通知があればtrue、タイムアウトした場合はfalse
+	 * @throws IOException
+	 *             WatchServiceが使用できなくなった場合
+	 * @throws InterruptedException
+	 *             割り込みされた場合
+	 */
+	public boolean poll(long timeout, Collection<File> changedFiles)
+			throws IOException, InterruptedException {
+		Object watchKey;
+		try {
+			watchKey = methodPoll.invoke(watchService, Long.valueOf(timeout), TimeUnit.MILLISECONDS);
+
+		} catch (InvocationTargetException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof InterruptedException) {
+				throw (InterruptedException) cause;
+			}
+			throw toIOException(cause);
+
+		} catch (IllegalAccessException ex) {
+			throw toIOException(ex);
+		}
+		if (watchKey == null) {
+			return false;
+		}
+
+		File dir = watchKeys.get(watchKey);
+		List<?> events = (List<?>) invoke(methodPollEvents, watchKey);
+		if (dir != null) {
+			for (Object event : events) {
+				Object kind = invoke(methodKind, event);
+				Object context = invoke(methodContext, event);
+				if (kindOverflow.equals(kind) || context == null) {
+					// 取りこぼしがあった場合はディレクトリ全体を変更ありとみなす
+					changedFiles.add(dir);
+				} else {
+					changedFiles.add(new File(dir, context.toString()));
+				}
+			}
+		}
+
+		Boolean valid = (Boolean) invoke(methodReset, watchKey);
+		if (!valid.booleanValue() && dir != null) {
+			// ディレクトリが削除されたなどにより監視できなくなった
+			watchKeys.remove(watchKey);
+			watchDirs.remove(dir);
+			changedFiles.add(dir);
+		}
+		return true;
+	}
+
+	/**
+	 * 監視を終了する.
+	 */
+	public void close() {
+		try {
+			invoke(methodClose, watchService);
+
+		} catch (IOException ex) {
+			logger.log(Level.FINE, "WatchService#close failed.", ex);
+		}
+		watchKeys.clear();
+		watchDirs.clear();
+	}
+
+	private static Object invoke(Method method, Object target, Object... args)
+			throws IOException {
+		try {
+			return method.invoke(target, args);
+
+		} catch (InvocationTargetException ex) {
+			throw toIOException(ex.getCause());
+
+		} catch (IllegalAccessException ex) {
+			throw toIOException(ex);
+		}
+	}
+
+	private static IOException toIOException(Throwable ex) {
+		if (ex instanceof IOException) {
+			return (IOException) ex;
+		}
+		if (ex instanceof Error) {
+			throw (Error) ex;
+		}
+		IOException ex2 = new IOException(String.valueOf(ex));
+		ex2.initCause(ex);
+		return ex2;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("NativeDirectoryWatcher(");
+		Iterator<Map.Entry<File, Object>> ite = watchDirs.entrySet().iterator();
+		while (ite.hasNext()) {
+			buf.append(ite.next().getKey());
+			if (ite.hasNext()) {
+				buf.append(", ");
+			}
+		}
+		buf.append(")");
+		return buf.toString();
+	}
+}
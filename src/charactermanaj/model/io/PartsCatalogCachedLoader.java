@@ -0,0 +1,660 @@
+package charactermanaj.model.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import charactermanaj.graphics.io.FileImageResource;
+import charactermanaj.graphics.io.ImageResource;
+import charactermanaj.model.AppConfig;
+import charactermanaj.model.ColorGroup;
+import charactermanaj.model.Layer;
+import charactermanaj.model.PartsAuthorInfo;
+import charactermanaj.model.PartsCategory;
+import charactermanaj.model.PartsFiles;
+import charactermanaj.model.PartsIdentifier;
+import charactermanaj.model.PartsSpec;
+import charactermanaj.util.UserDataFactory;
+
+/**
+ * パーツデータのロード結果を、キャラクターごとのカタログファイルにキャッシュするデコレータ・ローダー.<br>
+ * カタログにはカラーグループやパーツ管理情報(作者、バージョンなど)を適用済みのパーツ設定と、
+ * 走査したレイヤーのディレクトリの更新日時が保存される.<br>
+ * カテゴリのレイヤーのディレクトリの更新日時、parts-info.xml、カラーグループの定義に変更がなければ、
+ * 元のローダーを呼び出さずにカタログから復元する.<br>
+ * カタログへの保存は{@link #flush()}で行われ、一時ファイルに書き込んでから置き換える.<br>
+ *
+ * @author seraphy
+ */
+public class PartsCatalogCachedLoader implements PartsDataLoader, Flushable {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(PartsCatalogCachedLoader.class.getName());
+
+	/**
+	 * カタログファイルの名前
+	 */
+	public static final String CATALOG_FILE_SUFFIX = "partscatalog.ser";
+
+	/**
+	 * カタログファイルの識別子
+	 */
+	private static final int MAGIC = 0x434d5043; // "CMPC"
+
+	/**
+	 * カタログファイルの形式のバージョン
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * ディレクトリの更新日時の精度(ミリ秒).<br>
+	 * 走査中、もしくは走査の直前に更新されたディレクトリは、更新日時が同じになり変更を検出できない可能性があるため、
+	 * この範囲内で更新されていたディレクトリのカタログは信用しない.<br>
+	 */
+	private static final long MTIME_RESOLUTION = 2000;
+
+	/**
+	 * 元のローダー
+	 */
+	private final PartsDataLoader parent;
+
+	/**
+	 * パーツのベースディレクトリ
+	 */
+	private final File baseDir;
+
+	/**
+	 * パーツ管理情報のファイル
+	 */
+	private final File partsInfoXml;
+
+	/**
+	 * カラーグループ(IDをキーとする)
+	 */
+	private final HashMap<String, ColorGroup> colorGroups = new HashMap<String, ColorGroup>();
+
+	/**
+	 * カラーグループの定義を表す文字列
+	 */
+	private final String colorGroupsSignature;
+
+	/**
+	 * カタログの保存先
+	 */
+	private final File catalogFile;
+
+	/**
+	 * カテゴリIDごとのカタログ、まだ読み込んでいなければnull
+	 */
+	private HashMap<String, CategoryCatalog> catalogs;
+
+	/**
+	 * このローダーでロードしたカテゴリID
+	 */
+	private final HashSet<String> loadedCategoryIds = new HashSet<String>();
+
+	/**
+	 * 保存されていない変更があるか?
+	 */
+	private boolean dirty;
+
+	/**
+	 * 元のローダーとキャラクター定義の位置、カラーグループを指定して構築する.
+	 *
+	 * @param parent
+	 *            元のローダー
+	 * @param docBase
+	 *            キャラクター定義(character.xml)の位置
+	 * @param colorGroups
+	 *            カラーグループのコレクション、nullの場合は空とみなす
+	 */
+	public PartsCatalogCachedLoader(PartsDataLoader parent, URI docBase,
+			Collection<ColorGroup> colorGroups) {
+		if (parent == null || docBase == null) {
+			throw new IllegalArgumentException();
+		}
+		this.parent = parent;
+		this.baseDir = new File(docBase).getParentFile();
+		this.partsInfoXml = new File(baseDir, "parts-info.xml");
+		this.catalogFile = UserDataFactory.getInstance().getMangledNamedFile(
+				docBase, CATALOG_FILE_SUFFIX);
+
+		StringBuilder buf = new StringBuilder();
+		if (colorGroups != null) {
+			for (ColorGroup colorGroup : colorGroups) {
+				this.colorGroups.put(colorGroup.getId(), colorGroup);
+				buf.append(colorGroup.getId()).append('=')
+						.append(colorGroup.getLocalizedName()).append(';');
+			}
+		}
+		this.colorGroupsSignature = buf.toString();
+	}
+
+	public Map<PartsIdentifier, PartsSpec> load(PartsCategory category) {
+		if (category == null) {
+			throw new IllegalArgumentException();
+		}
+		String categoryId = category.getCategoryId();
+		String signature = getSignature(category);
+		long[] dirStamps = getDirectoryStamps(category);
+
+		CategoryCatalog catalog;
+		synchronized (this) {
+			loadCatalogs();
+			loadedCategoryIds.add(categoryId);
+			catalog = catalogs.get(categoryId);
+		}
+
+		if (catalog != null && catalog.isValid(signature, dirStamps)) {
+			Map<PartsIdentifier, PartsSpec> partsSpecs = catalog.restore(category);
+			if (partsSpecs != null) {
+				return partsSpecs;
+			}
+		}
+
+		// 元のローダーでロードし、その結果をカタログにする.
+		long scanTime = System.currentTimeMillis();
+		Map<PartsIdentifier, PartsSpec> partsSpecs = parent.load(category);
+
+		CategoryCatalog newCatalog = createCatalog(category, signature,
+				dirStamps, scanTime, partsSpecs);
+		synchronized (this) {
+			if (newCatalog != null) {
+				catalogs.put(categoryId, newCatalog);
+			} else {
+				catalogs.remove(categoryId);
+			}
+			dirty = true;
+		}
+		return partsSpecs;
+	}
+
+	/**
+	 * カタログに変更があればファイルに保存する.<br>
+	 * このローダーでロードしたカテゴリのみが保存される.<br>
+	 *
+	 * @throws IOException
+	 *             保存に失敗した場合
+	 */
+	public synchronized void flush() throws IOException {
+		if (!dirty || catalogs == null) {
+			return;
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bos);
+		ArrayList<CategoryCatalog> targets = new ArrayList<CategoryCatalog>();
+		for (Map.Entry<String, CategoryCatalog> entry : catalogs.entrySet()) {
+			if (loadedCategoryIds.contains(entry.getKey())) {
+				targets.add(entry.getValue());
+			}
+		}
+		dos.writeInt(targets.size());
+		for (CategoryCatalog catalog : targets) {
+			catalog.write(dos);
+		}
+		dos.flush();
+		byte[] body = bos.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		ByteArrayOutputStream fileBos = new ByteArrayOutputStream(body.length + 20);
+		DataOutputStream out = new DataOutputStream(fileBos);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(body.length);
+		out.write(body);
+		out.writeLong(crc.getValue());
+		out.flush();
+
+		// 書き込みの途中で中断されても、前回のカタログが壊れないようにする
+		WriteBehindFileWriter.writeAtomically(catalogFile, fileBos.toByteArray());
+		dirty = false;
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "parts catalog saved. categories="
+					+ targets.size() + " bytes=" + body.length);
+		}
+	}
+
+	/**
+	 * キャラクター定義のカタログファイルを削除する.<br>
+	 * プロファイルを削除したときに用いる.<br>
+	 *
+	 * @param docBase
+	 *            キャラクター定義(character.xml)の位置
+	 */
+	public static void removeCatalog(URI docBase) {
+		if (docBase == null) {
+			throw new IllegalArgumentException();
+		}
+		File catalogFile = UserDataFactory.getInstance().getMangledNamedFile(
+				docBase, CATALOG_FILE_SUFFIX);
+		if (catalogFile.exists()) {
+			logger.log(Level.INFO, "remove file: " + catalogFile);
+			if (!catalogFile.delete()) {
+				logger.log(Level.WARNING, "can't delete. " + catalogFile);
+			}
+		}
+	}
+
+	/**
+	 * カタログファイルを読み込む.<br>
+	 * 読み込み済みであれば何もしない.<br>
+	 * ファイルが存在しないか、形式が不正である場合は空のカタログとする.<br>
+	 */
+	private void loadCatalogs() {
+		if (catalogs != null) {
+			return;
+		}
+		catalogs = new HashMap<String, CategoryCatalog>();
+		if (!catalogFile.exists()) {
+			return;
+		}
+		try {
+			InputStream is = new BufferedInputStream(new FileInputStream(catalogFile));
+			try {
+				DataInputStream dis = new DataInputStream(is);
+				if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+					logger.log(Level.INFO, "parts catalog format mismatch. " + catalogFile);
+					return;
+				}
+				int len = dis.readInt();
+				if (len < 0 || len > catalogFile.length()) {
+					throw new IOException("invalid length: " + len);
+				}
+				byte[] body = new byte[len];
+				dis.readFully(body);
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if (crc.getValue() != dis.readLong()) {
+					logger.log(Level.WARNING, "parts catalog is broken. " + catalogFile);
+					return;
+				}
+
+				DataInputStream bis = new DataInputStream(new ByteArrayInputStream(body));
+				int mx = bis.readInt();
+				for (int idx = 0; idx < mx; idx++) {
+					CategoryCatalog catalog = CategoryCatalog.read(bis, baseDir, colorGroups);
+					catalogs.put(catalog.getCategoryId(), catalog);
+				}
+
+			} finally {
+				is.close();
+			}
+
+		} catch (EOFException ex) {
+			logger.log(Level.WARNING, "parts catalog is truncated. " + catalogFile, ex);
+			catalogs.clear();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "parts catalog loading failed. " + catalogFile, ex);
+			catalogs.clear();
+		}
+	}
+
+	/**
+	 * カテゴリのカタログが有効であるかを判定するための文字列を作成する.<br>
+	 * レイヤーの構成、parts-info.xmlの更新日時とサイズ、カラーグループの定義と判定パターンが含まれる.<br>
+	 *
+	 * @param category
+	 *            カテゴリ
+	 * @return 判定用の文字列
+	 */
+	private String getSignature(PartsCategory category) {
+		StringBuilder buf = new StringBuilder();
+		for (Layer layer : category.getLayers()) {
+			buf.append(layer.getId()).append('=').append(layer.getDir()).append(';');
+		}
+		buf.append('|').append(partsInfoXml.lastModified())
+				.append(',').append(partsInfoXml.length());
+		buf.append('|').append(colorGroupsSignature);
+		buf.append('|').append(AppConfig.getInstance().getPartsColorGroupPattern());
+		return buf.toString();
+	}
+
+	/**
+	 * カテゴリのレイヤーのディレクトリの更新日時を取得する.<br>
+	 * 存在しないディレクトリは0となる.<br>
+	 *
+	 * @param category
+	 *            カテゴリ
+	 * @return レイヤー順の更新日時
+	 */
+	private long[] getDirectoryStamps(PartsCategory category) {
+		List<Layer> layers = category.getLayers();
+		long[] stamps = new long[layers.size()];
+		int idx = 0;
+		for (Layer layer : layers) {
+			stamps[idx++] = new File(baseDir, layer.getDir()).lastModified();
+		}
+		return stamps;
+	}
+
+	/**
+	 * ロードしたパーツ設定からカテゴリのカタログを作成する.<br>
+	 * カタログで表現できないパーツ(ファイル以外のリソースなど)を含む場合はnullを返す.<br>
+	 *
+	 * @param category
+	 *            カテゴリ
+	 * @param signature
+	 *            判定用の文字列
+	 * @param dirStamps
+	 *            ディレクトリの更新日時
+	 * @param scanTime
+	 *            走査を開始した時刻
+	 * @param partsSpecs
+	 *            ロードしたパーツ設定
+	 * @return カタログ、またはnull
+	 */
+	private CategoryCatalog createCatalog(PartsCategory category,
+			String signature, long[] dirStamps, long scanTime,
+			Map<PartsIdentifier, PartsSpec> partsSpecs) {
+		if (partsInfoXml.lastModified() >= scanTime - MTIME_RESOLUTION) {
+			// 走査と同時期に更新されたパーツ管理情報は変更を見逃す可能性があるため、カタログにしない.
+			return null;
+		}
+		ArrayList<CatalogEntry> entries = new ArrayList<CatalogEntry>(partsSpecs.size());
+		for (PartsSpec partsSpec : partsSpecs.values()) {
+			PartsIdentifier partsIdentifier = partsSpec.getPartsIdentifier();
+			ColorGroup colorGroup = partsSpec.getColorGroup();
+			String colorGroupId = null;
+			if (colorGroup != null && colorGroup.isEnabled()) {
+				colorGroupId = colorGroup.getId();
+			}
+
+			PartsFiles partsFiles = partsSpec.getPartsFiles();
+			String[] layerIds = new String[partsFiles.size()];
+			String[] fileNames = new String[partsFiles.size()];
+			int idx = 0;
+			for (Map.Entry<Layer, ImageResource> entry : partsFiles.entrySet()) {
+				Layer layer = entry.getKey();
+				File file = new File(entry.getValue().getFullName());
+				if (!(entry.getValue() instanceof FileImageResource)
+						|| !file.getParentFile().equals(new File(baseDir, layer.getDir()))) {
+					return null;
+				}
+				layerIds[idx] = layer.getId();
+				fileNames[idx] = file.getName();
+				idx++;
+			}
+
+			PartsAuthorInfo authorInfo = partsSpec.getAuthorInfo();
+			entries.add(new CatalogEntry(partsIdentifier.getPartsName(),
+					partsIdentifier.getLocalizedPartsName(), colorGroupId,
+					layerIds, fileNames,
+					authorInfo != null ? authorInfo.getAuthor() : null,
+					authorInfo != null ? authorInfo.getHomePage() : null,
+					authorInfo != null, partsSpec.getVersion(),
+					partsSpec.getDownloadURL()));
+		}
+		return new CategoryCatalog(category.getCategoryId(), signature,
+				dirStamps, scanTime, entries, baseDir, colorGroups);
+	}
+
+	/**
+	 * nullを許容する文字列を書き込む.
+	 */
+	private static void writeString(DataOutputStream dos, String value) throws IOException {
+		dos.writeBoolean(value != null);
+		if (value != null) {
+			dos.writeUTF(value);
+		}
+	}
+
+	/**
+	 * nullを許容する文字列を読み込む.
+	 */
+	private static String readString(DataInputStream dis) throws IOException {
+		if (dis.readBoolean()) {
+			return dis.readUTF();
+		}
+		return null;
+	}
+
+	/**
+	 * カテゴリごとのカタログ.<br>
+	 *
+	 * @author seraphy
+	 */
+	private static final class CategoryCatalog {
+
+		private final String categoryId;
+
+		private final String signature;
+
+		private final long[] dirStamps;
+
+		private final long scanTime;
+
+		private final List<CatalogEntry> entries;
+
+		private final File baseDir;
+
+		private final Map<String, ColorGroup> colorGroups;
+
+		public CategoryCatalog(String categoryId, String signature,
+				long[] dirStamps, long scanTime, List<CatalogEntry> entries,
+				File baseDir, Map<String, ColorGroup> colorGroups) {
+			this.categoryId = categoryId;
+			this.signature = signature;
+			this.dirStamps = dirStamps;
+			this.scanTime = scanTime;
+			this.entries = entries;
+			this.baseDir = baseDir;
+			this.colorGroups = colorGroups;
+		}
+
+		public String getCategoryId() {
+			return categoryId;
+		}
+
+		/**
+		 * カタログが現在のディレクトリの状態に対して有効であるか判定する.
+		 *
+		 * @param currentSignature
+		 *            現在の判定用文字列
+		 * @param currentDirStamps
+		 *            現在のディレクトリの更新日時
+		 * @return 有効であればtrue
+		 */
+		public boolean isValid(String currentSignature, long[] currentDirStamps) {
+			if (!signature.equals(currentSignature)
+					|| dirStamps.length != currentDirStamps.length) {
+				return false;
+			}
+			for (int idx = 0; idx < dirStamps.length; idx++) {
+				if (dirStamps[idx] != currentDirStamps[idx]) {
+					return false;
+				}
+				if (dirStamps[idx] >= scanTime - MTIME_RESOLUTION) {
+					// 走査と同時期に更新されたディレクトリは変更を見逃している可能性がある
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * カタログからパーツ設定を復元する.<br>
+		 * 現在のカテゴリ定義と一致しない場合はnullを返す.<br>
+		 *
+		 * @param category
+		 *            カテゴリ
+		 * @return パーツ設定、またはnull
+		 */
+		public Map<PartsIdentifier, PartsSpec> restore(PartsCategory category) {
+			HashMap<PartsIdentifier, PartsSpec> partsSpecs = new HashMap<PartsIdentifier, PartsSpec>();
+			for (CatalogEntry entry : entries) {
+				PartsIdentifier partsIdentifier = new PartsIdentifier(category,
+						entry.partsName, entry.localizedName);
+				PartsSpec partsSpec = new PartsSpec(partsIdentifier);
+
+				if (entry.colorGroupId != null) {
+					ColorGroup colorGroup = colorGroups.get(entry.colorGroupId);
+					if (colorGroup == null) {
+						return null;
+					}
+					partsSpec.setColorGroup(colorGroup);
+				}
+
+				PartsFiles partsFiles = partsSpec.getPartsFiles();
+				for (int idx = 0; idx < entry.layerIds.length; idx++) {
+					Layer layer = category.getLayer(entry.layerIds[idx]);
+					if (layer == null) {
+						return null;
+					}
+					File searchDir = new File(baseDir, layer.getDir());
+					partsFiles.put(layer, new FileImageResource(new File(
+							searchDir, entry.fileNames[idx])));
+				}
+
+				if (entry.hasAuthorInfo) {
+					PartsAuthorInfo authorInfo = new PartsAuthorInfo();
+					authorInfo.setAuthor(entry.author);
+					authorInfo.setHomePage(entry.homePage);
+					partsSpec.setAuthorInfo(authorInfo);
+				}
+				partsSpec.setVersion(entry.version);
+				partsSpec.setDownloadURL(entry.downloadURL);
+
+				partsSpecs.put(partsIdentifier, partsSpec);
+			}
+			return partsSpecs;
+		}
+
+		public void write(DataOutputStream dos) throws IOException {
+			dos.writeUTF(categoryId);
+			dos.writeUTF(signature);
+			dos.writeLong(scanTime);
+			dos.writeInt(dirStamps.length);
+			for (long dirStamp : dirStamps) {
+				dos.writeLong(dirStamp);
+			}
+			dos.writeInt(entries.size());
+			for (CatalogEntry entry : entries) {
+				entry.write(dos);
+			}
+		}
+
+		public static CategoryCatalog read(DataInputStream dis, File baseDir,
+				Map<String, ColorGroup> colorGroups) throws IOException {
+			String categoryId = dis.readUTF();
+			String signature = dis.readUTF();
+			long scanTime = dis.readLong();
+			long[] dirStamps = new long[dis.readInt()];
+			for (int idx = 0; idx < dirStamps.length; idx++) {
+				dirStamps[idx] = dis.readLong();
+			}
+			int mx = dis.readInt();
+			ArrayList<CatalogEntry> entries = new ArrayList<CatalogEntry>(mx);
+			for (int idx = 0; idx < mx; idx++) {
+				entries.add(CatalogEntry.read(dis));
+			}
+			return new CategoryCatalog(categoryId, signature, dirStamps,
+					scanTime, entries, baseDir, colorGroups);
+		}
+	}
+
+	/**
+	 * カタログに保存されるパーツ設定.<br>
+	 *
+	 * @author seraphy
+	 */
+	private static final class CatalogEntry {
+
+		final String partsName;
+
+		final String localizedName;
+
+		final String colorGroupId;
+
+		final String[] layerIds;
+
+		final String[] fileNames;
+
+		final String author;
+
+		final String homePage;
+
+		final boolean hasAuthorInfo;
+
+		final double version;
+
+		final String downloadURL;
+
+		public CatalogEntry(String partsName, String localizedName,
+				String colorGroupId, String[] layerIds, String[] fileNames,
+				String author, String homePage, boolean hasAuthorInfo,
+				double version, String downloadURL) {
+			this.partsName = partsName;
+			this.localizedName = localizedName;
+			this.colorGroupId = colorGroupId;
+			this.layerIds = layerIds;
+			this.fileNames = fileNames;
+			this.author = author;
+			this.homePage = homePage;
+			this.hasAuthorInfo = hasAuthorInfo;
+			this.version = version;
+			this.downloadURL = downloadURL;
+		}
+
+		public void write(DataOutputStream dos) throws IOException {
+			dos.writeUTF(partsName);
+			dos.writeUTF(localizedName);
+			writeString(dos, colorGroupId);
+			dos.writeInt(layerIds.length);
+			for (int idx = 0; idx < layerIds.length; idx++) {
+				dos.writeUTF(layerIds[idx]);
+				dos.writeUTF(fileNames[idx]);
+			}
+			dos.writeBoolean(hasAuthorInfo);
+			writeString(dos, author);
+			writeString(dos, homePage);
+			dos.writeDouble(version);
+			writeString(dos, downloadURL);
+		}
+
+		public static CatalogEntry read(DataInputStream dis) throws IOException {
+			String partsName = dis.readUTF();
+			String localizedName = dis.readUTF();
+			String colorGroupId = readString(dis);
+			int mx = dis.readInt();
+			String[] layerIds = new String[mx];
+			String[] fileNames = new String[mx];
+			for (int idx = 0; idx < mx; idx++) {
+				layerIds[idx] = dis.readUTF();
+				fileNames[idx] = dis.readUTF();
+			}
+			boolean hasAuthorInfo = dis.readBoolean();
+			String author = readString(dis);
+			String homePage = readString(dis);
+			double version = dis.readDouble();
+			String downloadURL = readString(dis);
+			return new CatalogEntry(partsName, localizedName, colorGroupId,
+					layerIds, fileNames, author, homePage, hasAuthorInfo,
+					version, downloadURL);
+		}
+	}
+}
@@ -2,15 +2,18 @@ package charactermanaj.model.io;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.CRC32;
 
+import charactermanaj.graphics.io.FileLastModifiedCache;
 import charactermanaj.model.AppConfig;
 import charactermanaj.model.CharacterData;
 import charactermanaj.model.Layer;
@@ -56,6 +59,17 @@ public class PartsImageDirectoryWatchAgentThread implements Runnable {
 	 */
 	private volatile boolean stopFlag;
 	
+	/**
+	 * ファイル変更通知を受けてから、通知が途切れたとみなすまでの時間(ミリ秒).<br>
+	 * 画像の保存などで短時間に連続して発生する通知を一つにまとめるためのもの.<br>
+	 */
+	private static final long DEBOUNCE_DELAY = 500;
+
+	/**
+	 * 通知が途切れない場合に、まとめる最大の時間(ミリ秒).
+	 */
+	private static final long DEBOUNCE_MAX = 5000;
+
 	/**
 	 * 監視インターバル
 	 */
@@ -188,6 +202,25 @@ public class PartsImageDirectoryWatchAgentThread implements Runnable {
 	public void run() {
 		logger.log(Level.FINE, "watch-dir thead started. " + this);
 
+		// OSのファイル変更通知が使える場合は、それにより監視する.
+		if (AppConfig.getInstance().isEnableNativeDirWatch()
+				&& NativeDirectoryWatcher.isAvailable()) {
+			try {
+				watchNative();
+
+			} catch (InterruptedException ex) {
+				logger.log(Level.FINE, "watch-dir thead interrupted.");
+
+			} catch (Exception ex) {
+				// ファイル変更通知が使えない場合はディレクトリの走査による監視に切り替える.
+				logger.log(Level.WARNING, "native watch-dir failed. fall back to polling. " + this, ex);
+			}
+			if (stopFlag) {
+				logger.log(Level.FINE, "watch-dir thead stopped. " + this);
+				return;
+			}
+		}
+
 		// 初回スキャンは無視するためリセット状態とする.
 		this.signature = null;
 		
@@ -212,6 +245,159 @@ public class PartsImageDirectoryWatchAgentThread implements Runnable {
 		logger.log(Level.FINE, "watch-dir thead stopped. " + this);
 	}
 	
+	/**
+	 * OSのファイル変更通知により監視を行う.<br>
+	 * レイヤーのディレクトリ(存在しない場合は、その親)を監視し、パーツ画像の作成・削除・更新と、
+	 * レイヤーのディレクトリの作成・削除を検出する.<br>
+	 * 通知は一定時間途切れるまでまとめてから、リスナーに通知される.<br>
+	 * 通知を取りこぼしたディレクトリや、作成・削除されたディレクトリについては、
+	 * その配下のパーツ画像の鮮度チェック用キャッシュをすべて破棄する.<br>
+	 * 停止フラグが設定されるまで戻らない.<br>
+	 * 
+	 * @throws IOException
+	 *             ファイル変更通知が使えない場合
+	 * @throws InterruptedException
+	 *             割り込みされた場合
+	 */
+	protected void watchNative() throws IOException, InterruptedException {
+		if (baseDir == null || !baseDir.isDirectory()) {
+			throw new IOException("the base directory is not found. " + baseDir);
+		}
+		FileLastModifiedCache lastModifiedCache = FileLastModifiedCache.getInstance();
+		NativeDirectoryWatcher watcher = new NativeDirectoryWatcher();
+		try {
+			WatchTargets targets = registerWatchDirectories(watcher);
+			logger.log(Level.FINE, "native watch-dir started. " + watcher);
+
+			HashSet<File> changedFiles = new HashSet<File>();
+			while (!stopFlag) {
+				if (!watcher.poll(dirWatchInterval, changedFiles)) {
+					continue;
+				}
+
+				// 通知が途切れるまで、まとめて収集する.
+				long limit = System.currentTimeMillis() + DEBOUNCE_MAX;
+				while (!stopFlag && System.currentTimeMillis() < limit
+						&& watcher.poll(DEBOUNCE_DELAY, changedFiles)) {
+					// 収集を続ける
+				}
+
+				// ディレクトリの作成・削除やカテゴリの変更に追従する.
+				targets = registerWatchDirectories(watcher);
+
+				ArrayList<File> partsFiles = new ArrayList<File>();
+				for (File file : changedFiles) {
+					if (targets.isLayerDirectory(file)) {
+						partsFiles.add(file);
+						// どのファイルが変更されたか不明なので、配下のキャッシュをすべて破棄する.
+						lastModifiedCache.invalidateDirectory(file);
+
+					} else if (targets.isPartsFile(file)) {
+						partsFiles.add(file);
+						// 変更されたファイルだけを、パーツ画像の鮮度チェック用キャッシュに反映する.
+						if (file.isFile()) {
+							lastModifiedCache.update(file, file.lastModified());
+						} else {
+							lastModifiedCache.invalidate(file);
+						}
+					}
+				}
+				changedFiles.clear();
+
+				if (!partsFiles.isEmpty() && !stopFlag) {
+					if (logger.isLoggable(Level.FINE)) {
+						logger.log(Level.FINE, "watch-dir detected: " + partsFiles);
+					}
+					fireWatchEvent();
+				}
+			}
+
+		} finally {
+			watcher.close();
+		}
+	}
+
+	/**
+	 * 現在のカテゴリのレイヤーのディレクトリを監視対象に登録する.<br>
+	 * 存在しないディレクトリは、作成を検出できるように、存在する直近の親ディレクトリを登録する.<br>
+	 * 不要になったディレクトリは監視対象から除外する.<br>
+	 * 
+	 * @param watcher
+	 *            ファイル変更通知
+	 * @return 監視対象
+	 * @throws IOException
+	 *             登録に失敗した場合
+	 */
+	private WatchTargets registerWatchDirectories(NativeDirectoryWatcher watcher) throws IOException {
+		WatchTargets targets = new WatchTargets();
+		HashSet<File> registerDirs = new HashSet<File>();
+		for (PartsCategory partsCategory : characterData.getPartsCategories()) {
+			for (Layer layer : partsCategory.getLayers()) {
+				File layerDir = new File(baseDir, layer.getDir());
+				targets.layerDirs.add(layerDir);
+
+				File dir = layerDir;
+				boolean found = false;
+				while (dir != null) {
+					targets.layerDirsAndAncestors.add(dir);
+					if (!found && dir.isDirectory()) {
+						registerDirs.add(dir);
+						found = true;
+					}
+					if (dir.equals(baseDir)) {
+						break;
+					}
+					dir = dir.getParentFile();
+				}
+			}
+		}
+		for (File dir : new ArrayList<File>(watcher.getWatchDirectories())) {
+			if (!registerDirs.contains(dir)) {
+				watcher.unregister(dir);
+			}
+		}
+		for (File dir : registerDirs) {
+			watcher.register(dir);
+		}
+		return targets;
+	}
+
+	/**
+	 * ファイル変更通知による監視対象.
+	 */
+	private static final class WatchTargets {
+
+		/**
+		 * レイヤーのディレクトリ
+		 */
+		final HashSet<File> layerDirs = new HashSet<File>();
+
+		/**
+		 * レイヤーのディレクトリと、ベースディレクトリまでの、その親ディレクトリ
+		 */
+		final HashSet<File> layerDirsAndAncestors = new HashSet<File>();
+
+		/**
+		 * レイヤーのディレクトリ、もしくは、その親ディレクトリであるか?<br>
+		 * (ディレクトリ自身の作成・削除、通知の取りこぼしを示す.)
+		 * @param file ファイル
+		 * @return レイヤーのディレクトリ、もしくは、その親ディレクトリであればtrue
+		 */
+		public boolean isLayerDirectory(File file) {
+			return layerDirsAndAncestors.contains(file);
+		}
+
+		/**
+		 * レイヤーのディレクトリにあるパーツ画像であるか?
+		 * @param file ファイル
+		 * @return パーツ画像であればtrue
+		 */
+		public boolean isPartsFile(File file) {
+			return file.getName().toLowerCase().endsWith(".png")
+					&& layerDirs.contains(file.getParentFile());
+		}
+	}
+
 	/**
 	 * 監視を行う.<br>
 	 * 停止フラグが設定されるか、割り込みされた場合は処理を中断してInterruptedException例外を返して終了する.<br>
@@ -230,6 +416,7 @@ public class PartsImageDirectoryWatchAgentThread implements Runnable {
 		long maxLastModified = 0;
 		long now = System.currentTimeMillis() + dirWatchInterval;
 		
+		FileLastModifiedCache lastModifiedCache = FileLastModifiedCache.getInstance();
 		CRC32 crc = new CRC32();
 		for (PartsCategory partsCategory : characterData.getPartsCategories()) {
 			for (Layer layer : partsCategory.getLayers()) {
@@ -251,6 +438,8 @@ public class PartsImageDirectoryWatchAgentThread implements Runnable {
 
 						itemCount++;
 						long lastModified = file.lastModified();
+						// 取得した最終更新日はパーツ画像の鮮度チェック用キャッシュにも反映する.
+						lastModifiedCache.update(file, lastModified);
 						if (lastModified <= now) {
 							// 未来の日付は除外する.
 							// 未来の日付のファイルが一つでもあると他のファイルが実際に更新されても判定できなくなるため。
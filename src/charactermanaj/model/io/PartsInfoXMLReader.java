@@ -14,7 +14,6 @@ import java.util.logging.Logger;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -22,6 +21,7 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import charactermanaj.model.PartsAuthorInfo;
 import charactermanaj.model.PartsManageData;
+import charactermanaj.util.XMLUtilities;
 
 /**
  * パーツ管理情報のXMLの読み込み用クラス.
@@ -83,15 +83,8 @@ public class PartsInfoXMLReader {
 		// パーツ管理情報
 		final PartsManageData partsManageData = new PartsManageData();
 
-		// SAXParserの準備
-		SAXParser saxParser;
-		try {
-			SAXParserFactory saxPartserFactory = SAXParserFactory.newInstance();
-			saxPartserFactory.setNamespaceAware(true);
-			saxParser = saxPartserFactory.newSAXParser();
-		} catch (Exception ex) {
-			throw new RuntimeException("JAXP Configuration failed.", ex);
-		}
+		// SAXParserの準備(スレッドごとに再利用される)
+		SAXParser saxParser = XMLUtilities.getSAXParser(null);
 
 		// デフォルトのロケールから言語を取得
 		final Locale locale = Locale.getDefault();
@@ -294,6 +287,10 @@ public class PartsInfoXMLReader {
 			IOException ex2 = new IOException("parts-info.xml read failed.");
 			ex2.initCause(ex);
 			throw ex2;
+
+		} finally {
+			// ハンドラへの参照を残さない
+			saxParser.reset();
 		}
 
 		return partsManageData;
@@ -17,14 +17,9 @@ import java.util.List;
 import java.util.Locale;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -35,6 +30,7 @@ import org.w3c.dom.Element;
 import charactermanaj.model.PartsAuthorInfo;
 import charactermanaj.model.PartsManageData;
 import charactermanaj.model.PartsManageData.PartsKey;
+import charactermanaj.util.XMLUtilities;
 
 public class PartsInfoXMLWriter {
 
@@ -83,6 +79,7 @@ public class PartsInfoXMLWriter {
 			os.write(bos.toByteArray());
 		} finally {
 			os.close();
+			PartsManageDataCache.getInstance().invalidate(docBase);
 		}
 	}
 
@@ -102,17 +99,7 @@ public class PartsInfoXMLWriter {
 			throw new IllegalArgumentException();
 		}
 
-		Document doc;
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory
-					.newInstance();
-			factory.setNamespaceAware(true);
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			doc = builder.newDocument();
-
-		} catch (ParserConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration Exception.", ex);
-		}
+		Document doc = XMLUtilities.getDocumentBuilder(null).newDocument();
 
 		Locale locale = Locale.getDefault();
 		String lang = locale.getLanguage();
@@ -240,14 +227,7 @@ public class PartsInfoXMLWriter {
 		}
 
 		// output xml
-		TransformerFactory txFactory = TransformerFactory.newInstance();
-		txFactory.setAttribute("indent-number", Integer.valueOf(4));
-		Transformer tfmr;
-		try {
-			tfmr = txFactory.newTransformer();
-		} catch (TransformerConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration Failed.", ex);
-		}
+		Transformer tfmr = XMLUtilities.getTransformer();
 		tfmr.setOutputProperty(OutputKeys.INDENT, "yes");
 
 		// http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4504745
@@ -0,0 +1,235 @@
+package charactermanaj.model.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import charactermanaj.model.PartsManageData;
+
+/**
+ * parts-info.xmlから読み込んだパーツ管理情報のキャッシュ.<br>
+ * パーツ管理情報はキャラクター定義の位置ごとに保持され、parts-info.xmlの更新日時とサイズが変わらない間は再利用される.<br>
+ * カテゴリごとのパーツのロードが並列に行われる場合でも、parts-info.xmlの解析は一度だけ行われ、
+ * 解析中に要求したスレッドは、その完了を待って同じ結果を受け取る.<br>
+ * 返されるパーツ管理情報は共有されるため、呼び出し元で変更してはならない.<br>
+ * 編集する場合は{@link PartsInfoXMLReader#loadPartsManageData(URI)}を用いること.<br>
+ *
+ * @author seraphy
+ */
+public final class PartsManageDataCache {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(PartsManageDataCache.class.getName());
+
+	/**
+	 * 保持するパーツ管理情報の最大数.<br>
+	 * 多数のパーツをもつparts-info.xmlではメモリを多く消費するため、最近使用したものだけを保持する.<br>
+	 */
+	private static final int MAX_ENTRIES = 4;
+
+	/**
+	 * シングルトン
+	 */
+	private static final PartsManageDataCache singleton = new PartsManageDataCache();
+
+	/**
+	 * parts-info.xmlごとの解析結果(または解析中のタスク)、アクセス順
+	 */
+	private final LinkedHashMap<File, CacheEntry> entries = new LinkedHashMap<File, CacheEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, CacheEntry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * 解析時点のparts-info.xmlの状態と、解析結果
+	 */
+	private static final class CacheEntry {
+
+		private final long lastModified;
+
+		private final long length;
+
+		private final FutureTask<PartsManageData> task;
+
+		CacheEntry(long lastModified, long length, FutureTask<PartsManageData> task) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.task = task;
+		}
+
+		boolean isValid(File partsInfoXML) {
+			return lastModified == partsInfoXML.lastModified()
+					&& length == partsInfoXML.length();
+		}
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return インスタンス
+	 */
+	public static PartsManageDataCache getInstance() {
+		return singleton;
+	}
+
+	private PartsManageDataCache() {
+		super();
+	}
+
+	/**
+	 * パーツ管理情報を取得する.<br>
+	 * キャッシュが有効であればキャッシュから返し、そうでなければparts-info.xmlを解析する.<br>
+	 * 他のスレッドで解析中であれば、その完了を待つ.<br>
+	 * parts-info.xmlが存在しなければ空のインスタンスを返す.<br>
+	 *
+	 * @param docBase
+	 *            character.xmlの位置
+	 * @return パーツ管理情報(変更不可)
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	public PartsManageData getPartsManageData(URI docBase) throws IOException {
+		FutureTask<PartsManageData> task = request(docBase);
+		if (task == null) {
+			return new PartsManageData();
+		}
+
+		// まだ開始されていなければ、このスレッドで解析する.
+		// (解析中か完了済みであれば何もしない)
+		task.run();
+		try {
+			return task.get();
+
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			IOException ex2 = new IOException("parts-info.xml loading interrupted. " + docBase);
+			ex2.initCause(ex);
+			throw ex2;
+
+		} catch (ExecutionException ex) {
+			// 失敗した結果は保持しない
+			invalidate(docBase);
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			IOException ex2 = new IOException("parts-info.xml loading failed. " + docBase);
+			ex2.initCause(cause);
+			throw ex2;
+		}
+	}
+
+	/**
+	 * パーツ管理情報の解析をバックグラウンドで開始する.<br>
+	 * キャッシュが有効であるか、すでに解析中であれば何もしない.<br>
+	 * パーツのロードを始める前に呼び出すことで、フォルダの走査と並行して解析させることができる.<br>
+	 *
+	 * @param docBase
+	 *            character.xmlの位置
+	 */
+	public void prefetch(URI docBase) {
+		FutureTask<PartsManageData> task = request(docBase);
+		if (task == null || task.isDone()) {
+			return;
+		}
+		try {
+			ProfileLoadExecutors.getExecutor().execute(task);
+
+		} catch (RejectedExecutionException ex) {
+			// 要求時にこのスレッドで解析されるので問題ない
+			logger.log(Level.FINE, "parts-info.xml prefetch rejected. " + docBase);
+		}
+	}
+
+	/**
+	 * パーツ管理情報のキャッシュを破棄する.<br>
+	 * parts-info.xmlを更新したときに用いる.<br>
+	 *
+	 * @param docBase
+	 *            character.xmlの位置
+	 */
+	public void invalidate(URI docBase) {
+		File partsInfoXML = getPartsInfoXML(docBase);
+		if (partsInfoXML != null) {
+			synchronized (entries) {
+				entries.remove(partsInfoXML);
+			}
+		}
+	}
+
+	/**
+	 * parts-info.xmlの解析タスクを取得する.<br>
+	 * 有効なキャッシュがあればそのタスクを返し、なければ未開始のタスクを登録して返す.<br>
+	 *
+	 * @param docBase
+	 *            character.xmlの位置
+	 * @return 解析タスク、parts-info.xmlが存在しない場合はnull
+	 * @throws IllegalArgumentException
+	 *             docBaseがnullであるか、ファイルでない場合
+	 */
+	private FutureTask<PartsManageData> request(final URI docBase) {
+		final File partsInfoXML = getPartsInfoXML(docBase);
+		if (partsInfoXML == null) {
+			throw new IllegalArgumentException("unsupported docBase: " + docBase);
+		}
+		long lastModified = partsInfoXML.lastModified();
+		if (lastModified == 0 || !partsInfoXML.isFile()) {
+			invalidate(docBase);
+			return null;
+		}
+		synchronized (entries) {
+			CacheEntry entry = entries.get(partsInfoXML);
+			if (entry != null && entry.isValid(partsInfoXML)) {
+				return entry.task;
+			}
+			FutureTask<PartsManageData> task = new FutureTask<PartsManageData>(
+					new Callable<PartsManageData>() {
+						public PartsManageData call() throws Exception {
+							long st = System.currentTimeMillis();
+							PartsInfoXMLReader reader = new PartsInfoXMLReader();
+							PartsManageData partsManageData = reader
+									.loadPartsManageData(docBase);
+							if (logger.isLoggable(Level.FINE)) {
+								logger.log(Level.FINE, "parts-info.xml loaded. "
+										+ partsInfoXML + " parts="
+										+ partsManageData.size() + " "
+										+ (System.currentTimeMillis() - st) + "ms");
+							}
+							return partsManageData;
+						}
+					});
+			entries.put(partsInfoXML, new CacheEntry(lastModified,
+					partsInfoXML.length(), task));
+			return task;
+		}
+	}
+
+	/**
+	 * character.xmlの位置から、同じフォルダにあるparts-info.xmlを求める.
+	 *
+	 * @param docBase
+	 *            character.xmlの位置
+	 * @return parts-info.xml、ファイル以外の場合はnull
+	 */
+	private static File getPartsInfoXML(URI docBase) {
+		if (docBase == null || !"file".equals(docBase.getScheme())) {
+			return null;
+		}
+		File baseDir = new File(docBase).getParentFile();
+		return new File(baseDir, "parts-info.xml");
+	}
+}
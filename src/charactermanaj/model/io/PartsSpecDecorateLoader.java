@@ -1,10 +1,13 @@
 package charactermanaj.model.io;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import charactermanaj.model.AppConfig;
 import charactermanaj.model.ColorGroup;
@@ -27,6 +30,12 @@ public class PartsSpecDecorateLoader implements PartsDataLoader {
 	
 	private Collection<ColorGroup> colorGroups;
 
+	/**
+	 * 最後に使用したカラーグループの判定パターン.<br>
+	 * パターンの設定が変わらない限り、リロード時にも再利用する.<br>
+	 */
+	private ColorGroupMatcher colorGroupMatcher;
+
 	/**
 	 * パーツローダとカラーグループを指定して構築する.
 	 * @param parent 元パーツローダー
@@ -60,17 +69,161 @@ public class PartsSpecDecorateLoader implements PartsDataLoader {
 			// パターンが設定されていない場合は無視する.
 			return;
 		}
+		ColorGroupMatcher matcher = getColorGroupMatcher(templ);
+		if (matcher.isEmpty()) {
+			return;
+		}
 		// パーツ名にカラーグループが含まれる場合、それを登録する.
-		for (ColorGroup colorGroup : colorGroups) {
-			String pattern = templ.replace("@", colorGroup.getLocalizedName());
-			Pattern pat = Pattern.compile(pattern);
-			for (PartsSpec partsSpec : partsSpecs.values()) {
-				Matcher mat = pat.matcher(partsSpec.getPartsIdentifier()
-						.getLocalizedPartsName());
-				if (mat.matches()) {
-					partsSpec.setColorGroup(colorGroup);
+		for (PartsSpec partsSpec : partsSpecs.values()) {
+			ColorGroup colorGroup = matcher.match(partsSpec.getPartsIdentifier()
+					.getLocalizedPartsName());
+			if (colorGroup != null) {
+				partsSpec.setColorGroup(colorGroup);
+			}
+		}
+	}
+
+	/**
+	 * パターンに対するカラーグループの判定パターンを返す.<br>
+	 * 前回と同じパターンであれば、コンパイル済みのものを再利用する.<br>
+	 * @param templ カラーグループの判定パターン
+	 * @return コンパイル済みの判定パターン
+	 */
+	private synchronized ColorGroupMatcher getColorGroupMatcher(String templ) {
+		if (colorGroupMatcher == null || !colorGroupMatcher.getTemplate().equals(templ)) {
+			colorGroupMatcher = new ColorGroupMatcher(templ, colorGroups);
+		}
+		return colorGroupMatcher;
+	}
+
+	/**
+	 * パーツ名からカラーグループを判定する、コンパイル済みのパターン.<br>
+	 * カラーグループごとのパターンを一つの選択(alternation)にまとめてコンパイルしておき、
+	 * パーツ名ごとに一回の照合でカラーグループを判定する.<br>
+	 * 複数のカラーグループに合致する場合は、カラーグループの並びで後にあるものが優先される.
+	 * (カラーグループごとに順に設定していた従来の結果と同じになるように、選択肢は逆順に並べる.)<br>
+	 * パターンに後方参照が含まれるなど、まとめられない場合はカラーグループごとのパターンで順に照合する.<br>
+	 * 
+	 * @author seraphy
+	 */
+	static final class ColorGroupMatcher {
+
+		/**
+		 * 後方参照の有無を判定するパターン.<br>
+		 * 選択肢をグループでくくるとグループ番号がずれるため、後方参照があればまとめない.<br>
+		 */
+		private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[0-9]|\\\\k<");
+
+		/**
+		 * カラーグループの判定パターン
+		 */
+		private final String template;
+
+		/**
+		 * 優先順のカラーグループ
+		 */
+		private final ColorGroup[] colorGroups;
+
+		/**
+		 * 優先順の、カラーグループごとのパターン
+		 */
+		private final Pattern[] patterns;
+
+		/**
+		 * まとめたパターン、まとめられない場合はnull
+		 */
+		private final Pattern combinedPattern;
+
+		/**
+		 * まとめたパターン中の、各カラーグループの選択肢のグループ番号
+		 */
+		private final int[] groupIndexes;
+
+		/**
+		 * パターンとカラーグループを指定して構築する.
+		 * @param template カラーグループの判定パターン
+		 * @param colorGroups カラーグループのコレクション
+		 * @throws PatternSyntaxException パターンが正しくない場合
+		 */
+		public ColorGroupMatcher(String template, Collection<ColorGroup> colorGroups) {
+			if (template == null || colorGroups == null) {
+				throw new IllegalArgumentException();
+			}
+			this.template = template;
+
+			List<ColorGroup> orderedColorGroups = new ArrayList<ColorGroup>(colorGroups);
+			Collections.reverse(orderedColorGroups);
+			int mx = orderedColorGroups.size();
+
+			this.colorGroups = orderedColorGroups.toArray(new ColorGroup[mx]);
+			this.patterns = new Pattern[mx];
+			this.groupIndexes = new int[mx];
+
+			StringBuilder buf = new StringBuilder();
+			int groupIndex = 1;
+			for (int idx = 0; idx < mx; idx++) {
+				String pattern = template.replace("@", this.colorGroups[idx].getLocalizedName());
+				Pattern pat = Pattern.compile(pattern);
+				patterns[idx] = pat;
+				groupIndexes[idx] = groupIndex;
+				groupIndex += pat.matcher("").groupCount() + 1;
+				if (idx > 0) {
+					buf.append('|');
+				}
+				buf.append('(').append(pattern).append(')');
+			}
+
+			Pattern combined = null;
+			if (mx > 1 && !BACK_REFERENCE.matcher(template).find()) {
+				try {
+					combined = Pattern.compile(buf.toString());
+				} catch (PatternSyntaxException ex) {
+					// まとめられない場合は個別に照合する.
+					combined = null;
+				}
+			}
+			this.combinedPattern = combined;
+		}
+
+		public String getTemplate() {
+			return template;
+		}
+
+		/**
+		 * 判定するカラーグループがないか?
+		 * @return カラーグループがなければtrue
+		 */
+		public boolean isEmpty() {
+			return colorGroups.length == 0;
+		}
+
+		/**
+		 * パーツ名に合致するカラーグループを返す.
+		 * @param partsName パーツ名
+		 * @return カラーグループ、合致するものがなければnull
+		 */
+		public ColorGroup match(String partsName) {
+			if (partsName == null) {
+				return null;
+			}
+			if (combinedPattern != null) {
+				Matcher mat = combinedPattern.matcher(partsName);
+				if (!mat.matches()) {
+					return null;
+				}
+				for (int idx = 0; idx < groupIndexes.length; idx++) {
+					if (mat.start(groupIndexes[idx]) >= 0) {
+						return colorGroups[idx];
+					}
+				}
+				return null;
+			}
+			for (int idx = 0; idx < patterns.length; idx++) {
+				if (patterns[idx].matcher(partsName).matches()) {
+					return colorGroups[idx];
 				}
 			}
+			return null;
 		}
 	}
 	
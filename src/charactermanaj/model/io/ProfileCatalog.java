@@ -0,0 +1,539 @@
+package charactermanaj.model.io;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import charactermanaj.model.CharacterData;
+import charactermanaj.util.UserData;
+import charactermanaj.util.UserDataFactory;
+
+/**
+ * インストールされているキャラクター定義(プロファイル)のカタログ.<br>
+ * プロファイルごとに、ID、REV、名前、作者、画像サイズ、docBaseと、
+ * character.xmlおよびサンプル画像の更新日時からなる概要と、読み込み済みのキャラクター定義を保持する.<br>
+ * character.xmlに変更がなければ、プロファイルの列挙時にXMLを解析せずにカタログから復元する.<br>
+ * キャラクター定義はバイト列のまま保持され、取り出すときにはじめて復元される.<br>
+ * カタログへの保存は{@link #flush()}で行われる.<br>
+ *
+ * @author seraphy
+ */
+public final class ProfileCatalog {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(ProfileCatalog.class.getName());
+
+	/**
+	 * カタログファイルの名前
+	 */
+	public static final String CATALOG_FILE_NAME = "profilecatalog.ser";
+
+	/**
+	 * カタログファイルの識別子
+	 */
+	private static final int MAGIC = 0x434d504c; // "CMPL"
+
+	/**
+	 * カタログファイルの形式のバージョン
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * ファイルの更新日時の精度(ミリ秒).<br>
+	 * 読み込みの直前に更新されたcharacter.xmlは、更新日時が同じになり変更を検出できない可能性があるため、
+	 * この範囲内で更新されていたプロファイルのカタログは信用しない.<br>
+	 */
+	private static final long MTIME_RESOLUTION = 2000;
+
+	/**
+	 * シングルトン
+	 */
+	private static final ProfileCatalog singleton = new ProfileCatalog();
+
+	/**
+	 * カタログの保存先
+	 */
+	private final UserData catalogData;
+
+	/**
+	 * docBaseごとのプロファイルの概要、まだ読み込んでいなければnull
+	 */
+	private HashMap<String, ProfileSummary> summaries;
+
+	/**
+	 * 保存されていない変更があるか?
+	 */
+	private boolean dirty;
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return インスタンス
+	 */
+	public static ProfileCatalog getInstance() {
+		return singleton;
+	}
+
+	private ProfileCatalog() {
+		this.catalogData = UserDataFactory.getInstance().getUserData(CATALOG_FILE_NAME);
+	}
+
+	/**
+	 * プロファイルの概要.<br>
+	 * character.xmlの更新日時とサイズが一致する間は、読み込み済みのキャラクター定義が有効である.<br>
+	 *
+	 * @author seraphy
+	 */
+	private static final class ProfileSummary {
+
+		private final URI docBase;
+
+		private final String id;
+
+		private final String rev;
+
+		private final String name;
+
+		private final String author;
+
+		private final Dimension imageSize;
+
+		private final long xmlLastModified;
+
+		private final long xmlLength;
+
+		private final long sampleLastModified;
+
+		private final long scanTime;
+
+		/**
+		 * シリアライズされたキャラクター定義
+		 */
+		private final byte[] definition;
+
+		ProfileSummary(URI docBase, String id, String rev, String name,
+				String author, Dimension imageSize, long xmlLastModified,
+				long xmlLength, long sampleLastModified, long scanTime,
+				byte[] definition) {
+			this.docBase = docBase;
+			this.id = id;
+			this.rev = rev;
+			this.name = name;
+			this.author = author;
+			this.imageSize = imageSize;
+			this.xmlLastModified = xmlLastModified;
+			this.xmlLength = xmlLength;
+			this.sampleLastModified = sampleLastModified;
+			this.scanTime = scanTime;
+			this.definition = definition;
+		}
+
+		public URI getDocBase() {
+			return docBase;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getRev() {
+			return rev;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getAuthor() {
+			return author;
+		}
+
+		public Dimension getImageSize() {
+			return imageSize == null ? null : (Dimension) imageSize.clone();
+		}
+
+		/**
+		 * character.xmlの更新日時
+		 *
+		 * @return 更新日時
+		 */
+		public long getXmlLastModified() {
+			return xmlLastModified;
+		}
+
+		/**
+		 * サンプル画像の更新日時
+		 *
+		 * @return 更新日時、サンプル画像がなければ0
+		 */
+		public long getSampleLastModified() {
+			return sampleLastModified;
+		}
+
+		/**
+		 * character.xmlが読み込んだときから変更されていないか?
+		 *
+		 * @param xmlFile
+		 *            character.xml
+		 * @return 変更されていなければtrue
+		 */
+		boolean isValid(File xmlFile) {
+			long lastModified = xmlFile.lastModified();
+			return lastModified == xmlLastModified
+					&& xmlFile.length() == xmlLength
+					&& lastModified < scanTime - MTIME_RESOLUTION;
+		}
+
+		/**
+		 * サンプル画像の更新日時だけを変更した概要を返す.
+		 *
+		 * @param sampleLastModified
+		 *            サンプル画像の更新日時
+		 * @return 概要
+		 */
+		ProfileSummary withSampleLastModified(long sampleLastModified) {
+			return new ProfileSummary(docBase, id, rev, name, author,
+					imageSize, xmlLastModified, xmlLength, sampleLastModified,
+					scanTime, definition);
+		}
+
+		void write(DataOutputStream dos) throws IOException {
+			dos.writeUTF(docBase.toString());
+			writeString(dos, id);
+			writeString(dos, rev);
+			writeString(dos, name);
+			writeString(dos, author);
+			dos.writeInt(imageSize == null ? -1 : imageSize.width);
+			dos.writeInt(imageSize == null ? -1 : imageSize.height);
+			dos.writeLong(xmlLastModified);
+			dos.writeLong(xmlLength);
+			dos.writeLong(sampleLastModified);
+			dos.writeLong(scanTime);
+			dos.writeInt(definition.length);
+			dos.write(definition);
+		}
+
+		static ProfileSummary read(DataInputStream dis) throws IOException {
+			URI docBase = URI.create(dis.readUTF());
+			String id = readString(dis);
+			String rev = readString(dis);
+			String name = readString(dis);
+			String author = readString(dis);
+			int width = dis.readInt();
+			int height = dis.readInt();
+			Dimension imageSize = (width < 0) ? null : new Dimension(width, height);
+			long xmlLastModified = dis.readLong();
+			long xmlLength = dis.readLong();
+			long sampleLastModified = dis.readLong();
+			long scanTime = dis.readLong();
+			int len = dis.readInt();
+			if (len < 0) {
+				throw new IOException("invalid length: " + len);
+			}
+			byte[] definition = new byte[len];
+			dis.readFully(definition);
+			return new ProfileSummary(docBase, id, rev, name, author,
+					imageSize, xmlLastModified, xmlLength, sampleLastModified,
+					scanTime, definition);
+		}
+
+		@Override
+		public String toString() {
+			return "ProfileSummary(" + docBase + ", id=" + id + ", rev=" + rev
+					+ ", name=" + name + ")";
+		}
+	}
+
+	/**
+	 * character.xmlに変更がなければ、カタログからキャラクター定義を復元して返す.<br>
+	 * サンプル画像の更新日時が変わっていれば概要を更新する.<br>
+	 *
+	 * @param xmlFile
+	 *            character.xml
+	 * @param sampleFile
+	 *            サンプル画像
+	 * @return キャラクター定義、カタログにないか変更されている場合はnull
+	 */
+	public CharacterData get(File xmlFile, File sampleFile) {
+		if (xmlFile == null) {
+			throw new IllegalArgumentException();
+		}
+		String key = xmlFile.toURI().toString();
+		ProfileSummary summary;
+		synchronized (this) {
+			loadCatalog();
+			summary = summaries.get(key);
+		}
+		if (summary == null || !summary.isValid(xmlFile)) {
+			return null;
+		}
+
+		long sampleLastModified = (sampleFile == null) ? 0 : sampleFile.lastModified();
+		if (sampleLastModified != summary.getSampleLastModified()) {
+			synchronized (this) {
+				summaries.put(key, summary.withSampleLastModified(sampleLastModified));
+				dirty = true;
+			}
+		}
+
+		try {
+			ObjectInputStream ois = new ObjectInputStream(
+					new ByteArrayInputStream(summary.definition));
+			try {
+				return (CharacterData) ois.readObject();
+			} finally {
+				ois.close();
+			}
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "profile catalog entry is broken. " + key, ex);
+			synchronized (this) {
+				summaries.remove(key);
+				dirty = true;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * character.xmlから読み込んだキャラクター定義をカタログに登録する.<br>
+	 * 登録時点の内容が保持されるため、登録後にキャラクター定義を変更しても影響しない.<br>
+	 *
+	 * @param xmlFile
+	 *            character.xml
+	 * @param sampleFile
+	 *            サンプル画像
+	 * @param characterData
+	 *            読み込んだキャラクター定義(パーツは未ロードであること)
+	 * @param scanTime
+	 *            読み込みを開始した時刻
+	 */
+	public void put(File xmlFile, File sampleFile, CharacterData characterData,
+			long scanTime) {
+		if (xmlFile == null || characterData == null) {
+			throw new IllegalArgumentException();
+		}
+		String key = xmlFile.toURI().toString();
+		long xmlLastModified = xmlFile.lastModified();
+		if (xmlLastModified >= scanTime - MTIME_RESOLUTION) {
+			// 読み込みと同時期に更新されたファイルは変更を見逃す可能性があるため、カタログにしない.
+			invalidate(key);
+			return;
+		}
+
+		byte[] definition;
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bos);
+			try {
+				oos.writeObject(characterData);
+			} finally {
+				oos.close();
+			}
+			definition = bos.toByteArray();
+
+		} catch (IOException ex) {
+			logger.log(Level.WARNING, "profile can not be cataloged. " + key, ex);
+			invalidate(key);
+			return;
+		}
+
+		ProfileSummary summary = new ProfileSummary(xmlFile.toURI(),
+				characterData.getId(), characterData.getRev(),
+				characterData.getName(), characterData.getAuthor(),
+				characterData.getImageSize(), xmlLastModified,
+				xmlFile.length(),
+				(sampleFile == null) ? 0 : sampleFile.lastModified(),
+				scanTime, definition);
+		synchronized (this) {
+			loadCatalog();
+			summaries.put(key, summary);
+			dirty = true;
+		}
+	}
+
+	/**
+	 * プロファイルをカタログから除去する.
+	 *
+	 * @param docBase
+	 *            character.xmlの位置
+	 */
+	public void invalidate(URI docBase) {
+		if (docBase != null) {
+			invalidate(docBase.toString());
+		}
+	}
+
+	private synchronized void invalidate(String key) {
+		loadCatalog();
+		if (summaries.remove(key) != null) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * 指定したもの以外のプロファイルをカタログから除去する.<br>
+	 * 削除されたプロファイルを取り除くために用いる.<br>
+	 *
+	 * @param xmlFiles
+	 *            現存するcharacter.xml
+	 */
+	public synchronized void retain(Collection<File> xmlFiles) {
+		loadCatalog();
+		HashSet<String> keys = new HashSet<String>();
+		for (File xmlFile : xmlFiles) {
+			keys.add(xmlFile.toURI().toString());
+		}
+		Iterator<String> ite = summaries.keySet().iterator();
+		while (ite.hasNext()) {
+			if (!keys.contains(ite.next())) {
+				ite.remove();
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * カタログに変更があればファイルに保存する.
+	 *
+	 * @throws IOException
+	 *             保存に失敗した場合
+	 */
+	public synchronized void flush() throws IOException {
+		if (!dirty || summaries == null) {
+			return;
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bos);
+		dos.writeInt(summaries.size());
+		for (ProfileSummary summary : summaries.values()) {
+			summary.write(dos);
+		}
+		dos.flush();
+		byte[] body = bos.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		OutputStream os = catalogData.getOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(os);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeLong(crc.getValue());
+			out.flush();
+		} finally {
+			os.close();
+		}
+		dirty = false;
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "profile catalog saved. profiles="
+					+ summaries.size() + " bytes=" + body.length);
+		}
+	}
+
+	/**
+	 * カタログファイルを読み込む.<br>
+	 * 読み込み済みであれば何もしない.<br>
+	 * ファイルが存在しないか、形式が不正である場合は空のカタログとする.<br>
+	 */
+	private void loadCatalog() {
+		if (summaries != null) {
+			return;
+		}
+		summaries = new HashMap<String, ProfileSummary>();
+		if (!catalogData.exists()) {
+			return;
+		}
+		try {
+			InputStream is = catalogData.openStream();
+			try {
+				DataInputStream dis = new DataInputStream(is);
+				if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+					logger.log(Level.INFO, "profile catalog format mismatch. " + catalogData);
+					return;
+				}
+				int len = dis.readInt();
+				if (len < 0) {
+					throw new IOException("invalid length: " + len);
+				}
+				byte[] body = new byte[len];
+				dis.readFully(body);
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if (crc.getValue() != dis.readLong()) {
+					logger.log(Level.WARNING, "profile catalog is broken. " + catalogData);
+					return;
+				}
+
+				DataInputStream bis = new DataInputStream(new ByteArrayInputStream(body));
+				int mx = bis.readInt();
+				for (int idx = 0; idx < mx; idx++) {
+					ProfileSummary summary = ProfileSummary.read(bis);
+					summaries.put(summary.getDocBase().toString(), summary);
+				}
+
+			} finally {
+				is.close();
+			}
+
+		} catch (EOFException ex) {
+			logger.log(Level.WARNING, "profile catalog is truncated. " + catalogData, ex);
+			summaries.clear();
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "profile catalog loading failed. " + catalogData, ex);
+			summaries.clear();
+		}
+	}
+
+	/**
+	 * nullを許容する文字列を書き込む.
+	 */
+	private static void writeString(DataOutputStream dos, String value) throws IOException {
+		dos.writeBoolean(value != null);
+		if (value != null) {
+			dos.writeUTF(value);
+		}
+	}
+
+	/**
+	 * nullを許容する文字列を読み込む.
+	 */
+	private static String readString(DataInputStream dis) throws IOException {
+		if (dis.readBoolean()) {
+			return dis.readUTF();
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ProfileCatalog(" + catalogData + ", profiles="
+				+ (summaries == null ? "not loaded" : Integer.toString(summaries.size())) + ")";
+	}
+
+}
@@ -0,0 +1,167 @@
+package charactermanaj.model.io;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * プロファイルの列挙を構成するタスクの集まり.<br>
+ * 共有のスレッドプールに登録したタスクを保持し、列挙全体の完了の待機と取り消しを行う.<br>
+ * 取り消した場合は、まだ開始されていないタスクはスレッドプールから除去され、実行中のタスクには割り込みがかけられる.<br>
+ * コールバックによって列挙が打ち切られた場合は取り消しと同様にタスクを停止するが、
+ * {@link #get()}は例外とせずに戻る.<br>
+ *
+ * @author seraphy
+ */
+final class ProfileListTask implements Future<Object> {
+
+	/**
+	 * タスクを実行するスレッドプール
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * 登録したタスク.<br>
+	 * タスクの中から後続のタスクを登録する場合は、登録元のタスクが完了する前に登録すること.<br>
+	 */
+	private final ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+
+	/**
+	 * 列挙が打ち切られたか?
+	 */
+	private volatile boolean terminated;
+
+	/**
+	 * 列挙が取り消されたか?
+	 */
+	private volatile boolean cancelled;
+
+	public ProfileListTask(ExecutorService executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException();
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * タスクを登録する.<br>
+	 * すでに打ち切られている場合は何もしない.<br>
+	 *
+	 * @param task
+	 *            タスク
+	 */
+	public void submit(Runnable task) {
+		synchronized (futures) {
+			if (!terminated) {
+				futures.add(executor.submit(task));
+			}
+		}
+	}
+
+	/**
+	 * 列挙を打ち切る.<br>
+	 * 未実行のタスクを取り消し、実行中のタスクに割り込みをかける.<br>
+	 */
+	public void terminate() {
+		synchronized (futures) {
+			terminated = true;
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * 列挙が打ち切られたか?
+	 *
+	 * @return 打ち切られていればtrue
+	 */
+	public boolean isTerminated() {
+		return terminated;
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (futures) {
+			if (isDone()) {
+				return false;
+			}
+			cancelled = true;
+			terminated = true;
+			for (Future<?> future : futures) {
+				future.cancel(mayInterruptIfRunning);
+			}
+		}
+		return true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public boolean isDone() {
+		synchronized (futures) {
+			for (Future<?> future : futures) {
+				if (!future.isDone()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public Object get() throws InterruptedException, ExecutionException {
+		try {
+			return await(false, 0);
+
+		} catch (TimeoutException ex) {
+			// 時間制限なしのため発生しない
+			throw new ExecutionException(ex);
+		}
+	}
+
+	public Object get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		return await(true, System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	/**
+	 * すべてのタスクの完了を待機する.<br>
+	 * 待機中に後続のタスクが登録されれば、それも待機する.<br>
+	 */
+	private Object await(boolean timed, long deadline) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		int idx = 0;
+		for (;;) {
+			Future<?> future;
+			synchronized (futures) {
+				if (idx >= futures.size()) {
+					break;
+				}
+				future = futures.get(idx++);
+			}
+			try {
+				if (timed) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0 && !future.isDone()) {
+						throw new TimeoutException();
+					}
+					future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+
+				} else {
+					future.get();
+				}
+
+			} catch (CancellationException ex) {
+				// 打ち切られたタスクは完了したものとみなす
+			}
+		}
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		return null;
+	}
+}
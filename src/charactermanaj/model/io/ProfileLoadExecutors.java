@@ -0,0 +1,61 @@
+package charactermanaj.model.io;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import charactermanaj.model.AppConfig;
+import charactermanaj.util.NamedThreadFactory;
+
+/**
+ * プロファイルの列挙やパーツのロードに使うスレッドプール.<br>
+ * 列挙やロードのたびにスレッドプールを作成せず、すべてで共有する.<br>
+ * 既定では論理CPU数のデーモンスレッドからなるプールを使い、同時に解析する数を抑える.<br>
+ * 仮想スレッドを使う設定で、かつ仮想スレッドが利用可能なJavaで実行されていれば仮想スレッドを使う.<br>
+ *
+ * @author seraphy
+ */
+public final class ProfileLoadExecutors {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(ProfileLoadExecutors.class.getName());
+
+	/**
+	 * 共有のスレッドプール
+	 */
+	private static final ExecutorService executor;
+
+	static {
+		ExecutorService virtualThreadExecutor = null;
+		if (AppConfig.getInstance().isEnableProfileLoadVirtualThreads()) {
+			try {
+				// Java21以降: Executors#newVirtualThreadPerTaskExecutor()
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				virtualThreadExecutor = (ExecutorService) method.invoke(null);
+
+			} catch (Exception ex) {
+				logger.log(Level.INFO, "virtual threads are not available. " + ex);
+			}
+		}
+		if (virtualThreadExecutor != null) {
+			executor = virtualThreadExecutor;
+
+		} else {
+			int numOfProcessors = Runtime.getRuntime().availableProcessors();
+			executor = Executors.newFixedThreadPool(numOfProcessors,
+					new NamedThreadFactory("ProfileLoader"));
+		}
+	}
+
+	private ProfileLoadExecutors() {
+		throw new RuntimeException("utilities class.");
+	}
+
+	public static ExecutorService getExecutor() {
+		return executor;
+	}
+}
@@ -0,0 +1,297 @@
+package charactermanaj.model.io;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import charactermanaj.model.CharacterData;
+import charactermanaj.util.UserData;
+import charactermanaj.util.UserDataFactory;
+
+/**
+ * キャラクター定義(プロファイル)のサンプルピクチャの縮小画像(サムネイル)のキャッシュ.<br>
+ * サムネイルはプロファイルごとにユーザーデータのキャッシュフォルダに保存され、
+ * サンプルピクチャの更新日時とサイズが一致する間は、元の画像をデコードせずに復元される.<br>
+ * 元の画像をデコードする場合も、サムネイルに必要な解像度まで間引いて読み込む.<br>
+ * 呼び出し元のスレッドで処理するため、UIからは別スレッドで呼び出すこと.<br>
+ *
+ * @author seraphy
+ */
+public final class SamplePictureThumbnailCache {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(SamplePictureThumbnailCache.class.getName());
+
+	/**
+	 * キャッシュファイルの名前(docBaseごとのプレフィックスがつく)
+	 */
+	public static final String THUMBNAIL_FILE_NAME = "samplethumbnail.ser";
+
+	/**
+	 * キャッシュファイルの識別子
+	 */
+	private static final int MAGIC = 0x434d5354; // "CMST"
+
+	/**
+	 * キャッシュファイルの形式のバージョン
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * シングルトン
+	 */
+	private static final SamplePictureThumbnailCache singleton = new SamplePictureThumbnailCache();
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return インスタンス
+	 */
+	public static SamplePictureThumbnailCache getInstance() {
+		return singleton;
+	}
+
+	private SamplePictureThumbnailCache() {
+		super();
+	}
+
+	/**
+	 * キャラクター定義のサンプルピクチャのサムネイルを取得する.<br>
+	 * キャッシュが有効であればキャッシュから復元し、そうでなければサンプルピクチャから作成してキャッシュに保存する.<br>
+	 * サムネイルは縦横比を維持したまま、長辺が指定したサイズに収まるように縮小される.<br>
+	 *
+	 * @param characterData
+	 *            キャラクター定義
+	 * @param size
+	 *            サムネイルの最大の幅と高さ
+	 * @return サムネイル、サンプルピクチャがない場合はnull
+	 * @throws IOException
+	 *             サンプルピクチャの読み込みに失敗した場合
+	 */
+	public BufferedImage getThumbnail(CharacterData characterData, int size)
+			throws IOException {
+		if (characterData == null || size <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if (!characterData.isValid()) {
+			return null;
+		}
+		CharacterDataPersistent persist = CharacterDataPersistent.getInstance();
+		File sampleFile = persist.getSamplePictureFile(characterData);
+		if (sampleFile == null) {
+			return null;
+		}
+
+		URI docBase = characterData.getDocBase();
+		UserData cacheData = UserDataFactory.getInstance()
+				.getMangledNamedUserData(docBase, THUMBNAIL_FILE_NAME);
+
+		long lastModified = sampleFile.lastModified();
+		long length = sampleFile.length();
+		if (lastModified == 0 || !sampleFile.isFile()) {
+			// サンプルピクチャがなければキャッシュも不要
+			if (cacheData.exists()) {
+				cacheData.delete();
+			}
+			return null;
+		}
+
+		BufferedImage thumbnail = readCache(cacheData, lastModified, length, size);
+		if (thumbnail != null) {
+			return thumbnail;
+		}
+
+		thumbnail = createThumbnail(sampleFile, size);
+		if (thumbnail != null) {
+			try {
+				writeCache(cacheData, lastModified, length, size, thumbnail);
+
+			} catch (IOException ex) {
+				// キャッシュに保存できなくても、サムネイルは返す
+				logger.log(Level.WARNING, "sample thumbnail can not be cached. " + docBase, ex);
+			}
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * キャラクター定義のサンプルピクチャのサムネイルのキャッシュを破棄する.<br>
+	 * サンプルピクチャを更新・削除したときに用いる.<br>
+	 *
+	 * @param characterData
+	 *            キャラクター定義
+	 */
+	public void invalidate(CharacterData characterData) {
+		if (characterData == null || characterData.getDocBase() == null) {
+			return;
+		}
+		UserData cacheData = UserDataFactory.getInstance()
+				.getMangledNamedUserData(characterData.getDocBase(), THUMBNAIL_FILE_NAME);
+		if (cacheData.exists()) {
+			cacheData.delete();
+		}
+	}
+
+	/**
+	 * サンプルピクチャを間引いて読み込み、サムネイルの大きさに縮小する.
+	 *
+	 * @param sampleFile
+	 *            サンプルピクチャ
+	 * @param size
+	 *            サムネイルの最大の幅と高さ
+	 * @return サムネイル、画像として読み込めなければnull
+	 * @throws IOException
+	 *             読み込みに失敗した場合
+	 */
+	private BufferedImage createThumbnail(File sampleFile, int size) throws IOException {
+		BufferedImage img = null;
+		ImageInputStream iis = ImageIO.createImageInputStream(sampleFile);
+		if (iis == null) {
+			return null;
+		}
+		try {
+			Iterator<ImageReader> ite = ImageIO.getImageReaders(iis);
+			if (!ite.hasNext()) {
+				return null;
+			}
+			ImageReader reader = ite.next();
+			try {
+				reader.setInput(iis, true, true);
+				int w = reader.getWidth(0);
+				int h = reader.getHeight(0);
+
+				// 縮小時の補間に必要な程度(2倍)の解像度を残して間引く
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = Math.max(1, Math.max(w, h) / (size * 2));
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				img = reader.read(0, param);
+
+			} finally {
+				reader.dispose();
+			}
+
+		} finally {
+			iis.close();
+		}
+
+		int w = img.getWidth();
+		int h = img.getHeight();
+		double scale = Math.min(1d, Math.min((double) size / w, (double) size / h));
+		int tw = Math.max(1, (int) Math.round(w * scale));
+		int th = Math.max(1, (int) Math.round(h * scale));
+
+		BufferedImage thumbnail = new BufferedImage(tw, th, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = thumbnail.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING,
+					RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(img, 0, 0, tw, th, null);
+
+		} finally {
+			g.dispose();
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * キャッシュからサムネイルを復元する.<br>
+	 * キャッシュがないか、サンプルピクチャの更新日時・サイズ、またはサムネイルの大きさが一致しない場合はnullを返す.<br>
+	 */
+	private BufferedImage readCache(UserData cacheData, long lastModified,
+			long length, int size) {
+		if (!cacheData.exists()) {
+			return null;
+		}
+		try {
+			InputStream is = cacheData.openStream();
+			try {
+				DataInputStream dis = new DataInputStream(is);
+				if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+					return null;
+				}
+				if (dis.readLong() != lastModified || dis.readLong() != length
+						|| dis.readInt() != size) {
+					return null;
+				}
+				int len = dis.readInt();
+				if (len < 0) {
+					throw new IOException("invalid length: " + len);
+				}
+				byte[] body = new byte[len];
+				dis.readFully(body);
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if (crc.getValue() != dis.readLong()) {
+					logger.log(Level.WARNING, "sample thumbnail cache is broken. " + cacheData);
+					return null;
+				}
+				return ImageIO.read(new ByteArrayInputStream(body));
+
+			} finally {
+				is.close();
+			}
+
+		} catch (EOFException ex) {
+			logger.log(Level.WARNING, "sample thumbnail cache is truncated. " + cacheData, ex);
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "sample thumbnail cache loading failed. " + cacheData, ex);
+		}
+		return null;
+	}
+
+	/**
+	 * サムネイルをPNG形式でキャッシュに保存する.
+	 */
+	private void writeCache(UserData cacheData, long lastModified, long length,
+			int size, BufferedImage thumbnail) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		if (!ImageIO.write(thumbnail, "png", bos)) {
+			throw new IOException("png writer not found.");
+		}
+		byte[] body = bos.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		OutputStream os = cacheData.getOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(os);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(lastModified);
+			out.writeLong(length);
+			out.writeInt(size);
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeLong(crc.getValue());
+			out.flush();
+		} finally {
+			os.close();
+		}
+	}
+
+}
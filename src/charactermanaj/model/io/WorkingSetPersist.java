@@ -1,13 +1,19 @@
 package charactermanaj.model.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
+import charactermanaj.model.AppConfig;
 import charactermanaj.model.CharacterData;
 import charactermanaj.model.WorkingSet;
 import charactermanaj.model.WorkingSet2;
@@ -34,6 +40,30 @@ public class WorkingSetPersist {
 
 	private static final WorkingSetPersist singletion = new WorkingSetPersist();
 
+	/**
+	 * docBaseごとの、最後に保存したワーキングセットの状態.<br>
+	 * 内容が同じであれば書き込みを省略するために用いる.<br>
+	 */
+	private final HashMap<URI, WrittenState> writtenStates = new HashMap<URI, WrittenState>();
+
+	/**
+	 * 保存したワーキングセットの状態
+	 */
+	private static final class WrittenState {
+
+		private final long checksum;
+
+		private final int length;
+
+		private final long lastModified;
+
+		WrittenState(long checksum, int length, long lastModified) {
+			this.checksum = checksum;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+
 	public static WorkingSetPersist getInstance() {
 		return singletion;
 	}
@@ -42,15 +72,27 @@ public class WorkingSetPersist {
 	 * すべてのワーキングセットをクリアする.<br>
 	 */
 	public void removeAllWorkingSet() {
+		synchronized (writtenStates) {
+			writtenStates.clear();
+		}
+		removeAllFiles(WORKINGSET_FILE_SUFFIX);
+		removeAllFiles(WorkingSetSnapshot.SNAPSHOT_FILE_SUFFIX);
+	}
+
+	/**
+	 * ユーザーデータのフォルダから、指定したサフィックスをもつファイルをすべて削除する.
+	 * 
+	 * @param suffix
+	 *            サフィックス
+	 */
+	private void removeAllFiles(final String suffix) {
 		UserDataFactory userDataFactory = UserDataFactory.getInstance();
-		File dir = userDataFactory.getSpecialDataDir("foo-"
-				+ WORKINGSET_FILE_SUFFIX);
+		File dir = userDataFactory.getSpecialDataDir("foo-" + suffix);
 		if (dir.exists() && dir.isDirectory()) {
 			File[] files = dir.listFiles(new FileFilter() {
 				public boolean accept(File pathname) {
 					return pathname.isFile()
-							&& pathname.getName().endsWith(
-									WORKINGSET_FILE_SUFFIX);
+							&& pathname.getName().endsWith(suffix);
 				}
 			});
 			if (files == null) {
@@ -72,6 +114,9 @@ public class WorkingSetPersist {
 	 *            対象のキャラクターデータ
 	 */
 	public void removeWorkingSet(CharacterData cd) {
+		synchronized (writtenStates) {
+			writtenStates.remove(cd.getDocBase());
+		}
 		UserDataFactory userDataFactory = UserDataFactory.getInstance();
 		UserData workingSetXmlData = userDataFactory.getMangledNamedUserData(
 				cd.getDocBase(), WORKINGSET_FILE_SUFFIX);
@@ -79,11 +124,19 @@ public class WorkingSetPersist {
 			logger.log(Level.INFO, "remove file: " + workingSetXmlData);
 			workingSetXmlData.delete();
 		}
+		UserData snapshotData = userDataFactory.getMangledNamedUserData(
+				cd.getDocBase(), WorkingSetSnapshot.SNAPSHOT_FILE_SUFFIX);
+		if (snapshotData.exists()) {
+			logger.log(Level.INFO, "remove file: " + snapshotData);
+			snapshotData.delete();
+		}
 	}
 
 	/**
 	 * ワーキングセットを保存する.<br>
 	 * ワーキングセットインスタンスには、あらかじめ全て設定しておく必要がある.<br>
+	 * 前回保存した内容から変わっていなければ書き込まない.<br>
+	 * 有効であれば、次回の起動時に用いるバイナリ形式のスナップショットも保存する.<br>
 	 * 
 	 * @param workingSet
 	 *            ワーキングセット
@@ -103,17 +156,90 @@ public class WorkingSetPersist {
 		UserDataFactory userDataFactory = UserDataFactory.getInstance();
 		UserData workingSetXmlData = userDataFactory.getMangledNamedUserData(
 				characterData.getDocBase(), WORKINGSET_FILE_SUFFIX);
-		OutputStream outstm = workingSetXmlData.getOutputStream();
+
+		// いったんメモリ上に書き出す
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		WorkingSetXMLWriter workingSetXmlWriter = new WorkingSetXMLWriter();
+		workingSetXmlWriter.writeWorkingSet(workingSet, bos);
+		byte[] data = bos.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		URI docBase = characterData.getDocBase();
+		synchronized (writtenStates) {
+			WrittenState writtenState = writtenStates.get(docBase);
+			if (writtenState != null && writtenState.checksum == crc.getValue()
+					&& writtenState.length == data.length
+					&& writtenState.lastModified == workingSetXmlData.lastModified()) {
+				// 前回保存したものから変更されていない
+				logger.log(Level.FINE, "workingset is not changed. " + docBase);
+				UserData snapshotData = userDataFactory.getMangledNamedUserData(
+						docBase, WorkingSetSnapshot.SNAPSHOT_FILE_SUFFIX);
+				if (!snapshotData.exists()) {
+					saveSnapshot(docBase, data, null);
+				}
+				return;
+			}
+
+			// 内容が確定してから一度に書き込む
+			OutputStream outstm = workingSetXmlData.getOutputStream();
+			try {
+				outstm.write(data);
+			} finally {
+				outstm.close();
+			}
+			writtenStates.put(docBase, new WrittenState(crc.getValue(),
+					data.length, workingSetXmlData.lastModified()));
+			saveSnapshot(docBase, data, null);
+		}
+	}
+
+	/**
+	 * ワーキングセットのXMLに対応するバイナリ形式のスナップショットを保存する.<br>
+	 * スナップショットはXMLから復元したワーキングセットから作成するため、
+	 * スナップショットから復元したものとXMLから復元したものは常に同じになる.<br>
+	 * スナップショットが無効に設定されているか、保存に失敗した場合はスナップショットを削除する.<br>
+	 * 
+	 * @param docBase
+	 *            キャラクターデータのdocBase
+	 * @param xmlData
+	 *            ワーキングセットのXMLの内容
+	 * @param workingSet2
+	 *            XMLから復元済みのワーキングセット、nullの場合はXMLから復元する
+	 */
+	private void saveSnapshot(URI docBase, byte[] xmlData,
+			WorkingSet2 workingSet2) {
+		UserData snapshotData = UserDataFactory.getInstance()
+				.getMangledNamedUserData(docBase,
+						WorkingSetSnapshot.SNAPSHOT_FILE_SUFFIX);
+		if (!AppConfig.getInstance().isEnableWorkingSetSnapshot()) {
+			if (snapshotData.exists()) {
+				snapshotData.delete();
+			}
+			return;
+		}
 		try {
-			WorkingSetXMLWriter workingSetXmlWriter = new WorkingSetXMLWriter();
-			workingSetXmlWriter.writeWorkingSet(workingSet, outstm);
-		} finally {
-			outstm.close();
+			if (workingSet2 == null) {
+				WorkingSetXMLReader workingSetXMLReader = new WorkingSetXMLReader();
+				workingSet2 = workingSetXMLReader
+						.loadWorkingSet(new ByteArrayInputStream(xmlData));
+			}
+			WorkingSetSnapshot.write(snapshotData, xmlData, workingSet2);
+
+		} catch (Exception ex) {
+			// スナップショットがなくてもXMLから復元できるため、処理は継続する.
+			logger.log(Level.WARNING, "workingset snapshot saving failed. "
+					+ docBase, ex);
+			if (snapshotData.exists()) {
+				snapshotData.delete();
+			}
 		}
 	}
 
 	/**
 	 * ワーキングセットを取得する.<br>
+	 * XMLに対応する有効なスナップショットがあれば、XMLを解析せずにスナップショットから復元する.<br>
+	 * スナップショットがないか、XMLと一致しないか、壊れている場合はXMLから復元し、スナップショットを作り直す.<br>
 	 * 
 	 * @param characterData
 	 *            対象のキャラクターデータ
@@ -136,14 +262,38 @@ public class WorkingSetPersist {
 		}
 		WorkingSet2 workingSet2;
 
+		// XMLの内容はスナップショットとの照合にも用いるため、いったんメモリ上に読み込む
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		InputStream is = workingSetXmlData.openStream();
 		try {
-			WorkingSetXMLReader WorkingSetXMLReader = new WorkingSetXMLReader();
-			workingSet2 = WorkingSetXMLReader.loadWorkingSet(is);
+			byte[] buf = new byte[4096];
+			int rd;
+			while ((rd = is.read(buf)) >= 0) {
+				bos.write(buf, 0, rd);
+			}
 
 		} finally {
 			is.close();
 		}
+		byte[] data = bos.toByteArray();
+
+		URI docBase = characterData.getDocBase();
+		if (AppConfig.getInstance().isEnableWorkingSetSnapshot()) {
+			UserData snapshotData = userDataFactory.getMangledNamedUserData(
+					docBase, WorkingSetSnapshot.SNAPSHOT_FILE_SUFFIX);
+			workingSet2 = WorkingSetSnapshot.read(snapshotData, data);
+			if (workingSet2 != null) {
+				logger.log(Level.FINE, "workingset restored from snapshot. "
+						+ docBase);
+				return workingSet2;
+			}
+		}
+
+		WorkingSetXMLReader WorkingSetXMLReader = new WorkingSetXMLReader();
+		workingSet2 = WorkingSetXMLReader.loadWorkingSet(new ByteArrayInputStream(data));
+
+		// 次回はスナップショットから復元できるようにする
+		saveSnapshot(docBase, data, workingSet2);
 
 		return workingSet2;
 	}
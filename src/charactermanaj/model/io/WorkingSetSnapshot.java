@@ -0,0 +1,470 @@
+package charactermanaj.model.io;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import charactermanaj.graphics.filters.ColorConv;
+import charactermanaj.graphics.filters.ColorConvertParameter;
+import charactermanaj.model.IndependentPartsColorInfo;
+import charactermanaj.model.IndependentPartsSetInfo;
+import charactermanaj.model.WorkingSet2;
+import charactermanaj.ui.model.WallpaperInfo;
+import charactermanaj.ui.model.WallpaperInfo.WallpaperResourceType;
+import charactermanaj.util.UserData;
+
+/**
+ * ワーキングセットのバイナリ形式のスナップショット.<br>
+ * ワーキングセットのXMLと同じ内容をバイナリ形式で保存し、起動時にはXMLを解析せずに復元できるようにする.<br>
+ * スナップショットには元になったXMLのサイズとチェックサムが記録されており、
+ * XMLと一致しない場合や、形式のバージョン・チェックサムが一致しない場合は無効なものとして扱われる.<br>
+ *
+ * @author seraphy
+ */
+final class WorkingSetSnapshot {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(WorkingSetSnapshot.class.getName());
+
+	/**
+	 * スナップショットのサフィックス.
+	 */
+	public static final String SNAPSHOT_FILE_SUFFIX = "workingset.ser";
+
+	/**
+	 * スナップショットの識別子
+	 */
+	private static final int MAGIC = 0x434d5753; // "CMWS"
+
+	/**
+	 * スナップショットの形式のバージョン
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * 元になったXMLのサイズに対する、スナップショットの本体のサイズの上限の倍率.<br>
+	 * 壊れたヘッダによって過大なバッファを確保しないように、読み込み時に本体のサイズを制限する.<br>
+	 * (バイナリ形式はXMLよりも小さくなるため、通常は上限に達することはない.)<br>
+	 */
+	private static final int MAX_BODY_RATIO = 2;
+
+	/**
+	 * スナップショットの本体のサイズの上限に加える余裕(バイト)
+	 */
+	private static final int MAX_BODY_MARGIN = 4096;
+
+	private WorkingSetSnapshot() {
+		throw new RuntimeException("utilities class.");
+	}
+
+	/**
+	 * スナップショットからワーキングセットを復元する.<br>
+	 * スナップショットがないか、元になったXMLと一致しないか、壊れている場合はnullを返す.<br>
+	 *
+	 * @param snapshotData
+	 *            スナップショット
+	 * @param xmlData
+	 *            現在のワーキングセットのXMLの内容
+	 * @return ワーキングセット、もしくはnull
+	 */
+	public static WorkingSet2 read(UserData snapshotData, byte[] xmlData) {
+		if (snapshotData == null || xmlData == null) {
+			throw new IllegalArgumentException();
+		}
+		if (!snapshotData.exists()) {
+			return null;
+		}
+		CRC32 xmlCrc = new CRC32();
+		xmlCrc.update(xmlData);
+		try {
+			InputStream is = snapshotData.openStream();
+			try {
+				DataInputStream dis = new DataInputStream(is);
+				if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+					logger.log(Level.INFO, "workingset snapshot version mismatch. " + snapshotData);
+					return null;
+				}
+				if (dis.readInt() != xmlData.length
+						|| dis.readLong() != xmlCrc.getValue()) {
+					logger.log(Level.INFO, "workingset snapshot is stale. " + snapshotData);
+					return null;
+				}
+				int len = dis.readInt();
+				if (len < 0 || len > getMaxBodyLength(xmlData)) {
+					throw new IOException("invalid length: " + len);
+				}
+				byte[] body = new byte[len];
+				dis.readFully(body);
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if (crc.getValue() != dis.readLong()) {
+					logger.log(Level.WARNING, "workingset snapshot is broken. " + snapshotData);
+					return null;
+				}
+				return readWorkingSet(new DataInputStream(
+						new ByteArrayInputStream(body)));
+
+			} finally {
+				is.close();
+			}
+
+		} catch (EOFException ex) {
+			logger.log(Level.WARNING, "workingset snapshot is truncated. " + snapshotData, ex);
+
+		} catch (Exception ex) {
+			logger.log(Level.WARNING, "workingset snapshot loading failed. " + snapshotData, ex);
+		}
+		return null;
+	}
+
+	/**
+	 * ワーキングセットのスナップショットを保存する.
+	 *
+	 * @param snapshotData
+	 *            スナップショット
+	 * @param xmlData
+	 *            ワーキングセットのXMLの内容
+	 * @param workingSet2
+	 *            XMLから復元したワーキングセット
+	 * @throws IOException
+	 *             書き込みに失敗した場合
+	 */
+	public static void write(UserData snapshotData, byte[] xmlData,
+			WorkingSet2 workingSet2) throws IOException {
+		if (snapshotData == null || xmlData == null || workingSet2 == null) {
+			throw new IllegalArgumentException();
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bos);
+		writeWorkingSet(body, workingSet2);
+		body.flush();
+		byte[] data = bos.toByteArray();
+		if (data.length > getMaxBodyLength(xmlData)) {
+			// 読み込み時に不正なサイズとみなされるものは保存しない
+			throw new IOException("workingset snapshot is too large: " + data.length);
+		}
+
+		CRC32 xmlCrc = new CRC32();
+		xmlCrc.update(xmlData);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		OutputStream os = snapshotData.getOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(os);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(xmlData.length);
+			out.writeLong(xmlCrc.getValue());
+			out.writeInt(data.length);
+			out.write(data);
+			out.writeLong(crc.getValue());
+			out.flush();
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * 元になったXMLの内容から、スナップショットの本体のサイズの上限を求める.
+	 *
+	 * @param xmlData
+	 *            ワーキングセットのXMLの内容
+	 * @return 本体のサイズの上限(バイト)
+	 */
+	private static long getMaxBodyLength(byte[] xmlData) {
+		return (long) xmlData.length * MAX_BODY_RATIO + MAX_BODY_MARGIN;
+	}
+
+	private static void writeWorkingSet(DataOutputStream out,
+			WorkingSet2 workingSet2) throws IOException {
+		URI docBase = workingSet2.getCharacterDocBase();
+		writeString(out, docBase == null ? null : docBase.toString());
+		writeString(out, workingSet2.getCharacterDataSig());
+		writePartsMap(out, workingSet2.getPartsColorMap());
+		writeFile(out, workingSet2.getLastUsedSaveDir());
+		writeFile(out, workingSet2.getLastUsedExportDir());
+
+		WallpaperInfo wallpaperInfo = workingSet2.getWallpaperInfo();
+		out.writeBoolean(wallpaperInfo != null);
+		if (wallpaperInfo != null) {
+			out.writeUTF(wallpaperInfo.getType().name());
+			writeString(out, wallpaperInfo.getResource());
+			writeFile(out, wallpaperInfo.getFile());
+			out.writeFloat(wallpaperInfo.getAlpha());
+			writeColor(out, wallpaperInfo.getBackgroundColor());
+		}
+
+		writePartsSet(out, workingSet2.getCurrentPartsSet());
+		writePartsSet(out, workingSet2.getLastUsePresetParts());
+	}
+
+	private static WorkingSet2 readWorkingSet(DataInputStream inp)
+			throws IOException {
+		WorkingSet2 workingSet2 = new WorkingSet2();
+		String docBase = readString(inp);
+		if (docBase != null) {
+			try {
+				workingSet2.setCharacterDocBase(new URI(docBase));
+
+			} catch (URISyntaxException ex) {
+				IOException ex2 = new IOException("WorkingSet invalid format.");
+				ex2.initCause(ex);
+				throw ex2;
+			}
+		}
+		workingSet2.setCharacterDataSig(readString(inp));
+		workingSet2.setPartsColorMap(readPartsMap(inp));
+		workingSet2.setLastUsedSaveDir(readFile(inp));
+		workingSet2.setLastUsedExportDir(readFile(inp));
+
+		if (inp.readBoolean()) {
+			WallpaperInfo wallpaperInfo = new WallpaperInfo();
+			wallpaperInfo.setType(WallpaperResourceType.valueOf(inp.readUTF()));
+			wallpaperInfo.setResource(readString(inp));
+			wallpaperInfo.setFile(readFile(inp));
+			wallpaperInfo.setAlpha(inp.readFloat());
+			Color backgroundColor = readColor(inp);
+			if (backgroundColor != null) {
+				wallpaperInfo.setBackgroundColor(backgroundColor);
+			}
+			workingSet2.setWallpaperInfo(wallpaperInfo);
+		}
+
+		workingSet2.setCurrentPartsSet(readPartsSet(inp));
+		workingSet2.setLastUsePresetParts(readPartsSet(inp));
+		return workingSet2;
+	}
+
+	private static void writePartsSet(DataOutputStream out,
+			IndependentPartsSetInfo partsSetInfo) throws IOException {
+		out.writeBoolean(partsSetInfo != null);
+		if (partsSetInfo == null) {
+			return;
+		}
+		writeString(out, partsSetInfo.getId());
+		writeString(out, partsSetInfo.getDisplayName());
+		writeColor(out, partsSetInfo.getBackgroundColor());
+		double[] affineTrans = partsSetInfo.getAffineTransformParameter();
+		out.writeInt(affineTrans == null ? -1 : affineTrans.length);
+		if (affineTrans != null) {
+			for (double v : affineTrans) {
+				out.writeDouble(v);
+			}
+		}
+		writePartsMap(out, partsSetInfo.getPartsMap());
+	}
+
+	private static IndependentPartsSetInfo readPartsSet(DataInputStream inp)
+			throws IOException {
+		if (!inp.readBoolean()) {
+			return null;
+		}
+		IndependentPartsSetInfo partsSetInfo = new IndependentPartsSetInfo();
+		partsSetInfo.setId(readString(inp));
+		partsSetInfo.setDisplayName(readString(inp));
+		partsSetInfo.setBackgroundColor(readColor(inp));
+		int mx = inp.readInt();
+		if (mx >= 0) {
+			double[] affineTrans = new double[mx];
+			for (int idx = 0; idx < mx; idx++) {
+				affineTrans[idx] = inp.readDouble();
+			}
+			partsSetInfo.setAffineTransformParameter(affineTrans);
+		}
+		partsSetInfo.setPartsMap(readPartsMap(inp));
+		return partsSetInfo;
+	}
+
+	/**
+	 * カテゴリidごとの、パーツ名とレイヤーごとのカラー情報のマップを書き込む.<br>
+	 * 同じカラー情報のリストを共有しているパーツは、XMLと同様に一度だけ書き込み、参照番号で共有する.<br>
+	 */
+	private static void writePartsMap(DataOutputStream out,
+			Map<String, Map<String, List<IndependentPartsColorInfo>>> partsMap)
+			throws IOException {
+		if (partsMap == null) {
+			out.writeInt(0);
+			return;
+		}
+		IdentityHashMap<List<IndependentPartsColorInfo>, Integer> colorIds = new IdentityHashMap<List<IndependentPartsColorInfo>, Integer>();
+		out.writeInt(partsMap.size());
+		for (Map.Entry<String, Map<String, List<IndependentPartsColorInfo>>> categoryEntry : partsMap
+				.entrySet()) {
+			out.writeUTF(categoryEntry.getKey());
+			Map<String, List<IndependentPartsColorInfo>> categoryPartsMap = categoryEntry
+					.getValue();
+			out.writeInt(categoryPartsMap.size());
+			for (Map.Entry<String, List<IndependentPartsColorInfo>> partsEntry : categoryPartsMap
+					.entrySet()) {
+				out.writeUTF(partsEntry.getKey());
+				List<IndependentPartsColorInfo> colorInfoList = partsEntry
+						.getValue();
+				if (colorInfoList == null) {
+					out.writeInt(-1);
+					continue;
+				}
+				Integer colorId = colorIds.get(colorInfoList);
+				if (colorId != null) {
+					// 既出のカラー情報
+					out.writeInt(colorId.intValue());
+					continue;
+				}
+				colorIds.put(colorInfoList, Integer.valueOf(colorIds.size()));
+				out.writeInt(colorIds.size() - 1);
+				out.writeInt(colorInfoList.size());
+				for (IndependentPartsColorInfo colorInfo : colorInfoList) {
+					writeColorInfo(out, colorInfo);
+				}
+			}
+		}
+	}
+
+	private static Map<String, Map<String, List<IndependentPartsColorInfo>>> readPartsMap(
+			DataInputStream inp) throws IOException {
+		ArrayList<List<IndependentPartsColorInfo>> colorInfoLists = new ArrayList<List<IndependentPartsColorInfo>>();
+		HashMap<String, Map<String, List<IndependentPartsColorInfo>>> partsMap = new HashMap<String, Map<String, List<IndependentPartsColorInfo>>>();
+		int mx = inp.readInt();
+		for (int idx = 0; idx < mx; idx++) {
+			String categoryId = inp.readUTF();
+			HashMap<String, List<IndependentPartsColorInfo>> categoryPartsMap = new HashMap<String, List<IndependentPartsColorInfo>>();
+			int partsCount = inp.readInt();
+			for (int partsIdx = 0; partsIdx < partsCount; partsIdx++) {
+				String partsName = inp.readUTF();
+				int colorId = inp.readInt();
+				List<IndependentPartsColorInfo> colorInfoList = null;
+				if (colorId >= 0 && colorId < colorInfoLists.size()) {
+					colorInfoList = colorInfoLists.get(colorId);
+
+				} else if (colorId == colorInfoLists.size()) {
+					int colorInfoCount = inp.readInt();
+					colorInfoList = new ArrayList<IndependentPartsColorInfo>(colorInfoCount);
+					for (int colorIdx = 0; colorIdx < colorInfoCount; colorIdx++) {
+						colorInfoList.add(readColorInfo(inp));
+					}
+					colorInfoLists.add(colorInfoList);
+
+				} else if (colorId != -1) {
+					throw new IOException("invalid color id: " + colorId);
+				}
+				categoryPartsMap.put(partsName, colorInfoList);
+			}
+			partsMap.put(categoryId, categoryPartsMap);
+		}
+		return partsMap;
+	}
+
+	private static void writeColorInfo(DataOutputStream out,
+			IndependentPartsColorInfo colorInfo) throws IOException {
+		writeString(out, colorInfo.getLayerId());
+		writeString(out, colorInfo.getColorGroupId());
+		out.writeBoolean(colorInfo.isSyncColorGroup());
+
+		ColorConvertParameter param = colorInfo.getColorConvertParameter();
+		ColorConv colorReplace = param.getColorReplace();
+		writeString(out, colorReplace == null ? null : colorReplace.name());
+		out.writeFloat(param.getGrayLevel());
+		out.writeFloat(param.getHue());
+		out.writeFloat(param.getSaturation());
+		out.writeFloat(param.getBrightness());
+		out.writeFloat(param.getContrast());
+		out.writeInt(param.getOffsetR());
+		out.writeInt(param.getOffsetG());
+		out.writeInt(param.getOffsetB());
+		out.writeInt(param.getOffsetA());
+		out.writeFloat(param.getFactorR());
+		out.writeFloat(param.getFactorG());
+		out.writeFloat(param.getFactorB());
+		out.writeFloat(param.getFactorA());
+		out.writeFloat(param.getGammaR());
+		out.writeFloat(param.getGammaG());
+		out.writeFloat(param.getGammaB());
+		out.writeFloat(param.getGammaA());
+	}
+
+	private static IndependentPartsColorInfo readColorInfo(DataInputStream inp)
+			throws IOException {
+		IndependentPartsColorInfo colorInfo = new IndependentPartsColorInfo();
+		colorInfo.setLayerId(readString(inp));
+		colorInfo.setColorGroupId(readString(inp));
+		colorInfo.setSyncColorGroup(inp.readBoolean());
+
+		ColorConvertParameter param = new ColorConvertParameter();
+		String colorReplace = readString(inp);
+		if (colorReplace != null) {
+			param.setColorReplace(ColorConv.valueOf(colorReplace));
+		}
+		param.setGrayLevel(inp.readFloat());
+		param.setHue(inp.readFloat());
+		param.setSaturation(inp.readFloat());
+		param.setBrightness(inp.readFloat());
+		param.setContrast(inp.readFloat());
+		param.setOffsetR(inp.readInt());
+		param.setOffsetG(inp.readInt());
+		param.setOffsetB(inp.readInt());
+		param.setOffsetA(inp.readInt());
+		param.setFactorR(inp.readFloat());
+		param.setFactorG(inp.readFloat());
+		param.setFactorB(inp.readFloat());
+		param.setFactorA(inp.readFloat());
+		param.setGammaR(inp.readFloat());
+		param.setGammaG(inp.readFloat());
+		param.setGammaB(inp.readFloat());
+		param.setGammaA(inp.readFloat());
+		colorInfo.setColorConvertParameter(param);
+		return colorInfo;
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream inp) throws IOException {
+		return inp.readBoolean() ? inp.readUTF() : null;
+	}
+
+	private static void writeFile(DataOutputStream out, File file)
+			throws IOException {
+		writeString(out, file == null ? null : file.getPath());
+	}
+
+	private static File readFile(DataInputStream inp) throws IOException {
+		String path = readString(inp);
+		return path == null ? null : new File(path);
+	}
+
+	private static void writeColor(DataOutputStream out, Color color)
+			throws IOException {
+		out.writeBoolean(color != null);
+		if (color != null) {
+			out.writeInt(color.getRGB());
+		}
+	}
+
+	private static Color readColor(DataInputStream inp) throws IOException {
+		return inp.readBoolean() ? new Color(inp.readInt(), true) : null;
+	}
+}
@@ -12,14 +12,9 @@ import java.util.Locale;
 import java.util.Map;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -33,6 +28,7 @@ import charactermanaj.model.PartsSet;
 import charactermanaj.model.WorkingSet;
 import charactermanaj.ui.model.WallpaperInfo;
 import charactermanaj.ui.model.WallpaperInfo.WallpaperResourceType;
+import charactermanaj.util.XMLUtilities;
 
 /**
  * WorkingSetのXMLへの書き込み
@@ -73,14 +69,7 @@ public class WorkingSetXMLWriter {
 		Document doc = createWorkingSetXML(ws);
 
 		// output xml
-		TransformerFactory txFactory = TransformerFactory.newInstance();
-		txFactory.setAttribute("indent-number", Integer.valueOf(4));
-		Transformer tfmr;
-		try {
-			tfmr = txFactory.newTransformer();
-		} catch (TransformerConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration Failed.", ex);
-		}
+		Transformer tfmr = XMLUtilities.getTransformer();
 		tfmr.setOutputProperty(OutputKeys.INDENT, "yes");
 
 		// JDK-4504745 : javax.xml.transform.Transformer encoding does not work properly
@@ -110,16 +99,7 @@ public class WorkingSetXMLWriter {
 			throw new IllegalArgumentException();
 		}
 
-		Document doc;
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory
-					.newInstance();
-			factory.setNamespaceAware(true);
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			doc = builder.newDocument();
-		} catch (ParserConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration failed.", ex);
-		}
+		Document doc = XMLUtilities.getDocumentBuilder(null).newDocument();
 
 		Locale locale = Locale.getDefault();
 		String lang = locale.getLanguage();
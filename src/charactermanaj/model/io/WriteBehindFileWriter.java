@@ -0,0 +1,371 @@
+package charactermanaj.model.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import charactermanaj.model.AppConfig;
+import charactermanaj.util.NamedThreadFactory;
+
+/**
+ * ファイルをバックグラウンドで書き込むライタ.<br>
+ * 書き込みは呼び出し元を待たせずに行われ、同じファイルへの書き込みが完了前に続けて要求された場合は最後の内容だけが書き込まれる.<br>
+ * ファイルは同じディレクトリの一時ファイルに書き込み、ディスクに同期してから置き換えるため、
+ * 書き込みの途中で中断されても元のファイルが壊れることはない.<br>
+ * 書き込み待ちのファイル数が上限に達した場合は、空きができるまで呼び出し元を待機させる.<br>
+ * 書き込み用のスレッドはデーモンではないため、書き込み待ちのファイルがある間はアプリケーションは終了しない.<br>
+ * 書き込みに失敗した場合は、エラーハンドラに通知されるほか、{@link #flush(File)}などの呼び出し元に送出される.<br>
+ *
+ * @author seraphy
+ */
+public final class WriteBehindFileWriter {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(WriteBehindFileWriter.class.getName());
+
+	/**
+	 * 一時ファイルの拡張子
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * シングルトン
+	 */
+	private static final WriteBehindFileWriter singleton = new WriteBehindFileWriter();
+
+	/**
+	 * 書き込み用のスレッド.<br>
+	 * 書き込むものがなくなれば、しばらくして終了する.<br>
+	 */
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1,
+			3, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new NamedThreadFactory("WriteBehindFileWriter", false));
+
+	/**
+	 * 書き込み待ちのファイルと内容
+	 */
+	private final LinkedHashMap<File, byte[]> pending = new LinkedHashMap<File, byte[]>();
+
+	/**
+	 * 書き込み中のファイル、なければnull
+	 */
+	private File writing;
+
+	/**
+	 * 書き込みスレッドが動作中であるか?
+	 */
+	private boolean draining;
+
+	/**
+	 * 書き込みに失敗し、まだ呼び出し元に通知していないファイルと例外
+	 */
+	private final HashMap<File, IOException> failures = new HashMap<File, IOException>();
+
+	/**
+	 * 書き込みに失敗した場合のエラーハンドラ、なければnull
+	 */
+	private WriteErrorHandler errorHandler;
+
+	/**
+	 * バックグラウンドでの書き込みに失敗した場合のエラーハンドラ.<br>
+	 *
+	 * @author seraphy
+	 */
+	public interface WriteErrorHandler {
+
+		/**
+		 * 書き込みに失敗したことを通知される.<br>
+		 * 書き込み用のスレッドから呼び出される.<br>
+		 *
+		 * @param file
+		 *            書き込み先
+		 * @param ex
+		 *            例外
+		 */
+		void occureException(File file, IOException ex);
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return インスタンス
+	 */
+	public static WriteBehindFileWriter getInstance() {
+		return singleton;
+	}
+
+	private WriteBehindFileWriter() {
+		super();
+	}
+
+	/**
+	 * バックグラウンドでの書き込みに失敗した場合のエラーハンドラを設定する.<br>
+	 *
+	 * @param errorHandler
+	 *            エラーハンドラ、nullの場合は解除する
+	 */
+	public synchronized void setErrorHandler(WriteErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * ファイルの書き込みを要求する.<br>
+	 * 書き込み待ちのファイルが上限に達している場合は、空きができるまで待機する.<br>
+	 * 上限が0以下に設定されている場合は、この場で書き込む.<br>
+	 * 以前の書き込みに失敗していた場合でも、今回の内容で書き直す.<br>
+	 *
+	 * @param file
+	 *            書き込み先
+	 * @param content
+	 *            内容(呼び出し後に変更しないこと)
+	 * @throws IOException
+	 *             この場で書き込んで失敗した場合、もしくは待機中に割り込まれた場合
+	 */
+	public void write(File file, byte[] content) throws IOException {
+		if (file == null || content == null) {
+			throw new IllegalArgumentException();
+		}
+		int maxPending = AppConfig.getInstance().getWriteBehindQueueSize();
+		if (maxPending <= 0) {
+			synchronized (this) {
+				while (pending.containsKey(file) || file.equals(writing)) {
+					waitForProgress();
+				}
+				failures.remove(file);
+			}
+			writeAtomically(file, content);
+			return;
+		}
+		synchronized (this) {
+			while (!pending.containsKey(file) && pending.size() >= maxPending) {
+				waitForProgress();
+			}
+			pending.put(file, content);
+			if (!draining) {
+				draining = true;
+				executor.execute(new Runnable() {
+					public void run() {
+						drain();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * 指定したファイルの書き込みが完了するまで待機する.<br>
+	 * 書き込みに失敗していた場合は、その例外を送出する.<br>
+	 *
+	 * @param file
+	 *            ファイル
+	 * @throws IOException
+	 *             書き込みに失敗していた場合、もしくは待機中に割り込まれた場合
+	 */
+	public synchronized void flush(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		while (pending.containsKey(file) || file.equals(writing)) {
+			waitForProgress();
+		}
+		checkFailure(file);
+	}
+
+	/**
+	 * すべてのファイルの書き込みが完了するまで待機する.<br>
+	 * 書き込み用のスレッドの終了を待たずにJVMを終了させる場合は、その前に呼び出す必要がある.<br>
+	 * 書き込みに失敗していたファイルがあれば、その例外を送出する.<br>
+	 *
+	 * @throws IOException
+	 *             書き込みに失敗していた場合、もしくは待機中に割り込まれた場合
+	 */
+	public synchronized void flushAll() throws IOException {
+		while (!pending.isEmpty() || writing != null) {
+			waitForProgress();
+		}
+		Iterator<Map.Entry<File, IOException>> ite = failures.entrySet().iterator();
+		if (ite.hasNext()) {
+			IOException ex = ite.next().getValue();
+			ite.remove();
+			throw ex;
+		}
+	}
+
+	/**
+	 * 書き込みの途中で中断されたファイルを回復する.<br>
+	 * ファイルがなく一時ファイルだけがある場合は、置き換えの途中で中断されたものとして一時ファイルを採用する.<br>
+	 * ファイルと一時ファイルの両方がある場合は、一時ファイルへの書き込み途中で中断されたものとして一時ファイルを削除する.<br>
+	 * 書き込み待ち、または書き込み中のファイルであれば何もしない.<br>
+	 *
+	 * @param file
+	 *            ファイル
+	 */
+	public synchronized void recover(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		if (pending.containsKey(file) || file.equals(writing)) {
+			return;
+		}
+		File tmpFile = getTempFile(file);
+		if (!tmpFile.exists()) {
+			return;
+		}
+		if (file.exists()) {
+			logger.log(Level.INFO, "discard incomplete file: " + tmpFile);
+			if (!tmpFile.delete()) {
+				logger.log(Level.WARNING, "can't delete. " + tmpFile);
+			}
+
+		} else {
+			logger.log(Level.INFO, "recover file: " + tmpFile);
+			if (!tmpFile.renameTo(file)) {
+				logger.log(Level.WARNING, "rename failed. " + tmpFile);
+			}
+		}
+	}
+
+	/**
+	 * ファイルを一時ファイルに書き込み、ディスクに同期してから置き換える.
+	 *
+	 * @param file
+	 *            書き込み先
+	 * @param content
+	 *            内容
+	 * @throws IOException
+	 *             書き込みに失敗した場合
+	 */
+	public static void writeAtomically(File file, byte[] content) throws IOException {
+		File tmpFile = getTempFile(file);
+		FileOutputStream fos = new FileOutputStream(tmpFile);
+		try {
+			fos.write(content);
+			fos.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			// 置き換えできない環境では、元のファイルを削除してから置き換える.
+			// (この間に中断された場合は、次回の読み込み時に一時ファイルから回復する.)
+			if (file.exists() && !file.delete()) {
+				throw new IOException("can't delete. " + file);
+			}
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("rename failed. " + tmpFile);
+			}
+		}
+	}
+
+	private static File getTempFile(File file) {
+		return new File(file.getPath() + TEMP_SUFFIX);
+	}
+
+	/**
+	 * 書き込み待ちのファイルがなくなるまで書き込む.<br>
+	 * 書き込みスレッドで実行される.<br>
+	 */
+	private void drain() {
+		for (;;) {
+			File file;
+			byte[] content;
+			synchronized (this) {
+				Iterator<Map.Entry<File, byte[]>> ite = pending.entrySet().iterator();
+				if (!ite.hasNext()) {
+					draining = false;
+					notifyAll();
+					return;
+				}
+				Map.Entry<File, byte[]> entry = ite.next();
+				ite.remove();
+				file = entry.getKey();
+				content = entry.getValue();
+				writing = file;
+				notifyAll();
+			}
+
+			IOException failure = null;
+			try {
+				writeAtomically(file, content);
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE, "write-behind completed. " + file
+							+ " bytes=" + content.length);
+				}
+
+			} catch (IOException ex) {
+				logger.log(Level.SEVERE, "write-behind failed. " + file, ex);
+				failure = ex;
+
+			} catch (RuntimeException ex) {
+				logger.log(Level.SEVERE, "write-behind failed. " + file, ex);
+				failure = new IOException("write-behind failed. " + file + ": " + ex);
+
+			} finally {
+				WriteErrorHandler handler = null;
+				synchronized (this) {
+					writing = null;
+					if (failure != null && !pending.containsKey(file)) {
+						// 後続の書き込みがあれば、そちらの結果を優先する
+						failures.put(file, failure);
+						handler = errorHandler;
+					} else {
+						failures.remove(file);
+					}
+					notifyAll();
+				}
+				if (handler != null) {
+					try {
+						handler.occureException(file, failure);
+
+					} catch (RuntimeException ex) {
+						logger.log(Level.WARNING, "write error handler failed. " + file, ex);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 書き込みの進行を待機する.<br>
+	 * このインスタンスのロックを保持した状態で呼び出すこと.<br>
+	 */
+	private void waitForProgress() throws InterruptedIOException {
+		try {
+			wait();
+
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("write-behind wait interrupted.");
+		}
+	}
+
+	/**
+	 * ファイルの書き込みに失敗していれば、その例外を送出する.<br>
+	 * 送出した例外は破棄される.<br>
+	 */
+	private void checkFailure(File file) throws IOException {
+		IOException ex = failures.remove(file);
+		if (ex != null) {
+			throw ex;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "WriteBehindFileWriter(pending=" + pending.size() + ", writing="
+				+ writing + ", failures=" + failures.size() + ")";
+	}
+}
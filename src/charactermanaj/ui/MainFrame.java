@@ -23,6 +23,8 @@ import java.awt.event.MouseWheelListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -65,8 +67,11 @@ import charactermanaj.clipboardSupport.ClipboardUtil;
 import charactermanaj.graphics.AsyncImageBuilder;
 import charactermanaj.graphics.ColorConvertedImageCachedLoader;
 import charactermanaj.graphics.ImageBuildJobAbstractAdaptor;
+import charactermanaj.graphics.ImageBuilder;
 import charactermanaj.graphics.ImageBuilder.ImageOutput;
+import charactermanaj.graphics.ImageCacheWarmer;
 import charactermanaj.graphics.io.ImageSaveHelper;
+import charactermanaj.graphics.io.LoadedImage;
 import charactermanaj.graphics.io.OutputOption;
 import charactermanaj.graphics.io.UkagakaImageSaveHelper;
 import charactermanaj.model.AppConfig;
@@ -79,6 +84,7 @@ import charactermanaj.model.IndependentPartsSetInfo;
 import charactermanaj.model.PartsCategory;
 import charactermanaj.model.PartsColorInfo;
 import charactermanaj.model.PartsColorManager;
+import charactermanaj.model.PartsDataChangeSet;
 import charactermanaj.model.PartsIdentifier;
 import charactermanaj.model.PartsSet;
 import charactermanaj.model.RecommendationURL;
@@ -108,6 +114,10 @@ import charactermanaj.ui.model.WallpaperFactory;
 import charactermanaj.ui.model.WallpaperFactoryErrorRecoverHandler;
 import charactermanaj.ui.model.WallpaperFactoryException;
 import charactermanaj.ui.model.WallpaperInfo;
+import charactermanaj.ui.progress.ProgressHandle;
+import charactermanaj.ui.progress.Worker;
+import charactermanaj.ui.progress.WorkerException;
+import charactermanaj.ui.progress.WorkerWithProgessDialog;
 import charactermanaj.ui.scrollablemenu.JScrollableMenu;
 import charactermanaj.ui.util.FileDropTarget;
 import charactermanaj.ui.util.WindowAdjustLocationSupport;
@@ -138,6 +148,11 @@ public class MainFrame extends JFrame
 
 	protected static final String MENU_STRINGS_RESOURCE = "menu/menu";
 
+	/**
+	 * 画像の先読みの対象とするお気に入りの最大数
+	 */
+	private static final int MAX_WARM_UP_FAVORITES = 10;
+
 	/**
 	 * メインフレームのアイコン.<br>
 	 */
@@ -206,6 +221,11 @@ public class MainFrame extends JFrame
 	 */
 	private AsyncImageBuilder imageBuilder;
 
+	/**
+	 * パーツセットの画像をあらかじめキャッシュに読み込む先読み、なければnull
+	 */
+	private ImageCacheWarmer imageCacheWarmer;
+
 
 	/**
 	 * パーツイメージを画像として保存する場合のヘルパー.<br>
@@ -311,6 +331,15 @@ public class MainFrame extends JFrame
 							if (e.isReloadPartsAndFavorites()) {
 								// パーツとお気に入りのリロード
 								reloadPartsAndFavorites(cd, true);
+
+							} else if (e.getPartsDataChanges() != null
+									&& !MainFrame.this.equals(e.getSource())
+									&& characterData.isPartsLoaded()) {
+								// 他のウィンドウでパーツが変更された場合は、こちらも差分をリロードする.
+								// (すでに反映済みであれば変更なしとなり、何もしない.)
+								if (reloadChangedParts()) {
+									requestPreview();
+								}
 							}
 
 						} finally {
@@ -482,6 +511,16 @@ public class MainFrame extends JFrame
 	 * すでに停止している場合は何もしません。
 	 */
 	protected void stopAgents() {
+		// 先読みを中止
+		if (imageCacheWarmer != null) {
+			try {
+				imageCacheWarmer.stop();
+
+			} catch (Throwable ex) {
+				logger.log(Level.SEVERE, "先読みスレッドの停止に失敗しました。", ex);
+			}
+			imageCacheWarmer = null;
+		}
 		// エージェントを停止
 		if (watchAgent != null) {
 			try {
@@ -585,6 +624,7 @@ public class MainFrame extends JFrame
 		    imageLoader.close();
 		}
 		imageLoader = new ColorConvertedImageCachedLoader();
+		imageLoader.setOwnerName(characterData.getName());
 		imageBuilder = new AsyncImageBuilder(imageLoader);
 		partsSelectionManager = new PartsSelectionManager(partsColorManager,
 				new PartsSelectionManager.ImageBgColorProvider() {
@@ -643,6 +683,15 @@ public class MainFrame extends JFrame
 				onFlipHolizontal();
 			}
 		});
+		previewPane.addPropertyChangeListener("zoomFactor", new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				// 縮小レベルが変わる倍率になった場合は合成しなおす.
+				if (previewPane.getPreviewImage() != null
+						&& getPreviewMipLevel() != previewPane.getPreviewMipLevel()) {
+					requestPreview();
+				}
+			}
+		});
 
 		imageSelectPanels = new ImageSelectPanelList();
 
@@ -750,6 +799,9 @@ public class MainFrame extends JFrame
 			imageBuilder.start();
 		}
 
+		// デフォルトのパーツセット、プリセット、お気に入りの画像の先読みを開始
+		startImageCacheWarmUp();
+
 		// ドロップターゲットの設定
 		new DropTarget(imgSelectPanelsPanelSp, new FileDropTarget() {
 			@Override
@@ -805,6 +857,56 @@ public class MainFrame extends JFrame
 		}
 	}
 
+	/**
+	 * デフォルトのパーツセット、プリセット、最近使用したお気に入りの順に、
+	 * それらのパーツ画像をバックグラウンドで読み込みキャッシュしておく.<br>
+	 * お気に入りは、最後に使用したものと、すでに内容が読み込まれているものだけを対象とし、
+	 * 先読みのためにお気に入りを読み込むことはしない.<br>
+	 * 読み込む量はアプリケーション設定の上限までとする.<br>
+	 * 先読みはキャラクターデータの切り替え、またはフレームを閉じると中止される.<br>
+	 */
+	protected void startImageCacheWarmUp() {
+		long memoryBudget = AppConfig.getInstance().getWarmUpCacheMemoryBudget();
+		if (memoryBudget <= 0 || !characterData.isValid()) {
+			return;
+		}
+		// ヒープの1/4を超えては読み込まない.
+		memoryBudget = Math.min(memoryBudget, Runtime.getRuntime().maxMemory() / 4);
+
+		ArrayList<PartsSet> presets = new ArrayList<PartsSet>();
+		ArrayList<PartsSet> favorites = new ArrayList<PartsSet>();
+		if (lastUsePresetParts != null && !lastUsePresetParts.isPresetParts()) {
+			favorites.add(lastUsePresetParts);
+		}
+		PartsSet defaultPartsSet = null;
+		String defaultPresetId = characterData.getDefaultPartsSetId();
+		for (PartsSet partsSet : getPartsSetList()) {
+			if (defaultPresetId != null
+					&& defaultPresetId.equals(partsSet.getPartsSetId())) {
+				defaultPartsSet = partsSet;
+			} else if (partsSet.isPresetParts()) {
+				presets.add(partsSet);
+			} else if (partsSet.isLoaded()
+					&& favorites.size() < MAX_WARM_UP_FAVORITES) {
+				// まだ内容が読み込まれていないお気に入りは対象としない.
+				favorites.add(partsSet);
+			}
+		}
+		ArrayList<PartsSet> partsSets = new ArrayList<PartsSet>();
+		if (defaultPartsSet != null) {
+			partsSets.add(defaultPartsSet);
+		}
+		partsSets.addAll(presets);
+		partsSets.addAll(favorites);
+		if (partsSets.isEmpty()) {
+			return;
+		}
+
+		imageCacheWarmer = new ImageCacheWarmer(imageLoader, characterData,
+				partsSets, memoryBudget);
+		imageCacheWarmer.start();
+	}
+
 	/**
 	 * パーツが変更されたことを検知した場合.<br>
 	 * パーツデータをリロードし、各カテゴリのパーツ一覧を再表示させ、プレビューを更新する.<br>
@@ -1319,6 +1421,9 @@ public class MainFrame extends JFrame
 		// 合成は別スレッドにて非同期に行われる.
 		// リクエストは随時受け付けて、最新のリクエストだけが処理される.
 		// (処理がはじまる前に新しいリクエストで上書きされた場合、前のリクエストは単に捨てられる.)
+		// 縮小表示している場合は、表示倍率にあわせて縮小して合成する.
+		final int mipLevel = getPreviewMipLevel();
+		final Dimension imageSize = characterData.getImageSize();
 		imageBuilder.requestJob(new ImageBuildJobAbstractAdaptor(characterData) {
 
 					/**
@@ -1337,12 +1442,17 @@ public class MainFrame extends JFrame
 				previewPane.setLoadingRequest(ticket);
 			}
 			@Override
+			protected int getMipLevel() {
+				return mipLevel;
+			}
+			@Override
 			public void buildImage(ImageOutput output) {
 						// 合成結果のイメージを引数としてイメージビルダから呼び出される.
 				final BufferedImage img = output.getImageOutput();
+				final int outputMipLevel = output.getMipLevel();
 				Runnable refreshJob = new Runnable() {
 					public void run() {
-						previewPane.setPreviewImage(img);
+						previewPane.setPreviewImage(img, outputMipLevel, imageSize);
 						previewPane.setLoadingComplete(ticket);
 						showPresetName(requestPartsSet);
 					}
@@ -1404,6 +1514,97 @@ public class MainFrame extends JFrame
 		});
 	}
 
+	/**
+	 * 現在の表示倍率で、プレビューを合成する縮小レベルを求める.<br>
+	 * 表示倍率が1/2以下であれば1、1/4以下であれば2、1/8以下であれば3となる.<br>
+	 * 
+	 * @return 縮小レベル
+	 */
+	protected int getPreviewMipLevel() {
+		if (!AppConfig.getInstance().isEnableReducedPreview()) {
+			return 0;
+		}
+		double zoomFactor = previewPane.getZoomFactor();
+		int mipLevel = 0;
+		while (mipLevel < LoadedImage.MAX_MIP_LEVEL
+				&& zoomFactor <= 1. / (2 << mipLevel)) {
+			mipLevel++;
+		}
+		return mipLevel;
+	}
+
+	/**
+	 * 等倍のプレビュー画像を取得する.<br>
+	 * プレビューが縮小して合成されている場合は、現在のパーツの選択状態から等倍で合成しなおす.<br>
+	 * 合成しなおす場合は、プログレスダイアログを表示してワーカースレッドで合成する.<br>
+	 * 
+	 * @return プレビュー画像、プレビューがないか合成に失敗した場合はnull
+	 */
+	protected BufferedImage getFullSizePreviewImage() {
+		BufferedImage img = previewPane.getPreviewImage();
+		if (img == null || previewPane.getPreviewMipLevel() == 0) {
+			return img;
+		}
+
+		final CharacterData cd = characterData;
+		final PartsSet partsSet = partsSelectionManager.createPartsSet();
+		Worker<BufferedImage> worker = new Worker<BufferedImage>() {
+			public BufferedImage doWork(ProgressHandle progressHandle) throws Exception {
+				return buildFullSizeImage(cd, partsSet);
+			}
+		};
+		WorkerWithProgessDialog<BufferedImage> dlg
+			= new WorkerWithProgessDialog<BufferedImage>(this, worker);
+		try {
+			dlg.startAndWait();
+
+		} catch (WorkerException ex) {
+			ErrorMessageHelper.showErrorDialog(this, ex.getCause());
+			return null;
+		}
+		return dlg.getResult();
+	}
+
+	/**
+	 * パーツセットから等倍の画像を合成する.<br>
+	 * 合成が完了するまで呼び出し元のスレッドで処理する.<br>
+	 * 
+	 * @param cd
+	 *            キャラクターデータ
+	 * @param partsSet
+	 *            パーツセット
+	 * @return 合成された画像
+	 * @throws Exception
+	 *             合成に失敗した場合
+	 */
+	private BufferedImage buildFullSizeImage(CharacterData cd,
+			final PartsSet partsSet) throws Exception {
+		final BufferedImage[] result = new BufferedImage[1];
+		final Throwable[] error = new Throwable[1];
+		ImageBuilder fullSizeImageBuilder = new ImageBuilder(imageLoader);
+		fullSizeImageBuilder.requestJob(new ImageBuildJobAbstractAdaptor(cd) {
+			@Override
+			protected PartsSet getPartsSet() {
+				return partsSet;
+			}
+			@Override
+			public void buildImage(ImageOutput output) {
+				result[0] = output.getImageOutput();
+			}
+			@Override
+			public void handleException(Throwable ex) {
+				error[0] = ex;
+			}
+		});
+		if (error[0] instanceof Exception) {
+			throw (Exception) error[0];
+		}
+		if (error[0] instanceof Error) {
+			throw (Error) error[0];
+		}
+		return result[0];
+	}
+
 	/**
 	 * プロファイルを開く
 	 */
@@ -1537,7 +1738,7 @@ public class MainFrame extends JFrame
 	 */
 	protected void onSavePicture() {
 		Toolkit tk = Toolkit.getDefaultToolkit();
-		BufferedImage img = previewPane.getPreviewImage();
+		BufferedImage img = getFullSizePreviewImage();
 		Color imgBgColor = wallpaperInfo.getBackgroundColor();
 		if (img == null) {
 			tk.beep();
@@ -1582,7 +1783,7 @@ public class MainFrame extends JFrame
 	 * 伺か用PNG/PNAの出力.
 	 */
 	protected void onSaveAsUkagaka() {
-		BufferedImage img = previewPane.getPreviewImage();
+		BufferedImage img = getFullSizePreviewImage();
 		Color bgColor = wallpaperInfo.getBackgroundColor();
 		if (img == null) {
 			Toolkit tk = Toolkit.getDefaultToolkit();
@@ -1666,8 +1867,7 @@ public class MainFrame extends JFrame
 		if (mrgDlg.isUpdated()) {
 			// パーツ管理情報が更新された場合、
 			// パーツデータをリロードする.
-			if (characterData.reloadPartsData()) {
-				partsSelectionManager.loadParts();
+			if (reloadChangedParts()) {
 				requestPreview();
 			}
 		}
@@ -1752,6 +1952,9 @@ public class MainFrame extends JFrame
 			if (screenImage) {
 				// 表示している内容をそのままコピーする.
 				img = previewPane.getScreenImage();
+
+			} else {
+				img = getFullSizePreviewImage();
 			}
 
 			Color imgBgColor = wallpaperInfo.getBackgroundColor();
@@ -1871,9 +2074,7 @@ public class MainFrame extends JFrame
 
 		} else {
 			// パーツデータをリロードする.
-			if (characterData.reloadPartsData()) {
-				partsSelectionManager.loadParts();
-			}
+			reloadChangedParts();
 
 			// お気に入りをリロードする.
 			CharacterDataPersistent persiste = CharacterDataPersistent.getInstance();
@@ -1890,13 +2091,33 @@ public class MainFrame extends JFrame
 		}
 	}
 
+	/**
+	 * パーツデータをリロードし、変更のあったカテゴリのパーツ選択パネルのみを更新する.<br>
+	 * 削除・更新されたパーツの画像キャッシュを破棄し、
+	 * 同じキャラクターデータを開いている他のウィンドウに変更内容を通知する.<br>
+	 *
+	 * @return 変更があった場合はtrue
+	 */
+	protected boolean reloadChangedParts() {
+		PartsDataChangeSet changes = characterData.reloadPartsDataIncrementally();
+		if (changes.isEmpty()) {
+			return false;
+		}
+		imageLoader.invalidate(changes.getStaleImageResources());
+		partsSelectionManager.loadParts(changes.getChangedCategories());
+
+		CharacterDataChangeObserver.getDefault().notifyPartsDataChange(
+				MainFrame.this, characterData, changes);
+		return true;
+	}
+
 	protected void onExport() {
 		if (!characterData.isValid()) {
 			Toolkit tk = Toolkit.getDefaultToolkit();
 			tk.beep();
 			return;
 		}
-		ExportWizardDialog exportWizDlg = new ExportWizardDialog(this, characterData, previewPane.getPreviewImage());
+		ExportWizardDialog exportWizDlg = new ExportWizardDialog(this, characterData, getFullSizePreviewImage());
 		exportWizDlg.setVisible(true);
 	}
 
@@ -1937,6 +2158,10 @@ public class MainFrame extends JFrame
 				logger.log(Level.WARNING, "recent data saving failed.", ex);
 				// recent情報の記録に失敗しても致命的ではないので、これは無視する.
 			}
+
+			// お気に入りのジャーナルをバックグラウンドでfavorites.xmlに統合する.
+			// (統合されなくても、次回の読み込み時にジャーナルから復元される.)
+			CharacterDataPersistent.getInstance().compactFavoritesAsync(characterData);
 		}
 
 		// イメージビルダスレッド・ディレクトリ監視スレッドを停止する.
@@ -2157,7 +2382,7 @@ public class MainFrame extends JFrame
 			return;
 		}
 		try {
-			BufferedImage samplePicture = previewPane.getPreviewImage();
+			BufferedImage samplePicture = getFullSizePreviewImage();
 			if (samplePicture != null) {
 				CharacterDataPersistent persist = CharacterDataPersistent.getInstance();
 				persist.saveSamplePicture(characterData, samplePicture);
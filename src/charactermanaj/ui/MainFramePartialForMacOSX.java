@@ -5,7 +5,7 @@ import java.lang.reflect.Method;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-
+import charactermanaj.model.io.WriteBehindFileWriter;
 import charactermanaj.util.SystemUtil;
 
 import com.apple.eawt.Application;
@@ -51,6 +51,13 @@ public class MainFramePartialForMacOSX {
 					MainFrame.closeAllProfiles();
 				}
 				arg0.setHandled(true);
+				// バックグラウンドで書き込み中のファイルがあれば、完了するまで待つ.
+				try {
+					WriteBehindFileWriter.getInstance().flushAll();
+
+				} catch (Exception ex) {
+					logger.log(Level.WARNING, "pending file writing failed.", ex);
+				}
 				// JVMを明示的にシャットダウンする. (何もしないと強制終了になるため。)
 				SystemUtil.exit(0);
 			}
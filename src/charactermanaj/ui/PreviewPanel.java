@@ -333,7 +333,13 @@ public class PreviewPanel extends JPanel {
 		previewPaneHeader.add(toolBar, BorderLayout.EAST);
 
 		previewImgPanel = new PreviewImagePanel();
-
+		previewImgPanel.addPropertyChangeListener("zoomFactor", new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				// 表示倍率の変更を、このパネルのプロパティ変更として通知する.
+				PreviewPanel.this.firePropertyChange("zoomFactor",
+						evt.getOldValue(), evt.getNewValue());
+			}
+		});
 		
 		previewImgScrollPane = new JScrollPane(previewImgPanel);
 		previewImgScrollPane.setAutoscrolls(false);
@@ -767,15 +773,39 @@ public class PreviewPanel extends JPanel {
 		previewImgPanel.setPreviewImage(previewImg);
 	}
 
+	/**
+	 * 縮小して合成された表示画像を設定する.<br>
+	 * 
+	 * @param previewImg
+	 *            表示画像、もしくはnull
+	 * @param mipLevel
+	 *            縮小レベル(0は等倍、1は1/2、2は1/4、3は1/8)
+	 * @param imageSize
+	 *            等倍での画像サイズ
+	 */
+	public void setPreviewImage(BufferedImage previewImg, int mipLevel, Dimension imageSize) {
+		previewImgPanel.setPreviewImage(previewImg, mipLevel, imageSize);
+	}
+
 	/**
 	 * 表示されている画像を取得する.<br>
 	 * 表示画像が設定されていなければnull.<br>
+	 * 縮小して合成された画像である場合は、{@link #getPreviewMipLevel()}が0以外となる.<br>
 	 * 
 	 * @return 表示画像、もしくはnull
 	 */
 	public BufferedImage getPreviewImage() {
 		return previewImgPanel.getPreviewImage();
 	}
+
+	/**
+	 * 表示されている画像の縮小レベルを取得する.<br>
+	 * 
+	 * @return 縮小レベル、等倍であれば0
+	 */
+	public int getPreviewMipLevel() {
+		return previewImgPanel.getMipLevel();
+	}
 	
 	/**
 	 * 表示している画面イメージそのままを取得する.
@@ -1193,6 +1223,17 @@ class PreviewImagePanel extends JPanel {
 	 */
 	private BufferedImage previewImg;
 	
+	/**
+	 * 透過オリジナル画像の縮小レベル.<br>
+	 * 0であれば等倍、1以上であれば{@link #imageSize}を1/2^mipLevelに縮小した画像である.<br>
+	 */
+	private int mipLevel;
+	
+	/**
+	 * 等倍での画像サイズ.<br>
+	 */
+	private Dimension imageSize;
+	
 	/**
 	 * 表示用画像(背景モードによる調整あり).<br>
 	 * 事前に拡大縮小を適用済みの場合は、{@link #scaledZoomFactor}に 適用している倍率が設定される.<br>
@@ -1308,8 +1349,8 @@ class PreviewImagePanel extends JPanel {
 	protected void drawGrid(Graphics2D g, int offset_x, int offset_y, int unit) {
 		Rectangle clip = g.getClipBounds();
 		
-		int src_w = previewImg.getWidth();
-		int src_h = previewImg.getHeight();
+		int src_w = imageSize.width;
+		int src_h = imageSize.height;
 		int my = src_h / unit;
 		int mx = src_w / unit;
 		
@@ -1387,8 +1428,8 @@ class PreviewImagePanel extends JPanel {
 		int client_w = getWidth();
 		int client_h = getHeight();
 		
-		int src_w = previewImg.getWidth();
-		int src_h = previewImg.getHeight();
+		int src_w = imageSize.width;
+		int src_h = imageSize.height;
 		
 		int w = (int) round(src_w * zoomFactor);
 		int h = (int) round(src_h * zoomFactor);
@@ -1478,7 +1519,7 @@ class PreviewImagePanel extends JPanel {
 			throw new IllegalArgumentException();
 		}
 		try {
-			return previewImg.getRGB(pt.x, pt.y);
+			return previewImg.getRGB(pt.x >> mipLevel, pt.y >> mipLevel);
 
 		} catch (RuntimeException ex) {
 			return 0; // 範囲外
@@ -1511,8 +1552,8 @@ class PreviewImagePanel extends JPanel {
 		if (previewImg == null) {
 			return null;
 		}
-		int src_w = previewImg.getWidth();
-		int src_h = previewImg.getHeight();
+		int src_w = imageSize.width;
+		int src_h = imageSize.height;
 
 		int w = (int) round(src_w * zoomFactor);
 		int h = (int) round(src_h * zoomFactor);
@@ -1537,8 +1578,31 @@ class PreviewImagePanel extends JPanel {
 	 * @param previewImg
 	 */
 	public void setPreviewImage(BufferedImage previewImg) {
+		setPreviewImage(previewImg, 0, null);
+	}
+
+	/**
+	 * 縮小して合成されたプレビュー画像を設定する.<br>
+	 * 
+	 * @param previewImg
+	 *            プレビュー画像
+	 * @param mipLevel
+	 *            縮小レベル
+	 * @param imageSize
+	 *            等倍での画像サイズ、nullの場合は画像のサイズから求める
+	 */
+	public void setPreviewImage(BufferedImage previewImg, int mipLevel, Dimension imageSize) {
 		BufferedImage oldimg = this.previewImg;
 		this.previewImg = previewImg;
+		this.mipLevel = (previewImg == null) ? 0 : mipLevel;
+		if (previewImg == null) {
+			this.imageSize = null;
+		} else if (imageSize != null) {
+			this.imageSize = new Dimension(imageSize);
+		} else {
+			this.imageSize = new Dimension(
+					previewImg.getWidth() << mipLevel, previewImg.getHeight() << mipLevel);
+		}
 		
 		recalcScaledSize();
 		makeDrawImage(true);
@@ -1551,6 +1615,10 @@ class PreviewImagePanel extends JPanel {
 		return previewImg;
 	}
 
+	public int getMipLevel() {
+		return mipLevel;
+	}
+
 	/**
 	 * 壁紙を設定する.
 	 * 
@@ -14,6 +14,7 @@ import java.util.logging.Logger;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 
+import charactermanaj.model.AppConfig;
 import charactermanaj.model.CharacterData;
 import charactermanaj.model.PartsManageData;
 import charactermanaj.model.io.CharacterDataDefaultProvider;
@@ -23,7 +24,8 @@ import charactermanaj.model.io.CharacterDataPersistent.ListProfileCallback;
 import charactermanaj.model.io.CharacterDataPersistent.ProfileListErrorHandler;
 import charactermanaj.model.io.PartsDataLoader;
 import charactermanaj.model.io.PartsDataLoaderFactory;
-import charactermanaj.model.io.PartsInfoXMLReader;
+import charactermanaj.model.io.PartsCatalogCachedLoader;
+import charactermanaj.model.io.PartsManageDataCache;
 import charactermanaj.model.io.PartsManageDataDecorateLoader;
 import charactermanaj.model.io.PartsSpecDecorateLoader;
 import charactermanaj.model.io.RecentDataPersistent;
@@ -398,7 +400,10 @@ public final class ProfileListManager {
 	 */
 	public static void loadCharacterData(final CharacterData characterData) throws IOException {
 		if (characterData != null && characterData.isValid()) {
-			final PartsInfoXMLReader xmlReader = new PartsInfoXMLReader();
+			// parts-info.xmlの解析を、パーツのフォルダの走査と並行して開始しておく.
+			// 解析結果はすべてのカテゴリで共有され、parts-info.xmlが変更されるまで再利用される.
+			final PartsManageDataCache partsManageDataCache = PartsManageDataCache.getInstance();
+			partsManageDataCache.prefetch(characterData.getDocBase());
 			
 			PartsDataLoaderFactory loaderFactory = PartsDataLoaderFactory.getInstance();
 			PartsDataLoader loader = loaderFactory.createPartsLoader(characterData.getDocBase());
@@ -408,8 +413,8 @@ public final class ProfileListManager {
 							new PartsManageDataDecorateLoader.PartsManageDataFactory() {
 						public PartsManageData createPartsManageData() {
 							try {
-								return xmlReader
-										.loadPartsManageData(characterData
+								return partsManageDataCache
+										.getPartsManageData(characterData
 												.getDocBase());
 							} catch (Exception ex) {
 								logger.log(Level.WARNING, "parts-info.xml loading failed.", ex);
@@ -418,7 +423,14 @@ public final class ProfileListManager {
 						}
 					});
 			
-			characterData.loadPartsData(partsMngDecorater);
+			PartsDataLoader partsLoader = partsMngDecorater;
+			if (AppConfig.getInstance().isEnablePartsCatalog()) {
+				// 前回のロード結果のカタログがあれば、変更のないカテゴリはカタログから復元する.
+				partsLoader = new PartsCatalogCachedLoader(partsMngDecorater,
+						characterData.getDocBase(), characterData.getColorGroups());
+			}
+			
+			characterData.loadPartsData(partsLoader);
 		}
 	}
 	
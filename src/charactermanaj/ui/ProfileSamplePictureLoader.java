@@ -0,0 +1,240 @@
+package charactermanaj.ui;
+
+import java.awt.image.BufferedImage;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+import charactermanaj.graphics.io.ImageLoader;
+import charactermanaj.model.CharacterData;
+import charactermanaj.model.io.CharacterDataPersistent;
+import charactermanaj.model.io.SamplePictureThumbnailCache;
+import charactermanaj.util.NamedThreadFactory;
+
+/**
+ * プロファイル選択ダイアログで表示するサンプルピクチャを、UIスレッドとは別に読み込むためのローダー.<br>
+ * プレビュー用のサンプルピクチャと、一覧用のサムネイルはそれぞれ別のスレッドで読み込まれ、
+ * 結果はイベントディスパッチスレッドで通知される.<br>
+ * プレビューは最後に要求されたものだけが通知され、サムネイルは不要になった要求を取り消すことができる.<br>
+ *
+ * @author seraphy
+ */
+final class ProfileSamplePictureLoader {
+
+	/**
+	 * ロガー
+	 */
+	private static final Logger logger = Logger.getLogger(ProfileSamplePictureLoader.class.getName());
+
+	/**
+	 * 読み込み結果の通知先.<br>
+	 * イベントディスパッチスレッドから呼び出される.<br>
+	 *
+	 * @author seraphy
+	 */
+	public interface Callback {
+
+		/**
+		 * 読み込みが完了した場合
+		 *
+		 * @param characterData
+		 *            キャラクター定義
+		 * @param img
+		 *            画像、サンプルピクチャがないか読み込めなかった場合はnull
+		 */
+		void loaded(CharacterData characterData, BufferedImage img);
+	}
+
+	/**
+	 * プレビュー読み込み用のスレッド
+	 */
+	private final ExecutorService previewExecutor = Executors
+			.newSingleThreadExecutor(new NamedThreadFactory("SamplePictureLoader"));
+
+	/**
+	 * サムネイル読み込み用のスレッド
+	 */
+	private final ExecutorService thumbnailExecutor = Executors
+			.newSingleThreadExecutor(new NamedThreadFactory("SampleThumbnailLoader"));
+
+	/**
+	 * サムネイルの最大の幅と高さ
+	 */
+	private final int thumbnailSize;
+
+	/**
+	 * プレビューの要求ごとに増加する世代.<br>
+	 * 通知時点で世代が変わっていれば、その結果は破棄される.<br>
+	 * イベントディスパッチスレッドからのみアクセスされる.<br>
+	 */
+	private int previewGeneration;
+
+	/**
+	 * 実行中のプレビューの読み込み、なければnull
+	 */
+	private Future<?> previewTask;
+
+	/**
+	 * 未完了のサムネイルの読み込み.<br>
+	 * イベントディスパッチスレッドからのみアクセスされる.<br>
+	 */
+	private final Map<URI, Future<?>> thumbnailTasks = new HashMap<URI, Future<?>>();
+
+	/**
+	 * 破棄済みであるか?
+	 */
+	private boolean disposed;
+
+	/**
+	 * ローダーを構築する.
+	 *
+	 * @param thumbnailSize
+	 *            サムネイルの最大の幅と高さ
+	 */
+	public ProfileSamplePictureLoader(int thumbnailSize) {
+		this.thumbnailSize = thumbnailSize;
+	}
+
+	public int getThumbnailSize() {
+		return thumbnailSize;
+	}
+
+	/**
+	 * プレビュー用のサンプルピクチャの読み込みを要求する.<br>
+	 * 以前の要求が完了していなければ取り消される.<br>
+	 *
+	 * @param characterData
+	 *            キャラクター定義
+	 * @param imageLoader
+	 *            イメージローダー
+	 * @param callback
+	 *            通知先
+	 */
+	public void requestPreview(final CharacterData characterData,
+			final ImageLoader imageLoader, final Callback callback) {
+		if (characterData == null || imageLoader == null || callback == null) {
+			throw new IllegalArgumentException();
+		}
+		cancelPreview();
+		if (disposed) {
+			return;
+		}
+		final int generation = previewGeneration;
+		previewTask = previewExecutor.submit(new Runnable() {
+			public void run() {
+				BufferedImage img = null;
+				try {
+					CharacterDataPersistent persist = CharacterDataPersistent.getInstance();
+					img = persist.loadSamplePicture(characterData, imageLoader);
+
+				} catch (Exception ex) {
+					// サンプルピクチャの読み込みに失敗したら、サンプルピクチャを表示しないだけで処理は継続する.
+					logger.log(Level.WARNING, "sample picture loading failed. " + characterData , ex);
+				}
+				final BufferedImage loadedImg = img;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (generation == previewGeneration && !disposed) {
+							previewTask = null;
+							callback.loaded(characterData, loadedImg);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * プレビューの読み込みを取り消す.<br>
+	 * すでに読み込み中であれば、その結果は通知されない.<br>
+	 */
+	public void cancelPreview() {
+		previewGeneration++;
+		if (previewTask != null) {
+			previewTask.cancel(false);
+			previewTask = null;
+		}
+	}
+
+	/**
+	 * サムネイルの読み込みを要求する.<br>
+	 * 同じキャラクター定義の要求が未完了であれば何もしない.<br>
+	 *
+	 * @param characterData
+	 *            キャラクター定義
+	 * @param callback
+	 *            通知先
+	 */
+	public void requestThumbnail(final CharacterData characterData,
+			final Callback callback) {
+		if (characterData == null || callback == null) {
+			throw new IllegalArgumentException();
+		}
+		final URI docBase = characterData.getDocBase();
+		if (disposed || docBase == null || thumbnailTasks.containsKey(docBase)) {
+			return;
+		}
+		Future<?> task = thumbnailExecutor.submit(new Runnable() {
+			public void run() {
+				BufferedImage img = null;
+				try {
+					img = SamplePictureThumbnailCache.getInstance()
+							.getThumbnail(characterData, thumbnailSize);
+
+				} catch (Exception ex) {
+					logger.log(Level.WARNING, "sample thumbnail loading failed. " + characterData , ex);
+				}
+				final BufferedImage loadedImg = img;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						thumbnailTasks.remove(docBase);
+						if (!disposed) {
+							callback.loaded(characterData, loadedImg);
+						}
+					}
+				});
+			}
+		});
+		thumbnailTasks.put(docBase, task);
+	}
+
+	/**
+	 * 指定したもの以外の、まだ開始されていないサムネイルの読み込みを取り消す.<br>
+	 * 一覧をスクロールして表示されなくなった行の読み込みを省くために用いる.<br>
+	 *
+	 * @param docBases
+	 *            読み込みを継続するキャラクター定義のdocBase
+	 */
+	public void retainThumbnailRequests(Collection<URI> docBases) {
+		Iterator<Map.Entry<URI, Future<?>>> ite = thumbnailTasks.entrySet().iterator();
+		while (ite.hasNext()) {
+			Map.Entry<URI, Future<?>> entry = ite.next();
+			if (!docBases.contains(entry.getKey())) {
+				if (entry.getValue().cancel(false)) {
+					// 取り消された要求は通知されないので、ここで除去する
+					ite.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * すべての読み込みを取り消し、スレッドを終了する.
+	 */
+	public void dispose() {
+		disposed = true;
+		cancelPreview();
+		thumbnailTasks.clear();
+		previewExecutor.shutdownNow();
+		thumbnailExecutor.shutdownNow();
+	}
+}
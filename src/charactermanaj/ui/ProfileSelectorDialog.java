@@ -11,6 +11,8 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.dnd.DropTarget;
 import java.awt.event.ActionEvent;
@@ -29,10 +31,11 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.AbstractAction;
@@ -42,6 +45,8 @@ import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
 import javax.swing.InputMap;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -68,6 +73,8 @@ import javax.swing.ListCellRenderer;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.AbstractTableModel;
@@ -113,6 +120,11 @@ public class ProfileSelectorDialog extends JDialog {
 	 */
 	private ImageCachedLoader imageLoader = new ImageCachedLoader();
 
+	/**
+	 * サンプルイメージとサムネイルをUIスレッドとは別に読み込むためのローダー
+	 */
+	private ProfileSamplePictureLoader samplePictureLoader;
+
 
 	/**
 	 * サンプルイメージファイルが保存可能であるか?<br>
@@ -198,7 +210,11 @@ public class ProfileSelectorDialog extends JDialog {
 
 		JPanel pnlProfiles = new JPanel(new BorderLayout());
 
+		int thumbnailSize = AppConfig.getInstance().getProfileSelectorThumbnailSize();
+		samplePictureLoader = new ProfileSamplePictureLoader(thumbnailSize);
+
 		characterListModel = new ProfileSelectorTableModel();
+		characterListModel.setSamplePictureLoader(samplePictureLoader);
 		characterListModel.setModel(characterDatas);
 
 		characterList = new JTable(characterListModel) {
@@ -227,6 +243,11 @@ public class ProfileSelectorDialog extends JDialog {
 		};
 		characterList.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
 		characterList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		if (thumbnailSize > 0) {
+			// サムネイルが収まる行の高さにする
+			characterList.setRowHeight(Math.max(characterList.getRowHeight(),
+					thumbnailSize + characterList.getRowMargin() + 2));
+		}
 
 		characterListModel.adjustColumnModel(characterList.getColumnModel());
 
@@ -249,8 +270,22 @@ public class ProfileSelectorDialog extends JDialog {
 			}
 		});
 
-		JScrollPane characterListSP = new JScrollPane(characterList);
+		final JScrollPane characterListSP = new JScrollPane(characterList);
 		characterListSP.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+		characterListSP.getViewport().addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				// 表示範囲外になった行のサムネイルの読み込みは取り消す
+				Rectangle rct = characterListSP.getViewport().getViewRect();
+				int firstRow = characterList.rowAtPoint(rct.getLocation());
+				int lastRow = characterList.rowAtPoint(
+						new Point(rct.x, rct.y + rct.height - 1));
+				if (lastRow < 0) {
+					lastRow = characterListModel.getRowCount() - 1;
+				}
+				characterListModel.retainThumbnailRequests(
+						Math.max(0, firstRow), lastRow);
+			}
+		});
 		characterListSP
 				.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
 		pnlProfiles.add(characterListSP, BorderLayout.CENTER);
@@ -606,7 +641,6 @@ public class ProfileSelectorDialog extends JDialog {
 		actProfileRemove.setEnabled(removable);
 
 		boolean canWriteSamplePicture = false;
-		BufferedImage sampleImage = null;
 
 		if (characterData != null && characterData.isValid()) {
 			// description
@@ -637,26 +671,39 @@ public class ProfileSelectorDialog extends JDialog {
 			descriptionArea.setSelectionEnd(0);
 
 			// sample picture
-			try {
-				CharacterDataPersistent persist = CharacterDataPersistent.getInstance();
-				sampleImage = persist.loadSamplePicture(characterData, imageLoader);
-				canWriteSamplePicture = persist.canSaveSamplePicture(characterData);
+			// (画像のデコードはUIスレッドとは別に行い、完了したら表示する)
+			CharacterDataPersistent persist = CharacterDataPersistent.getInstance();
+			canWriteSamplePicture = persist.canSaveSamplePicture(characterData);
+			samplePictureLoader.requestPreview(characterData, imageLoader,
+					new ProfileSamplePictureLoader.Callback() {
+						public void loaded(CharacterData cd, BufferedImage img) {
+							sampleImgPanel.setSamplePicture(img);
+						}
+					});
 
-			} catch (Exception ex) {
-				// サンプルピクチャの読み込みに失敗したら、サンプルピクチャを表示しないだけで処理は継続する.
-				logger.log(Level.WARNING, "sample picture loading failed. " + characterData , ex);
-				sampleImage = null;
-			}
+		} else {
+			samplePictureLoader.cancelPreview();
 		}
 
 		this.canWriteSamplePicture = canWriteSamplePicture;
 
 		String dropHere = strings.getProperty("dropHere");
 		String noPicture = strings.getProperty("nopicture");
-		sampleImgPanel.setSamplePicture(sampleImage);
+		sampleImgPanel.setSamplePicture(null);
 		sampleImgPanel.setAlternateText(canWriteSamplePicture ? dropHere : noPicture);
 	}
 
+	/**
+	 * サンプルピクチャを更新した場合に、読み込み中のプレビューを取り消し、一覧のサムネイルを更新する.
+	 *
+	 * @param selRow
+	 *            更新したキャラクターデータの行
+	 */
+	protected void onSamplePictureUpdated(int selRow) {
+		samplePictureLoader.cancelPreview();
+		characterListModel.invalidateThumbnail(selRow);
+	}
+
 
 	/**
 	 * サンプルピクチャのファイルを削除し、表示されている画像をクリップボードに保存する
@@ -686,6 +733,7 @@ public class ProfileSelectorDialog extends JDialog {
 			persist.saveSamplePicture(characterData, null);
 
 			// プレビューを更新
+			onSamplePictureUpdated(selRow);
 			sampleImgPanel.setSamplePicture(null);
 
 		} catch (Exception ex) {
@@ -716,6 +764,7 @@ public class ProfileSelectorDialog extends JDialog {
 				CharacterDataPersistent persist = CharacterDataPersistent.getInstance();
 				persist.saveSamplePicture(characterData, img);
 
+				onSamplePictureUpdated(selRow);
 				sampleImgPanel.setSamplePicture(img);
 
 			} else {
@@ -771,6 +820,7 @@ public class ProfileSelectorDialog extends JDialog {
 				CharacterDataPersistent persist = CharacterDataPersistent.getInstance();
 				persist.saveSamplePicture(characterData, img);
 
+				onSamplePictureUpdated(selRow);
 				sampleImgPanel.setSamplePicture(img);
 
 			} else {
@@ -785,6 +835,7 @@ public class ProfileSelectorDialog extends JDialog {
 
 	@Override
 	public void dispose() {
+	    samplePictureLoader.dispose();
 	    imageLoader.close();
 	    super.dispose();
 	}
@@ -1282,6 +1333,18 @@ class ProfileSelectorTableModel extends AbstractTableModel {
 	private static final long serialVersionUID = 1L;
 
 	private enum Columns {
+		THUMBNAIL("profile.column.thumbnail") {
+			@Override
+			public String getValue(CharacterData cd) {
+				// サムネイルはモデルが保持する
+				return null;
+			}
+
+			@Override
+			public Class<?> getColumnClass() {
+				return Icon.class;
+			}
+		},
 		NAME("profile.column.name") {
 			@Override
 			public String getValue(CharacterData cd) {
@@ -1362,16 +1425,44 @@ class ProfileSelectorTableModel extends AbstractTableModel {
 		}
 
 		public abstract String getValue(CharacterData cd);
+
+		public Class<?> getColumnClass() {
+			return String.class;
+		}
 	}
 
+	/**
+	 * サムネイルがないことを示すアイコン
+	 */
+	private static final Icon NO_THUMBNAIL = new ImageIcon();
+
 	private List<CharacterData> rows = Collections
 			.emptyList();
 
+	/**
+	 * サムネイルのローダー、nullの場合はサムネイルを表示しない
+	 */
+	private ProfileSamplePictureLoader samplePictureLoader;
+
+	/**
+	 * 読み込み済みのサムネイル.<br>
+	 * キーはキャラクターデータのインスタンスであり、サンプルピクチャがない場合は{@link #NO_THUMBNAIL}となる.<br>
+	 */
+	private final IdentityHashMap<CharacterData, Icon> thumbnails = new IdentityHashMap<CharacterData, Icon>();
+
+	public void setSamplePictureLoader(ProfileSamplePictureLoader samplePictureLoader) {
+		if (samplePictureLoader != null && samplePictureLoader.getThumbnailSize() <= 0) {
+			samplePictureLoader = null;
+		}
+		this.samplePictureLoader = samplePictureLoader;
+	}
+
 	public void setModel(List<CharacterData> rows) {
 		if (rows == null) {
 			throw new IllegalArgumentException();
 		}
 		this.rows = new ArrayList<CharacterData>(rows);
+		thumbnails.clear();
 		fireTableDataChanged();
 	}
 
@@ -1385,15 +1476,84 @@ class ProfileSelectorTableModel extends AbstractTableModel {
 	}
 
 	public void set(int selRow, CharacterData cd) {
-		this.rows.set(selRow, cd);
+		thumbnails.remove(this.rows.set(selRow, cd));
 		fireTableRowsDeleted(selRow, selRow);
 	}
 
 	public void remove(int selRow) {
-		this.rows.remove(selRow);
+		thumbnails.remove(this.rows.remove(selRow));
 		fireTableRowsDeleted(selRow, selRow);
 	}
 
+	/**
+	 * 指定した行のサムネイルを破棄し、再読み込みさせる.
+	 *
+	 * @param rowIndex
+	 *            行
+	 */
+	public void invalidateThumbnail(int rowIndex) {
+		thumbnails.remove(rows.get(rowIndex));
+		fireTableCellUpdated(rowIndex, Columns.THUMBNAIL.ordinal());
+	}
+
+	/**
+	 * 指定した範囲の行以外のサムネイルの、まだ開始されていない読み込みを取り消す.
+	 *
+	 * @param firstRow
+	 *            最初の行
+	 * @param lastRow
+	 *            最後の行(この行を含む)
+	 */
+	public void retainThumbnailRequests(int firstRow, int lastRow) {
+		if (samplePictureLoader == null) {
+			return;
+		}
+		HashSet<URI> docBases = new HashSet<URI>();
+		for (int rowIndex = firstRow; rowIndex <= lastRow && rowIndex < rows.size(); rowIndex++) {
+			docBases.add(rows.get(rowIndex).getDocBase());
+		}
+		samplePictureLoader.retainThumbnailRequests(docBases);
+	}
+
+	/**
+	 * 指定した行のサムネイルを取得する.<br>
+	 * まだ読み込まれていなければ読み込みを要求してnullを返し、読み込み後に行の更新が通知される.<br>
+	 *
+	 * @param rowIndex
+	 *            行
+	 * @return サムネイル、読み込み中もしくはサンプルピクチャがなければnull
+	 */
+	protected Icon getThumbnail(int rowIndex) {
+		if (samplePictureLoader == null) {
+			return null;
+		}
+		CharacterData cd = getRow(rowIndex);
+		Icon icon = thumbnails.get(cd);
+		if (icon == null) {
+			samplePictureLoader.requestThumbnail(cd,
+					new ProfileSamplePictureLoader.Callback() {
+						public void loaded(CharacterData cd, BufferedImage img) {
+							onThumbnailLoaded(cd, img);
+						}
+					});
+			return null;
+		}
+		return (icon == NO_THUMBNAIL) ? null : icon;
+	}
+
+	/**
+	 * サムネイルが読み込まれた場合、まだ一覧にあれば保持して行を更新する.
+	 */
+	private void onThumbnailLoaded(CharacterData cd, BufferedImage img) {
+		for (int rowIndex = 0; rowIndex < rows.size(); rowIndex++) {
+			if (rows.get(rowIndex) == cd) {
+				thumbnails.put(cd, (img == null) ? NO_THUMBNAIL : new ImageIcon(img));
+				fireTableCellUpdated(rowIndex, Columns.THUMBNAIL.ordinal());
+				break;
+			}
+		}
+	}
+
 	public List<CharacterData> getModel() {
 		return rows;
 	}
@@ -1424,9 +1584,17 @@ class ProfileSelectorTableModel extends AbstractTableModel {
 		return Columns.values()[column].getDisplayName();
 	}
 
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return Columns.values()[columnIndex].getColumnClass();
+	}
+
 	public Object getValueAt(int rowIndex, int columnIndex) {
-		CharacterData cd = getRow(rowIndex);
 		Columns column = Columns.values()[columnIndex];
+		if (column == Columns.THUMBNAIL) {
+			return getThumbnail(rowIndex);
+		}
+		CharacterData cd = getRow(rowIndex);
 		return column.getValue(cd);
 	}
 
@@ -94,6 +94,23 @@ public class PartsSelectionManager {
 		}
 	}
 	
+	/**
+	 * 指定したカテゴリのパーツのみをロードする.<br>
+	 * パーツデータの差分リロードで、変更のあったカテゴリだけを更新するために用いる.<br>
+	 * @param partsCategories カテゴリ
+	 */
+	public void loadParts(Collection<PartsCategory> partsCategories) {
+		if (partsCategories == null) {
+			throw new IllegalArgumentException();
+		}
+		for (PartsCategory partsCategory : partsCategories) {
+			ImageSelectPanel panel = imageSelectPanels.get(partsCategory);
+			if (panel != null) {
+				panel.loadParts();
+			}
+		}
+	}
+	
 	public void register(ImageSelectPanel imageSelectPanel) {
 		if (imageSelectPanel == null) {
 			throw new IllegalArgumentException();
@@ -0,0 +1,61 @@
+package charactermanaj.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 名前付きのスレッドを作成するファクトリ.<br>
+ * スレッド名は、指定した名前に作成順の連番を付与したものとなる.<br>
+ * スレッドプールやバックグラウンドの実行で共通に用いる.<br>
+ *
+ * @author seraphy
+ */
+public final class NamedThreadFactory implements ThreadFactory {
+
+	/**
+	 * スレッド名
+	 */
+	private final String name;
+
+	/**
+	 * デーモンスレッドとするか?
+	 */
+	private final boolean daemon;
+
+	/**
+	 * 作成したスレッドの連番
+	 */
+	private final AtomicInteger serial = new AtomicInteger();
+
+	/**
+	 * デーモンスレッドを作成するファクトリを構築する.
+	 *
+	 * @param name
+	 *            スレッド名
+	 */
+	public NamedThreadFactory(String name) {
+		this(name, true);
+	}
+
+	/**
+	 * スレッドを作成するファクトリを構築する.
+	 *
+	 * @param name
+	 *            スレッド名
+	 * @param daemon
+	 *            デーモンスレッドとする場合はtrue
+	 */
+	public NamedThreadFactory(String name, boolean daemon) {
+		if (name == null) {
+			throw new IllegalArgumentException();
+		}
+		this.name = name;
+		this.daemon = daemon;
+	}
+
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, name + "-" + serial.incrementAndGet());
+		thread.setDaemon(daemon);
+		return thread;
+	}
+}
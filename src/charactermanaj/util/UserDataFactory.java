@@ -114,6 +114,25 @@ public class UserDataFactory {
 		return getUserData(mangledName + "-" + name);
 	}
 
+	/**
+	 * docBaseの名前ベースのUUIDをプレフィックスをもつユーザーデータの保存先ファイルを返す.<br>
+	 * {@link #getMangledNamedUserData(URI, String)}と同じファイルを示す.<br>
+	 * 一時ファイルを経由して置き換えるなど、ファイルとして直接扱う場合に用いる.<br>
+	 * 
+	 * @param docBase
+	 *            URI、null可
+	 * @param name
+	 *            ファイル名
+	 * @return 保存先ファイル
+	 */
+	public File getMangledNamedFile(URI docBase, String name) {
+		if (name == null || name.trim().length() == 0) {
+			throw new IllegalArgumentException();
+		}
+		String mangledName = getMangledName(docBase) + "-" + name;
+		return new File(getSpecialDataDir(mangledName), mangledName);
+	}
+
 	/**
 	 * docBaseをハッシュ値化文字列にした、名前ベースのUUIDを返す.<br>
 	 * docBaseがnullの場合は空文字とみなして変換する.<br>
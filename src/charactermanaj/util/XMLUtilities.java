@@ -2,13 +2,23 @@ package charactermanaj.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -25,6 +35,69 @@ import org.xml.sax.SAXParseException;
  */
 public final class XMLUtilities {
 
+	/**
+	 * 共有するDOMのファクトリ.<br>
+	 * JAXPのファクトリの検索はクラスパスの走査を伴うため、一度だけ行う.<br>
+	 * ファクトリはスレッドセーフではないため、パーサの生成時にはファクトリをロックする.<br>
+	 */
+	private static final DocumentBuilderFactory documentBuilderFactory;
+
+	/**
+	 * 共有するSAXのファクトリ
+	 */
+	private static final SAXParserFactory saxParserFactory;
+
+	/**
+	 * 共有するXSLTのファクトリ
+	 */
+	private static final TransformerFactory transformerFactory;
+
+	static {
+		documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+
+		saxParserFactory = SAXParserFactory.newInstance();
+		saxParserFactory.setNamespaceAware(true);
+
+		transformerFactory = TransformerFactory.newInstance();
+		transformerFactory.setAttribute("indent-number", Integer.valueOf(4));
+	}
+
+	/**
+	 * スレッドごとに再利用するDOMのパーサ.<br>
+	 * スキーマごとに保持し、スキーマで検証しないものはnullをキーとする.<br>
+	 */
+	private static final ThreadLocal<HashMap<Schema, DocumentBuilder>> documentBuilders
+			= new ThreadLocal<HashMap<Schema, DocumentBuilder>>() {
+		@Override
+		protected HashMap<Schema, DocumentBuilder> initialValue() {
+			return new HashMap<Schema, DocumentBuilder>();
+		}
+	};
+
+	/**
+	 * スレッドごとに再利用するSAXのパーサ.<br>
+	 * スキーマごとに保持し、スキーマで検証しないものはnullをキーとする.<br>
+	 */
+	private static final ThreadLocal<HashMap<Schema, SAXParser>> saxParsers
+			= new ThreadLocal<HashMap<Schema, SAXParser>>() {
+		@Override
+		protected HashMap<Schema, SAXParser> initialValue() {
+			return new HashMap<Schema, SAXParser>();
+		}
+	};
+
+	/**
+	 * スレッドごとに再利用するトランスフォーマー
+	 */
+	private static final ThreadLocal<Transformer> transformers = new ThreadLocal<Transformer>();
+
+	/**
+	 * 読み込み済みのスキーマ.<br>
+	 * スキーマはスレッドセーフであり、すべてのスレッドで共有される.<br>
+	 */
+	private static final HashMap<String, Schema> schemas = new HashMap<String, Schema>();
+
 	/**
 	 * プライベートコンストラクタ
 	 */
@@ -32,6 +105,126 @@ public final class XMLUtilities {
 		super();
 	}
 
+	/**
+	 * 名前空間を有効としたDOMのパーサを返します.<br>
+	 * パーサは呼び出したスレッドで再利用されるため、使い終わるまで同じスレッドで再度取得しないでください.<br>
+	 * 
+	 * @param schema
+	 *            検証に用いるスキーマ、検証しない場合はnull
+	 * @return 初期状態にリセットされたパーサ
+	 */
+	public static DocumentBuilder getDocumentBuilder(Schema schema) {
+		HashMap<Schema, DocumentBuilder> builders = documentBuilders.get();
+		DocumentBuilder builder = builders.get(schema);
+		if (builder == null) {
+			try {
+				synchronized (documentBuilderFactory) {
+					documentBuilderFactory.setSchema(schema);
+					try {
+						builder = documentBuilderFactory.newDocumentBuilder();
+					} finally {
+						documentBuilderFactory.setSchema(null);
+					}
+				}
+			} catch (ParserConfigurationException ex) {
+				throw new RuntimeException("JAXP Configuration Exception.", ex);
+			}
+			builders.put(schema, builder);
+		}
+		builder.reset();
+		return builder;
+	}
+
+	/**
+	 * 名前空間を有効としたSAXのパーサを返します.<br>
+	 * パーサは呼び出したスレッドで再利用されるため、使い終わるまで同じスレッドで再度取得しないでください.<br>
+	 * 
+	 * @param schema
+	 *            検証に用いるスキーマ、検証しない場合はnull
+	 * @return 初期状態にリセットされたパーサ
+	 */
+	public static SAXParser getSAXParser(Schema schema) {
+		HashMap<Schema, SAXParser> parsers = saxParsers.get();
+		SAXParser parser = parsers.get(schema);
+		if (parser == null) {
+			try {
+				synchronized (saxParserFactory) {
+					saxParserFactory.setSchema(schema);
+					try {
+						parser = saxParserFactory.newSAXParser();
+					} finally {
+						saxParserFactory.setSchema(null);
+					}
+				}
+			} catch (ParserConfigurationException ex) {
+				throw new RuntimeException("JAXP Configuration Exception.", ex);
+
+			} catch (SAXException ex) {
+				throw new RuntimeException("JAXP Configuration Exception.", ex);
+			}
+			parsers.put(schema, parser);
+		}
+		parser.reset();
+		return parser;
+	}
+
+	/**
+	 * インデント幅を4としたトランスフォーマーを返します.<br>
+	 * 出力プロパティはリセットされているため、呼び出し元で設定してください.<br>
+	 * トランスフォーマーは呼び出したスレッドで再利用されるため、使い終わるまで同じスレッドで再度取得しないでください.<br>
+	 * 
+	 * @return 初期状態にリセットされたトランスフォーマー
+	 */
+	public static Transformer getTransformer() {
+		Transformer transformer = transformers.get();
+		if (transformer == null) {
+			try {
+				synchronized (transformerFactory) {
+					transformer = transformerFactory.newTransformer();
+				}
+			} catch (TransformerConfigurationException ex) {
+				throw new RuntimeException("JAXP Configuration Failed.", ex);
+			}
+			transformers.set(transformer);
+		}
+		transformer.reset();
+		return transformer;
+	}
+
+	/**
+	 * XMLスキーマを読み込んで返します.<br>
+	 * 一度読み込んだスキーマはキャッシュされ、以降は同じインスタンスが返されます.<br>
+	 * 
+	 * @param schemaURL
+	 *            スキーマの位置
+	 * @return スキーマ
+	 * @throws IOException
+	 *             スキーマが読み込めない場合
+	 */
+	public static Schema getSchema(URL schemaURL) throws IOException {
+		if (schemaURL == null) {
+			throw new IllegalArgumentException();
+		}
+		String key = schemaURL.toString();
+		synchronized (schemas) {
+			Schema schema = schemas.get(key);
+			if (schema == null) {
+				try {
+					SchemaFactory schemaFactory = SchemaFactory
+							.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+					schema = schemaFactory.newSchema(schemaURL);
+
+				} catch (SAXException ex) {
+					IOException ex2 = new IOException("schema read failed. " + schemaURL);
+					ex2.initCause(ex);
+					throw ex2;
+				}
+				schemas.put(key, schema);
+			}
+			return schema;
+		}
+	}
+
 	/**
 	 * XMLドキュメントをロードして返します. 名前空間を有効とします.
 	 * 
@@ -42,13 +235,24 @@ public final class XMLUtilities {
 	 *             読み込みに失敗した場合
 	 */
 	public static Document loadDocument(InputStream is) throws IOException {
+		return loadDocument(is, null);
+	}
+
+	/**
+	 * XMLドキュメントをロードして返します. 名前空間を有効とします.
+	 * 
+	 * @param is
+	 *            ロードするXMLドキュメントの入力ストリーム
+	 * @param schema
+	 *            検証に用いるスキーマ、検証しない場合はnull
+	 * @return ドキュメント
+	 * @throws IOException
+	 *             読み込みに失敗した場合、もしくはスキーマに適合しない場合
+	 */
+	public static Document loadDocument(InputStream is, Schema schema) throws IOException {
 		Document doc;
 		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory
-					.newInstance();
-			factory.setNamespaceAware(true);
-
-			DocumentBuilder builder = factory.newDocumentBuilder();
+			DocumentBuilder builder = getDocumentBuilder(schema);
 			final ArrayList<SAXParseException> errors = new ArrayList<SAXParseException>();
 			builder.setErrorHandler(new ErrorHandler() {
 				public void error(SAXParseException exception)
@@ -72,9 +276,6 @@ public final class XMLUtilities {
 
 			return doc;
 
-		} catch (ParserConfigurationException ex) {
-			throw new RuntimeException("JAXP Configuration Exception.", ex);
-
 		} catch (SAXException ex) {
 			IOException ex2 = new IOException("xml read failed.");
 			ex2.initCause(ex);
@@ -0,0 +1,176 @@
+package charactermanaj.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import charactermanaj.model.io.CharacterDataXMLReader;
+import charactermanaj.model.io.CharacterDataXMLStreamingReader;
+
+/**
+ * SAXによるキャラクターデータの読み込みが、DOMによる読み込みと同じ結果になることを確認する.<br>
+ * あわせて、それぞれの読み込み時間を表示する.<br>
+ *
+ * @author seraphy
+ */
+public class CharacterDataXMLStreamingReaderTest {
+
+	public static void main(String[] args) throws Exception {
+		(new CharacterDataXMLStreamingReaderTest()).run();
+	}
+
+	public void run() throws Exception {
+		URI uri = getClass().getResource("character.xml").toURI();
+		CharacterDataXMLReader domReader = new CharacterDataXMLReader();
+		CharacterDataXMLReader saxReader = new CharacterDataXMLStreamingReader();
+
+		boolean result = true;
+		for (Locale locale : new Locale[] {Locale.JAPANESE, Locale.ENGLISH}) {
+			String expected = dump(load(domReader, uri, locale));
+			String actual = dump(load(saxReader, uri, locale));
+			boolean same = expected.equals(actual);
+			System.out.println("locale=" + locale + " same=" + same);
+			if (!same) {
+				System.out.println("expected=" + expected);
+				System.out.println("actual  =" + actual);
+			}
+			result &= same;
+		}
+
+		// 不正な文書はいずれもIOExceptionとなること
+		String[] invalidDocs = {
+				"<character/>",
+				"<character xmlns='http://charactermanaj.sourceforge.jp/schema/charactermanaj' version='2.0'/>",
+				"<character xmlns='http://charactermanaj.sourceforge.jp/schema/charactermanaj' version='1.0'><name>",
+		};
+		for (String invalidDoc : invalidDocs) {
+			boolean domFailed = isFailed(domReader, invalidDoc);
+			boolean saxFailed = isFailed(saxReader, invalidDoc);
+			System.out.println("invalid doc: dom=" + domFailed + " sax=" + saxFailed);
+			result &= domFailed && saxFailed;
+		}
+
+		int loop = 20;
+		long st = System.currentTimeMillis();
+		for (int idx = 0; idx < loop; idx++) {
+			load(domReader, uri, Locale.JAPANESE);
+		}
+		long domTime = System.currentTimeMillis() - st;
+		st = System.currentTimeMillis();
+		for (int idx = 0; idx < loop; idx++) {
+			load(saxReader, uri, Locale.JAPANESE);
+		}
+		long saxTime = System.currentTimeMillis() - st;
+		System.out.println("dom=" + domTime + "ms, sax=" + saxTime + "ms (x" + loop + ")");
+
+		System.out.println(result ? "OK" : "NG");
+	}
+
+	private CharacterData load(CharacterDataXMLReader reader, URI uri,
+			Locale locale) throws IOException {
+		InputStream is = uri.toURL().openStream();
+		try {
+			return reader.loadCharacterDataFromXML(is, uri, locale);
+		} finally {
+			is.close();
+		}
+	}
+
+	private boolean isFailed(CharacterDataXMLReader reader, String doc) {
+		try {
+			reader.loadCharacterDataFromXML(
+					new ByteArrayInputStream(doc.getBytes("UTF-8")), null);
+			return false;
+
+		} catch (IOException ex) {
+			return true;
+		}
+	}
+
+	/**
+	 * キャラクターデータの内容を比較可能な文字列にする.
+	 */
+	private String dump(CharacterData cd) {
+		StringBuilder buf = new StringBuilder();
+		buf.append("id=").append(cd.getId());
+		buf.append(", rev=").append(cd.getRev());
+		buf.append(", name=").append(cd.getName());
+		buf.append(", author=").append(cd.getAuthor());
+		buf.append(", description=").append(cd.getDescription());
+		buf.append(", imageSize=").append(cd.getImageSize());
+		buf.append(", docBase=").append(cd.getDocBase());
+
+		buf.append(", settings=[");
+		for (String key : new TreeSet<String>(cd.getPropertyNames())) {
+			buf.append(key).append('=').append(cd.getProperty(key)).append(';');
+		}
+		buf.append("]");
+
+		buf.append(", colorGroups=[");
+		TreeMap<String, ColorGroup> colorGroups = new TreeMap<String, ColorGroup>();
+		for (ColorGroup colorGroup : cd.getColorGroups()) {
+			colorGroups.put(colorGroup.getId(), colorGroup);
+		}
+		for (ColorGroup colorGroup : colorGroups.values()) {
+			buf.append(colorGroup.getId()).append('=')
+					.append(colorGroup.getLocalizedName()).append(';');
+		}
+		buf.append("]");
+
+		buf.append(", categories=[");
+		for (PartsCategory category : cd.getPartsCategories()) {
+			buf.append(category.getOrder()).append(':')
+					.append(category.getCategoryId()).append(':')
+					.append(category.getLocalizedCategoryName()).append(':')
+					.append(category.isMultipleSelectable()).append(':')
+					.append(category.getVisibleRows()).append('{');
+			for (Layer layer : category.getLayers()) {
+				ColorGroup colorGroup = layer.getColorGroup();
+				buf.append(layer.getId()).append(':')
+						.append(layer.getLocalizedName()).append(':')
+						.append(layer.getOrder()).append(':')
+						.append(colorGroup == null ? null : colorGroup.getId()).append(':')
+						.append(layer.isInitSync()).append(':')
+						.append(layer.getDir()).append(':')
+						.append(layer.getColorModelName()).append(';');
+			}
+			buf.append("}");
+		}
+		buf.append("]");
+
+		buf.append(", defaultPartsSetId=").append(cd.getDefaultPartsSetId());
+		buf.append(", partsSets=[");
+		for (Map.Entry<String, PartsSet> entry
+				: new TreeMap<String, PartsSet>(cd.getPartsSets()).entrySet()) {
+			PartsSet partsSet = entry.getValue();
+			buf.append(entry.getKey()).append('=')
+					.append(partsSet.getLocalizedName()).append(':')
+					.append(partsSet.isPresetParts()).append(':')
+					.append(partsSet.getBgColor()).append(':')
+					.append(Arrays.toString(partsSet.getAffineTransformParameter()))
+					.append(':').append(partsSet).append(';');
+		}
+		buf.append("]");
+
+		buf.append(", recommendations=[");
+		if (cd.getRecommendationURLList() == null) {
+			buf.append("null");
+		} else {
+			for (RecommendationURL recommendationURL : cd.getRecommendationURLList()) {
+				buf.append(recommendationURL.getDisplayName()).append('=')
+						.append(recommendationURL.getUrl()).append(';');
+			}
+		}
+		buf.append("]");
+
+		// 識別用のハッシュ値は比較から除く
+		return buf.toString().replaceAll("@[0-9a-f]+", "@");
+	}
+
+}
@@ -0,0 +1,125 @@
+package charactermanaj.model;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import charactermanaj.model.PartsManageData.PartsKey;
+import charactermanaj.model.PartsManageData.PartsVersionInfo;
+import charactermanaj.model.io.PartsInfoXMLReader;
+import charactermanaj.model.io.PartsInfoXMLWriter;
+import charactermanaj.model.io.PartsManageDataCache;
+
+/**
+ * 大量のパーツをもつparts-info.xmlの読み込みのベンチマーク.<br>
+ * カテゴリごとのロードと同様に、カテゴリ数分のスレッドから並列にパーツ管理情報を要求し、
+ * 毎回parts-info.xmlを解析する場合と、キャッシュを使う場合の所要時間を比較する.<br>
+ *
+ * @author seraphy
+ */
+public class PartsManageDataCacheTest {
+
+	public static void main(String[] args) throws Exception {
+		int count = 20000;
+		if (args.length > 0) {
+			count = Integer.parseInt(args[0]);
+		}
+		(new PartsManageDataCacheTest()).run(count, 20);
+	}
+
+	public void run(int count, int numOfCategories) throws Exception {
+		File dir = File.createTempFile("partsinfo", "");
+		dir.delete();
+		dir.mkdirs();
+		File partsInfoXML = new File(dir, "parts-info.xml");
+		try {
+			final URI docBase = new File(dir, "character.xml").toURI();
+
+			PartsManageData partsManageData = new PartsManageData();
+			for (int idx = 0; idx < count; idx++) {
+				PartsAuthorInfo authorInfo = new PartsAuthorInfo();
+				authorInfo.setAuthor("author" + (idx % 100));
+				authorInfo.setHomePage("http://example.com/" + (idx % 100));
+				PartsKey partsKey = new PartsKey("parts" + idx, "category"
+						+ (idx % numOfCategories));
+				partsManageData.putPartsInfo(partsKey, "name" + idx, authorInfo,
+						new PartsVersionInfo(idx, "http://example.com/dl" + idx));
+			}
+			PartsInfoXMLWriter writer = new PartsInfoXMLWriter();
+			writer.savePartsManageData(docBase, partsManageData);
+			System.out.println("parts-info.xml: entries=" + count + " size="
+					+ partsInfoXML.length());
+
+			// 解析器の初期化の影響を除くため、一度読み込んでおく
+			new PartsInfoXMLReader().loadPartsManageData(docBase);
+
+			// カテゴリごとに毎回parts-info.xmlを解析する
+			long parsed = measure(numOfCategories, new Callable<PartsManageData>() {
+				public PartsManageData call() throws Exception {
+					return new PartsInfoXMLReader().loadPartsManageData(docBase);
+				}
+			});
+
+			// キャッシュを使う(初回)
+			final PartsManageDataCache cache = PartsManageDataCache.getInstance();
+			cache.invalidate(docBase);
+			cache.prefetch(docBase);
+			long cold = measure(numOfCategories, new Callable<PartsManageData>() {
+				public PartsManageData call() throws Exception {
+					return cache.getPartsManageData(docBase);
+				}
+			});
+
+			// キャッシュを使う(再ロード)
+			long warm = measure(numOfCategories, new Callable<PartsManageData>() {
+				public PartsManageData call() throws Exception {
+					return cache.getPartsManageData(docBase);
+				}
+			});
+
+			System.out.println("categories=" + numOfCategories
+					+ " parse per category=" + parsed + "ms, cached(first)="
+					+ cold + "ms, cached(reload)=" + warm + "ms");
+
+			// 書き込むとキャッシュは破棄されること
+			writer.savePartsManageData(docBase, new PartsManageData());
+			System.out.println("after rewrite: size="
+					+ cache.getPartsManageData(docBase).size());
+
+		} finally {
+			partsInfoXML.delete();
+			dir.delete();
+		}
+	}
+
+	private long measure(int numOfCategories, Callable<PartsManageData> loader)
+			throws Exception {
+		int numOfThreads = Math.min(Runtime.getRuntime().availableProcessors(),
+				numOfCategories);
+		ExecutorService executorSrv = Executors.newFixedThreadPool(numOfThreads);
+		try {
+			long st = System.currentTimeMillis();
+			List<Future<PartsManageData>> futures = new ArrayList<Future<PartsManageData>>();
+			for (int idx = 0; idx < numOfCategories; idx++) {
+				futures.add(executorSrv.submit(loader));
+			}
+			int size = -1;
+			for (Future<PartsManageData> future : futures) {
+				int sz = future.get().size();
+				if (size >= 0 && size != sz) {
+					throw new IllegalStateException("size mismatch: " + size + "/" + sz);
+				}
+				size = sz;
+			}
+			return System.currentTimeMillis() - st;
+
+		} finally {
+			executorSrv.shutdown();
+		}
+	}
+}
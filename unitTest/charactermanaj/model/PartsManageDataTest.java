@@ -0,0 +1,72 @@
+package charactermanaj.model;
+
+import charactermanaj.model.PartsManageData.PartsKey;
+import charactermanaj.model.PartsManageData.PartsVersionInfo;
+
+/**
+ * パーツ管理情報の、カテゴリを省略した検索のベンチマーク.<br>
+ * 索引による検索と、従来の全件走査による検索の結果と所要時間を比較する.<br>
+ *
+ * @author seraphy
+ */
+public class PartsManageDataTest {
+
+	public static void main(String[] args) throws Exception {
+		int count = 20000;
+		if (args.length > 0) {
+			count = Integer.parseInt(args[0]);
+		}
+		(new PartsManageDataTest()).run(count);
+	}
+
+	public void run(int count) {
+		PartsManageData partsManageData = new PartsManageData();
+		for (int idx = 0; idx < count; idx++) {
+			PartsAuthorInfo authorInfo = new PartsAuthorInfo();
+			authorInfo.setAuthor("author" + (idx % 100));
+			PartsKey partsKey = new PartsKey("parts" + idx, "category" + (idx % 20));
+			partsManageData.putPartsInfo(partsKey, "name" + idx, authorInfo,
+					new PartsVersionInfo(idx, null));
+		}
+
+		// パーツ管理デコレータと同様に、すべてのパーツをカテゴリを省略したキーで検索する.
+		long st = System.currentTimeMillis();
+		int found = 0;
+		for (int idx = 0; idx < count; idx++) {
+			PartsKey partsKey = new PartsKey("parts" + idx);
+			if (partsManageData.getPartsAuthorInfo(partsKey) != null
+					&& partsManageData.getVersion(partsKey) != null
+					&& partsManageData.getLocalizedName(partsKey) != null) {
+				found++;
+			}
+		}
+		long indexed = System.currentTimeMillis() - st;
+
+		// 従来の全件走査による検索
+		st = System.currentTimeMillis();
+		int found2 = 0;
+		for (int idx = 0; idx < count; idx++) {
+			PartsKey partsKey = new PartsKey("parts" + idx);
+			String localizedName = null;
+			for (PartsKey key : partsManageData) {
+				if (key.getPartsName().equals(partsKey.getPartsName())) {
+					localizedName = partsManageData.getLocalizedNameStrict(key);
+					break;
+				}
+			}
+			if (localizedName != null && localizedName.equals(partsManageData.getLocalizedName(partsKey))) {
+				found2++;
+			}
+		}
+		long scanned = System.currentTimeMillis() - st;
+
+		System.out.println("entries=" + count + " found=" + found + "/" + found2);
+		System.out.println("indexed(author+version+name)=" + indexed
+				+ "ms, linear scan(name only)=" + scanned + "ms");
+
+		// 登録されていないパーツ名はnullとなること
+		System.out.println("missing="
+				+ partsManageData.getLocalizedName(new PartsKey("missing")));
+	}
+
+}